@@ -0,0 +1,158 @@
+package com.c2c.locationapp;
+
+//classifies the recent fix stream into a MotionState and tells when the location request
+//should change. plain state machine: feed it fixes in time order, on any thread, one at a time
+//
+//speed comes from the reported speed, or from displacement between fixes minus their accuracy
+//so GPS jitter on a parked phone does not look like walking. it is smoothed over ~20 s, and a
+//change needs the new state to hold for a while (long to slow down, short to speed up) and to
+//clear a threshold band around the boundary, so the request does not flap
+final class AdaptiveSampler {
+
+    //boundaries between states in m/s, with the band the smoothed speed must clear to cross them
+    private static final float WALKING_SPEED = 0.6f;
+    private static final float DRIVING_SPEED = 3.5f;
+    private static final float HYSTERESIS = 0.25f;
+
+    //fixes worse than this tell nothing about motion
+    private static final float MAX_USABLE_ACCURACY = 50f;
+
+    //except while stationary: that request gets wifi and cell fixes, which are rarely better than
+    //50 m, and ignoring them would keep the phone stationary for good. displacement is measured
+    //net of accuracy, so only movement well beyond their error counts
+    private static final float MAX_STATIONARY_ACCURACY = 200f;
+
+    private static final double SMOOTHING_TIME_CONSTANT_MILLIS = 20_000;
+
+    //how long a new state must persist before switching to it, slowing down waits out
+    //traffic lights and short pauses, speeding up follows quickly
+    private static final long CONFIRM_STATIONARY_MILLIS = 120_000;
+    private static final long CONFIRM_SLOW_TO_WALKING_MILLIS = 60_000;
+    private static final long CONFIRM_SPEED_UP_MILLIS = 10_000;
+
+    //fixes in a row that must show motion on their own to leave stationary. those fixes are
+    //minutes apart, or seconds while the UI asks for more, and after a gap the smoothed speed is
+    //all the last fix; a single GPS speed spike indoors must not wake a parked phone
+    private static final int WAKE_FIXES = 2;
+
+    private volatile MotionState mState;
+
+    private MotionState mCandidate;
+    private long mCandidateSince;
+    //fixes in a row whose own speed cleared the band above stationary
+    private int mMovingFixes;
+
+    private boolean mHasPrevious;
+    private long mPreviousTime;
+    private double mPreviousLatitude;
+    private double mPreviousLongitude;
+    private float mPreviousAccuracy;
+
+    private double mSpeed;
+
+    AdaptiveSampler(MotionState initialState) {
+        mState = initialState;
+        mCandidate = initialState;
+    }
+
+    MotionState getState() {
+        return mState;
+    }
+
+    //smoothed speed estimate in m/s
+    double getSpeed() {
+        return mSpeed;
+    }
+
+    //returns true if the state changed with this fix
+    boolean onFix(Fix fix) {
+        float maxAccuracy = mState == MotionState.STATIONARY
+                ? MAX_STATIONARY_ACCURACY : MAX_USABLE_ACCURACY;
+        if (fix.accuracy > maxAccuracy) {
+            return false;
+        }
+        if (!mHasPrevious) {
+            remember(fix);
+            mSpeed = fix.speed;
+            return false;
+        }
+        long dt = fix.time - mPreviousTime;
+        if (dt <= 0) {
+            return false;
+        }
+
+        double distance = GeoMath.distance(mPreviousLatitude, mPreviousLongitude,
+                fix.latitude, fix.longitude);
+        double noise = (mPreviousAccuracy + fix.accuracy) / 2;
+        double speed;
+        if (fix.speed > 0) {
+            speed = fix.speed;
+            //while stationary, no faster than the displacement allows even with all of the error
+            //in its favour; after a gap of minutes that is next to nothing for a parked phone
+            if (mState == MotionState.STATIONARY) {
+                speed = Math.min(speed, (distance + noise) * 1000 / dt);
+            }
+        } else {
+            speed = Math.max(0, distance - noise) * 1000 / dt;
+        }
+        double alpha = 1 - Math.exp(-dt / SMOOTHING_TIME_CONSTANT_MILLIS);
+        mSpeed += alpha * (speed - mSpeed);
+        remember(fix);
+        mMovingFixes = speed > WALKING_SPEED + HYSTERESIS ? mMovingFixes + 1 : 0;
+
+        MotionState candidate = classify(mSpeed);
+        if (candidate == mState) {
+            mCandidate = candidate;
+            return false;
+        }
+        if (candidate != mCandidate) {
+            mCandidate = candidate;
+            mCandidateSince = fix.time;
+        }
+        //fixes are minutes apart when stationary, a few in a row showing motion are enough
+        boolean confirmed = mState == MotionState.STATIONARY
+                ? mMovingFixes >= WAKE_FIXES
+                : fix.time - mCandidateSince >= confirmMillis(candidate);
+        if (!confirmed) {
+            return false;
+        }
+        mState = candidate;
+        return true;
+    }
+
+    private MotionState classify(double speed) {
+        switch (mState) {
+            case STATIONARY:
+                if (speed > DRIVING_SPEED + HYSTERESIS) {
+                    return MotionState.DRIVING;
+                }
+                return speed > WALKING_SPEED + HYSTERESIS ? MotionState.WALKING : MotionState.STATIONARY;
+            case WALKING:
+                if (speed > DRIVING_SPEED + HYSTERESIS) {
+                    return MotionState.DRIVING;
+                }
+                return speed < WALKING_SPEED - HYSTERESIS ? MotionState.STATIONARY : MotionState.WALKING;
+            default:
+                if (speed < WALKING_SPEED - HYSTERESIS) {
+                    return MotionState.STATIONARY;
+                }
+                return speed < DRIVING_SPEED - HYSTERESIS ? MotionState.WALKING : MotionState.DRIVING;
+        }
+    }
+
+    private long confirmMillis(MotionState candidate) {
+        if (candidate.compareTo(mState) > 0) {
+            return CONFIRM_SPEED_UP_MILLIS;
+        }
+        return candidate == MotionState.STATIONARY
+                ? CONFIRM_STATIONARY_MILLIS : CONFIRM_SLOW_TO_WALKING_MILLIS;
+    }
+
+    private void remember(Fix fix) {
+        mHasPrevious = true;
+        mPreviousTime = fix.time;
+        mPreviousLatitude = fix.latitude;
+        mPreviousLongitude = fix.longitude;
+        mPreviousAccuracy = fix.accuracy;
+    }
+}
@@ -0,0 +1,55 @@
+package com.c2c.locationapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+//reads "time,latitude,longitude[,accuracy,speed,bearing]" lines, time in epoch ms or ISO 8601
+//a header line and blank lines are skipped
+final class CsvTrackReader extends TrackReader {
+
+    private final BufferedReader mReader;
+    private int mLineNumber;
+
+    CsvTrackReader(Reader reader) {
+        mReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    boolean next(Fix out) throws IOException {
+        String line;
+        while ((line = mReader.readLine()) != null) {
+            mLineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || !(Character.isDigit(line.charAt(0)) || line.charAt(0) == '-')) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 3) {
+                throw new IOException("Line " + mLineNumber + ": expected time,latitude,longitude");
+            }
+            try {
+                String time = fields[0].trim();
+                out.set(time.indexOf('T') > 0 ? parseIsoTime(time) : Long.parseLong(time), 0,
+                        Double.parseDouble(fields[1].trim()), Double.parseDouble(fields[2].trim()),
+                        optional(fields, 3), optional(fields, 4), optional(fields, 5));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + mLineNumber + ": " + e.getMessage(), e);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static float optional(String[] fields, int index) {
+        if (index >= fields.length || fields[index].trim().isEmpty()) {
+            return 0f;
+        }
+        return Float.parseFloat(fields[index].trim());
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,636 @@
+package com.c2c.locationapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+//where the device spends its time: dwell time and visits per cell of a multi-resolution grid,
+//kept up to date per fix so heatmaps and top places never scan the history.
+//cells at level z split longitude and latitude into 2^z steps each, their keys are the 2z bit
+//geohash of ReverseGeocoder.geohash's layout, so a cell's parent is its key shifted right by two.
+//every level from the finest up is a sparse open-addressing map of key to dwell and visits, and
+//a fix updates one cell per level: the time since the previous fix is dwell of the previous fix's
+//cell, and entering a cell is a visit of it. gaps of GAP_MILLIS count as neither.
+//grids of the same levels merge by adding cells, which is how a parallel rebuild joins its parts
+//and how grids of separate days combine. pipeline thread feeds fixes, any thread queries
+final class DensityGrid implements FixPipeline.Stage {
+
+    //visits cells a query matched, return false to stop
+    interface CellVisitor {
+        boolean visit(double latitude, double longitude, long dwellMillis, int visits);
+    }
+
+    //about 95 x 75 m at 50 degrees latitude
+    static final int DEFAULT_FINEST_LEVEL = 18;
+
+    //down to level 7, about 200 x 150 km
+    static final int DEFAULT_LEVELS = 12;
+
+    //keys of level 30 use 60 bits, as the geocoder's
+    static final int MAX_LEVEL = 30;
+
+    //no fix for this long says nothing about where the time went, as in TripTracker
+    static final long GAP_MILLIS = TripTracker.TRIP_GAP_MILLIS;
+
+    //file: magic, version, finest level, levels, previous fix, then per level from the finest
+    //the cell count and the cells by ascending key as varints of key delta, dwell and visits,
+    //then the CRC32 of all of it
+    private static final int MAGIC = 0x444e5331; // "DNS1"
+    private static final short VERSION = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    //least fixes per part of a parallel rebuild
+    private static final int MIN_PART_SIZE = 4096;
+
+    private final int mFinestLevel;
+    private final int mLevels;
+
+    //guarded by this, index 0 is the finest level
+    private CellMap[] mMaps;
+
+    //previous fix, guarded by this
+    private boolean mHasPrevious;
+    private long mPreviousTime;
+    private double mPreviousLatitude;
+    private double mPreviousLongitude;
+    private long mPreviousCell;
+
+    DensityGrid() {
+        this(DEFAULT_FINEST_LEVEL, DEFAULT_LEVELS);
+    }
+
+    DensityGrid(int finestLevel, int levels) {
+        if (finestLevel < 1 || finestLevel > MAX_LEVEL || levels < 1 || levels > finestLevel) {
+            throw new IllegalArgumentException("Bad levels " + levels + " up to " + finestLevel);
+        }
+        mFinestLevel = finestLevel;
+        mLevels = levels;
+        mMaps = newMaps(levels);
+    }
+
+    int finestLevel() {
+        return mFinestLevel;
+    }
+
+    int coarsestLevel() {
+        return mFinestLevel - mLevels + 1;
+    }
+
+    @Override
+    public synchronized boolean onFix(Fix fix) {
+        add(fix.time, fix.latitude, fix.longitude);
+        return true;
+    }
+
+    //fixes going back in time are ignored, equal times move the previous fix without any dwell
+    private void add(long time, double latitude, double longitude) {
+        long cell = cell(latitude, longitude, mFinestLevel);
+        CellMap[] maps = mMaps;
+        //levels whose cell was entered with this fix, all of them after a gap
+        int entered = mLevels;
+        if (mHasPrevious) {
+            long dt = time - mPreviousTime;
+            if (dt < 0) {
+                return;
+            }
+            if (dt <= GAP_MILLIS) {
+                if (dt > 0) {
+                    for (int i = 0; i < mLevels; i++) {
+                        maps[i].add(mPreviousCell >>> 2 * i, dt, 0);
+                    }
+                }
+                //a cell is inside the previous one at every coarser level than the first shared
+                entered = 0;
+                while (entered < mLevels && cell >>> 2 * entered != mPreviousCell >>> 2 * entered) {
+                    entered++;
+                }
+            }
+        }
+        for (int i = 0; i < entered; i++) {
+            maps[i].add(cell >>> 2 * i, 0, 1);
+        }
+        remember(time, latitude, longitude, cell);
+    }
+
+    private void remember(long time, double latitude, double longitude, long cell) {
+        mHasPrevious = true;
+        mPreviousTime = time;
+        mPreviousLatitude = latitude;
+        mPreviousLongitude = longitude;
+        mPreviousCell = cell;
+    }
+
+    //cells stored at a level
+    synchronized int cellCount(int level) {
+        return mMaps[index(level)].size();
+    }
+
+    //finest level with at most cellsAcross cells across spanDegrees of longitude, clamped to the
+    //stored levels; for a heatmap of a viewport that many cells wide
+    int levelFor(double spanDegrees, int cellsAcross) {
+        int level = mFinestLevel;
+        while (level > coarsestLevel() && spanDegrees / (360.0 / (1L << level)) > cellsAcross) {
+            level--;
+        }
+        return level;
+    }
+
+    //cells of level inside the box, centers inclusive, in no particular order; returns how many
+    //were visited. looks up every cell of the box or scans the level, whichever is less work,
+    //so the cost follows the cells in view and not the history. the box must not cross the
+    //antimeridian, split such queries in two
+    synchronized int query(int level, double minLatitude, double minLongitude, double maxLatitude,
+                           double maxLongitude, CellVisitor visitor) {
+        CellMap map = mMaps[index(level)];
+        long minX = lonIndex(minLongitude, level);
+        long maxX = lonIndex(maxLongitude, level);
+        long minY = latIndex(minLatitude, level);
+        long maxY = latIndex(maxLatitude, level);
+        int count = 0;
+        if ((maxX - minX + 1) * (maxY - minY + 1) <= map.size()) {
+            for (long y = minY; y <= maxY; y++) {
+                for (long x = minX; x <= maxX; x++) {
+                    int slot = map.find(spread(x) << 1 | spread(y));
+                    if (slot < 0) {
+                        continue;
+                    }
+                    count++;
+                    if (!visit(map, slot, level, visitor)) {
+                        return count;
+                    }
+                }
+            }
+        } else {
+            for (int slot = 0; slot < map.capacity(); slot++) {
+                long key = map.key(slot);
+                if (key == CellMap.EMPTY) {
+                    continue;
+                }
+                long x = compact(key >>> 1);
+                long y = compact(key);
+                if (x < minX || x > maxX || y < minY || y > maxY) {
+                    continue;
+                }
+                count++;
+                if (!visit(map, slot, level, visitor)) {
+                    return count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean visit(CellMap map, int slot, int level, CellVisitor visitor) {
+        long key = map.key(slot);
+        return visitor.visit(cellLatitude(key, level), cellLongitude(key, level), map.dwell(slot),
+                map.visits(slot));
+    }
+
+    //up to count cells of level with the most dwell time, most first
+    synchronized List<Cell> topPlaces(int level, int count) {
+        CellMap map = mMaps[index(level)];
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        //slots of the best so far, least dwell on top
+        PriorityQueue<Integer> best = new PriorityQueue<>(count + 1,
+                (a, b) -> Long.compare(map.dwell(a), map.dwell(b)));
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.key(slot) == CellMap.EMPTY || map.dwell(slot) == 0) {
+                continue;
+            }
+            if (best.size() < count) {
+                best.add(slot);
+            } else if (map.dwell(slot) > map.dwell(best.peek())) {
+                best.poll();
+                best.add(slot);
+            }
+        }
+        Cell[] cells = new Cell[best.size()];
+        for (int i = cells.length - 1; i >= 0; i--) {
+            int slot = best.poll();
+            long key = map.key(slot);
+            cells[i] = new Cell(level, cellLatitude(key, level), cellLongitude(key, level),
+                    map.dwell(slot), map.visits(slot));
+        }
+        return Collections.unmodifiableList(Arrays.asList(cells));
+    }
+
+    //adds the cells of other, which must have the same levels and not change meanwhile.
+    //the previous fix stays this grid's, the histories are taken to be separate
+    synchronized void merge(DensityGrid other) {
+        if (other.mFinestLevel != mFinestLevel || other.mLevels != mLevels) {
+            throw new IllegalArgumentException("Levels differ");
+        }
+        for (int i = 0; i < mLevels; i++) {
+            mMaps[i].addAll(other.mMaps[i]);
+        }
+    }
+
+    //recomputes everything from the stored track using up to threads threads, replacing what
+    //this grid knew. the track is split into runs of whole segments, each run starts from the fix
+    //before it, so the parts add up to what a single pass gives. interrupting the caller ends it
+    //early and leaves this grid as it was
+    void rebuild(TrackStore store, int threads) throws InterruptedException {
+        long first = store.firstPosition();
+        long end = store.endPosition();
+        int records = store.recordsPerSegment();
+        int parts = Math.max(1, threads) * 4;
+        long partSize = Math.max(MIN_PART_SIZE, (end - first + parts - 1) / parts);
+        partSize = (partSize + records - 1) / records * records;
+        DensityGrid rebuilt = new DensityGrid(mFinestLevel, mLevels);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<DensityGrid>> grids = new ArrayList<>();
+            for (long from = first; from < end; from = (from / partSize + 1) * partSize) {
+                final long start = from;
+                final long stop = Math.min(end, (from / partSize + 1) * partSize);
+                grids.add(executor.submit(() -> {
+                    DensityGrid part = new DensityGrid(mFinestLevel, mLevels);
+                    if (start > first) {
+                        double latitude = store.latitudeAt(start - 1);
+                        double longitude = store.longitudeAt(start - 1);
+                        part.remember(store.timeAt(start - 1), latitude, longitude,
+                                cell(latitude, longitude, mFinestLevel));
+                    }
+                    part.feed(store, start, stop);
+                    return part;
+                }));
+            }
+            for (Future<DensityGrid> grid : grids) {
+                rebuilt.merge(get(grid));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (end > first) {
+            double latitude = store.latitudeAt(end - 1);
+            double longitude = store.longitudeAt(end - 1);
+            rebuilt.remember(store.timeAt(end - 1), latitude, longitude,
+                    cell(latitude, longitude, mFinestLevel));
+        }
+        synchronized (this) {
+            mMaps = rebuilt.mMaps;
+            mHasPrevious = rebuilt.mHasPrevious;
+            mPreviousTime = rebuilt.mPreviousTime;
+            mPreviousLatitude = rebuilt.mPreviousLatitude;
+            mPreviousLongitude = rebuilt.mPreviousLongitude;
+            mPreviousCell = rebuilt.mPreviousCell;
+        }
+    }
+
+    //adds the stored fixes newer than the previous fix, after read() of a grid the store has
+    //moved on from; call before the first fix. interrupting the caller ends it early, at a fix
+    //a later update continues from
+    void update(TrackStore store) {
+        long from;
+        synchronized (this) {
+            from = mHasPrevious ? store.positionOf(mPreviousTime + 1) : store.firstPosition();
+        }
+        feed(store, from, store.endPosition());
+    }
+
+    private void feed(TrackStore store, long from, long to) {
+        store.read(from, to, (time, latitude, longitude, accuracy, speed, bearing) -> {
+            synchronized (this) {
+                add(time, latitude, longitude);
+            }
+            return !Thread.currentThread().isInterrupted();
+        });
+    }
+
+    //writes the grid to a temporary file and renames it into place
+    synchronized void write(File file) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        CRC32 crc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(stream, crc)));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeByte(mFinestLevel);
+            out.writeByte(mLevels);
+            out.writeBoolean(mHasPrevious);
+            out.writeLong(mPreviousTime);
+            out.writeDouble(mPreviousLatitude);
+            out.writeDouble(mPreviousLongitude);
+            for (CellMap map : mMaps) {
+                int[] slots = map.slotsByKey();
+                writeVarint(out, slots.length);
+                long previousKey = 0;
+                for (int slot : slots) {
+                    writeVarint(out, map.key(slot) - previousKey);
+                    writeVarint(out, map.dwell(slot));
+                    writeVarint(out, map.visits(slot));
+                    previousKey = map.key(slot);
+                }
+            }
+            out.flush();
+            //not part of the checksum
+            new DataOutputStream(stream).writeInt((int) crc.getValue());
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not store " + file);
+        }
+    }
+
+    //replaces this grid with the one in file, false without a change if it was written with
+    //other levels; a damaged file throws
+    boolean read(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), crc))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not a density grid " + file);
+            }
+            if (in.readUnsignedByte() != mFinestLevel || in.readUnsignedByte() != mLevels) {
+                return false;
+            }
+            boolean hasPrevious = in.readBoolean();
+            long previousTime = in.readLong();
+            double previousLatitude = in.readDouble();
+            double previousLongitude = in.readDouble();
+            CellMap[] maps = new CellMap[mLevels];
+            for (int i = 0; i < mLevels; i++) {
+                long count = readVarint(in);
+                if (count > Integer.MAX_VALUE / 4) {
+                    throw new IOException("Bad cell count " + count);
+                }
+                maps[i] = new CellMap((int) count);
+                long key = 0;
+                for (long j = 0; j < count; j++) {
+                    key += readVarint(in);
+                    maps[i].add(key, readVarint(in), (int) readVarint(in));
+                }
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Damaged density grid " + file);
+            }
+            synchronized (this) {
+                mMaps = maps;
+                if (hasPrevious) {
+                    remember(previousTime, previousLatitude, previousLongitude,
+                            cell(previousLatitude, previousLongitude, mFinestLevel));
+                } else {
+                    mHasPrevious = false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated density grid");
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new IllegalStateException(cause);
+        }
+    }
+
+    private static CellMap[] newMaps(int levels) {
+        CellMap[] maps = new CellMap[levels];
+        for (int i = 0; i < levels; i++) {
+            maps[i] = new CellMap(16);
+        }
+        return maps;
+    }
+
+    private int index(int level) {
+        if (level > mFinestLevel || level < coarsestLevel()) {
+            throw new IllegalArgumentException("Level " + level + " not stored");
+        }
+        return mFinestLevel - level;
+    }
+
+    //key of the cell at level containing the point, the top 2 * level bits of its geohash
+    static long cell(double latitude, double longitude, int level) {
+        return spread(lonIndex(longitude, level)) << 1 | spread(latIndex(latitude, level));
+    }
+
+    private static long lonIndex(double longitude, int level) {
+        return index((longitude + 180) / 360, level);
+    }
+
+    private static long latIndex(double latitude, int level) {
+        return index((latitude + 90) / 180, level);
+    }
+
+    private static long index(double fraction, int level) {
+        long max = (1L << level) - 1;
+        return Math.max(0, Math.min(max, (long) (fraction * (max + 1))));
+    }
+
+    private static double cellLatitude(long key, int level) {
+        return (compact(key) + 0.5) * 180 / (1L << level) - 90;
+    }
+
+    private static double cellLongitude(long key, int level) {
+        return (compact(key >>> 1) + 0.5) * 360 / (1L << level) - 180;
+    }
+
+    //bits of a 30 bit value moved to the even bits
+    private static long spread(long value) {
+        value = (value | value << 16) & 0x0000ffff0000ffffL;
+        value = (value | value << 8) & 0x00ff00ff00ff00ffL;
+        value = (value | value << 4) & 0x0f0f0f0f0f0f0f0fL;
+        value = (value | value << 2) & 0x3333333333333333L;
+        return (value | value << 1) & 0x5555555555555555L;
+    }
+
+    //even bits back together, the inverse of spread
+    private static long compact(long value) {
+        value &= 0x5555555555555555L;
+        value = (value | value >>> 1) & 0x3333333333333333L;
+        value = (value | value >>> 2) & 0x0f0f0f0f0f0f0f0fL;
+        value = (value | value >>> 4) & 0x00ff00ff00ff00ffL;
+        value = (value | value >>> 8) & 0x0000ffff0000ffffL;
+        return (value | value >>> 16) & 0xffffffffL;
+    }
+
+    //one cell as topPlaces found it
+    static final class Cell {
+        final int level;
+        //center of the cell
+        final double latitude;
+        final double longitude;
+        final long dwellMillis;
+        final int visits;
+
+        Cell(int level, double latitude, double longitude, long dwellMillis, int visits) {
+            this.level = level;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.dwellMillis = dwellMillis;
+            this.visits = visits;
+        }
+    }
+
+    //open addressing with linear probing from long keys to dwell and visits, in parallel arrays
+    //so a cell costs 20 bytes and no object; keys are never removed
+    static final class CellMap {
+        static final long EMPTY = -1;
+
+        private long[] mKeys;
+        private long[] mDwell;
+        private int[] mVisits;
+        private int mSize;
+        private int mShift;
+
+        CellMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            mKeys = new long[capacity];
+            Arrays.fill(mKeys, EMPTY);
+            mDwell = new long[capacity];
+            mVisits = new int[capacity];
+            mShift = 64 - Integer.numberOfTrailingZeros(capacity);
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        int capacity() {
+            return mKeys.length;
+        }
+
+        //key in slot, EMPTY if none
+        long key(int slot) {
+            return mKeys[slot];
+        }
+
+        long dwell(int slot) {
+            return mDwell[slot];
+        }
+
+        int visits(int slot) {
+            return mVisits[slot];
+        }
+
+        //slot of key, -1 if absent
+        int find(long key) {
+            int mask = mKeys.length - 1;
+            for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+                long k = mKeys[slot];
+                if (k == key) {
+                    return slot;
+                }
+                if (k == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        void add(long key, long dwell, int visits) {
+            int mask = mKeys.length - 1;
+            int slot = slot(key);
+            while (mKeys[slot] != key) {
+                if (mKeys[slot] == EMPTY) {
+                    //at most two thirds full
+                    if (3 * (mSize + 1) > 2 * mKeys.length) {
+                        grow();
+                        add(key, dwell, visits);
+                        return;
+                    }
+                    mKeys[slot] = key;
+                    mSize++;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            mDwell[slot] += dwell;
+            mVisits[slot] += visits;
+        }
+
+        void addAll(CellMap other) {
+            for (int slot = 0; slot < other.mKeys.length; slot++) {
+                if (other.mKeys[slot] != EMPTY) {
+                    add(other.mKeys[slot], other.mDwell[slot], other.mVisits[slot]);
+                }
+            }
+        }
+
+        //occupied slots in ascending key order
+        int[] slotsByKey() {
+            long[] sorted = new long[mSize];
+            int n = 0;
+            for (int slot = 0; slot < mKeys.length; slot++) {
+                if (mKeys[slot] != EMPTY) {
+                    sorted[n++] = mKeys[slot];
+                }
+            }
+            Arrays.sort(sorted);
+            int[] slots = new int[mSize];
+            for (int i = 0; i < mSize; i++) {
+                slots[i] = find(sorted[i]);
+            }
+            return slots;
+        }
+
+        private int slot(long key) {
+            return (int) ((key * 0x9e3779b97f4a7c15L) >>> mShift);
+        }
+
+        private void grow() {
+            long[] keys = mKeys;
+            long[] dwell = mDwell;
+            int[] visits = mVisits;
+            allocate(keys.length * 2);
+            mSize = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    add(keys[slot], dwell[slot], visits[slot]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.c2c.locationapp;
+
+//mutable primitive copy of a location fix, instances are reused along the fix path
+//so nothing is allocated per fix; never hand one to another thread without copying it
+final class Fix {
+
+    //wall clock time of the fix in ms
+    long time;
+
+    //time of the fix on the elapsed realtime clock, 0 if unknown
+    long elapsedRealtimeNanos;
+
+    double latitude;
+    double longitude;
+
+    //in meters, meters per second and degrees, 0 if not reported
+    float accuracy;
+    float speed;
+    float bearing;
+
+    void set(long time, long elapsedRealtimeNanos, double latitude, double longitude,
+             float accuracy, float speed, float bearing) {
+        this.time = time;
+        this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracy = accuracy;
+        this.speed = speed;
+        this.bearing = bearing;
+    }
+
+    void copyFrom(Fix other) {
+        set(other.time, other.elapsedRealtimeNanos, other.latitude, other.longitude,
+                other.accuracy, other.speed, other.bearing);
+    }
+
+    @Override
+    public String toString() {
+        return "Fix(" + time + ", " + latitude + ", " + longitude + ", acc=" + accuracy + ")";
+    }
+}
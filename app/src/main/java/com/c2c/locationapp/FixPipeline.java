@@ -0,0 +1,156 @@
+package com.c2c.locationapp;
+
+import java.util.concurrent.locks.LockSupport;
+
+//hands fixes from the thread receiving them to a single consumer thread through a FixRingBuffer
+//the consumer runs every fix through the stages in order and ends each drained batch with onBatchEnd
+final class FixPipeline implements LocationSource.Sink {
+
+    //one step of fix handling, only ever called on the consumer thread
+    interface Stage {
+
+        //returns false to drop the fix, later stages don't see it
+        boolean onFix(Fix fix);
+
+        //called once after a burst of fixes was drained, if any fix reached this stage
+        default void onBatchEnd() {
+        }
+    }
+
+    private final FixRingBuffer mBuffer;
+    private final Stage[] mStages;
+    private final boolean[] mStageHasFixes;
+    private final Thread mConsumer;
+
+    //counts received fixes, their delivery latency and times each fix through the stages while
+    //enabled, may be null
+    private final ServiceMetrics mMetrics;
+
+    //fix handed to the stages, owned by the consumer thread
+    private final Fix mFix = new Fix();
+
+    private volatile boolean mRunning;
+
+    //runs on the consumer thread before the first fix, fixes queue up meanwhile. cleared under
+    //mSetUpLock once done, so stop() interrupts the consumer only while it is still setting up
+    private Runnable mSetUp;
+    private final Object mSetUpLock = new Object();
+
+    FixPipeline(String name, int capacity, Stage... stages) {
+        this(name, capacity, null, stages);
+    }
+
+    FixPipeline(String name, int capacity, ServiceMetrics metrics, Stage... stages) {
+        mMetrics = metrics;
+        mBuffer = new FixRingBuffer(capacity);
+        mStages = stages.clone();
+        mStageHasFixes = new boolean[stages.length];
+        mConsumer = new Thread(this::consume, name);
+    }
+
+    void start() {
+        start(null);
+    }
+
+    //starts the consumer, which runs setUp before it takes fixes; for work the stages need that
+    //should not hold up the caller, e.g. opening storage
+    void start(Runnable setUp) {
+        mSetUp = setUp;
+        mRunning = true;
+        mConsumer.start();
+    }
+
+    //producer side, queues a copy of fix; the consumer is woken at the end of the delivery
+    @Override
+    public void onFix(Fix fix) {
+        if (mMetrics != null && mMetrics.isEnabled()) {
+            mMetrics.onFixReceived(fix);
+        }
+        mBuffer.offer(fix);
+    }
+
+    //wakes the consumer for the fixes queued so far
+    @Override
+    public void onBatchEnd() {
+        LockSupport.unpark(mConsumer);
+    }
+
+    //drains whatever is still queued and waits for the consumer to finish. set-up still running
+    //is interrupted, work there that can take long should end early when it is
+    void stop() {
+        mRunning = false;
+        synchronized (mSetUpLock) {
+            if (mSetUp != null) {
+                mConsumer.interrupt();
+            }
+        }
+        LockSupport.unpark(mConsumer);
+        boolean interrupted = false;
+        while (mConsumer.isAlive()) {
+            try {
+                mConsumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //fixes dropped because the consumer fell a whole buffer behind
+    long dropped() {
+        return mBuffer.dropped();
+    }
+
+    private void consume() {
+        if (mSetUp != null) {
+            try {
+                mSetUp.run();
+            } finally {
+                synchronized (mSetUpLock) {
+                    mSetUp = null;
+                    //an interrupt meant for set-up must not reach the stages or park()
+                    Thread.interrupted();
+                }
+            }
+        }
+        while (true) {
+            boolean running = mRunning;
+            drain();
+            if (!running) {
+                return;
+            }
+            if (mBuffer.isEmpty()) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private void drain() {
+        boolean any = false;
+        while (mBuffer.poll(mFix)) {
+            any = true;
+            boolean timed = mMetrics != null && mMetrics.isEnabled();
+            long start = timed ? System.nanoTime() : 0;
+            for (int i = 0; i < mStages.length; i++) {
+                mStageHasFixes[i] = true;
+                if (!mStages[i].onFix(mFix)) {
+                    break;
+                }
+            }
+            if (timed) {
+                mMetrics.recordPipelineTime(System.nanoTime() - start);
+            }
+        }
+        if (!any) {
+            return;
+        }
+        for (int i = 0; i < mStages.length; i++) {
+            if (mStageHasFixes[i]) {
+                mStageHasFixes[i] = false;
+                mStages[i].onBatchEnd();
+            }
+        }
+    }
+}
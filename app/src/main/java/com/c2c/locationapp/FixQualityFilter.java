@@ -0,0 +1,208 @@
+package com.c2c.locationapp;
+
+//drops fixes not worth handling and optionally smooths the rest, constant time and memory per fix.
+//gates, in order: reported accuracy, age of the fix on the elapsed realtime clock, and the speed
+//it would take to get there from the last accepted fix. the speed gate allows for both fixes'
+//accuracy and gives up after MAX_CONSECUTIVE_SPEED_REJECTS in a row or a long gap, so one bad
+//accepted fix cannot lock out the real track.
+//the smoother is a constant velocity Kalman filter per axis in meters around the first fix,
+//measurement noise is the reported accuracy; it replaces latitude and longitude of accepted fixes
+final class FixQualityFilter implements FixPipeline.Stage {
+
+    //source of the elapsed realtime clock fixes are stamped with, SystemClock on the device
+    interface Clock {
+        long elapsedRealtimeNanos();
+    }
+
+    static final float DEFAULT_MAX_ACCURACY_METERS = 100;
+    static final long DEFAULT_MAX_AGE_MILLIS = 2 * 60 * 1000;
+    //about 290 km/h
+    static final double DEFAULT_MAX_SPEED_METERS_PER_SECOND = 80;
+
+    static final int MAX_CONSECUTIVE_SPEED_REJECTS = 3;
+
+    //after this long without an accepted fix, anything plausible by accuracy is taken and the
+    //smoother starts over
+    static final long RESET_AFTER_MILLIS = 5 * 60 * 1000;
+
+    //the smoother moves its origin to the current position once this far from it
+    private static final double REORIGIN_METERS = 10_000;
+
+    //process noise of the smoother, variance of acceleration in (m/s^2)^2
+    private static final double ACCELERATION_VARIANCE = 1.0;
+
+    private final Clock mClock;
+    private final float mMaxAccuracy;
+    private final long mMaxAgeNanos;
+    private final double mMaxSpeed;
+    private volatile boolean mSmoothing;
+
+    private boolean mHasLast;
+    private long mLastTime;
+    private double mLastLatitude;
+    private double mLastLongitude;
+    private float mLastAccuracy;
+    private int mSpeedRejects;
+
+    //smoother state: origin, then position/velocity and covariance for north and east
+    private boolean mHasState;
+    private double mOriginLatitude;
+    private double mOriginLongitude;
+    private double mMetersPerLon;
+    private final Axis mNorth = new Axis();
+    private final Axis mEast = new Axis();
+
+    //written by the pipeline thread only
+    private volatile long mAccepted;
+    private volatile long mRejectedAccuracy;
+    private volatile long mRejectedAge;
+    private volatile long mRejectedSpeed;
+    private volatile long mSmoothed;
+
+    FixQualityFilter(Clock clock) {
+        this(clock, DEFAULT_MAX_ACCURACY_METERS, DEFAULT_MAX_AGE_MILLIS,
+                DEFAULT_MAX_SPEED_METERS_PER_SECOND);
+    }
+
+    FixQualityFilter(Clock clock, float maxAccuracyMeters, long maxAgeMillis,
+                     double maxSpeedMetersPerSecond) {
+        mClock = clock;
+        mMaxAccuracy = maxAccuracyMeters;
+        mMaxAgeNanos = maxAgeMillis * 1_000_000L;
+        mMaxSpeed = maxSpeedMetersPerSecond;
+    }
+
+    //turns the Kalman smoother on or off, from any thread; it restarts on the next fix
+    void setSmoothing(boolean smoothing) {
+        mSmoothing = smoothing;
+    }
+
+    @Override
+    public boolean onFix(Fix fix) {
+        //0 means the provider did not say
+        if (fix.accuracy > mMaxAccuracy) {
+            mRejectedAccuracy++;
+            return false;
+        }
+        //fixes from files or tests carry no elapsed realtime
+        if (fix.elapsedRealtimeNanos != 0
+                && mClock.elapsedRealtimeNanos() - fix.elapsedRealtimeNanos > mMaxAgeNanos) {
+            mRejectedAge++;
+            return false;
+        }
+        long gap = fix.time - mLastTime;
+        if (mHasLast && gap < RESET_AFTER_MILLIS && mSpeedRejects < MAX_CONSECUTIVE_SPEED_REJECTS) {
+            double slack = mLastAccuracy + fix.accuracy;
+            double distance = GeoMath.distance(mLastLatitude, mLastLongitude, fix.latitude,
+                    fix.longitude);
+            if (distance - slack > mMaxSpeed * Math.max(gap, 1) / 1000.0) {
+                mSpeedRejects++;
+                mRejectedSpeed++;
+                return false;
+            }
+        }
+        mSpeedRejects = 0;
+        mHasLast = true;
+        mLastTime = fix.time;
+        mLastLatitude = fix.latitude;
+        mLastLongitude = fix.longitude;
+        mLastAccuracy = fix.accuracy;
+        mAccepted++;
+
+        if (mSmoothing) {
+            smooth(fix, gap);
+        } else {
+            mHasState = false;
+        }
+        return true;
+    }
+
+    long accepted() {
+        return mAccepted;
+    }
+
+    long rejectedAccuracy() {
+        return mRejectedAccuracy;
+    }
+
+    long rejectedAge() {
+        return mRejectedAge;
+    }
+
+    long rejectedSpeed() {
+        return mRejectedSpeed;
+    }
+
+    long smoothed() {
+        return mSmoothed;
+    }
+
+    private void smooth(Fix fix, long gapMillis) {
+        //unknown accuracy counts as a mediocre one
+        double variance = fix.accuracy > 0 ? fix.accuracy * fix.accuracy : 25 * 25;
+        if (!mHasState || gapMillis >= RESET_AFTER_MILLIS || gapMillis <= 0) {
+            mHasState = true;
+            mOriginLatitude = fix.latitude;
+            mOriginLongitude = fix.longitude;
+            mMetersPerLon = GeoMath.metersPerDegreeLongitude(fix.latitude);
+            mNorth.reset(variance);
+            mEast.reset(variance);
+            return;
+        }
+        double dt = gapMillis / 1000.0;
+        double north = (fix.latitude - mOriginLatitude) * GeoMath.metersPerDegreeLatitude();
+        double east = (fix.longitude - mOriginLongitude) * mMetersPerLon;
+        fix.latitude = mOriginLatitude + mNorth.update(north, variance, dt)
+                / GeoMath.metersPerDegreeLatitude();
+        fix.longitude = mOriginLongitude + mEast.update(east, variance, dt) / mMetersPerLon;
+        mSmoothed++;
+
+        //keeps the flat projection local on long trips
+        if (Math.abs(mNorth.position) > REORIGIN_METERS || Math.abs(mEast.position) > REORIGIN_METERS) {
+            mOriginLatitude = fix.latitude;
+            mOriginLongitude = fix.longitude;
+            mMetersPerLon = GeoMath.metersPerDegreeLongitude(fix.latitude);
+            mNorth.position = 0;
+            mEast.position = 0;
+        }
+    }
+
+    //one axis of the constant velocity model, state (position, velocity) with covariance p
+    private static final class Axis {
+        double position;
+        double velocity;
+        double p00;
+        double p01;
+        double p11;
+
+        void reset(double variance) {
+            position = 0;
+            velocity = 0;
+            p00 = variance;
+            p01 = 0;
+            //walking to driving, about 10 m/s either way
+            p11 = 100;
+        }
+
+        //predicts dt seconds ahead, corrects with measurement z, returns the filtered position
+        double update(double z, double variance, double dt) {
+            position += velocity * dt;
+            double dt2 = dt * dt;
+            double q = ACCELERATION_VARIANCE;
+            double n00 = p00 + dt * (2 * p01 + dt * p11) + q * dt2 * dt2 / 4;
+            double n01 = p01 + dt * p11 + q * dt2 * dt / 2;
+            double n11 = p11 + q * dt2;
+
+            double s = n00 + variance;
+            double k0 = n00 / s;
+            double k1 = n01 / s;
+            double innovation = z - position;
+            position += k0 * innovation;
+            velocity += k1 * innovation;
+            p00 = (1 - k0) * n00;
+            p01 = (1 - k0) * n01;
+            p11 = n11 - k1 * n01;
+            return position;
+        }
+    }
+}
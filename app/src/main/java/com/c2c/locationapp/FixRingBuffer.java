@@ -0,0 +1,114 @@
+package com.c2c.locationapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//bounded lock-free queue of fixes between one producer and one consumer thread
+//fixes are kept in parallel primitive arrays, offering and polling never allocate
+//backpressure policy is drop-oldest: when full the producer discards the oldest queued fix,
+//so a stalled consumer always resumes with the most recent fixes
+final class FixRingBuffer {
+
+    private final int mMask;
+
+    private final long[] mTime;
+    private final long[] mElapsedRealtimeNanos;
+    private final double[] mLatitude;
+    private final double[] mLongitude;
+    private final float[] mAccuracy;
+    private final float[] mSpeed;
+    private final float[] mBearing;
+
+    //next position to read, advanced by the consumer and by the producer when it drops
+    private final AtomicLong mHead = new AtomicLong();
+
+    //next position to write, advanced by the producer only
+    private final AtomicLong mTail = new AtomicLong();
+
+    private final AtomicLong mDropped = new AtomicLong();
+
+    //capacity is rounded up to a power of two
+    FixRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Bad capacity " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mTime = new long[size];
+        mElapsedRealtimeNanos = new long[size];
+        mLatitude = new double[size];
+        mLongitude = new double[size];
+        mAccuracy = new float[size];
+        mSpeed = new float[size];
+        mBearing = new float[size];
+    }
+
+    int capacity() {
+        return mMask + 1;
+    }
+
+    //producer side, returns false if the oldest queued fix had to be dropped to make room
+    boolean offer(Fix fix) {
+        long tail = mTail.get();
+        boolean dropped = false;
+        long head = mHead.get();
+        while (tail - head > mMask) {
+            //racing the consumer for the oldest slot, whoever wins the CAS owns it
+            if (mHead.compareAndSet(head, head + 1)) {
+                mDropped.incrementAndGet();
+                dropped = true;
+                break;
+            }
+            head = mHead.get();
+        }
+
+        int i = (int) tail & mMask;
+        mTime[i] = fix.time;
+        mElapsedRealtimeNanos[i] = fix.elapsedRealtimeNanos;
+        mLatitude[i] = fix.latitude;
+        mLongitude[i] = fix.longitude;
+        mAccuracy[i] = fix.accuracy;
+        mSpeed[i] = fix.speed;
+        mBearing[i] = fix.bearing;
+        mTail.lazySet(tail + 1);
+        return !dropped;
+    }
+
+    //consumer side, copies the oldest queued fix into out, returns false if empty
+    boolean poll(Fix out) {
+        while (true) {
+            long head = mHead.get();
+            if (head >= mTail.get()) {
+                return false;
+            }
+            int i = (int) head & mMask;
+            long time = mTime[i];
+            long elapsed = mElapsedRealtimeNanos[i];
+            double latitude = mLatitude[i];
+            double longitude = mLongitude[i];
+            float accuracy = mAccuracy[i];
+            float speed = mSpeed[i];
+            float bearing = mBearing[i];
+            //a failed CAS means the producer dropped this slot and may be overwriting it, read again
+            if (mHead.compareAndSet(head, head + 1)) {
+                out.set(time, elapsed, latitude, longitude, accuracy, speed, bearing);
+                return true;
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return mHead.get() >= mTail.get();
+    }
+
+    int size() {
+        return (int) Math.max(0, mTail.get() - mHead.get());
+    }
+
+    //total fixes dropped by backpressure
+    long dropped() {
+        return mDropped.get();
+    }
+}
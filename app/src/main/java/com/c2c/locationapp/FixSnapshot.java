@@ -0,0 +1,142 @@
+package com.c2c.locationapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//last accepted fix and motion state in a tiny memory-mapped file, so a new process has a
+//location before the first fix or the provider's last known location arrives.
+//two fixed-layout slots are written in turn, each with a sequence number and a checksum written
+//last, so a write torn by the process dying leaves the previous slot to load.
+//writes are not forced to disk, the page cache outlives the process; only a power loss can take
+//the newest snapshot. single writer, load once at startup
+final class FixSnapshot implements Closeable {
+
+    //header: magic, version, slot size
+    private static final int MAGIC = 0x534e5031; // "SNP1"
+    private static final short VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    //slot: sequence (8), time (8), elapsed realtime (8), latitude (8), longitude (8),
+    //accuracy (4), speed (4), bearing (4), motion state ordinal or -1 (4), checksum (8)
+    static final int SLOT_SIZE = 64;
+    static final int FILE_SIZE = HEADER_SIZE + 2 * SLOT_SIZE;
+
+    private static final int SEQ = 0;
+    private static final int TIME = 8;
+    private static final int ELAPSED = 16;
+    private static final int LATITUDE = 24;
+    private static final int LONGITUDE = 32;
+    private static final int ACCURACY = 40;
+    private static final int SPEED = 44;
+    private static final int BEARING = 48;
+    private static final int STATE = 52;
+    private static final int CHECKSUM = 56;
+
+    private final MappedByteBuffer mBuffer;
+
+    //sequence of the newest valid slot, 0 if there is none
+    private long mSeq;
+
+    private FixSnapshot(MappedByteBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    //opens or creates the snapshot file, a file of another layout is started over
+    static FixSnapshot open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean fresh = raf.length() != FILE_SIZE;
+            if (fresh) {
+                raf.setLength(0);
+                raf.setLength(FILE_SIZE);
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (fresh || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION
+                    || buffer.getShort(6) != SLOT_SIZE) {
+                for (int i = 0; i < FILE_SIZE; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                buffer.putInt(0, MAGIC);
+                buffer.putShort(4, VERSION);
+                buffer.putShort(6, (short) SLOT_SIZE);
+                buffer.force();
+            }
+            FixSnapshot snapshot = new FixSnapshot(buffer);
+            snapshot.mSeq = Math.max(snapshot.validSeq(0), snapshot.validSeq(1));
+            return snapshot;
+        }
+    }
+
+    //copies the newest stored fix into out, false if nothing was ever stored
+    boolean load(Fix out) {
+        if (mSeq == 0) {
+            return false;
+        }
+        int slot = slotOffset(mSeq);
+        out.set(mBuffer.getLong(slot + TIME), mBuffer.getLong(slot + ELAPSED),
+                mBuffer.getDouble(slot + LATITUDE), mBuffer.getDouble(slot + LONGITUDE),
+                mBuffer.getFloat(slot + ACCURACY), mBuffer.getFloat(slot + SPEED),
+                mBuffer.getFloat(slot + BEARING));
+        return true;
+    }
+
+    //motion state stored with the newest fix, null if none
+    MotionState loadMotionState() {
+        if (mSeq == 0) {
+            return null;
+        }
+        int ordinal = mBuffer.getInt(slotOffset(mSeq) + STATE);
+        MotionState[] states = MotionState.values();
+        return ordinal >= 0 && ordinal < states.length ? states[ordinal] : null;
+    }
+
+    //stores fix into the older slot, a few dozen bytes into the page cache and no allocation
+    void write(Fix fix, MotionState state) {
+        long seq = mSeq + 1;
+        int slot = slotOffset(seq);
+        int ordinal = state == null ? -1 : state.ordinal();
+        mBuffer.putLong(slot + SEQ, seq);
+        mBuffer.putLong(slot + TIME, fix.time);
+        mBuffer.putLong(slot + ELAPSED, fix.elapsedRealtimeNanos);
+        mBuffer.putDouble(slot + LATITUDE, fix.latitude);
+        mBuffer.putDouble(slot + LONGITUDE, fix.longitude);
+        mBuffer.putFloat(slot + ACCURACY, fix.accuracy);
+        mBuffer.putFloat(slot + SPEED, fix.speed);
+        mBuffer.putFloat(slot + BEARING, fix.bearing);
+        mBuffer.putInt(slot + STATE, ordinal);
+        mBuffer.putLong(slot + CHECKSUM, checksum(slot));
+        mSeq = seq;
+    }
+
+    //forces the newest snapshot to disk
+    @Override
+    public void close() {
+        mBuffer.force();
+    }
+
+    private static int slotOffset(long seq) {
+        return HEADER_SIZE + (int) (seq & 1) * SLOT_SIZE;
+    }
+
+    private long validSeq(int index) {
+        int slot = HEADER_SIZE + index * SLOT_SIZE;
+        long seq = mBuffer.getLong(slot + SEQ);
+        return seq > 0 && slotOffset(seq) == slot && mBuffer.getLong(slot + CHECKSUM) == checksum(slot)
+                ? seq : 0;
+    }
+
+    //64 bit mix of everything before the checksum, never 0 so a zeroed slot does not validate
+    private long checksum(int slot) {
+        long hash = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < CHECKSUM; i += 8) {
+            hash = (hash ^ mBuffer.getLong(slot + i)) * 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 31;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
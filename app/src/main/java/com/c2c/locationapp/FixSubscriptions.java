@@ -0,0 +1,204 @@
+package com.c2c.locationapp;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+//in-process fan out of fixes to typed listeners, each on the executor it chose.
+//every subscriber has its own FixRingBuffer: LATEST_ONLY keeps one slot so a slow listener only
+//ever sees the newest fix, EVERY_FIX queues up to a bound and then drops the oldest. publishing
+//copies primitives into those buffers and never waits for a listener, dispatch runs once per batch.
+//a subscriber may also ask for a minimum interval, fixes closer than that to the last one it was
+//given are skipped at publish time so each client sees a stream decimated to its own rate
+final class FixSubscriptions {
+
+    //called on the subscriber's executor; the fix is reused afterwards, copy what you keep
+    interface Listener {
+        void onFix(Fix fix);
+    }
+
+    enum Conflation {
+        //only the newest fix is delivered, older undelivered ones are replaced
+        LATEST_ONLY,
+        //every fix in order, the oldest are dropped if the listener falls a whole queue behind
+        EVERY_FIX
+    }
+
+    //fixes an EVERY_FIX subscriber may fall behind before losing the oldest
+    static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    //a fix this much of the minimum interval early still counts, provider timing jitters
+    private static final int DECIMATION_SLACK_PERCENT = 10;
+
+    private static final Subscription[] NONE = new Subscription[0];
+
+    //copy on write, read by the publishing thread
+    private volatile Subscription[] mSubscriptions = NONE;
+
+    //fixes lost by subscriptions closed since
+    private final AtomicLong mClosedDropped = new AtomicLong();
+
+    //times every delivery while enabled, may be null
+    private final ServiceMetrics mMetrics;
+
+    FixSubscriptions() {
+        this(null);
+    }
+
+    FixSubscriptions(ServiceMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    Subscription subscribe(Executor executor, Conflation conflation, Listener listener) {
+        return subscribe(executor, conflation, DEFAULT_QUEUE_CAPACITY, listener);
+    }
+
+    Subscription subscribe(Executor executor, Conflation conflation, int queueCapacity,
+                           Listener listener) {
+        return subscribe(executor, conflation, queueCapacity, 0, null, listener);
+    }
+
+    //delivers fixes at least minIntervalMillis apart by fix time, onClose runs once when the
+    //subscription is closed, e.g. to withdraw what the client asked of the provider
+    Subscription subscribe(Executor executor, Conflation conflation, int queueCapacity,
+                           long minIntervalMillis, Runnable onClose, Listener listener) {
+        int capacity = conflation == Conflation.LATEST_ONLY ? 1 : queueCapacity;
+        Subscription subscription = new Subscription(executor, capacity, minIntervalMillis,
+                onClose, listener);
+        synchronized (this) {
+            Subscription[] current = mSubscriptions;
+            Subscription[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = subscription;
+            mSubscriptions = grown;
+        }
+        return subscription;
+    }
+
+    int size() {
+        return mSubscriptions.length;
+    }
+
+    //fixes subscribers lost to conflation or a full queue, closed subscriptions included
+    long dropped() {
+        long dropped = mClosedDropped.get();
+        for (Subscription subscription : mSubscriptions) {
+            dropped += subscription.dropped();
+        }
+        return dropped;
+    }
+
+    //producer side, queues the fix for every subscriber
+    void publish(Fix fix) {
+        for (Subscription subscription : mSubscriptions) {
+            subscription.offer(fix);
+        }
+    }
+
+    //producer side, hands what was published to the subscribers' executors
+    void dispatch() {
+        for (Subscription subscription : mSubscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    private synchronized void remove(Subscription subscription) {
+        Subscription[] current = mSubscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription[] shrunk = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, shrunk, 0, i);
+                System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+                mSubscriptions = shrunk.length == 0 ? NONE : shrunk;
+                mClosedDropped.addAndGet(subscription.dropped());
+                return;
+            }
+        }
+    }
+
+    final class Subscription implements Runnable {
+        private final Executor mExecutor;
+        private final Listener mListener;
+        private final FixRingBuffer mQueue;
+        private final long mMinGapMillis;
+        private final Runnable mOnClose;
+
+        //producer side, time of the last fix queued for this subscriber
+        private boolean mHasLast;
+        private long mLastTime;
+
+        //one delivery task at a time, so the queue keeps a single consumer
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+        //owned by whichever executor thread runs the delivery task
+        private final Fix mFix = new Fix();
+
+        private volatile boolean mClosed;
+
+        private Subscription(Executor executor, int capacity, long minIntervalMillis,
+                             Runnable onClose, Listener listener) {
+            mExecutor = executor;
+            mListener = listener;
+            mQueue = new FixRingBuffer(capacity);
+            mMinGapMillis = minIntervalMillis - minIntervalMillis * DECIMATION_SLACK_PERCENT / 100;
+            mOnClose = onClose;
+        }
+
+        //stops delivery, a fix already being delivered still completes
+        void close() {
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+            }
+            remove(this);
+            if (mOnClose != null) {
+                mOnClose.run();
+            }
+        }
+
+        boolean isClosed() {
+            return mClosed;
+        }
+
+        //fixes replaced or dropped before the listener got to them
+        long dropped() {
+            return mQueue.dropped();
+        }
+
+        private void offer(Fix fix) {
+            if (mMinGapMillis > 0) {
+                if (mHasLast && fix.time - mLastTime < mMinGapMillis) {
+                    return;
+                }
+                mHasLast = true;
+                mLastTime = fix.time;
+            }
+            mQueue.offer(fix);
+        }
+
+        private void schedule() {
+            if (!mQueue.isEmpty() && mScheduled.compareAndSet(false, true)) {
+                mExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                while (!mClosed && mQueue.poll(mFix)) {
+                    if (mMetrics != null && mMetrics.isEnabled()) {
+                        mMetrics.onFixDelivered(mFix);
+                    }
+                    mListener.onFix(mFix);
+                }
+                mScheduled.set(false);
+                //something published after the drain and before the flag was cleared
+                if (mClosed || mQueue.isEmpty() || !mScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.c2c.locationapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpRetryException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+//pipeline stage collecting fixes into batches that are sent to an HTTP endpoint.
+//a batch is sealed after maxBatchFixes fixes or once it is maxBatchAgeMillis old, encoded with
+//TrackEncoder and gzip, and stored in an UploadOutbox before anything is sent, so batches survive
+//restarts. the age is checked by a timer on the sender thread, so a batch is sealed on time even
+//when no more fixes come. a sender thread posts every pending batch in one go, so one radio wake
+//carries them all, and backs off exponentially while the endpoint or network fails; answers other
+//than success, 5xx, 408 and 429 are final and the batch is dropped.
+//each request carries the batch id in an Idempotency-Key header, retries of a batch reuse it.
+//fixes of a batch not yet sealed when the process dies are lost, they stay in the TrackStore
+final class FixUploader implements FixPipeline.Stage, Closeable {
+
+    static final int DEFAULT_MAX_BATCH_FIXES = 500;
+    static final long DEFAULT_MAX_BATCH_AGE_MILLIS = 15 * 60 * 1000;
+
+    static final long DEFAULT_MIN_BACKOFF_MILLIS = 5_000;
+    static final long DEFAULT_MAX_BACKOFF_MILLIS = 30 * 60 * 1000;
+
+    static final String CONTENT_TYPE = "application/x-trk";
+    static final String HEADER_IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private final UploadOutbox mOutbox;
+    private final URL mEndpoint;
+    private final int mMaxBatchFixes;
+    private final long mMaxBatchAgeMillis;
+
+    private long mMinBackoffMillis = DEFAULT_MIN_BACKOFF_MILLIS;
+    private long mMaxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+    //batch being filled on the pipeline thread, guarded by mBatchLock as the sender thread seals
+    //it for age
+    private final Object mBatchLock = new Object();
+    private final Payload mPayload = new Payload();
+    private TrackEncoder mEncoder;
+    private long mBatchFirstTime;
+    private long mBatchStartedMillis;
+    private int mBatchFixes;
+
+    //sender side, owned by the executor thread except for the flags and counters
+    private final ScheduledThreadPoolExecutor mSender;
+    private final AtomicBoolean mSendQueued = new AtomicBoolean();
+    private final Random mJitter = new Random();
+    private final Runnable mSealExpired = this::sealExpired;
+    private long mBackoffMillis;
+
+    private final AtomicLong mSentBatches = new AtomicLong();
+    private final AtomicLong mFailedAttempts = new AtomicLong();
+    private final AtomicLong mRejectedBatches = new AtomicLong();
+
+    FixUploader(File outboxDir, URL endpoint) throws IOException {
+        this(outboxDir, endpoint, DEFAULT_MAX_BATCH_FIXES, DEFAULT_MAX_BATCH_AGE_MILLIS);
+    }
+
+    FixUploader(File outboxDir, URL endpoint, int maxBatchFixes, long maxBatchAgeMillis)
+            throws IOException {
+        if (maxBatchFixes < 1) {
+            throw new IllegalArgumentException("Bad batch size " + maxBatchFixes);
+        }
+        mOutbox = new UploadOutbox(outboxDir);
+        mEndpoint = endpoint;
+        mMaxBatchFixes = maxBatchFixes;
+        mMaxBatchAgeMillis = maxBatchAgeMillis;
+        mSender = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "fix-uploader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //a pending retry is dropped on close, its batch is still in the outbox
+        mSender.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    //range of the exponential backoff between failed attempts
+    void setBackoff(long minMillis, long maxMillis) {
+        mMinBackoffMillis = minMillis;
+        mMaxBackoffMillis = Math.max(minMillis, maxMillis);
+    }
+
+    //sends what a previous run left in the outbox
+    void start() {
+        kick();
+    }
+
+    @Override
+    public boolean onFix(Fix fix) {
+        synchronized (mBatchLock) {
+            try {
+                if (mEncoder == null) {
+                    mPayload.reset();
+                    mEncoder = new TrackEncoder(new GZIPOutputStream(mPayload, 8 * 1024), true);
+                    mBatchFirstTime = fix.time;
+                    mBatchStartedMillis = System.currentTimeMillis();
+                    scheduleSeal(mMaxBatchAgeMillis);
+                }
+                mEncoder.append(fix.time, fix.latitude, fix.longitude, fix.accuracy, fix.speed,
+                        fix.bearing);
+                if (++mBatchFixes >= mMaxBatchFixes) {
+                    seal();
+                }
+            } catch (IOException e) {
+                //in memory streams, only the outbox write can fail; the batch is given up
+                discard();
+            }
+        }
+        return true;
+    }
+
+    //seals the batch being filled, if any, and starts sending it
+    void flush() throws IOException {
+        synchronized (mBatchLock) {
+            if (mEncoder != null) {
+                seal();
+            }
+        }
+    }
+
+    //seals what was collected, outstanding batches stay in the outbox for the next start
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            mSender.shutdown();
+        }
+    }
+
+    //waits for a send started before close to finish, true if the sender has stopped
+    boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        return mSender.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //batches stored and not yet accepted by the endpoint
+    int pending() {
+        return mOutbox.pending().length;
+    }
+
+    long sentBatches() {
+        return mSentBatches.get();
+    }
+
+    long failedAttempts() {
+        return mFailedAttempts.get();
+    }
+
+    //batches the endpoint refused for good (4xx, 3xx and other final answers), not retried
+    long rejectedBatches() {
+        return mRejectedBatches.get();
+    }
+
+    //sender thread, when the batch started last may be due. an earlier batch's timer can find a
+    //newer one, which then has a timer of its own
+    private void sealExpired() {
+        synchronized (mBatchLock) {
+            if (mEncoder == null
+                    || System.currentTimeMillis() - mBatchStartedMillis < mMaxBatchAgeMillis) {
+                return;
+            }
+            try {
+                seal();
+            } catch (IOException e) {
+                discard();
+            }
+        }
+    }
+
+    private void scheduleSeal(long delayMillis) {
+        try {
+            mSender.schedule(mSealExpired, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException rejected) {
+            //closed, close() seals what is left
+        }
+    }
+
+    //gives up the batch being filled, closing the encoder ends its deflater
+    private void discard() {
+        TrackEncoder encoder = mEncoder;
+        mEncoder = null;
+        mBatchFixes = 0;
+        if (encoder != null) {
+            try {
+                encoder.close();
+            } catch (IOException ignored) {
+                //in memory, nothing to report
+            }
+        }
+    }
+
+    private void seal() throws IOException {
+        TrackEncoder encoder = mEncoder;
+        int fixes = mBatchFixes;
+        mEncoder = null;
+        mBatchFixes = 0;
+        encoder.close();
+        //first fix time sorts batches in order. times repeat across restarts, when fixes are
+        //delivered again or a track is replayed, so the outbox sequence keeps names and batch ids
+        //apart and a batch never replaces one that was not sent yet
+        mOutbox.write(hex(mBatchFirstTime) + "-" + hex(mOutbox.nextSequence()) + "-" + fixes,
+                mPayload.buffer(), mPayload.size());
+        kick();
+    }
+
+    private void kick() {
+        if (mSendQueued.compareAndSet(false, true)) {
+            try {
+                mSender.execute(this::sendPending);
+            } catch (RuntimeException rejected) {
+                //closed
+                mSendQueued.set(false);
+            }
+        }
+    }
+
+    //sender thread: posts every pending batch, stops at the first retryable failure
+    private void sendPending() {
+        mSendQueued.set(false);
+        for (File batch : mOutbox.pending()) {
+            int status;
+            try {
+                status = post(mOutbox.batchId(batch), UploadOutbox.read(batch));
+            } catch (HttpRetryException e) {
+                //a redirect or authentication challenge the streamed body could not follow
+                status = e.responseCode();
+            } catch (IOException e) {
+                status = -1;
+            }
+            if (status / 100 == 2 || status == HttpURLConnection.HTTP_CONFLICT) {
+                //409: the endpoint already has this batch id
+                batch.delete();
+                mSentBatches.incrementAndGet();
+                mBackoffMillis = 0;
+            } else if (isRetryable(status)) {
+                mFailedAttempts.incrementAndGet();
+                retryLater();
+                return;
+            } else {
+                //redirects and other answers would be the same next time
+                batch.delete();
+                mRejectedBatches.incrementAndGet();
+            }
+        }
+    }
+
+    //no answer, a server error, 408 or 429
+    private static boolean isRetryable(int status) {
+        return status < 0 || status / 100 == 5 || status == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                || status == 429;
+    }
+
+    private void retryLater() {
+        mBackoffMillis = mBackoffMillis == 0 ? mMinBackoffMillis
+                : Math.min(mMaxBackoffMillis, mBackoffMillis * 2);
+        //full jitter in the upper half keeps many devices from retrying in lockstep
+        long delay = mBackoffMillis / 2 + (long) (mJitter.nextDouble() * (mBackoffMillis / 2 + 1));
+        if (mSendQueued.compareAndSet(false, true)) {
+            try {
+                mSender.schedule(this::sendPending, delay, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException rejected) {
+                mSendQueued.set(false);
+            }
+        }
+    }
+
+    private int post(String batchId, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) mEndpoint.openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            connection.setRequestMethod("POST");
+            //a moved endpoint is a configuration error, not something to follow with the batch
+            connection.setInstanceFollowRedirects(false);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            connection.setRequestProperty(HEADER_IDEMPOTENCY_KEY, batchId);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            //reading the body lets the connection be reused for the next batch
+            InputStream response = status < 400 ? connection.getInputStream()
+                    : connection.getErrorStream();
+            if (response != null) {
+                byte[] skip = new byte[512];
+                while (response.read(skip) >= 0) {
+                    //discard
+                }
+                response.close();
+            }
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String hex(long value) {
+        String hex = Long.toHexString(value);
+        StringBuilder padded = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            padded.append('0');
+        }
+        return padded.append(hex).toString();
+    }
+
+    //reusable batch buffer that hands out its array instead of a copy
+    private static final class Payload extends ByteArrayOutputStream {
+        Payload() {
+            super(16 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
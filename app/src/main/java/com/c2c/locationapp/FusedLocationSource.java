@@ -0,0 +1,87 @@
+package com.c2c.locationapp;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.List;
+
+//fixes from the Play Services fused location provider, delivered on the given looper
+final class FusedLocationSource implements LocationSource {
+
+    private final FusedLocationProviderClient mFusedLocationClient;
+    private final Looper mLooper;
+
+    //reused for every fix, only touched on the looper thread
+    private final Fix mFix = new Fix();
+
+    private volatile Sink mSink;
+
+    private final LocationCallback mLocationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult locationResult) {
+            super.onLocationResult(locationResult);
+            onNewLocations(locationResult.getLocations());
+        }
+    };
+
+    FusedLocationSource(Context context, Looper looper) {
+        mFusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        mLooper = looper;
+    }
+
+    //throws SecurityException without location permission
+    @Override
+    public void start(SamplingProfile profile, long maxWaitMillis, Sink sink) {
+        mSink = sink;
+        //registering again with the same callback replaces the previous request
+        mFusedLocationClient.requestLocationUpdates(createLocationRequest(profile, maxWaitMillis),
+                mLocationCallback, mLooper);
+    }
+
+    //removal is asynchronous, deliveries already queued on the looper are dropped from here on
+    @Override
+    public void stop() {
+        mSink = null;
+        mFusedLocationClient.removeLocationUpdates(mLocationCallback);
+    }
+
+    //one delivery from the provider, with batching enabled it holds every fix since the last one;
+    //nothing once stopped
+    private void onNewLocations(List<Location> locations) {
+        Sink sink = mSink;
+        if (sink == null || locations.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < locations.size(); i++) {
+            Location location = locations.get(i);
+            mFix.set(location.getTime(), location.getElapsedRealtimeNanos(),
+                    location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+                    location.getSpeed(), location.getBearing());
+            sink.onFix(mFix);
+        }
+        sink.onBatchEnd();
+    }
+
+    private static LocationRequest createLocationRequest(SamplingProfile profile, long maxWaitMillis) {
+        LocationRequest locationRequest = LocationRequest.create();
+        locationRequest.setInterval(profile.intervalMillis);
+        locationRequest.setFastestInterval(profile.fastestIntervalMillis);
+        locationRequest.setSmallestDisplacement(profile.smallestDisplacementMeters);
+        locationRequest.setPriority(profile.priority);
+
+        //batched delivery, provider wakes us once per window with all fixes collected meanwhile
+        if (maxWaitMillis > profile.intervalMillis) {
+            locationRequest.setMaxWaitTime(maxWaitMillis);
+        }
+        return locationRequest;
+    }
+}
@@ -0,0 +1,47 @@
+package com.c2c.locationapp;
+
+//distance helpers on the WGS84 mean sphere, no allocation
+final class GeoMath {
+
+    static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    //below this span the flat-earth approximation stays within millimeters of haversine
+    private static final double FAST_PATH_DEGREES = 0.05;
+
+    private GeoMath() {
+    }
+
+    //great circle distance in meters, takes the equirectangular fast path for nearby points
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = lat2 - lat1;
+        double dLon = lon2 - lon1;
+        if (Math.abs(dLat) < FAST_PATH_DEGREES && Math.abs(dLon) < FAST_PATH_DEGREES) {
+            return equirectangular(lat1, lon1, lat2, lon2);
+        }
+        return haversine(lat1, lon1, lat2, lon2);
+    }
+
+    static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinLat * sinLat + Math.cos(phi1) * Math.cos(phi2) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    static double equirectangular(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_METERS;
+    }
+
+    //meters per degree of longitude at latitude
+    static double metersPerDegreeLongitude(double latitude) {
+        return Math.toRadians(1) * EARTH_RADIUS_METERS * Math.cos(Math.toRadians(latitude));
+    }
+
+    static double metersPerDegreeLatitude() {
+        return Math.toRadians(1) * EARTH_RADIUS_METERS;
+    }
+}
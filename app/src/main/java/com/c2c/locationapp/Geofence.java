@@ -0,0 +1,109 @@
+package com.c2c.locationapp;
+
+//a circular or polygonal area watched by GeofenceEngine, immutable.
+//polygons are given as vertex lists in degrees, closed implicitly, and must not cross the antimeridian
+final class Geofence {
+
+    //same values as the platform's Geofence.GEOFENCE_TRANSITION_* flags
+    static final int TRANSITION_ENTER = 1;
+    static final int TRANSITION_EXIT = 2;
+    static final int TRANSITION_DWELL = 4;
+
+    final String id;
+
+    //inside for this long raises a dwell transition, 0 for none
+    final long dwellMillis;
+
+    //circle, radius is NaN for polygons
+    final double latitude;
+    final double longitude;
+    final double radiusMeters;
+
+    //polygon vertices, null for circles
+    final double[] latitudes;
+    final double[] longitudes;
+
+    //bounding box
+    final double minLatitude;
+    final double maxLatitude;
+    final double minLongitude;
+    final double maxLongitude;
+
+    private Geofence(String id, long dwellMillis, double latitude, double longitude,
+                     double radiusMeters, double[] latitudes, double[] longitudes,
+                     double minLatitude, double maxLatitude, double minLongitude,
+                     double maxLongitude) {
+        this.id = id;
+        this.dwellMillis = dwellMillis;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    static Geofence circle(String id, double latitude, double longitude, double radiusMeters,
+                           long dwellMillis) {
+        if (!(radiusMeters > 0)) {
+            throw new IllegalArgumentException("Bad radius " + radiusMeters);
+        }
+        double dLat = radiusMeters / GeoMath.metersPerDegreeLatitude();
+        double dLon = Math.min(180, radiusMeters / GeoMath.metersPerDegreeLongitude(
+                Math.min(89.9, Math.abs(latitude) + dLat)));
+        return new Geofence(id, dwellMillis, latitude, longitude, radiusMeters, null, null,
+                latitude - dLat, latitude + dLat, longitude - dLon, longitude + dLon);
+    }
+
+    static Geofence polygon(String id, double[] latitudes, double[] longitudes, long dwellMillis) {
+        if (latitudes.length != longitudes.length || latitudes.length < 3) {
+            throw new IllegalArgumentException("Polygon needs 3 or more vertices");
+        }
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < latitudes.length; i++) {
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLon = Math.min(minLon, longitudes[i]);
+            maxLon = Math.max(maxLon, longitudes[i]);
+        }
+        return new Geofence(id, dwellMillis, Double.NaN, Double.NaN, Double.NaN,
+                latitudes.clone(), longitudes.clone(), minLat, maxLat, minLon, maxLon);
+    }
+
+    boolean isCircle() {
+        return latitudes == null;
+    }
+
+    //exact test, callers check the bounding box first
+    boolean contains(double lat, double lon) {
+        if (isCircle()) {
+            return GeoMath.distance(latitude, longitude, lat, lon) <= radiusMeters;
+        }
+        //even-odd ray casting, in degrees, fine for fences far smaller than a hemisphere
+        boolean inside = false;
+        int n = latitudes.length;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double latI = latitudes[i];
+            double latJ = latitudes[j];
+            if ((latI > lat) != (latJ > lat)) {
+                double crossing = longitudes[i]
+                        + (lat - latI) / (latJ - latI) * (longitudes[j] - longitudes[i]);
+                if (lon < crossing) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public String toString() {
+        return "Geofence(" + id + ")";
+    }
+}
@@ -0,0 +1,277 @@
+package com.c2c.locationapp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//evaluates fixes against any number of geofences and reports enter, exit and dwell transitions.
+//fences are bucketed into a uniform lat/lon grid, a fix only looks at the fences of its cell:
+//bounding box first, then the exact circle or polygon test. fences spanning more than
+//MAX_CELLS_PER_FENCE cells are kept on a short list checked for every fix instead.
+//setGeofences may be called from any thread, onFix from one thread only; onFix does not allocate
+final class GeofenceEngine {
+
+    //receives transitions on the thread calling onFix
+    interface Listener {
+        void onTransition(Geofence geofence, int transition, long time);
+    }
+
+    //~1.1 km of latitude
+    static final double DEFAULT_CELL_DEGREES = 0.01;
+
+    static final int MAX_CELLS_PER_FENCE = 64;
+
+    private final double mCellDegrees;
+    private final Listener mListener;
+
+    //replaced as a whole by setGeofences, picked up by the next fix
+    private volatile Index mPending;
+
+    //owned by the evaluating thread
+    private Index mIndex;
+
+    //fences inside as of the last fix
+    private int[] mInside = new int[0];
+    private int mInsideCount;
+    private int[] mStillInside = new int[0];
+
+    GeofenceEngine(Listener listener) {
+        this(DEFAULT_CELL_DEGREES, listener);
+    }
+
+    GeofenceEngine(double cellDegrees, Listener listener) {
+        if (!(cellDegrees > 0)) {
+            throw new IllegalArgumentException("Bad cell size " + cellDegrees);
+        }
+        mCellDegrees = cellDegrees;
+        mListener = listener;
+        mIndex = new Index(new Geofence[0], cellDegrees);
+    }
+
+    //replaces the watched fences; fences with an id that was watched before keep their state
+    void setGeofences(List<Geofence> geofences) {
+        mPending = new Index(geofences.toArray(new Geofence[0]), mCellDegrees);
+    }
+
+    int size() {
+        Index pending = mPending;
+        return pending != null ? pending.fences.length : mIndex.fences.length;
+    }
+
+    //tests one fix, calls the listener for every transition it causes
+    void onFix(Fix fix) {
+        Index pending = mPending;
+        if (pending != null) {
+            mPending = null;
+            swap(pending);
+        }
+        Index index = mIndex;
+        int stamp = ++index.stamp;
+        double lat = fix.latitude;
+        double lon = fix.longitude;
+        long time = fix.time;
+
+        int slot = index.find(index.cellKey(lat, lon));
+        if (slot >= 0) {
+            int start = index.cellStart[slot];
+            int end = start + index.cellCount[slot];
+            for (int i = start; i < end; i++) {
+                test(index, index.cellFences[i], lat, lon, time, stamp);
+            }
+        }
+        for (int fence : index.large) {
+            test(index, fence, lat, lon, time, stamp);
+        }
+
+        //whatever was inside and was not seen inside now has been left
+        int still = 0;
+        for (int i = 0; i < mInsideCount; i++) {
+            int fence = mInside[i];
+            if (index.seen[fence] == stamp) {
+                mStillInside[still++] = fence;
+            } else {
+                index.inside[fence] = false;
+                mListener.onTransition(index.fences[fence], Geofence.TRANSITION_EXIT, time);
+            }
+        }
+        //fences entered by this fix were appended after the previous count
+        for (int i = mInsideCount; i < index.entered + mInsideCount; i++) {
+            mStillInside[still++] = mInside[i];
+        }
+        index.entered = 0;
+        int[] swap = mInside;
+        mInside = mStillInside;
+        mStillInside = swap;
+        mInsideCount = still;
+    }
+
+    private void test(Index index, int fence, double lat, double lon, long time, int stamp) {
+        Geofence geofence = index.fences[fence];
+        if (lat < geofence.minLatitude || lat > geofence.maxLatitude
+                || lon < geofence.minLongitude || lon > geofence.maxLongitude
+                || index.seen[fence] == stamp || !geofence.contains(lat, lon)) {
+            return;
+        }
+        index.seen[fence] = stamp;
+        if (!index.inside[fence]) {
+            index.inside[fence] = true;
+            index.enteredTime[fence] = time;
+            index.dwelled[fence] = false;
+            mInside[mInsideCount + index.entered++] = fence;
+            mListener.onTransition(geofence, Geofence.TRANSITION_ENTER, time);
+        } else if (!index.dwelled[fence] && geofence.dwellMillis > 0
+                && time - index.enteredTime[fence] >= geofence.dwellMillis) {
+            index.dwelled[fence] = true;
+            mListener.onTransition(geofence, Geofence.TRANSITION_DWELL, time);
+        }
+    }
+
+    //moves per fence state over by id, fences that disappeared while inside are exited silently
+    private void swap(Index next) {
+        Index previous = mIndex;
+        Map<String, Integer> byId = new HashMap<>();
+        for (int i = 0; i < next.fences.length; i++) {
+            byId.put(next.fences[i].id, i);
+        }
+        int[] inside = new int[next.fences.length];
+        int count = 0;
+        for (int i = 0; i < mInsideCount; i++) {
+            int old = mInside[i];
+            Integer fence = byId.get(previous.fences[old].id);
+            if (fence != null) {
+                next.inside[fence] = true;
+                next.enteredTime[fence] = previous.enteredTime[old];
+                next.dwelled[fence] = previous.dwelled[old];
+                inside[count++] = fence;
+            }
+        }
+        mIndex = next;
+        mInside = inside;
+        mStillInside = new int[next.fences.length];
+        mInsideCount = count;
+    }
+
+    //immutable grid over a fence list plus the per fence state that goes with it
+    private static final class Index {
+        final Geofence[] fences;
+        final double cellDegrees;
+
+        //open addressing table: cell key -> run of fence indices in cellFences
+        final long[] cellKeys;
+        final int[] cellStart;
+        final int[] cellCount;
+        final boolean[] cellUsed;
+        final int[] cellFences;
+        final int mask;
+
+        //fences too large for the grid
+        final int[] large;
+
+        //evaluation state, only touched by the evaluating thread
+        final boolean[] inside;
+        final boolean[] dwelled;
+        final long[] enteredTime;
+        final int[] seen;
+        int stamp;
+        int entered;
+
+        Index(Geofence[] fences, double cellDegrees) {
+            this.fences = fences;
+            this.cellDegrees = cellDegrees;
+            inside = new boolean[fences.length];
+            dwelled = new boolean[fences.length];
+            enteredTime = new long[fences.length];
+            seen = new int[fences.length];
+
+            //first pass counts, second pass fills
+            Map<Long, int[]> counts = new HashMap<>();
+            int[] largeFences = new int[fences.length];
+            int largeCount = 0;
+            int total = 0;
+            for (int f = 0; f < fences.length; f++) {
+                Geofence g = fences[f];
+                long rows = cell(g.maxLatitude) - cell(g.minLatitude) + 1;
+                long cols = cell(g.maxLongitude) - cell(g.minLongitude) + 1;
+                if (rows * cols > MAX_CELLS_PER_FENCE) {
+                    largeFences[largeCount++] = f;
+                    continue;
+                }
+                for (long r = cell(g.minLatitude); r <= cell(g.maxLatitude); r++) {
+                    for (long c = cell(g.minLongitude); c <= cell(g.maxLongitude); c++) {
+                        int[] count = counts.get(key(r, c));
+                        if (count == null) {
+                            counts.put(key(r, c), count = new int[1]);
+                        }
+                        count[0]++;
+                        total++;
+                    }
+                }
+            }
+            large = Arrays.copyOf(largeFences, largeCount);
+
+            int size = 2;
+            while (size < counts.size() * 2) {
+                size <<= 1;
+            }
+            mask = size - 1;
+            cellKeys = new long[size];
+            cellStart = new int[size];
+            cellCount = new int[size];
+            cellUsed = new boolean[size];
+            cellFences = new int[total];
+            int next = 0;
+            for (Map.Entry<Long, int[]> entry : counts.entrySet()) {
+                int slot = slot(entry.getKey());
+                while (cellUsed[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                cellUsed[slot] = true;
+                cellKeys[slot] = entry.getKey();
+                cellStart[slot] = next;
+                next += entry.getValue()[0];
+            }
+            for (int f = 0; f < fences.length; f++) {
+                Geofence g = fences[f];
+                long rows = cell(g.maxLatitude) - cell(g.minLatitude) + 1;
+                long cols = cell(g.maxLongitude) - cell(g.minLongitude) + 1;
+                if (rows * cols > MAX_CELLS_PER_FENCE) {
+                    continue;
+                }
+                for (long r = cell(g.minLatitude); r <= cell(g.maxLatitude); r++) {
+                    for (long c = cell(g.minLongitude); c <= cell(g.maxLongitude); c++) {
+                        int slot = find(key(r, c));
+                        cellFences[cellStart[slot] + cellCount[slot]++] = f;
+                    }
+                }
+            }
+        }
+
+        long cell(double degrees) {
+            return (long) Math.floor(degrees / cellDegrees);
+        }
+
+        static long key(long row, long col) {
+            return row << 32 | (col & 0xffffffffL);
+        }
+
+        long cellKey(double lat, double lon) {
+            return key(cell(lat), cell(lon));
+        }
+
+        int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        //slot holding key, -1 if the cell has no fences
+        int find(long key) {
+            for (int slot = slot(key); cellUsed[slot]; slot = (slot + 1) & mask) {
+                if (cellKeys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+    }
+}
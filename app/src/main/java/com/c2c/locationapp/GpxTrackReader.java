@@ -0,0 +1,153 @@
+package com.c2c.locationapp;
+
+import java.io.IOException;
+import java.io.Reader;
+
+//streams trkpt/rtept points out of a GPX file without building a document
+//reads lat/lon attributes and the time, speed and course children, anything else is skipped.
+//points without a time are placed one second apart
+final class GpxTrackReader extends TrackReader {
+
+    private static final long UNTIMED_POINT_INTERVAL_MILLIS = 1000;
+
+    private final Reader mReader;
+    private final StringBuilder mTag = new StringBuilder(128);
+    private final StringBuilder mText = new StringBuilder(64);
+    private long mLastTime;
+
+    GpxTrackReader(Reader reader) {
+        mReader = reader;
+    }
+
+    @Override
+    boolean next(Fix out) throws IOException {
+        while (readTag()) {
+            if (!isTag("trkpt") && !isTag("rtept")) {
+                continue;
+            }
+            double latitude = attribute("lat");
+            double longitude = attribute("lon");
+            long time = Long.MIN_VALUE;
+            float speed = 0f;
+            float bearing = 0f;
+            boolean selfClosing = mTag.charAt(mTag.length() - 1) == '/';
+            while (!selfClosing && readTag()) {
+                if (isTag("/trkpt") || isTag("/rtept")) {
+                    break;
+                }
+                if (isTag("time")) {
+                    readText();
+                    time = parseIsoTime(mText);
+                } else if (isTag("speed")) {
+                    readText();
+                    speed = Float.parseFloat(mText.toString());
+                } else if (isTag("course")) {
+                    readText();
+                    bearing = Float.parseFloat(mText.toString());
+                }
+            }
+            mLastTime = time != Long.MIN_VALUE ? time : mLastTime + UNTIMED_POINT_INTERVAL_MILLIS;
+            out.set(mLastTime, 0, latitude, longitude, 0f, speed, bearing);
+            return true;
+        }
+        return false;
+    }
+
+    //reads up to the next tag into mTag (without the angle brackets), false at the end of input
+    private boolean readTag() throws IOException {
+        int c;
+        while ((c = mReader.read()) != -1 && c != '<') {
+            //skip text between tags
+        }
+        if (c == -1) {
+            return false;
+        }
+        mTag.setLength(0);
+        while ((c = mReader.read()) != -1 && c != '>') {
+            mTag.append((char) c);
+        }
+        return c != -1;
+    }
+
+    //reads the text up to the closing tag into mText
+    private void readText() throws IOException {
+        mText.setLength(0);
+        int c;
+        while ((c = mReader.read()) != -1 && c != '<') {
+            if (!Character.isWhitespace(c)) {
+                mText.append((char) c);
+            }
+        }
+        while (c != -1 && c != '>') {
+            c = mReader.read();
+        }
+    }
+
+    //true if mTag is the element name, or its closing tag for "/name"; namespace prefixes are ignored
+    private boolean isTag(String name) {
+        int nameStart = 0;
+        int tagStart = 0;
+        boolean closing = mTag.length() > 0 && mTag.charAt(0) == '/';
+        if (name.charAt(0) == '/') {
+            if (!closing) {
+                return false;
+            }
+            nameStart = 1;
+            tagStart = 1;
+        } else if (closing) {
+            return false;
+        }
+        int end = tagStart;
+        int local = tagStart;
+        while (end < mTag.length() && !isNameEnd(mTag.charAt(end))) {
+            if (mTag.charAt(end) == ':') {
+                local = end + 1;
+            }
+            end++;
+        }
+        int len = name.length() - nameStart;
+        if (end - local != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (mTag.charAt(local + i) != name.charAt(nameStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(char c) {
+        return c == '/' || Character.isWhitespace(c);
+    }
+
+    private double attribute(String name) throws IOException {
+        int pos = 0;
+        while ((pos = mTag.indexOf(name, pos)) >= 0) {
+            int eq = pos + name.length();
+            boolean boundary = pos > 0 && Character.isWhitespace(mTag.charAt(pos - 1));
+            while (eq < mTag.length() && Character.isWhitespace(mTag.charAt(eq))) {
+                eq++;
+            }
+            if (boundary && eq < mTag.length() && mTag.charAt(eq) == '=') {
+                int quote = eq + 1;
+                while (quote < mTag.length() && Character.isWhitespace(mTag.charAt(quote))) {
+                    quote++;
+                }
+                char q = mTag.charAt(quote);
+                int end = mTag.indexOf(String.valueOf(q), quote + 1);
+                if (end < 0) {
+                    break;
+                }
+                return Double.parseDouble(mTag.substring(quote + 1, end));
+            }
+            pos += name.length();
+        }
+        throw new IOException("Point without " + name + ": <" + mTag + ">");
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,149 @@
+package com.c2c.locationapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//fixed size histogram of durations in nanoseconds, recordable from any thread without locks or
+//allocation. buckets are log-linear like an HDR histogram: exact below 2^SUB_BUCKET_BITS, then
+//every power of two is split into 2^(SUB_BUCKET_BITS - 1) equal buckets, so any value is off by
+//at most 1/16 (about 6%) of itself in under 8 KB for the whole range of a long
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    //up to shift 58 for the largest long
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mMax = new AtomicLong();
+
+    //negative values, e.g. from clocks of different origin, count as 0
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        mCounts.incrementAndGet(bucket(value));
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    //counts are read one by one while writers go on, so the copy may be a few records off
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mCounts.get(i);
+        }
+        return new Snapshot(counts, mMax.get());
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    //smallest value counted in bucket
+    static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / HALF_SUB_BUCKETS - 1;
+        return (long) (bucket % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS) << shift;
+    }
+
+    //largest value counted in bucket
+    static long highestValue(int bucket) {
+        return bucket + 1 < BUCKETS ? lowestValue(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    //immutable copy of a histogram at one point in time
+    static final class Snapshot {
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mMax;
+        private final double mMean;
+
+        private Snapshot(long[] counts, long max) {
+            mCounts = counts;
+            long count = 0;
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    count += counts[i];
+                    //middle of the bucket
+                    sum += counts[i] * (lowestValue(i) / 2.0 + highestValue(i) / 2.0);
+                }
+            }
+            mCount = count;
+            mMax = max;
+            mMean = count == 0 ? 0 : sum / count;
+        }
+
+        long count() {
+            return mCount;
+        }
+
+        long max() {
+            return mMax;
+        }
+
+        double mean() {
+            return mMean;
+        }
+
+        //value at or below which the given fraction of records fall, highest value of its bucket
+        //and never above the recorded maximum; 0 if nothing was recorded
+        long percentile(double fraction) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * mCount));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), mMax);
+                }
+            }
+            return mMax;
+        }
+
+        //one line summary in milliseconds, e.g. for dumpsys
+        StringBuilder appendTo(StringBuilder out) {
+            out.append("count=").append(mCount);
+            if (mCount == 0) {
+                return out;
+            }
+            out.append(" mean=");
+            appendMillis(out, (long) mMean);
+            out.append(" p50=");
+            appendMillis(out, percentile(0.50));
+            out.append(" p90=");
+            appendMillis(out, percentile(0.90));
+            out.append(" p99=");
+            appendMillis(out, percentile(0.99));
+            out.append(" p99.9=");
+            appendMillis(out, percentile(0.999));
+            out.append(" max=");
+            appendMillis(out, mMax);
+            return out;
+        }
+
+        private static void appendMillis(StringBuilder out, long nanos) {
+            long micros = nanos / 1000;
+            out.append(micros / 1000).append('.');
+            long fraction = micros % 1000;
+            if (fraction < 100) {
+                out.append('0');
+            }
+            if (fraction < 10) {
+                out.append('0');
+            }
+            out.append(fraction).append("ms");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.c2c.locationapp;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.View;
+
+//draws the recent track straight from the service's TrackBuffer.
+//requestFrame() may be called for every fix, work happens at most once per vsync in doFrame,
+//and only if the buffer moved on. TrackViewport keeps the points to draw bounded by the view's
+//size in pixels, the Path is rebuilt from them in place. main thread only
+public class LiveTrackView extends View implements Choreographer.FrameCallback {
+
+    //called once per frame that had fixes to show, before the track is drawn
+    interface FrameListener {
+        void onFrame();
+    }
+
+    //kept points are about this far apart at the finest level of detail
+    private static final float CELL_DP = 2;
+
+    private static final float STROKE_DP = 3;
+    private static final float POSITION_RADIUS_DP = 6;
+
+    private static final int TRACK_COLOR = 0xff1e88e5;
+    private static final int POSITION_COLOR = 0xffe53935;
+
+    private final TrackViewport mViewport;
+    private final Path mPath = new Path();
+    private final Paint mTrackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mPositionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float mPositionRadius;
+
+    private TrackBuffer mBuffer;
+    private FrameListener mFrameListener;
+    private boolean mFrameScheduled;
+
+    //last point of the path, the current position
+    private boolean mHasPosition;
+    private float mPositionX;
+    private float mPositionY;
+
+    public LiveTrackView(Context context) {
+        this(context, null);
+    }
+
+    public LiveTrackView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = context.getResources().getDisplayMetrics().density;
+        mViewport = new TrackViewport(CELL_DP * density);
+        mPositionRadius = POSITION_RADIUS_DP * density;
+        mTrackPaint.setColor(TRACK_COLOR);
+        mTrackPaint.setStyle(Paint.Style.STROKE);
+        mTrackPaint.setStrokeWidth(STROKE_DP * density);
+        mTrackPaint.setStrokeJoin(Paint.Join.ROUND);
+        mTrackPaint.setStrokeCap(Paint.Cap.ROUND);
+        mPositionPaint.setColor(POSITION_COLOR);
+        mPositionPaint.setStyle(Paint.Style.FILL);
+    }
+
+    //buffer to draw, null while there is none
+    void setTrackBuffer(TrackBuffer buffer) {
+        mBuffer = buffer;
+        mViewport.invalidate();
+        requestFrame();
+    }
+
+    void setFrameListener(FrameListener listener) {
+        mFrameListener = listener;
+    }
+
+    //new fixes are in the buffer, any number of calls per frame cost one update
+    void requestFrame() {
+        if (!mFrameScheduled && isAttachedToWindow()) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        if (mFrameListener != null) {
+            mFrameListener.onFrame();
+        }
+        if (mBuffer != null && mViewport.update(mBuffer)) {
+            buildPath();
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        requestFrame();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        Choreographer.getInstance().removeFrameCallback(this);
+        mFrameScheduled = false;
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        mViewport.setSize(width - getPaddingLeft() - getPaddingRight(),
+                height - getPaddingTop() - getPaddingBottom());
+        requestFrame();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.drawPath(mPath, mTrackPaint);
+        if (mHasPosition) {
+            canvas.drawCircle(mPositionX, mPositionY, mPositionRadius, mPositionPaint);
+        }
+    }
+
+    //rewind keeps the path's storage, nothing is allocated once it has grown to the budget
+    private void buildPath() {
+        float[] points = mViewport.points();
+        int count = mViewport.count();
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        mPath.rewind();
+        mHasPosition = count > 0;
+        if (!mHasPosition) {
+            return;
+        }
+        mPath.moveTo(left + points[0], top + points[1]);
+        for (int i = 1; i < count; i++) {
+            mPath.lineTo(left + points[2 * i], top + points[2 * i + 1]);
+        }
+        mPositionX = left + points[2 * count - 2];
+        mPositionY = top + points[2 * count - 1];
+    }
+}
@@ -0,0 +1,191 @@
+package com.c2c.locationapp;
+
+import java.text.DateFormat;
+import java.text.FieldPosition;
+import java.util.Date;
+import java.util.Locale;
+
+//text shown for a location in the notification and the UI, kept free of Android types
+//so its cost can be measured on a plain JVM.
+//appends into a caller owned StringBuilder and reuses its date formatter, so formatting a fix
+//produces no garbage once warmed up. not thread safe, keep one per thread
+final class LocationFormatter {
+
+    enum CoordinateStyle {
+        //(52.520008, 13.404954)
+        DECIMAL,
+        //52 31'12.0"N 13 24'17.8"E, with a degree sign after the degrees
+        DEGREES_MINUTES_SECONDS,
+        //33U 391779 5820118, falls back to DECIMAL outside 80S..84N
+        UTM
+    }
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L
+    };
+
+    static final int MAX_DECIMALS = POWERS_OF_TEN.length - 1;
+
+    private static final String UTM_BANDS = "CDEFGHJKLMNPQRSTUVWX";
+
+    //WGS84 ellipsoid and UTM scale
+    private static final double WGS84_A = 6378137.0;
+    private static final double WGS84_F = 1 / 298.257223563;
+    private static final double E2 = WGS84_F * (2 - WGS84_F);
+    private static final double EP2 = E2 / (1 - E2);
+    private static final double UTM_K0 = 0.9996;
+
+    private final int mDecimals;
+    private final CoordinateStyle mStyle;
+
+    //date formatting state, rebuilt when the default locale changes or on invalidate(). the time
+    //zone is not compared, TimeZone.getDefault() hands out a copy each call
+    private Locale mLocale;
+    private DateFormat mDateFormat;
+    private final Date mDate = new Date();
+    private final StringBuffer mDateBuffer = new StringBuffer(32);
+    private final FieldPosition mFieldPosition = new FieldPosition(0);
+
+    //decimals of a degree for DECIMAL, seconds get decimals - 4 so both resolve about the same
+    LocationFormatter(int decimals, CoordinateStyle style) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Bad decimals " + decimals);
+        }
+        mDecimals = decimals;
+        mStyle = style;
+    }
+
+    // appends lattitude, logitude in the configured style
+    StringBuilder appendCoordinates(StringBuilder out, double latitude, double longitude) {
+        switch (mStyle) {
+            case DEGREES_MINUTES_SECONDS:
+                appendDms(out, latitude, 'N', 'S');
+                out.append(' ');
+                return appendDms(out, longitude, 'E', 'W');
+            case UTM:
+                //no UTM zone near the poles, decimal degrees there
+                return latitude >= -80 && latitude <= 84 ? appendUtm(out, latitude, longitude)
+                        : appendDecimal(out, latitude, longitude);
+            default:
+                return appendDecimal(out, latitude, longitude);
+        }
+    }
+
+    private StringBuilder appendDecimal(StringBuilder out, double latitude, double longitude) {
+        out.append('(');
+        appendFixed(out, latitude, mDecimals);
+        out.append(", ");
+        appendFixed(out, longitude, mDecimals);
+        return out.append(')');
+    }
+
+    // appends time as a locale date and time
+    StringBuilder appendDateTime(StringBuilder out, long time) {
+        Locale locale = Locale.getDefault();
+        if (mDateFormat == null || locale != mLocale) {
+            mLocale = locale;
+            mDateFormat = DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, locale);
+        }
+        mDate.setTime(time);
+        mDateBuffer.setLength(0);
+        mDateFormat.format(mDate, mDateBuffer, mFieldPosition);
+        return out.append(mDateBuffer);
+    }
+
+    //drops the cached date formatter; the owner calls this when the default time zone changed,
+    //which appendDateTime does not notice on its own
+    void invalidate() {
+        mDateFormat = null;
+    }
+
+    //appends value rounded to decimals without going through Double.toString
+    static StringBuilder appendFixed(StringBuilder out, double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return out.append(value);
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            out.append('-');
+        }
+        out.append(scaled / scale);
+        if (decimals == 0) {
+            return out;
+        }
+        out.append('.');
+        long fraction = scaled % scale;
+        for (long p = scale / 10; p > fraction && p > 1; p /= 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    private StringBuilder appendDms(StringBuilder out, double value, char positive, char negative) {
+        int secondDecimals = Math.max(0, mDecimals - 4);
+        long scale = POWERS_OF_TEN[secondDecimals];
+        //round once in the smallest unit so 59.99" carries into the minutes
+        long total = Math.round(Math.abs(value) * 3600 * scale);
+        long degrees = total / (3600 * scale);
+        long minutes = total / (60 * scale) % 60;
+        long seconds = total % (60 * scale);
+        out.append(degrees).append('\u00b0').append(minutes).append('\'');
+        appendFixed(out, seconds / (double) scale, secondDecimals);
+        return out.append('"').append(value < 0 ? negative : positive);
+    }
+
+    private static StringBuilder appendUtm(StringBuilder out, double latitude, double longitude) {
+        int zone = utmZone(latitude, longitude);
+        double centralMeridian = Math.toRadians((zone - 1) * 6 - 180 + 3);
+        double phi = Math.toRadians(latitude);
+        double sin = Math.sin(phi);
+        double cos = Math.cos(phi);
+        double tan = sin / cos;
+
+        double n = WGS84_A / Math.sqrt(1 - E2 * sin * sin);
+        double t = tan * tan;
+        double c = EP2 * cos * cos;
+        double a = cos * (Math.toRadians(longitude) - centralMeridian);
+        double e4 = E2 * E2;
+        double e6 = e4 * E2;
+        double m = WGS84_A * ((1 - E2 / 4 - 3 * e4 / 64 - 5 * e6 / 256) * phi
+                - (3 * E2 / 8 + 3 * e4 / 32 + 45 * e6 / 1024) * Math.sin(2 * phi)
+                + (15 * e4 / 256 + 45 * e6 / 1024) * Math.sin(4 * phi)
+                - (35 * e6 / 3072) * Math.sin(6 * phi));
+
+        double a2 = a * a;
+        double easting = UTM_K0 * n * (a + (1 - t + c) * a2 * a / 6
+                + (5 - 18 * t + t * t + 72 * c - 58 * EP2) * a2 * a2 * a / 120) + 500000;
+        double northing = UTM_K0 * (m + n * tan * (a2 / 2
+                + (5 - t + 9 * c + 4 * c * c) * a2 * a2 / 24
+                + (61 - 58 * t + t * t + 600 * c - 330 * EP2) * a2 * a2 * a2 / 720));
+        if (latitude < 0) {
+            northing += 10000000;
+        }
+
+        int band = Math.min(UTM_BANDS.length() - 1, (int) Math.floor((latitude + 80) / 8));
+        out.append(zone).append(UTM_BANDS.charAt(band)).append(' ');
+        out.append(Math.round(easting)).append(' ');
+        return out.append(Math.round(northing));
+    }
+
+    //zone number including the Norway and Svalbard exceptions
+    static int utmZone(double latitude, double longitude) {
+        double lon = longitude >= 180 ? longitude - 360 : longitude;
+        int zone = (int) Math.floor((lon + 180) / 6) + 1;
+        if (latitude >= 56 && latitude < 64 && lon >= 3 && lon < 12) {
+            return 32;
+        }
+        if (latitude >= 72 && latitude < 84 && lon >= 0 && lon < 42) {
+            if (lon < 9) {
+                return 31;
+            } else if (lon < 21) {
+                return 33;
+            } else if (lon < 33) {
+                return 35;
+            }
+            return 37;
+        }
+        return zone;
+    }
+}
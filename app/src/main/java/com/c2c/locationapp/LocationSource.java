@@ -0,0 +1,21 @@
+package com.c2c.locationapp;
+
+//where fixes come from: the fused provider on a device, or a replayed/synthetic track
+//for driving the fix path at controlled rates without Play Services
+interface LocationSource {
+
+    //receives fixes on the source's delivery thread, the Fix is reused after onFix returns
+    interface Sink {
+
+        void onFix(Fix fix);
+
+        //the fixes passed since the previous call form one delivery
+        void onBatchEnd();
+    }
+
+    //starts delivering to sink with the given sampling, calling it again while started
+    //only changes the sampling. maxWaitMillis > interval lets fixes be delivered in batches
+    void start(SamplingProfile profile, long maxWaitMillis, Sink sink);
+
+    void stop();
+}
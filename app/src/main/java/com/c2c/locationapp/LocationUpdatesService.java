@@ -1,13 +1,12 @@
 package com.c2c.locationapp;
 
-import android.app.ActivityManager;
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SearchRecentSuggestionsProvider;
 import android.content.res.Configuration;
 import android.location.Location;
@@ -16,22 +15,32 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
 public class LocationUpdatesService extends Service {
 
     private static final String PACKAGE_NAME =
@@ -42,73 +51,170 @@ public class LocationUpdatesService extends Service {
     // name of channel for notifications
     private static final String CHANNEL_ID = "channel_01";
 
-    static final String ACTION_BROADCAST = PACKAGE_NAME + ".broadcast";
+    //sent for every geofence transition, see setGeofences
+    static final String ACTION_GEOFENCE_TRANSITION = PACKAGE_NAME + ".geofence_transition";
+
+    static final String EXTRA_GEOFENCE_ID = PACKAGE_NAME + ".geofence_id";
 
-    static final String EXTRA_LOCATION = PACKAGE_NAME + ".location";
+    //one of Geofence.TRANSITION_ENTER, TRANSITION_EXIT or TRANSITION_DWELL
+    static final String EXTRA_GEOFENCE_TRANSITION = PACKAGE_NAME + ".geofence_transition_type";
 
     private static final String EXTRA_STARTED_FROM_NOTIFICATION = PACKAGE_NAME +
             ".started_from_notification";
 
     private final IBinder mBinder = new LocalBinder();
 
-    //interval for location updates
-    private static final long UPDATE_INTERVAL_IN_MILLISECONDS = 10000;
+    //fixes queued between the location callback and the pipeline thread before the oldest are dropped
+    private static final int PIPELINE_CAPACITY = 1024;
+
+    //recorded track is kept for at most this many segments (32768 fixes each) or this long
+    private static final int MAX_TRACK_SEGMENTS = 32;
+    private static final long MAX_TRACK_AGE_IN_MILLISECONDS = 30L * 24 * 60 * 60 * 1000;
 
-    //fastest rate for active location updates
-    private static final long FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS = UPDATE_INTERVAL_IN_MILLISECONDS / 2;
+    //recent fixes kept in memory for readers, about 9 hours at one fix per second (~1.2 MB)
+    private static final int TRACK_BUFFER_CAPACITY = 1 << 15;
+
+    //place names shipped with the app, see ReverseGeocoder.importPlaces
+    private static final String PLACES_ASSET = "places.csv";
 
     //identifier for the notification displayed for foreground service
     public static final int NOTIFICATION_ID = 12345678;
 
+    //notification is refreshed at most this often, fixes arriving in between are merged
+    private static final long NOTIFICATION_MIN_REFRESH_IN_MILLISECONDS = 1000;
+
+    //motion state of an older snapshot says nothing about now, sampling starts from WALKING
+    private static final long MAX_RESTORED_STATE_AGE_IN_MILLISECONDS = 10 * 60 * 1000;
+
     //bound activity check for orientation change
     private boolean mChangingConfiguration = false;
 
-    private NotificationManager mNotificationManager;
+    //created the first time the service goes to the foreground, null until then
+    private volatile NotificationRenderer mNotificationRenderer;
 
-    //parameters used by FusedLocationApi
-    private LocationRequest mLocationRequest;
+    //picks location request parameters from how the device is moving, starts from the snapshot
+    private AdaptiveSampler mSampler;
+
+    //one provider request at the strictest of what the sampler and the subscribed clients need
+    private final RequestMultiplexer mRequests = new RequestMultiplexer(this::onRequestChanged);
+
+    //the sampler's own requirement, always open
+    private RequestMultiplexer.Demand mSamplerDemand;
+
+    //last published fix and motion state, read back on the next start; null if it could not be opened
+    private FixSnapshot mSnapshot;
+
+    //re-issues the location request after the merged request changed
+    private final Runnable mUpdateLocationRequest = this::updateLocationRequest;
+
+    //a time zone change is no configuration change, the notification's formatter still has to
+    //drop its date format to show times in the new zone
+    private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            NotificationRenderer renderer = mNotificationRenderer;
+            if (renderer != null) {
+                renderer.invalidate();
+            }
+        }
+    };
 
     //provide acces to Fused Location provider API
     private FusedLocationProviderClient mFusedLocationClient;
 
-    //callback for changes in location
-    private LocationCallback mLocationCallback;
+    //delivers fixes to the pipeline, fused provider unless replaced for testing. only replaced
+    //on the handler thread, see setLocationSource
+    private volatile LocationSource mLocationSource;
+
+    //thread location callbacks are delivered on
+    private HandlerThread mHandlerThread;
 
     private Handler mServiceHandler;
 
-    //for current location
-    private Location mLocation;
+    //latency and throughput of the hot paths, see dump and LocalBinder.getMetrics
+    private final ServiceMetrics mMetrics = new ServiceMetrics(SystemClock::elapsedRealtimeNanos);
+
+    //drops fixes a batch repeats
+    private final StaleFixFilter mStaleFilter = new StaleFixFilter();
+
+    //drops inaccurate, stale and implausible fixes before anything else looks at them
+    private final FixQualityFilter mQualityFilter = new FixQualityFilter(SystemClock::elapsedRealtimeNanos);
+
+    //distance, moving time, stops and trips of the recorded track, runs on the pipeline thread
+    private final TripTracker mTripTracker = new TripTracker();
+
+    //dwell time and visits per place at several resolutions, runs on the pipeline thread
+    private final DensityGrid mDensityGrid = new DensityGrid();
+
+    //set once the grid was loaded or rebuilt from the store, an interrupted rebuild is not stored
+    private boolean mDensityGridLoaded;
+
+    //place names for the notification and clients from the offline dataset, created in onCreate
+    private ReverseGeocoder mGeocoder;
+
+    //checks every fix against the geofences set by clients, runs on the pipeline thread
+    private final GeofenceEngine mGeofenceEngine = new GeofenceEngine(this::onGeofenceTransition);
+
+    //sends recorded fixes to the configured endpoint in batches, null if uploading is off
+    private volatile FixUploader mUploader;
+
+    //filters, records and publishes fixes on its own thread
+    private FixPipeline mPipeline;
+
+    //clients receiving fixes, see LocalBinder.subscribe
+    private final FixSubscriptions mSubscriptions = new FixSubscriptions(mMetrics);
+
+    //for current location, last fix published by the pipeline
+    private volatile Location mLocation;
+
+    //history of every fix received, opened by the pipeline thread before its first fix;
+    //null until then or if storage could not be opened
+    private volatile TrackStore mTrackStore;
+
+    //range and proximity queries over mTrackStore, null with it
+    private volatile TrackIndex mTrackIndex;
+
+    //recent track in memory, written by the pipeline thread, readable from any thread
+    private final TrackBuffer mTrackBuffer = new TrackBuffer(TRACK_BUFFER_CAPACITY);
 
     @Override
     public void onCreate() {
+        mMetrics.setEnabled(Utils.collectMetrics(this));
         mFusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
 
-        mLocationCallback = new LocationCallback() {
-            @Override
-            public void onLocationResult(@NonNull LocationResult locationResult) {
-                super.onLocationResult(locationResult);
-                onNewLocation(locationResult.getLastLocation());
-            }
-        };
-        
-        createLocationRequest();
+        //read synchronously, a few dozen bytes, so there is a location before any task completes
+        restoreSnapshot();
         getLastLocation();
-
-        HandlerThread handlerThread = new HandlerThread(TAG);
-        handlerThread.start();
-        mServiceHandler = new Handler(handlerThread.getLooper());
-        mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-
-        //Android O required a Notification Channel
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            CharSequence name = getString(R.string.app_name);
-            //creating channel for notification
-            NotificationChannel mChannel =
-                    new NotificationChannel(CHANNEL_ID, name, NotificationManager.IMPORTANCE_DEFAULT);
-
-            //setting Notification channel for Notification Manager
-            mNotificationManager.createNotificationChannel(mChannel);
-        }
+        //nothing is read until the first name is asked for, and then on the geocoder's thread,
+        //which installs the shipped places the first time
+        mGeocoder = new ReverseGeocoder(new File(getFilesDir(), "places"), this::installPlaces,
+                ReverseGeocoder.DEFAULT_RETRY_MILLIS, ReverseGeocoder.DEFAULT_CACHE_CAPACITY,
+                this::onPlaceResolved);
+
+        mHandlerThread = new HandlerThread(TAG);
+        mHandlerThread.start();
+        mServiceHandler = new Handler(mHandlerThread.getLooper());
+        mLocationSource = new FusedLocationSource(this, mHandlerThread.getLooper());
+
+        //started last, the pipeline thread sees everything set up above
+        List<FixPipeline.Stage> stages = new ArrayList<>();
+        stages.add(mStaleFilter);
+        //ahead of the quality filter, which drops the coarse fixes the stationary request gets
+        stages.add(new SamplingStage());
+        mQualityFilter.setSmoothing(Utils.smoothFixes(this));
+        stages.add(mQualityFilter);
+        stages.add(new RecordStage());
+        stages.add(mTripTracker);
+        stages.add(mDensityGrid);
+        stages.add(new GeofenceStage());
+        stages.add(new UploadStage());
+        stages.add(new PublishStage());
+        mPipeline = new FixPipeline(TAG + "-pipeline", PIPELINE_CAPACITY, mMetrics,
+                stages.toArray(new FixPipeline.Stage[0]));
+        //storage is opened on the pipeline thread, fixes arriving meanwhile wait in its buffer
+        mPipeline.start(this::openStorage);
+
+        registerReceiver(mTimeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
     }
 
     @Override
@@ -132,6 +238,10 @@ public class LocationUpdatesService extends Service {
     public void onConfigurationChanged(Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
         mChangingConfiguration = true;
+        NotificationRenderer renderer = mNotificationRenderer;
+        if (renderer != null) {
+            renderer.invalidate();
+        }
     }
 
     @Nullable
@@ -140,7 +250,7 @@ public class LocationUpdatesService extends Service {
         //called when client (MainActivity here) comes to the foreground and binds with this service.
         //service should cease to foreground service when that happens
         Log.i(TAG, "in onBind()");
-        stopForeground(true);
+        leaveForeground();
         mChangingConfiguration = false;
         return mBinder;
     }
@@ -149,7 +259,7 @@ public class LocationUpdatesService extends Service {
     public void onRebind(Intent intent) {
         //called when client returns to the foreground and binds once again
         Log.i(TAG, "in onRebind()");
-        stopForeground(true);
+        leaveForeground();
         mChangingConfiguration = false;
         super.onRebind(intent);
     }
@@ -163,14 +273,84 @@ public class LocationUpdatesService extends Service {
         if(!mChangingConfiguration && Utils.requestingLocationUpdates(this)) {
             Log.i(TAG, "Starting foreground service");
 
-            startForeground(NOTIFICATION_ID, getNotification());
+            enterForeground();
         }
         return true;
     }
 
     @Override
     public void onDestroy() {
+        unregisterReceiver(mTimeZoneReceiver);
+        //fixes must not arrive on a looper that is gone
+        mLocationSource.stop();
         mServiceHandler.removeCallbacksAndMessages(null);
+        mHandlerThread.quitSafely();
+        //lets the pipeline finish what is queued before storage is closed; storage still being
+        //opened is interrupted, the whole-history rebuilds there end early
+        mPipeline.stop();
+        if (mUploader != null) {
+            try {
+                //unsent batches stay in the outbox for the next start
+                mUploader.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not store last upload batch", e);
+            }
+            mUploader = null;
+        }
+        if (mTrackStore != null) {
+            if (mDensityGridLoaded) {
+                try {
+                    mDensityGrid.write(getDensityFile());
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not store density grid", e);
+                }
+            }
+            TrackHistoryProvider.setTrackStore(null);
+            mTrackStore.close();
+            mTrackStore = null;
+        }
+        if (mSnapshot != null) {
+            mSnapshot.close();
+            mSnapshot = null;
+        }
+        mGeocoder.close();
+    }
+
+    //adb shell dumpsys activity service com.c2c.locationapp/.LocationUpdatesService [enable|disable]
+    //prints the metrics, or switches recording for this run
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length > 0) {
+            if ("enable".equals(args[0]) || "disable".equals(args[0])) {
+                mMetrics.setEnabled("enable".equals(args[0]));
+            } else {
+                writer.println("Unknown argument " + args[0] + ", expected enable or disable");
+                return;
+            }
+        }
+        getMetrics().print(writer);
+    }
+
+    //recorded metrics plus every count of dropped and filtered fixes
+    ServiceMetrics.Snapshot getMetrics() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        if (mPipeline != null) {
+            counts.put("pipeline.dropped", mPipeline.dropped());
+        }
+        counts.put("filter.stale", mStaleFilter.dropped());
+        counts.put("filter.accuracy", mQualityFilter.rejectedAccuracy());
+        counts.put("filter.age", mQualityFilter.rejectedAge());
+        counts.put("filter.speed", mQualityFilter.rejectedSpeed());
+        counts.put("filter.accepted", mQualityFilter.accepted());
+        counts.put("filter.smoothed", mQualityFilter.smoothed());
+        counts.put("subscriptions.dropped", mSubscriptions.dropped());
+        FixUploader uploader = mUploader;
+        if (uploader != null) {
+            counts.put("upload.sent", uploader.sentBatches());
+            counts.put("upload.failed", uploader.failedAttempts());
+            counts.put("upload.rejected", uploader.rejectedBatches());
+        }
+        return mMetrics.snapshot(counts);
     }
 
     //request location updates
@@ -178,21 +358,85 @@ public class LocationUpdatesService extends Service {
         Log.i(TAG, "Requesting location updates");
         Utils.setKeyRequestingLocationUpdates(this, true);
         startService(new Intent(getApplicationContext(), LocationUpdatesService.class));
+        registerLocationUpdates();
+    }
+
+    //swaps where fixes come from, e.g. a replayed track for testing; takes over a running request.
+    //done on the handler thread the fused provider delivers on, so no fused callback can still be
+    //running when the new source starts; the pipeline takes fixes from one producer at a time
+    void setLocationSource(LocationSource locationSource) {
+        mServiceHandler.post(() -> {
+            mLocationSource.stop();
+            mLocationSource = locationSource;
+            if (Utils.requestingLocationUpdates(this)) {
+                registerLocationUpdates();
+            }
+        });
+    }
+
+    //replaces the watched geofences, fences keeping their id keep their inside/outside state
+    void setGeofences(List<Geofence> geofences) {
+        mGeofenceEngine.setGeofences(geofences);
+    }
+
+    //called on the pipeline thread, transitions are rare so a broadcast each is fine
+    private void onGeofenceTransition(Geofence geofence, int transition, long time) {
+        Log.i(TAG, "Geofence " + geofence.id + " transition " + transition);
+        Intent intent = new Intent(ACTION_GEOFENCE_TRANSITION);
+        intent.putExtra(EXTRA_GEOFENCE_ID, geofence.id);
+        intent.putExtra(EXTRA_GEOFENCE_TRANSITION, transition);
+        LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(intent);
+    }
+
+    //geocoder thread, converts the shipped places to the mapped dataset
+    private void installPlaces(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(getAssets().open(PLACES_ASSET),
+                StandardCharsets.UTF_8)) {
+            int count = ReverseGeocoder.importPlaces(reader, file);
+            Log.i(TAG, "Installed " + count + " places");
+        }
+    }
+
+    //geocoder thread, the notification was rendered without the name
+    private void onPlaceResolved() {
+        NotificationRenderer renderer = mNotificationRenderer;
+        Location location = mLocation;
+        if (renderer != null && location != null) {
+            renderer.requestUpdate(location);
+        }
+    }
+
+    //any thread; changes before the handler exists are picked up by the first registration
+    private void onRequestChanged(SamplingProfile request) {
+        Handler handler = mServiceHandler;
+        if (handler != null && request != null) {
+            handler.post(mUpdateLocationRequest);
+        }
+    }
+
+    //called on the handler thread when the sampler or a client changed the merged request
+    private void updateLocationRequest() {
+        if (Utils.requestingLocationUpdates(this)) {
+            Log.i(TAG, "Location request now " + mRequests.request());
+            registerLocationUpdates();
+        }
+    }
+
+    //starting the source again replaces the previous request
+    private void registerLocationUpdates() {
         try {
-            mFusedLocationClient.requestLocationUpdates(mLocationRequest,
-                    mLocationCallback, Looper.myLooper());
+            mLocationSource.start(mRequests.request(), Utils.getMaxWaitTime(this), mPipeline);
         } catch (SecurityException unlikely) {
             Utils.setKeyRequestingLocationUpdates(this, false);
-            Log.e(TAG, "Lost location permission. Could not request updates. " + unlikely );;
+            Log.e(TAG, "Lost location permission. Could not request updates. " + unlikely );
         }
-
     }
 
     //Removes location updates
     public void removeLocationUpdates() {
         Log.i(TAG, "Removing location updates");
         try {
-            mFusedLocationClient.removeLocationUpdates(mLocationCallback);
+            mLocationSource.stop();
             Utils.setKeyRequestingLocationUpdates(this, false);
             stopSelf();
         } catch (SecurityException unlikely) {
@@ -201,41 +445,63 @@ public class LocationUpdatesService extends Service {
         }
     }
 
-    private Notification getNotification() {
-        Intent intent = new Intent(this, LocationUpdatesService.class);
-
-        CharSequence text = Utils.getLocationText(mLocation);
-
-        //extra to figure out if we arrived in onStartCommand via notification or not
-        intent.putExtra(EXTRA_STARTED_FROM_NOTIFICATION, true);
-
-        //pending intent that leads to call onStartCommand() in this service
-        PendingIntent servicePendingIntent = PendingIntent.getService(this, 0, intent,
-                PendingIntent.FLAG_UPDATE_CURRENT);
+    private void enterForeground() {
+        NotificationRenderer renderer = getNotificationRenderer();
+        startForeground(NOTIFICATION_ID, renderer.build(mLocation));
+        renderer.setForeground(true);
+    }
 
-        //pending intent to launch activity
-        PendingIntent activityPendingIntent = PendingIntent.getActivity(this, 0,
-                new Intent(this, MainActivity.class), 0);
+    private void leaveForeground() {
+        NotificationRenderer renderer = mNotificationRenderer;
+        if (renderer != null) {
+            renderer.setForeground(false);
+        }
+        stopForeground(true);
+    }
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this)
-                .addAction(R.drawable.ic_launcher_foreground, getString(R.string.launch_activity),
-                        activityPendingIntent)
-                .addAction(R.drawable.ic_baseline_cancel_24, getString(R.string.remove_location_updates),
-                        servicePendingIntent)
-                .setContentText(text)
-                .setContentTitle(Utils.getLocationTitle(this))
-                .setOngoing(true)
-                .setPriority(Notification.PRIORITY_HIGH)
-                .setSmallIcon(R.mipmap.ic_launcher)
-                .setTicker(text)
-                .setWhen(System.currentTimeMillis());
+    //channel and renderer are only needed once the service goes to the foreground, main thread
+    private NotificationRenderer getNotificationRenderer() {
+        if (mNotificationRenderer == null) {
+            //Android O required a Notification Channel
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                NotificationManager notificationManager =
+                        (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+                CharSequence name = getString(R.string.app_name);
+                //creating channel for notification
+                NotificationChannel mChannel =
+                        new NotificationChannel(CHANNEL_ID, name, NotificationManager.IMPORTANCE_DEFAULT);
+
+                //setting Notification channel for Notification Manager
+                notificationManager.createNotificationChannel(mChannel);
+            }
 
-        //setting channel ID for Android O
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            builder.setChannelId(CHANNEL_ID);
+            //extra to figure out if we arrived in onStartCommand via notification or not
+            Intent stopIntent = new Intent(this, LocationUpdatesService.class);
+            stopIntent.putExtra(EXTRA_STARTED_FROM_NOTIFICATION, true);
+            mNotificationRenderer = new NotificationRenderer(this, mServiceHandler, CHANNEL_ID,
+                    NOTIFICATION_ID, NOTIFICATION_MIN_REFRESH_IN_MILLISECONDS, stopIntent, mMetrics,
+                    mTripTracker, mGeocoder);
         }
+        return mNotificationRenderer;
+    }
 
-        return builder.build();
+    //location and motion state as the previous run left them
+    private void restoreSnapshot() {
+        MotionState state = null;
+        try {
+            mSnapshot = FixSnapshot.open(new File(getFilesDir(), "last_fix"));
+            Fix fix = new Fix();
+            if (mSnapshot.load(fix)) {
+                mLocation = toLocation(fix);
+                if (System.currentTimeMillis() - fix.time < MAX_RESTORED_STATE_AGE_IN_MILLISECONDS) {
+                    state = mSnapshot.loadMotionState();
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open last fix snapshot", e);
+        }
+        mSampler = new AdaptiveSampler(state != null ? state : MotionState.WALKING);
+        mSamplerDemand = mRequests.add(mSampler.getState().profile);
     }
 
     private void getLastLocation() {
@@ -243,7 +509,11 @@ public class LocationUpdatesService extends Service {
             mFusedLocationClient.getLastLocation()
                     .addOnCompleteListener(task -> {
                         if (task.isSuccessful() && task.getResult() != null) {
-                            mLocation = task.getResult();
+                            //the snapshot or the pipeline may already have something newer
+                            Location current = mLocation;
+                            if (current == null || task.getResult().getTime() > current.getTime()) {
+                                mLocation = task.getResult();
+                            }
                         } else {
                             Log.w(TAG, "Failed to get location");
                         }
@@ -253,28 +523,202 @@ public class LocationUpdatesService extends Service {
         }
     }
 
-    private void onNewLocation(Location lastLocation) {
-        Log.i(TAG, "New location: " + lastLocation);
+    //pipeline thread, before the first fix. interrupted by onDestroy if it is still running,
+    //what is left is skipped then
+    private void openStorage() {
+        openTrackStore();
+        loadTrackBuffer();
+        rebuildTrips();
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        loadDensityGrid();
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        openUploader();
+    }
 
-        mLocation = lastLocation;
+    private void openTrackStore() {
+        try {
+            mTrackStore = TrackStore.open(new File(getFilesDir(), "track"), MAX_TRACK_SEGMENTS,
+                    MAX_TRACK_AGE_IN_MILLISECONDS);
+            //rebuilt from what was recorded before, then kept up to date by RecordStage
+            mTrackIndex = new TrackIndex(mTrackStore);
+            mTrackIndex.update();
+            TrackHistoryProvider.setTrackStore(mTrackStore);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open track store, history will not be recorded", e);
+        }
+    }
 
-        //notifying anyone listening broadcast about new location
-        Intent intent = new Intent(ACTION_BROADCAST);
-        intent.putExtra(EXTRA_LOCATION, lastLocation);
-        LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(intent);
+    //fills the in-memory track from the newest stored fixes, before the pipeline thread starts writing
+    private void loadTrackBuffer() {
+        if (mTrackStore == null) {
+            return;
+        }
+        long end = mTrackStore.endPosition();
+        long from = Math.max(mTrackStore.firstPosition(), end - mTrackBuffer.capacity());
+        mTrackStore.read(from, end, (time, latitude, longitude, accuracy, speed, bearing) -> {
+            mTrackBuffer.append(time, latitude, longitude, accuracy, speed, bearing);
+            return true;
+        });
+    }
 
-        //update notification if running as foreground service
-        if (serviceIsRunningInForeground(this)) {
-            mNotificationManager.notify(NOTIFICATION_ID, getNotification());
+    //trip statistics over the whole stored history, split at gaps and computed in parallel
+    private void rebuildTrips() {
+        if (mTrackStore == null) {
+            return;
+        }
+        try {
+            mTripTracker.rebuild(mTrackStore, Runtime.getRuntime().availableProcessors());
+        } catch (InterruptedException e) {
+            //re-asserted for openStorage, the pipeline clears it once set-up is over
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "Trip statistics rebuild interrupted", e);
         }
     }
 
-    //loaction request parameters
-    private void createLocationRequest() {
-        mLocationRequest = LocationRequest.create();
-        mLocationRequest.setInterval(UPDATE_INTERVAL_IN_MILLISECONDS);
-        mLocationRequest.setFastestInterval(FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS);
-        mLocationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+    //density grid as stored by the previous run plus what was recorded since, rebuilt from the
+    //whole history if there is none or it was made with other levels
+    private void loadDensityGrid() {
+        if (mTrackStore == null) {
+            return;
+        }
+        File file = getDensityFile();
+        try {
+            if (file.isFile() && mDensityGrid.read(file)) {
+                //stops at a fix it can resume from when interrupted
+                mDensityGrid.update(mTrackStore);
+                mDensityGridLoaded = true;
+                return;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read density grid, rebuilding it", e);
+        }
+        try {
+            mDensityGrid.rebuild(mTrackStore, Runtime.getRuntime().availableProcessors());
+            mDensityGridLoaded = true;
+        } catch (InterruptedException e) {
+            //re-asserted for openStorage, the pipeline clears it once set-up is over
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "Density grid rebuild interrupted", e);
+        }
+    }
+
+    private File getDensityFile() {
+        return new File(getFilesDir(), "density");
+    }
+
+    //recent track, readers must validate what they read, see TrackBuffer
+    TrackBuffer getTrackBuffer() {
+        return mTrackBuffer;
+    }
+
+    private void openUploader() {
+        String uploadUrl = Utils.getUploadUrl(this);
+        if (uploadUrl == null) {
+            return;
+        }
+        try {
+            mUploader = new FixUploader(new File(getFilesDir(), "outbox"), new URL(uploadUrl));
+            mUploader.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not set up uploads to " + uploadUrl, e);
+        }
+    }
+
+    private static Location toLocation(Fix fix) {
+        Location location = new Location("fused");
+        location.setTime(fix.time);
+        location.setElapsedRealtimeNanos(fix.elapsedRealtimeNanos);
+        location.setLatitude(fix.latitude);
+        location.setLongitude(fix.longitude);
+        location.setAccuracy(fix.accuracy);
+        location.setSpeed(fix.speed);
+        location.setBearing(fix.bearing);
+        return location;
+    }
+
+    //feeds the adaptive sampler, the request is changed on the handler thread if the sampler's
+    //new profile changes what the clients need together
+    private final class SamplingStage implements FixPipeline.Stage {
+        @Override
+        public boolean onFix(Fix fix) {
+            if (mSampler.onFix(fix)) {
+                Log.i(TAG, "Motion state now " + mSampler.getState());
+                mSamplerDemand.update(mSampler.getState().profile);
+            }
+            return true;
+        }
+    }
+
+    //appends fixes to the in-memory track and the indexed on-disk history
+    private final class RecordStage implements FixPipeline.Stage {
+        @Override
+        public boolean onFix(Fix fix) {
+            mTrackBuffer.append(fix);
+            if (mTrackStore != null) {
+                try {
+                    mTrackStore.append(fix.time, fix.latitude, fix.longitude, fix.accuracy,
+                            fix.speed, fix.bearing);
+                    mTrackIndex.update();
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not record location", e);
+                }
+            }
+            return true;
+        }
+    }
+
+    //forwards to the uploader once openStorage has created it, if uploading is on
+    private final class UploadStage implements FixPipeline.Stage {
+        @Override
+        public boolean onFix(Fix fix) {
+            return mUploader == null || mUploader.onFix(fix);
+        }
+    }
+
+    private final class GeofenceStage implements FixPipeline.Stage {
+        @Override
+        public boolean onFix(Fix fix) {
+            mGeofenceEngine.onFix(fix);
+            return true;
+        }
+    }
+
+    //hands every fix to subscribers, then once per drained batch updates the current location
+    //and the notification
+    private final class PublishStage implements FixPipeline.Stage {
+        private final Fix mLast = new Fix();
+        private int mBatchSize;
+
+        @Override
+        public boolean onFix(Fix fix) {
+            mSubscriptions.publish(fix);
+            mLast.copyFrom(fix);
+            mBatchSize++;
+            return true;
+        }
+
+        @Override
+        public void onBatchEnd() {
+            mSubscriptions.dispatch();
+            Location lastLocation = toLocation(mLast);
+            Log.i(TAG, "New locations: " + mBatchSize + ", last: " + lastLocation);
+            mBatchSize = 0;
+            mLocation = lastLocation;
+            //once per batch, the newest fix is all a restart needs
+            if (mSnapshot != null) {
+                mSnapshot.write(mLast, mSampler.getState());
+            }
+
+            //update notification if running as foreground service
+            NotificationRenderer renderer = mNotificationRenderer;
+            if (renderer != null) {
+                renderer.requestUpdate(lastLocation);
+            }
+        }
     }
 
     //used for client binder
@@ -283,22 +727,99 @@ public class LocationUpdatesService extends Service {
         LocationUpdatesService getService() {
             return LocationUpdatesService.this;
         }
-    }
 
-    //returs true if this is a foreground service
-    private boolean serviceIsRunningInForeground(Context context) {
-        ActivityManager manager = (ActivityManager) context.getSystemService(
-                Context.ACTIVITY_SERVICE);
-        for (ActivityManager.RunningServiceInfo serviceInfo : manager.getRunningServices(
-                Integer.MAX_VALUE)) {
-            if (getClass().getName().equals(serviceInfo.service.getClassName())) {
-                if (serviceInfo.foreground) {
-                    return true;
-                }
+        TrackBuffer getTrackBuffer() {
+            return mTrackBuffer;
+        }
+
+        //delivers fixes to listener on executor until the subscription is closed; never blocks
+        //the service, a listener falling behind loses fixes as its conflation policy says
+        FixSubscriptions.Subscription subscribe(Executor executor,
+                                                FixSubscriptions.Conflation conflation,
+                                                FixSubscriptions.Listener listener) {
+            return mSubscriptions.subscribe(executor, conflation, listener);
+        }
+
+        //as above, and while open the provider request is kept at least as strict as profile;
+        //fixes are decimated to about profile.intervalMillis apart for this client only
+        FixSubscriptions.Subscription subscribe(Executor executor,
+                                                FixSubscriptions.Conflation conflation,
+                                                SamplingProfile profile,
+                                                FixSubscriptions.Listener listener) {
+            RequestMultiplexer.Demand demand = mRequests.add(profile);
+            return mSubscriptions.subscribe(executor, conflation,
+                    FixSubscriptions.DEFAULT_QUEUE_CAPACITY, profile.intervalMillis, demand::close,
+                    listener);
+        }
+
+        //what the service currently asks of the provider, merged over all clients
+        SamplingProfile getLocationRequest() {
+            return mRequests.request();
+        }
+
+        //null if history is not being recorded
+        @Nullable
+        TrackIndex getTrackIndex() {
+            return mTrackIndex;
+        }
+
+        //writes the recorded fixes with fromTime <= time < toTime to out, streaming from storage
+        //in constant memory; toleranceMeters above 0 drops fixes the kept ones describe within
+        //that distance. blocks on storage, call off the main thread. out is not closed.
+        //returns the number of fixes written, -1 if history is not being recorded
+        long exportTrack(long fromTime, long toTime, TrackExporter.Format format,
+                         double toleranceMeters, WritableByteChannel out) throws IOException {
+            TrackStore store = mTrackStore;
+            if (store == null) {
+                return -1;
             }
+            TrackExporter exporter = new TrackExporter(out, format);
+            TrackExporter.export(store, fromTime, toTime, toleranceMeters, exporter);
+            exporter.close();
+            return exporter.count();
+        }
+
+        //recorded fixes with fromTime <= time < toTime, read from storage pageSize at a time as
+        //the caller pages through them, so any range costs one page of memory; the range ends
+        //where the store did when opened. null if history is not being recorded. every page
+        //blocks on storage, use off the main thread and from one thread at a time
+        @Nullable
+        TrackHistory queryHistory(long fromTime, long toTime, int pageSize) {
+            TrackStore store = mTrackStore;
+            return store == null ? null : new TrackHistory(store, fromTime, toTime, pageSize);
+        }
+
+        //newest known location, from the pipeline, the provider or the previous run; null if none
+        @Nullable
+        Location getLastLocation() {
+            return mLocation;
+        }
+
+        //cached name of the place a fix is in, null until the geocoder has it or if there is none;
+        //never blocks, ask again for a later fix
+        @Nullable
+        String getPlaceName(double latitude, double longitude) {
+            return mGeocoder.placeName(latitude, longitude);
+        }
+
+        //heatmap and top places queries, any thread
+        DensityGrid getDensityGrid() {
+            return mDensityGrid;
         }
 
-        return false;
+        //as of the last drained batch
+        TripStats getTripStats() {
+            return mTripTracker.stats();
+        }
+
+        ServiceMetrics.Snapshot getMetrics() {
+            return LocationUpdatesService.this.getMetrics();
+        }
+
+        //switches timing on or off for this run, see Utils.setCollectMetrics to keep it
+        void setMetricsEnabled(boolean enabled) {
+            mMetrics.setEnabled(enabled);
+        }
     }
 
 }
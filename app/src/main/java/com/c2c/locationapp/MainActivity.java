@@ -3,18 +3,15 @@ package com.c2c.locationapp;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.core.content.ContextCompat;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.location.Location;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.IBinder;
@@ -22,7 +19,7 @@ import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.util.Log;
 import android.widget.Button;
-import android.widget.Toast;
+import android.widget.TextView;
 
 import com.google.android.material.snackbar.Snackbar;
 
@@ -33,39 +30,79 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
     // for checking runtime permission
     private static final int REQUEST_PERMISSION_REQUEST_CODE = 34;
 
-    //broadcast receiver used to listen from broadcasts from service
-    private LocationUpdateReceiver mLocationUpdateReceiver;
-
     //reference to service used to get location updates
     private LocationUpdatesService mService = null;
 
-    //tracks bound state of service
-    private boolean mBound = false;
+    //binder of the service while bound, used to subscribe to fixes
+    private LocationUpdatesService.LocalBinder mBinder;
+
+    //fixes delivered on the main thread while resumed and bound, newest only
+    private FixSubscriptions.Subscription mSubscription;
+
+    //what the UI needs while visible, the service tightens its request to this only meanwhile
+    private static final SamplingProfile UI_PROFILE = new SamplingProfile(5_000, 1_000, 0f,
+            SamplingProfile.PRIORITY_HIGH_ACCURACY);
 
     //UI elements
     private Button mRequestLocationUpdatesButton;
     private Button mRemoveLocationUpdatesButton;
+    private TextView mLocationText;
+    private LiveTrackView mLiveTrackView;
+
+    //newest fix delivered, shown by the next frame
+    private final Fix mLastFix = new Fix();
+    private boolean mHasNewFix;
+
+    //only records the fix, the track view draws it and the text with the next vsync
+    private final FixSubscriptions.Listener mLocationListener = fix -> {
+        mLastFix.copyFrom(fix);
+        mHasNewFix = true;
+        mLiveTrackView.requestFrame();
+    };
+
+    //once per frame with a new fix, however many arrived
+    private final LiveTrackView.FrameListener mFrameListener = () -> {
+        LocationUpdatesService.LocalBinder binder = mBinder;
+        if (!mHasNewFix || binder == null) {
+            return;
+        }
+        mHasNewFix = false;
+        mLocationText.setText(Utils.getLocationText(mLastFix,
+                binder.getPlaceName(mLastFix.latitude, mLastFix.longitude), binder.getTripStats()));
+    };
+
+    //tracks bound state of service
+    private boolean mBound = false;
 
     //monitor state of the connection to the service
     private final ServiceConnection mServiceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
-            LocationUpdatesService.LocalBinder binder = (LocationUpdatesService.LocalBinder) iBinder;
-            mService = binder.getService();
+            mBinder = (LocationUpdatesService.LocalBinder) iBinder;
+            mService = mBinder.getService();
             mBound = true;
+            mLiveTrackView.setTrackBuffer(mBinder.getTrackBuffer());
+            if (mResumed) {
+                subscribe();
+            }
         }
 
         @Override
         public void onServiceDisconnected(ComponentName componentName) {
+            unsubscribe();
+            mLiveTrackView.setTrackBuffer(null);
             mService = null;
+            mBinder = null;
             mBound = false;
         }
     };
 
+    //between onResume and onPause
+    private boolean mResumed = false;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mLocationUpdateReceiver = new LocationUpdateReceiver();
         setContentView(R.layout.activity_main);
 
         if(Utils.requestingLocationUpdates(this)) {
@@ -83,6 +120,9 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
 
         mRequestLocationUpdatesButton = findViewById(R.id.request_location_update_button);
         mRemoveLocationUpdatesButton = findViewById(R.id.remove_location_updates_button);
+        mLocationText = findViewById(R.id.location_text);
+        mLiveTrackView = findViewById(R.id.live_track);
+        mLiveTrackView.setFrameListener(mFrameListener);
 
         mRequestLocationUpdatesButton.setOnClickListener(view -> {
             if(!checkPermissions()) {
@@ -111,23 +151,26 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
     @Override
     protected void onResume() {
         super.onResume();
-        LocalBroadcastManager.getInstance(this).registerReceiver(mLocationUpdateReceiver,
-                new IntentFilter(LocationUpdatesService.ACTION_BROADCAST));
+        mResumed = true;
+        subscribe();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        LocalBroadcastManager.getInstance(this).unregisterReceiver(mLocationUpdateReceiver);
+        mResumed = false;
+        unsubscribe();
     }
 
     @Override
     protected void onStop() {
+        unsubscribe();
         if (mBound) {
             //unbind from this service
             //if service in foreground mode, this signals to service that since activity is not in foreground,
             //service can promote itself to a foreground mode
             unbindService(mServiceConnection);
+            mBinder = null;
             mBound = false;
         }
         PreferenceManager.getDefaultSharedPreferences(this)
@@ -203,14 +246,18 @@ public class MainActivity extends AppCompatActivity implements SharedPreferences
         }
     }
 
-    private class LocationUpdateReceiver extends BroadcastReceiver {
+    //starts showing fixes if bound and resumed and not already subscribed
+    private void subscribe() {
+        if (mBinder != null && mSubscription == null) {
+            mSubscription = mBinder.subscribe(ContextCompat.getMainExecutor(this),
+                    FixSubscriptions.Conflation.LATEST_ONLY, UI_PROFILE, mLocationListener);
+        }
+    }
 
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            Location location = intent.getParcelableExtra(LocationUpdatesService.EXTRA_LOCATION);
-            if (location != null) {
-                Toast.makeText(MainActivity.this,  Utils.getLocationText(location), Toast.LENGTH_SHORT).show();
-            }
+    private void unsubscribe() {
+        if (mSubscription != null) {
+            mSubscription.close();
+            mSubscription = null;
         }
     }
 
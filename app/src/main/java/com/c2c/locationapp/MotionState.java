@@ -0,0 +1,21 @@
+package com.c2c.locationapp;
+
+//coarse movement classes, each with the sampling it deserves
+enum MotionState {
+
+    //parked on a desk: slow, cheap fixes, only woken by real displacement
+    STATIONARY(new SamplingProfile(120_000, 60_000, 25f,
+            SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY)),
+
+    //same as the fixed request the service used to make
+    WALKING(new SamplingProfile(10_000, 5_000, 0f, SamplingProfile.PRIORITY_HIGH_ACCURACY)),
+
+    //dense fixes for a moving vehicle
+    DRIVING(new SamplingProfile(2_000, 1_000, 0f, SamplingProfile.PRIORITY_HIGH_ACCURACY));
+
+    final SamplingProfile profile;
+
+    MotionState(SamplingProfile profile) {
+        this.profile = profile;
+    }
+}
@@ -0,0 +1,184 @@
+package com.c2c.locationapp;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//renders the foreground service notification
+//one builder and its PendingIntents are reused for every update, and updates requested while
+//a refresh is already pending are coalesced so a burst of fixes posts a single notify()
+final class NotificationRenderer {
+
+    private final Context mContext;
+    private final NotificationManager mNotificationManager;
+    private final Handler mHandler;
+    private final int mNotificationId;
+    private final ServiceMetrics mMetrics;
+
+    //the trip in progress is shown after the coordinates
+    private final TripTracker mTripTracker;
+
+    //the place name is shown before them once the geocoder has it cached
+    private final ReverseGeocoder mGeocoder;
+
+    private final NotificationCompat.Builder mBuilder;
+
+    //text is assembled in these and only turned into strings for the builder
+    private final LocationFormatter mFormatter = new LocationFormatter(Utils.COORDINATE_DECIMALS,
+            LocationFormatter.CoordinateStyle.DECIMAL);
+    private final StringBuilder mText = new StringBuilder(64);
+    private final StringBuilder mTitle = new StringBuilder(64);
+
+    //R.string.location_updated split around its time placeholder, so no String.format per update
+    private String mTitlePrefix;
+    private String mTitleSuffix;
+
+    private volatile long mMinRefreshIntervalMillis;
+
+    //tracked from startForeground/stopForeground instead of asking ActivityManager
+    private volatile boolean mForeground;
+
+    //latest location to show, rendered by the next refresh
+    private volatile Location mLocation;
+
+    private volatile long mLastRefreshUptime;
+    private final AtomicBoolean mRefreshScheduled = new AtomicBoolean();
+    private final Runnable mRefresh = this::refresh;
+
+    NotificationRenderer(Context context, Handler handler, String channelId, int notificationId,
+                         long minRefreshIntervalMillis, Intent stopIntent, ServiceMetrics metrics,
+                         TripTracker tripTracker, ReverseGeocoder geocoder) {
+        mContext = context;
+        mMetrics = metrics;
+        mTripTracker = tripTracker;
+        mGeocoder = geocoder;
+        mNotificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        mHandler = handler;
+        mNotificationId = notificationId;
+        mMinRefreshIntervalMillis = minRefreshIntervalMillis;
+        loadTitleTemplate();
+
+        //pending intent that leads to call onStartCommand() in the service
+        PendingIntent servicePendingIntent = PendingIntent.getService(context, 0, stopIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        //pending intent to launch activity
+        PendingIntent activityPendingIntent = PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class), 0);
+
+        mBuilder = new NotificationCompat.Builder(context)
+                .addAction(R.drawable.ic_launcher_foreground, context.getString(R.string.launch_activity),
+                        activityPendingIntent)
+                .addAction(R.drawable.ic_baseline_cancel_24, context.getString(R.string.remove_location_updates),
+                        servicePendingIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(Notification.PRIORITY_HIGH)
+                .setSmallIcon(R.mipmap.ic_launcher);
+
+        //setting channel ID for Android O
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mBuilder.setChannelId(channelId);
+        }
+    }
+
+    //picks up locale dependent text again, call after the configuration changed
+    synchronized void invalidate() {
+        loadTitleTemplate();
+        mFormatter.invalidate();
+    }
+
+    private void loadTitleTemplate() {
+        String template = mContext.getString(R.string.location_updated);
+        int placeholder = template.indexOf("%1$s");
+        mTitlePrefix = placeholder < 0 ? template : template.substring(0, placeholder);
+        mTitleSuffix = placeholder < 0 ? "" : template.substring(placeholder + 4);
+    }
+
+    //upper bound on how often an update is posted, bursts in between are merged
+    void setMinRefreshInterval(long minRefreshIntervalMillis) {
+        mMinRefreshIntervalMillis = minRefreshIntervalMillis;
+    }
+
+    void setForeground(boolean foreground) {
+        mForeground = foreground;
+        if (!foreground) {
+            mHandler.removeCallbacks(mRefresh);
+            mRefreshScheduled.set(false);
+        }
+    }
+
+    boolean isForeground() {
+        return mForeground;
+    }
+
+    //builds the notification for location right away, for startForeground()
+    Notification build(Location location) {
+        mLocation = location;
+        return render(location);
+    }
+
+    //asks for the notification to show location, may be called from any thread
+    void requestUpdate(Location location) {
+        mLocation = location;
+        if (!mForeground || !mRefreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = mLastRefreshUptime + mMinRefreshIntervalMillis - SystemClock.uptimeMillis();
+        mHandler.postDelayed(mRefresh, Math.max(0, delay));
+    }
+
+    private void refresh() {
+        mRefreshScheduled.set(false);
+        if (!mForeground) {
+            return;
+        }
+        boolean timed = mMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        mNotificationManager.notify(mNotificationId, render(mLocation));
+        if (timed) {
+            mMetrics.recordNotificationRender(System.nanoTime() - start);
+        }
+        mLastRefreshUptime = SystemClock.uptimeMillis();
+    }
+
+    //builder is shared between the handler thread and startForeground() callers
+    private synchronized Notification render(Location location) {
+        long now = System.currentTimeMillis();
+        mText.setLength(0);
+        if (location == null) {
+            mText.append(Utils.UNKNOWN_LOCATION_TEXT);
+        } else {
+            String place = mGeocoder.placeName(location.getLatitude(), location.getLongitude());
+            if (place != null) {
+                mText.append(place).append(Utils.TEXT_SEPARATOR);
+            }
+            mFormatter.appendCoordinates(mText, location.getLatitude(), location.getLongitude());
+        }
+        TripStats.Trip trip = mTripTracker.stats().current;
+        if (trip != null) {
+            trip.appendSummary(mText.append(Utils.TEXT_SEPARATOR));
+        }
+        mTitle.setLength(0);
+        mTitle.append(mTitlePrefix);
+        mFormatter.appendDateTime(mTitle, now).append(mTitleSuffix);
+
+        //the builder keeps what it is given, so it gets immutable copies
+        String text = mText.toString();
+        mBuilder.setContentText(text)
+                .setContentTitle(mTitle.toString())
+                .setTicker(text)
+                .setWhen(now);
+        return mBuilder.build();
+    }
+}
@@ -0,0 +1,132 @@
+package com.c2c.locationapp;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+//base for sources producing fixes on their own thread, paced by the fix timestamps
+//speedFactor 1 plays back in real time, 10 ten times faster, 0 as fast as possible.
+//fixes closer than the requested fastest interval are skipped and, like the provider,
+//fixes are grouped into one delivery per max wait window
+abstract class PacedLocationSource implements LocationSource {
+
+    private final String mName;
+    private final double mSpeedFactor;
+
+    private volatile SamplingProfile mProfile;
+    private volatile long mMaxWaitMillis;
+    private volatile boolean mRunning;
+    private volatile IOException mError;
+
+    private Thread mThread;
+    private Sink mSink;
+
+    PacedLocationSource(String name, double speedFactor) {
+        if (speedFactor < 0) {
+            throw new IllegalArgumentException("Bad speed factor " + speedFactor);
+        }
+        mName = name;
+        mSpeedFactor = speedFactor;
+    }
+
+    //source thread: fills out with the next fix in time order, returns false at the end of the track
+    abstract boolean next(Fix out) throws IOException;
+
+    //source thread: called once when delivery ends, for releasing files
+    void onFinished() {
+    }
+
+    @Override
+    public synchronized void start(SamplingProfile profile, long maxWaitMillis, Sink sink) {
+        mProfile = profile;
+        mMaxWaitMillis = maxWaitMillis;
+        if (mThread != null) {
+            return;
+        }
+        mSink = sink;
+        mRunning = true;
+        mThread = new Thread(this::run, mName);
+        mThread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        mRunning = false;
+        if (mThread == null) {
+            return;
+        }
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mThread = null;
+    }
+
+    //waits until every fix was delivered or the source was stopped, a finished source stays finished
+    void awaitFinished() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    //reading failure that ended delivery early, if any
+    IOException getError() {
+        return mError;
+    }
+
+    private void run() {
+        Sink sink = mSink;
+        Fix fix = new Fix();
+        long startNanos = System.nanoTime();
+        long firstTime = Long.MIN_VALUE;
+        long lastDelivered = Long.MIN_VALUE;
+        long batchStart = Long.MIN_VALUE;
+        boolean batchOpen = false;
+        try {
+            while (mRunning && next(fix)) {
+                SamplingProfile profile = mProfile;
+                if (firstTime == Long.MIN_VALUE) {
+                    firstTime = fix.time;
+                }
+                if (lastDelivered != Long.MIN_VALUE
+                        && fix.time - lastDelivered < profile.fastestIntervalMillis) {
+                    continue;
+                }
+                if (mSpeedFactor > 0) {
+                    long due = startNanos + (long) ((fix.time - firstTime) * 1_000_000L / mSpeedFactor);
+                    long wait;
+                    while (mRunning && (wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(this, wait);
+                    }
+                    if (!mRunning) {
+                        break;
+                    }
+                }
+
+                if (!batchOpen) {
+                    batchStart = fix.time;
+                    batchOpen = true;
+                }
+                sink.onFix(fix);
+                lastDelivered = fix.time;
+                long maxWait = mMaxWaitMillis;
+                if (maxWait <= profile.intervalMillis || fix.time - batchStart >= maxWait) {
+                    sink.onBatchEnd();
+                    batchOpen = false;
+                }
+            }
+        } catch (IOException e) {
+            mError = e;
+        } finally {
+            if (batchOpen) {
+                sink.onBatchEnd();
+            }
+            onFinished();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.c2c.locationapp;
+
+import java.io.File;
+import java.io.IOException;
+
+//plays a recorded CSV or GPX track back through the fix path, in real time or N times faster
+final class ReplayLocationSource extends PacedLocationSource {
+
+    private final File mFile;
+    private TrackReader mReader;
+
+    ReplayLocationSource(File file, double speedFactor) {
+        super("replay-source", speedFactor);
+        mFile = file;
+    }
+
+    @Override
+    boolean next(Fix out) throws IOException {
+        if (mReader == null) {
+            mReader = TrackReader.open(mFile);
+        }
+        return mReader.next(out);
+    }
+
+    @Override
+    void onFinished() {
+        if (mReader == null) {
+            return;
+        }
+        try {
+            mReader.close();
+        } catch (IOException ignored) {
+            //nothing left to read from it
+        }
+        mReader = null;
+    }
+}
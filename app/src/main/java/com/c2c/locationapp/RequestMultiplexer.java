@@ -0,0 +1,109 @@
+package com.c2c.locationapp;
+
+import java.util.Arrays;
+
+//merges what every client asks of the provider into the one request the service makes.
+//each client holds a Demand with its own SamplingProfile; the request is the strictest of all
+//open demands and is tightened or relaxed as demands come, change and go. the listener hears
+//about every change of the merged request, on the thread that caused it
+final class RequestMultiplexer {
+
+    interface Listener {
+        //request is null once the last demand closed
+        void onRequestChanged(SamplingProfile request);
+    }
+
+    private static final Demand[] NONE = new Demand[0];
+
+    private final Listener mListener;
+
+    //guarded by this
+    private Demand[] mDemands = NONE;
+
+    private volatile SamplingProfile mRequest;
+
+    RequestMultiplexer(Listener listener) {
+        mListener = listener;
+    }
+
+    Demand add(SamplingProfile profile) {
+        Demand demand = new Demand(profile);
+        synchronized (this) {
+            mDemands = Arrays.copyOf(mDemands, mDemands.length + 1);
+            mDemands[mDemands.length - 1] = demand;
+            merge();
+        }
+        return demand;
+    }
+
+    //strictest open demand, null if there is none
+    SamplingProfile request() {
+        return mRequest;
+    }
+
+    synchronized int size() {
+        return mDemands.length;
+    }
+
+    private synchronized void remove(Demand demand) {
+        for (int i = 0; i < mDemands.length; i++) {
+            if (mDemands[i] == demand) {
+                Demand[] shrunk = new Demand[mDemands.length - 1];
+                System.arraycopy(mDemands, 0, shrunk, 0, i);
+                System.arraycopy(mDemands, i + 1, shrunk, i, mDemands.length - i - 1);
+                mDemands = shrunk.length == 0 ? NONE : shrunk;
+                merge();
+                return;
+            }
+        }
+    }
+
+    //called with the lock held, so listeners see changes in order
+    private void merge() {
+        SamplingProfile merged = null;
+        for (Demand demand : mDemands) {
+            merged = SamplingProfile.strictest(merged, demand.mProfile);
+        }
+        SamplingProfile previous = mRequest;
+        if (merged == null ? previous != null : !merged.equals(previous)) {
+            mRequest = merged;
+            mListener.onRequestChanged(merged);
+        }
+    }
+
+    //one client's requirement, open until closed
+    final class Demand {
+        //guarded by the multiplexer
+        private SamplingProfile mProfile;
+        private boolean mClosed;
+
+        private Demand(SamplingProfile profile) {
+            mProfile = profile;
+        }
+
+        //replaces this client's requirement, no-op once closed
+        void update(SamplingProfile profile) {
+            synchronized (RequestMultiplexer.this) {
+                if (!mClosed && !profile.equals(mProfile)) {
+                    mProfile = profile;
+                    merge();
+                }
+            }
+        }
+
+        void close() {
+            synchronized (RequestMultiplexer.this) {
+                if (!mClosed) {
+                    mClosed = true;
+                    remove(this);
+                }
+            }
+        }
+
+        SamplingProfile profile() {
+            synchronized (RequestMultiplexer.this) {
+                return mProfile;
+            }
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package com.c2c.locationapp;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//offline place names from a memory-mapped dataset of places sorted by geohash, no network and
+//no platform Geocoder. names are looked up per geohash cell of CACHE_BITS (about 1.2 x 0.6 km)
+//and kept in a bounded LRU cache, so fixes in an area already seen cost one hash lookup.
+//placeName() only ever reads the cache; a miss queues the cell for a single background thread
+//and returns null, the listener is called once the name is known. the dataset is opened by that
+//thread on the first miss, installing it first if the file is missing and there is an installer;
+//a missing or unreadable dataset turns lookups off until the retry interval has passed
+final class ReverseGeocoder implements Closeable {
+
+    //header: magic, version, entry size, entry count, reserved
+    private static final int MAGIC = 0x31434c50; // "PLC1"
+    private static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    //entry: geohash (8), latitude (4), longitude (4), name offset (4), name length (4);
+    //names follow the entries as UTF-8
+    static final int ENTRY_SIZE = 24;
+
+    //geohash of an entry, 30 bits each of longitude and latitude interleaved starting with
+    //longitude as in the text form, so 5 bits per geohash character
+    static final int GEOHASH_BITS = 60;
+
+    //cache key, 6 geohash characters
+    static final int CACHE_BITS = 30;
+
+    //cells searched around a point, 5 then 4 geohash characters (about 4.9 and 39 km wide)
+    private static final int[] SEARCH_BITS = {25, 20};
+
+    //nearest places farther than this are not the place the fix is in
+    static final double MAX_DISTANCE_METERS = 30_000;
+
+    static final int DEFAULT_CACHE_CAPACITY = 256;
+
+    //after a failed open, how long lookups stay off before the next miss tries again
+    static final long DEFAULT_RETRY_MILLIS = 10 * 60 * 1000;
+
+    //cached for cells without a place in range, so they are not searched again
+    private static final String NO_PLACE = "";
+
+    interface Listener {
+        //a name was resolved for a cell asked about, on the geocoder thread
+        void onPlaceResolved();
+    }
+
+    interface Installer {
+        //writes a dataset to file, on the geocoder thread when the dataset is missing
+        void install(File file) throws IOException;
+    }
+
+    private final File mFile;
+    private final Installer mInstaller;
+    private final long mRetryNanos;
+    private final Listener mListener;
+    private final LruCache mCache;
+    private final ExecutorService mExecutor;
+
+    //the mapped dataset, read only once opened; mEntries is written last and is null until then
+    private ByteBuffer mNames;
+    private int mCount;
+    private volatile ByteBuffer mEntries;
+    private volatile boolean mUnavailable;
+    private volatile long mFailedNanos;
+
+    //newest cell a miss asked for; older misses queued meanwhile are skipped, the fix moved on
+    private volatile long mRequestedCell;
+    private final AtomicBoolean mResolveQueued = new AtomicBoolean();
+    private final Runnable mResolve = this::resolveRequested;
+
+    ReverseGeocoder(File file, int cacheCapacity, Listener listener) {
+        this(file, null, DEFAULT_RETRY_MILLIS, cacheCapacity, listener);
+    }
+
+    //installer may be null, the dataset is then only read if it is there
+    ReverseGeocoder(File file, Installer installer, long retryMillis, int cacheCapacity,
+                    Listener listener) {
+        mFile = file;
+        mInstaller = installer;
+        mRetryNanos = TimeUnit.MILLISECONDS.toNanos(retryMillis);
+        mListener = listener;
+        mCache = new LruCache(cacheCapacity);
+        mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), runnable -> {
+            Thread thread = new Thread(runnable, "reverse-geocoder");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    //name of the place latitude, longitude is in, null if not known yet or there is none;
+    //any thread, never blocks on the dataset
+    String placeName(double latitude, double longitude) {
+        if (mUnavailable && !retryDue()) {
+            return null;
+        }
+        long cell = geohash(latitude, longitude) >>> (GEOHASH_BITS - CACHE_BITS);
+        String name;
+        synchronized (mCache) {
+            name = mCache.get(cell);
+        }
+        if (name == null) {
+            mRequestedCell = cell;
+            if (mResolveQueued.compareAndSet(false, true)) {
+                mExecutor.execute(mResolve);
+            }
+            return null;
+        }
+        return name == NO_PLACE ? null : name;
+    }
+
+    //the mapping stays until the geocoder is garbage collected, there is no unmapping it
+    @Override
+    public void close() {
+        mExecutor.shutdownNow();
+    }
+
+    //name of the nearest place, opening the dataset if needed; blocks, for the geocoder thread,
+    //tools and tests. null if there is none in range or no dataset
+    String resolve(double latitude, double longitude) {
+        return ensureOpen() ? nearest(latitude, longitude) : null;
+    }
+
+    //geocoder thread. only the newest requested cell is resolved, a miss after the flag was
+    //cleared queues another run
+    private void resolveRequested() {
+        mResolveQueued.set(false);
+        long cell = mRequestedCell;
+        synchronized (mCache) {
+            if (mCache.get(cell) != null) {
+                return;
+            }
+        }
+        String name = resolve(cellLatitude(cell), cellLongitude(cell));
+        if (mUnavailable) {
+            return;
+        }
+        synchronized (mCache) {
+            mCache.put(cell, name == null ? NO_PLACE : name);
+        }
+        if (name != null) {
+            mListener.onPlaceResolved();
+        }
+    }
+
+    private synchronized boolean ensureOpen() {
+        if (mEntries != null) {
+            return true;
+        }
+        if (mUnavailable && !retryDue()) {
+            return false;
+        }
+        try {
+            open();
+            mUnavailable = false;
+            return true;
+        } catch (IOException e) {
+            mFailedNanos = System.nanoTime();
+            mUnavailable = true;
+            return false;
+        }
+    }
+
+    private boolean retryDue() {
+        return System.nanoTime() - mFailedNanos >= mRetryNanos;
+    }
+
+    private void open() throws IOException {
+        if (!mFile.isFile()) {
+            if (mInstaller == null) {
+                throw new IOException("No place dataset at " + mFile);
+            }
+            //written aside and renamed, a failed install leaves no partial dataset behind
+            File partial = new File(mFile.getPath() + ".partial");
+            try {
+                mInstaller.install(partial);
+                if (!partial.renameTo(mFile)) {
+                    throw new IOException("Could not install place dataset at " + mFile);
+                }
+            } finally {
+                partial.delete();
+            }
+        }
+        try (FileChannel channel = new RandomAccessFile(mFile, "r").getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                    || buffer.getShort(4) != VERSION || buffer.getShort(6) != ENTRY_SIZE) {
+                throw new IOException("Not a place dataset: " + mFile);
+            }
+            int count = buffer.getInt(8);
+            long entriesEnd = HEADER_SIZE + (long) count * ENTRY_SIZE;
+            if (count < 0 || entriesEnd > buffer.limit()) {
+                throw new IOException("Truncated place dataset: " + mFile);
+            }
+            buffer.limit((int) entriesEnd).position(HEADER_SIZE);
+            ByteBuffer entries = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(buffer.capacity()).position((int) entriesEnd);
+            mNames = buffer.slice();
+            mCount = count;
+            mEntries = entries;
+        }
+    }
+
+    //nearest place within MAX_DISTANCE_METERS, searching the 3 x 3 cells around the point at
+    //the finest level where what was found is closer than anything outside them could be; the
+    //coarsest level takes what it finds. absolute reads only, so any thread
+    private String nearest(double latitude, double longitude) {
+        ByteBuffer entries = mEntries;
+        long lonIndex = lonIndex(longitude);
+        long latIndex = latIndex(latitude);
+        for (int level = 0; level < SEARCH_BITS.length; level++) {
+            int bits = SEARCH_BITS[level];
+            int lonBits = (bits + 1) / 2;
+            int latBits = bits / 2;
+            long lonCell = lonIndex >>> (GEOHASH_BITS / 2 - lonBits);
+            long latCell = latIndex >>> (GEOHASH_BITS / 2 - latBits);
+            int best = -1;
+            double bestDistance = MAX_DISTANCE_METERS;
+            for (int dLat = -1; dLat <= 1; dLat++) {
+                long lat = latCell + dLat;
+                if (lat < 0 || lat >= 1L << latBits) {
+                    continue;
+                }
+                for (int dLon = -1; dLon <= 1; dLon++) {
+                    long lon = (lonCell + dLon) & ((1L << lonBits) - 1);
+                    long from = interleave(lon, lat, bits) << (GEOHASH_BITS - bits);
+                    long to = from + (1L << (GEOHASH_BITS - bits));
+                    for (int i = lowerBound(entries, from); i < mCount; i++) {
+                        int entry = i * ENTRY_SIZE;
+                        if (entries.getLong(entry) >= to) {
+                            break;
+                        }
+                        double distance = GeoMath.distance(latitude, longitude,
+                                entries.getFloat(entry + 8), entries.getFloat(entry + 12));
+                        if (distance < bestDistance) {
+                            bestDistance = distance;
+                            best = entry;
+                        }
+                    }
+                }
+            }
+            if (best >= 0 && (level == SEARCH_BITS.length - 1
+                    || bestDistance <= reach(latitude, lonBits, latBits))) {
+                return name(entries, best);
+            }
+        }
+        return null;
+    }
+
+    //meters from a point to the nearest edge of the 3 x 3 cells around it, at least one cell
+    private static double reach(double latitude, int lonBits, int latBits) {
+        double cellLatitude = 180.0 / (1L << latBits);
+        double cellLongitude = 360.0 / (1L << lonBits);
+        double poleward = Math.min(90, Math.abs(latitude) + 2 * cellLatitude);
+        return Math.min(cellLatitude * GeoMath.metersPerDegreeLatitude(),
+                cellLongitude * GeoMath.metersPerDegreeLongitude(poleward));
+    }
+
+    //first entry with a geohash not below code
+    private int lowerBound(ByteBuffer entries, long code) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries.getLong(mid * ENTRY_SIZE) < code) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private String name(ByteBuffer entries, int entry) {
+        int offset = entries.getInt(entry + 16);
+        int length = entries.getInt(entry + 20);
+        byte[] bytes = new byte[length];
+        ByteBuffer names = mNames.duplicate();
+        names.position(offset);
+        names.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //writes a dataset for the places given, sorted by geohash; for tools and tests
+    static void writeDataset(File file, double[] latitudes, double[] longitudes, String[] names)
+            throws IOException {
+        int count = names.length;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = geohash(latitudes[i], longitudes[i]);
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        byte[][] encoded = new byte[count][];
+        int namesSize = 0;
+        for (int i = 0; i < count; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            namesSize += encoded[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * ENTRY_SIZE + namesSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) ENTRY_SIZE).putInt(count).putInt(0);
+        int nameOffset = 0;
+        for (int i : order) {
+            buffer.putLong(keys[i]).putFloat((float) latitudes[i]).putFloat((float) longitudes[i])
+                    .putInt(nameOffset).putInt(encoded[i].length);
+            nameOffset += encoded[i].length;
+        }
+        for (int i : order) {
+            buffer.put(encoded[i]);
+        }
+        buffer.flip();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    //writes a dataset for places read from text, one "latitude,longitude,name" per line, the
+    //name being the rest of the line; blank lines and lines starting with # are skipped.
+    //returns the number of places
+    static int importPlaces(Reader text, File file) throws IOException {
+        List<String> names = new ArrayList<>();
+        double[] latitudes = new double[64];
+        double[] longitudes = new double[64];
+        BufferedReader reader = new BufferedReader(text);
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int first = line.indexOf(',');
+            int second = first < 0 ? -1 : line.indexOf(',', first + 1);
+            if (second < 0 || second == line.length() - 1) {
+                throw new IOException("Bad place at line " + lineNumber + ": " + line);
+            }
+            double latitude;
+            double longitude;
+            try {
+                latitude = Double.parseDouble(line.substring(0, first));
+                longitude = Double.parseDouble(line.substring(first + 1, second));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad place at line " + lineNumber + ": " + line);
+            }
+            if (!(Math.abs(latitude) <= 90) || !(Math.abs(longitude) <= 180)) {
+                throw new IOException("Bad place at line " + lineNumber + ": " + line);
+            }
+            int i = names.size();
+            if (i == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, i * 2);
+                longitudes = Arrays.copyOf(longitudes, i * 2);
+            }
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+            names.add(line.substring(second + 1).trim());
+        }
+        int count = names.size();
+        writeDataset(file, Arrays.copyOf(latitudes, count), Arrays.copyOf(longitudes, count),
+                names.toArray(new String[0]));
+        return count;
+    }
+
+    //GEOHASH_BITS of geohash, the text form's bits
+    static long geohash(double latitude, double longitude) {
+        return interleave(lonIndex(longitude), latIndex(latitude), GEOHASH_BITS);
+    }
+
+    private static long lonIndex(double longitude) {
+        return index((longitude + 180) / 360);
+    }
+
+    private static long latIndex(double latitude) {
+        return index((latitude + 90) / 180);
+    }
+
+    private static long index(double fraction) {
+        long max = (1L << (GEOHASH_BITS / 2)) - 1;
+        return Math.max(0, Math.min(max, (long) (fraction * (max + 1))));
+    }
+
+    //bits of lon and lat alternating from lon's highest bit, lon has the extra bit of an odd count
+    private static long interleave(long lon, long lat, int bits) {
+        int lonBits = (bits + 1) / 2;
+        int latBits = bits / 2;
+        long code = 0;
+        for (int i = 0; i < bits; i++) {
+            long bit = (i & 1) == 0 ? lon >>> (lonBits - 1 - i / 2) : lat >>> (latBits - 1 - i / 2);
+            code = code << 1 | (bit & 1);
+        }
+        return code;
+    }
+
+    //center of a CACHE_BITS cell
+    private static double cellLatitude(long cell) {
+        long lat = 0;
+        for (int i = CACHE_BITS - 2; i >= 0; i -= 2) {
+            lat = lat << 1 | (cell >>> i & 1);
+        }
+        return (lat + 0.5) / (1L << (CACHE_BITS / 2)) * 180 - 90;
+    }
+
+    private static double cellLongitude(long cell) {
+        long lon = 0;
+        for (int i = CACHE_BITS - 1; i >= 0; i -= 2) {
+            lon = lon << 1 | (cell >>> i & 1);
+        }
+        return (lon + 0.5) / (1L << ((CACHE_BITS + 1) / 2)) * 360 - 180;
+    }
+
+    //least recently used cache from long keys to names in flat arrays: chained hash buckets and
+    //a doubly linked recency list by entry index, no boxing and no allocation once full.
+    //not thread safe
+    static final class LruCache {
+        private final long[] mKeys;
+        private final String[] mValues;
+        private final int[] mBuckets;
+        private final int[] mChain;
+        private final int[] mNewer;
+        private final int[] mOlder;
+        private int mSize;
+        private int mNewest = -1;
+        private int mOldest = -1;
+
+        LruCache(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Bad capacity " + capacity);
+            }
+            mKeys = new long[capacity];
+            mValues = new String[capacity];
+            mChain = new int[capacity];
+            mNewer = new int[capacity];
+            mOlder = new int[capacity];
+            int buckets = Integer.highestOneBit(capacity * 2 - 1) << 1;
+            mBuckets = new int[buckets];
+            Arrays.fill(mBuckets, -1);
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        //value for key, which becomes the most recently used; null if not cached
+        String get(long key) {
+            int entry = find(key);
+            if (entry < 0) {
+                return null;
+            }
+            touch(entry);
+            return mValues[entry];
+        }
+
+        //caches value for key, evicting the least recently used entry if full
+        void put(long key, String value) {
+            int entry = find(key);
+            if (entry < 0) {
+                if (mSize < mKeys.length) {
+                    entry = mSize++;
+                } else {
+                    entry = mOldest;
+                    unlinkBucket(entry);
+                    unlinkRecency(entry);
+                }
+                mKeys[entry] = key;
+                int bucket = bucket(key);
+                mChain[entry] = mBuckets[bucket];
+                mBuckets[bucket] = entry;
+                linkNewest(entry);
+            } else {
+                touch(entry);
+            }
+            mValues[entry] = value;
+        }
+
+        private int find(long key) {
+            for (int entry = mBuckets[bucket(key)]; entry >= 0; entry = mChain[entry]) {
+                if (mKeys[entry] == key) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        private int bucket(long key) {
+            return (int) (key * 0x9E3779B97F4A7C15L >>> 32) & (mBuckets.length - 1);
+        }
+
+        private void touch(int entry) {
+            if (entry != mNewest) {
+                unlinkRecency(entry);
+                linkNewest(entry);
+            }
+        }
+
+        private void unlinkBucket(int entry) {
+            int bucket = bucket(mKeys[entry]);
+            if (mBuckets[bucket] == entry) {
+                mBuckets[bucket] = mChain[entry];
+                return;
+            }
+            int previous = mBuckets[bucket];
+            while (mChain[previous] != entry) {
+                previous = mChain[previous];
+            }
+            mChain[previous] = mChain[entry];
+        }
+
+        private void unlinkRecency(int entry) {
+            int newer = mNewer[entry];
+            int older = mOlder[entry];
+            if (newer >= 0) {
+                mOlder[newer] = older;
+            } else {
+                mNewest = older;
+            }
+            if (older >= 0) {
+                mNewer[older] = newer;
+            } else {
+                mOldest = newer;
+            }
+        }
+
+        private void linkNewest(int entry) {
+            mNewer[entry] = -1;
+            mOlder[entry] = mNewest;
+            if (mNewest >= 0) {
+                mNewer[mNewest] = entry;
+            }
+            mNewest = entry;
+            if (mOldest < 0) {
+                mOldest = entry;
+            }
+        }
+    }
+}
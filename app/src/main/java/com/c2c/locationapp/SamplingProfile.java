@@ -0,0 +1,66 @@
+package com.c2c.locationapp;
+
+//location request parameters for one sampling mode, kept free of Play Services types
+//so the sampling logic runs on a plain JVM
+final class SamplingProfile {
+
+    //same values as LocationRequest.PRIORITY_*
+    static final int PRIORITY_HIGH_ACCURACY = 100;
+    static final int PRIORITY_BALANCED_POWER_ACCURACY = 102;
+    static final int PRIORITY_LOW_POWER = 104;
+    static final int PRIORITY_NO_POWER = 105;
+
+    final long intervalMillis;
+    final long fastestIntervalMillis;
+    final float smallestDisplacementMeters;
+    final int priority;
+
+    SamplingProfile(long intervalMillis, long fastestIntervalMillis,
+                    float smallestDisplacementMeters, int priority) {
+        this.intervalMillis = intervalMillis;
+        this.fastestIntervalMillis = fastestIntervalMillis;
+        this.smallestDisplacementMeters = smallestDisplacementMeters;
+        this.priority = priority;
+    }
+
+    //request satisfying both, shorter intervals, smaller displacement and the more accurate
+    //priority (lower PRIORITY_* value); either may be null
+    static SamplingProfile strictest(SamplingProfile a, SamplingProfile b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return new SamplingProfile(Math.min(a.intervalMillis, b.intervalMillis),
+                Math.min(a.fastestIntervalMillis, b.fastestIntervalMillis),
+                Math.min(a.smallestDisplacementMeters, b.smallestDisplacementMeters),
+                Math.min(a.priority, b.priority));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SamplingProfile)) {
+            return false;
+        }
+        SamplingProfile other = (SamplingProfile) o;
+        return intervalMillis == other.intervalMillis
+                && fastestIntervalMillis == other.fastestIntervalMillis
+                && Float.compare(smallestDisplacementMeters, other.smallestDisplacementMeters) == 0
+                && priority == other.priority;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = (int) (intervalMillis ^ (intervalMillis >>> 32));
+        h = 31 * h + (int) (fastestIntervalMillis ^ (fastestIntervalMillis >>> 32));
+        h = 31 * h + Float.floatToIntBits(smallestDisplacementMeters);
+        return 31 * h + priority;
+    }
+
+    @Override
+    public String toString() {
+        return "SamplingProfile(" + intervalMillis + "ms, fastest " + fastestIntervalMillis
+                + "ms, " + smallestDisplacementMeters + "m, priority " + priority + ")";
+    }
+}
@@ -0,0 +1,218 @@
+package com.c2c.locationapp;
+
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//latency and throughput recorders for the service's hot paths, shown by dumpsys and the binder.
+//recording sites check isEnabled() first, so while disabled a fix costs one volatile read per
+//site and nothing is timed. recorders never lock or allocate and may be called from any thread,
+//except onFixReceived which expects the single thread the location source delivers on
+final class ServiceMetrics {
+
+    //complete minutes fixesPerMinute averages over
+    static final int RATE_MINUTES = 15;
+
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final int MINUTE_SLOTS = 16;
+
+    private final FixQualityFilter.Clock mClock;
+    private volatile boolean mEnabled;
+
+    //fix time stamp to the fix reaching the pipeline, once per fix
+    private final LatencyHistogram mDeliveryLatency = new LatencyHistogram();
+    //fix time stamp to a subscriber's listener being called, once per subscriber and fix. adds
+    //the wait for the subscriber's executor and conflation on top of mDeliveryLatency
+    private final LatencyHistogram mDispatchLatency = new LatencyHistogram();
+    //one fix through every pipeline stage
+    private final LatencyHistogram mPipelineTime = new LatencyHistogram();
+    //building and posting one notification update
+    private final LatencyHistogram mNotificationRender = new LatencyHistogram();
+
+    private final StripedCounter mFixesReceived = new StripedCounter();
+    private final StripedCounter mFixesDelivered = new StripedCounter();
+
+    //fixes received per minute of the elapsed realtime clock, slot is minute % MINUTE_SLOTS
+    private final AtomicLongArray mMinuteCounts = new AtomicLongArray(MINUTE_SLOTS);
+    private final AtomicLongArray mMinuteStamps = new AtomicLongArray(MINUTE_SLOTS);
+    private volatile long mFirstMinute = -1;
+
+    //clock fixes are stamped with, SystemClock.elapsedRealtimeNanos on the device
+    ServiceMetrics(FixQualityFilter.Clock clock) {
+        mClock = clock;
+        for (int i = 0; i < MINUTE_SLOTS; i++) {
+            mMinuteStamps.set(i, -1);
+        }
+    }
+
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    //recorded values are kept while disabled, recording picks up where it stopped
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    //a fix handed over by the location source
+    void onFixReceived(Fix fix) {
+        mFixesReceived.increment();
+        //fixes from files or tests carry no elapsed realtime
+        if (fix.elapsedRealtimeNanos != 0) {
+            mDeliveryLatency.record(mClock.elapsedRealtimeNanos() - fix.elapsedRealtimeNanos);
+        }
+        long minute = mClock.elapsedRealtimeNanos() / NANOS_PER_MINUTE;
+        if (mFirstMinute < 0) {
+            mFirstMinute = minute;
+        }
+        int slot = (int) (minute % MINUTE_SLOTS);
+        if (mMinuteStamps.get(slot) != minute) {
+            mMinuteCounts.set(slot, 0);
+            mMinuteStamps.set(slot, minute);
+        }
+        mMinuteCounts.incrementAndGet(slot);
+    }
+
+    //a fix about to be handed to a subscriber's listener
+    void onFixDelivered(Fix fix) {
+        mFixesDelivered.increment();
+        if (fix.elapsedRealtimeNanos != 0) {
+            mDispatchLatency.record(mClock.elapsedRealtimeNanos() - fix.elapsedRealtimeNanos);
+        }
+    }
+
+    void recordPipelineTime(long nanos) {
+        mPipelineTime.record(nanos);
+    }
+
+    void recordNotificationRender(long nanos) {
+        mNotificationRender.record(nanos);
+    }
+
+    //copies everything recorded so far; counts are kept elsewhere (drops, filter rejects) and
+    //shown along in the order given
+    Snapshot snapshot(Map<String, Long> counts) {
+        long minute = mClock.elapsedRealtimeNanos() / NANOS_PER_MINUTE;
+        long firstMinute = mFirstMinute;
+        long lastMinute = 0;
+        long window = 0;
+        int minutes = firstMinute < 0 ? 0 : (int) Math.min(RATE_MINUTES, minute - firstMinute);
+        for (int i = 1; i <= minutes; i++) {
+            long fixes = fixesIn(minute - i);
+            if (i == 1) {
+                lastMinute = fixes;
+            }
+            window += fixes;
+        }
+        return new Snapshot(mEnabled, mFixesReceived.sum(), mFixesDelivered.sum(), lastMinute,
+                minutes == 0 ? 0 : (double) window / minutes, mDeliveryLatency.snapshot(),
+                mDispatchLatency.snapshot(), mPipelineTime.snapshot(), mNotificationRender.snapshot(), counts);
+    }
+
+    private long fixesIn(long minute) {
+        int slot = (int) (minute % MINUTE_SLOTS);
+        long count = mMinuteCounts.get(slot);
+        return mMinuteStamps.get(slot) == minute ? count : 0;
+    }
+
+    //immutable copy of the metrics at one point in time
+    static final class Snapshot {
+        private final boolean mEnabled;
+        private final long mFixesReceived;
+        private final long mFixesDelivered;
+        private final long mFixesLastMinute;
+        private final double mFixesPerMinute;
+        private final LatencyHistogram.Snapshot mDeliveryLatency;
+        private final LatencyHistogram.Snapshot mDispatchLatency;
+        private final LatencyHistogram.Snapshot mPipelineTime;
+        private final LatencyHistogram.Snapshot mNotificationRender;
+        private final Map<String, Long> mCounts;
+
+        private Snapshot(boolean enabled, long fixesReceived, long fixesDelivered,
+                         long fixesLastMinute, double fixesPerMinute,
+                         LatencyHistogram.Snapshot deliveryLatency,
+                         LatencyHistogram.Snapshot dispatchLatency,
+                         LatencyHistogram.Snapshot pipelineTime,
+                         LatencyHistogram.Snapshot notificationRender, Map<String, Long> counts) {
+            mEnabled = enabled;
+            mFixesReceived = fixesReceived;
+            mFixesDelivered = fixesDelivered;
+            mFixesLastMinute = fixesLastMinute;
+            mFixesPerMinute = fixesPerMinute;
+            mDeliveryLatency = deliveryLatency;
+            mDispatchLatency = dispatchLatency;
+            mPipelineTime = pipelineTime;
+            mNotificationRender = notificationRender;
+            mCounts = Collections.unmodifiableMap(new LinkedHashMap<>(counts));
+        }
+
+        boolean isEnabled() {
+            return mEnabled;
+        }
+
+        long fixesReceived() {
+            return mFixesReceived;
+        }
+
+        long fixesDelivered() {
+            return mFixesDelivered;
+        }
+
+        //fixes received in the last complete minute
+        long fixesLastMinute() {
+            return mFixesLastMinute;
+        }
+
+        //average over up to RATE_MINUTES complete minutes since recording started
+        double fixesPerMinute() {
+            return mFixesPerMinute;
+        }
+
+        LatencyHistogram.Snapshot deliveryLatency() {
+            return mDeliveryLatency;
+        }
+
+        LatencyHistogram.Snapshot dispatchLatency() {
+            return mDispatchLatency;
+        }
+
+        LatencyHistogram.Snapshot pipelineTime() {
+            return mPipelineTime;
+        }
+
+        LatencyHistogram.Snapshot notificationRender() {
+            return mNotificationRender;
+        }
+
+        //dropped and filtered fixes by where it happened
+        Map<String, Long> counts() {
+            return mCounts;
+        }
+
+        void print(PrintWriter writer) {
+            StringBuilder line = new StringBuilder(160);
+            writer.println("Metrics " + (mEnabled ? "enabled" : "disabled"));
+            line.append("  fixes received=").append(mFixesReceived)
+                    .append(" delivered=").append(mFixesDelivered)
+                    .append(" last minute=").append(mFixesLastMinute)
+                    .append(" per minute=").append(Math.round(mFixesPerMinute * 10) / 10.0);
+            writer.println(line);
+            print(writer, line, "delivery latency", mDeliveryLatency);
+            print(writer, line, "subscriber dispatch", mDispatchLatency);
+            print(writer, line, "pipeline per fix", mPipelineTime);
+            print(writer, line, "notification render", mNotificationRender);
+            for (Map.Entry<String, Long> count : mCounts.entrySet()) {
+                writer.println("  " + count.getKey() + "=" + count.getValue());
+            }
+        }
+
+        private static void print(PrintWriter writer, StringBuilder line, String name,
+                                  LatencyHistogram.Snapshot histogram) {
+            line.setLength(0);
+            line.append("  ").append(name).append(": ");
+            writer.println(histogram.appendTo(line));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.c2c.locationapp;
+
+//drops fixes not newer than the last accepted one, batches may repeat an already delivered fix
+final class StaleFixFilter implements FixPipeline.Stage {
+
+    private long mLastTime = Long.MIN_VALUE;
+
+    //written by the pipeline thread only
+    private volatile long mDropped;
+
+    @Override
+    public boolean onFix(Fix fix) {
+        if (fix.time <= mLastTime) {
+            mDropped++;
+            return false;
+        }
+        mLastTime = fix.time;
+        return true;
+    }
+
+    long dropped() {
+        return mDropped;
+    }
+}
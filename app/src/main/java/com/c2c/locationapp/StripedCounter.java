@@ -0,0 +1,46 @@
+package com.c2c.locationapp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//event counter for several writer threads, each thread adds to its own cache line so writers
+//don't contend, reading sums the stripes. LongAdder does the same but needs API 24
+final class StripedCounter {
+
+    //longs per stripe, 64 bytes apart so two stripes never share a cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray mCells;
+    private final int mMask;
+
+    StripedCounter() {
+        int stripes = 1;
+        int cpus = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        while (stripes < cpus * 2) {
+            stripes <<= 1;
+        }
+        mMask = stripes - 1;
+        mCells = new AtomicLongArray(stripes * PADDING);
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        mCells.getAndAdd(stripe() * PADDING, delta);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < mCells.length(); i += PADDING) {
+            sum += mCells.get(i);
+        }
+        return sum;
+    }
+
+    //fixed per thread, spread so consecutive thread ids land apart
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id * 0x9E3779B97F4A7C15L >>> 40) & mMask;
+    }
+}
@@ -0,0 +1,90 @@
+package com.c2c.locationapp;
+
+import java.util.Random;
+
+//generates a plausible route at a fixed rate: heading drifts slowly, positions carry gaussian
+//noise and now and then an outlier jumps far off while still claiming good accuracy.
+//deterministic for a given seed
+final class SyntheticLocationSource extends PacedLocationSource {
+
+    private final double mRateHz;
+    private final long mCount;
+    private final Random mRandom;
+
+    private double mSpeedMetersPerSecond = 1.4;
+    private double mNoiseMeters = 5;
+    private double mOutlierProbability;
+    private double mOutlierMeters = 500;
+
+    private long mStartTime;
+    private long mGenerated;
+    private double mLatitude;
+    private double mLongitude;
+    private double mHeading;
+
+    //count fixes at rateHz starting at startTime, speedFactor as in PacedLocationSource
+    SyntheticLocationSource(double rateHz, long count, double speedFactor, long seed,
+                            long startTime, double latitude, double longitude) {
+        super("synthetic-source", speedFactor);
+        if (!(rateHz > 0)) {
+            throw new IllegalArgumentException("Bad rate " + rateHz);
+        }
+        mRateHz = rateHz;
+        mCount = count;
+        mRandom = new Random(seed);
+        mStartTime = startTime;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mHeading = mRandom.nextDouble() * 2 * Math.PI;
+    }
+
+    SyntheticLocationSource setSpeed(double metersPerSecond) {
+        mSpeedMetersPerSecond = metersPerSecond;
+        return this;
+    }
+
+    //standard deviation of the position error, also what the fixes report as accuracy
+    SyntheticLocationSource setNoise(double meters) {
+        mNoiseMeters = meters;
+        return this;
+    }
+
+    //share of fixes thrown about distanceMeters off the route
+    SyntheticLocationSource setOutliers(double probability, double distanceMeters) {
+        mOutlierProbability = probability;
+        mOutlierMeters = distanceMeters;
+        return this;
+    }
+
+    @Override
+    boolean next(Fix out) {
+        if (mGenerated >= mCount) {
+            return false;
+        }
+        double dt = 1 / mRateHz;
+        long time = mStartTime + Math.round(mGenerated * 1000 / mRateHz);
+        if (mGenerated > 0) {
+            mHeading += mRandom.nextGaussian() * 0.05;
+            double step = mSpeedMetersPerSecond * dt;
+            mLatitude += step * Math.cos(mHeading) / GeoMath.metersPerDegreeLatitude();
+            mLongitude += step * Math.sin(mHeading) / GeoMath.metersPerDegreeLongitude(mLatitude);
+        }
+        mGenerated++;
+
+        double north = mRandom.nextGaussian() * mNoiseMeters;
+        double east = mRandom.nextGaussian() * mNoiseMeters;
+        if (mRandom.nextDouble() < mOutlierProbability) {
+            double direction = mRandom.nextDouble() * 2 * Math.PI;
+            north += Math.cos(direction) * mOutlierMeters;
+            east += Math.sin(direction) * mOutlierMeters;
+        }
+        double bearing = Math.toDegrees(mHeading) % 360;
+        out.set(time, 0,
+                mLatitude + north / GeoMath.metersPerDegreeLatitude(),
+                mLongitude + east / GeoMath.metersPerDegreeLongitude(mLatitude),
+                (float) Math.max(1, mNoiseMeters * (1 + 0.3 * mRandom.nextGaussian())),
+                (float) Math.max(0, mSpeedMetersPerSecond + 0.1 * mRandom.nextGaussian()),
+                (float) (bearing < 0 ? bearing + 360 : bearing));
+        return true;
+    }
+}
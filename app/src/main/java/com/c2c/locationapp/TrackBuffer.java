@@ -0,0 +1,258 @@
+package com.c2c.locationapp;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//bounded in-memory copy of the most recent track, kept in parallel primitive arrays so holding
+//hours of fixes costs a fixed amount of memory and nothing is allocated per fix.
+//one thread appends, any number of threads read without locking: positions are absolute and only
+//grow, a reader checks after reading a slot that the writer had not started overwriting it.
+//that check is a seqlock, and it needs the slot stores ordered after the claim and the slot
+//loads ordered before the re-check. plain array accesses give neither and there are no fences
+//below API 26, so the slots are atomic arrays: every access is volatile, volatile accesses are
+//never reordered with each other, and on ARM that costs a barrier per field rather than a lock.
+//doubles and floats are stored as their raw bits.
+//times must not decrease, the pipeline's StaleFixFilter guarantees that for the service's buffer
+final class TrackBuffer {
+
+    private final int mMask;
+
+    private final AtomicLongArray mTime;
+    private final AtomicLongArray mLatitude;
+    private final AtomicLongArray mLongitude;
+    private final AtomicIntegerArray mAccuracy;
+    private final AtomicIntegerArray mSpeed;
+    private final AtomicIntegerArray mBearing;
+
+    //absolute position one past the newest published fix, written by the writer only
+    private final AtomicLong mEnd = new AtomicLong();
+
+    //one past the position the writer is about to write, raised before the slot is overwritten,
+    //so any position below mClaimed - capacity may hold newer data
+    private final AtomicLong mClaimed = new AtomicLong();
+
+    //capacity is rounded up to a power of two
+    TrackBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Bad capacity " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mTime = new AtomicLongArray(size);
+        mLatitude = new AtomicLongArray(size);
+        mLongitude = new AtomicLongArray(size);
+        mAccuracy = new AtomicIntegerArray(size);
+        mSpeed = new AtomicIntegerArray(size);
+        mBearing = new AtomicIntegerArray(size);
+    }
+
+    int capacity() {
+        return mMask + 1;
+    }
+
+    //writer side, overwrites the oldest fix once full
+    void append(long time, double latitude, double longitude, float accuracy, float speed,
+                float bearing) {
+        long end = mEnd.get();
+        //claimed before any slot store, a reader that sees one of them sees the claim
+        mClaimed.set(end + 1);
+        int i = (int) end & mMask;
+        mTime.set(i, time);
+        mLatitude.set(i, Double.doubleToRawLongBits(latitude));
+        mLongitude.set(i, Double.doubleToRawLongBits(longitude));
+        mAccuracy.set(i, Float.floatToRawIntBits(accuracy));
+        mSpeed.set(i, Float.floatToRawIntBits(speed));
+        mBearing.set(i, Float.floatToRawIntBits(bearing));
+        mEnd.set(end + 1);
+    }
+
+    void append(Fix fix) {
+        append(fix.time, fix.latitude, fix.longitude, fix.accuracy, fix.speed, fix.bearing);
+    }
+
+    //absolute position of the oldest fix that can still be read
+    long start() {
+        return Math.max(0, mClaimed.get() - capacity());
+    }
+
+    //absolute position one past the newest fix
+    long end() {
+        return mEnd.get();
+    }
+
+    int size() {
+        return (int) (end() - start());
+    }
+
+    //true if the fix at pos was not overwritten yet, call after reading it to validate the read
+    boolean isValid(long pos) {
+        return pos >= start();
+    }
+
+    //raw accessors, the result is only meaningful if isValid(pos) still holds afterwards
+    long time(long pos) {
+        return mTime.get((int) pos & mMask);
+    }
+
+    double latitude(long pos) {
+        return Double.longBitsToDouble(mLatitude.get((int) pos & mMask));
+    }
+
+    double longitude(long pos) {
+        return Double.longBitsToDouble(mLongitude.get((int) pos & mMask));
+    }
+
+    float accuracy(long pos) {
+        return Float.intBitsToFloat(mAccuracy.get((int) pos & mMask));
+    }
+
+    float speed(long pos) {
+        return Float.intBitsToFloat(mSpeed.get((int) pos & mMask));
+    }
+
+    float bearing(long pos) {
+        return Float.intBitsToFloat(mBearing.get((int) pos & mMask));
+    }
+
+    //first position in [start, end) with a time at or after time, end if there is none
+    long search(long time) {
+        long end = end();
+        long low = start();
+        long high = end;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            long t = time(mid);
+            if (!isValid(mid)) {
+                //overwritten under us, everything below is gone too
+                low = start();
+                high = Math.max(low, high);
+                continue;
+            }
+            if (t < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    //visits the fixes in [from, to) that are still held, oldest first, skipping any that the writer
+    //overwrote while they were being read. returns the position after the last visited one
+    long read(long from, long to, TrackStore.FixVisitor visitor) {
+        long pos = Math.max(from, start());
+        long end = Math.min(to, end());
+        while (pos < end) {
+            long time = time(pos);
+            double latitude = latitude(pos);
+            double longitude = longitude(pos);
+            float accuracy = accuracy(pos);
+            float speed = speed(pos);
+            float bearing = bearing(pos);
+            //the loads above are volatile, so this one cannot move ahead of them
+            if (!isValid(pos)) {
+                pos = start();
+                continue;
+            }
+            pos++;
+            if (!visitor.visit(time, latitude, longitude, accuracy, speed, bearing)) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    //fixes with fromTime <= time < toTime, see View
+    View view(long fromTime, long toTime) {
+        return select(new View(this), fromTime, toTime);
+    }
+
+    //points a reused view at a time range instead of allocating a new one
+    View select(View view, long fromTime, long toTime) {
+        long from = search(fromTime);
+        long to = Math.max(from, search(toTime));
+        view.mFrom = from;
+        view.mTo = to;
+        return view;
+    }
+
+    //the most recent fixes, at most millis old relative to the newest one
+    View last(View view, long millis) {
+        long end = end();
+        if (end == 0) {
+            view.mFrom = view.mTo = 0;
+            return view;
+        }
+        long newest = time(end - 1);
+        view.mFrom = search(newest - millis);
+        view.mTo = end;
+        return view;
+    }
+
+    //a window of positions over the buffer, nothing is copied: accessors read the live arrays.
+    //the oldest entries of a view can be overwritten while it is in use, readers should call
+    //trim() after reading to drop what may have changed underneath them
+    static final class View {
+        private final TrackBuffer mBuffer;
+        private long mFrom;
+        private long mTo;
+
+        View(TrackBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        int size() {
+            return (int) (mTo - mFrom);
+        }
+
+        //absolute position of index 0
+        long from() {
+            return mFrom;
+        }
+
+        long time(int index) {
+            return mBuffer.time(mFrom + index);
+        }
+
+        double latitude(int index) {
+            return mBuffer.latitude(mFrom + index);
+        }
+
+        double longitude(int index) {
+            return mBuffer.longitude(mFrom + index);
+        }
+
+        float accuracy(int index) {
+            return mBuffer.accuracy(mFrom + index);
+        }
+
+        float speed(int index) {
+            return mBuffer.speed(mFrom + index);
+        }
+
+        float bearing(int index) {
+            return mBuffer.bearing(mFrom + index);
+        }
+
+        //drops leading entries the writer overwrote or is about to, returns how many were dropped
+        int trim() {
+            long start = mBuffer.start();
+            if (start <= mFrom) {
+                return 0;
+            }
+            long from = Math.min(start, mTo);
+            int dropped = (int) (from - mFrom);
+            mFrom = from;
+            return dropped;
+        }
+
+        //visits the view with the same overwrite checks as TrackBuffer.read
+        long read(TrackStore.FixVisitor visitor) {
+            return mBuffer.read(mFrom, mTo, visitor);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.c2c.locationapp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+//reads the .trk format written by TrackEncoder, one fix at a time through a fixed buffer
+final class TrackDecoder extends TrackReader {
+
+    private final InputStream mIn;
+    private final boolean mMotion;
+    private final double mScale;
+
+    private final byte[] mBuffer = new byte[8 * 1024];
+    private int mPosition;
+    private int mLimit;
+
+    private long mTime;
+    private long mTimeStep;
+    private long mLatitude;
+    private long mLongitude;
+    private int mAccuracy;
+    private int mSpeed;
+    private int mBearing;
+
+    TrackDecoder(InputStream in) throws IOException {
+        mIn = in;
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            magic = magic << 8 | readByte();
+        }
+        if (magic != TrackEncoder.MAGIC) {
+            throw new IOException("Not a track file");
+        }
+        int version = readByte();
+        if (version != TrackEncoder.VERSION) {
+            throw new IOException("Unsupported track version " + version);
+        }
+        mMotion = (readByte() & TrackEncoder.FLAG_MOTION) != 0;
+        mScale = Math.pow(10, readByte());
+    }
+
+    //true if the stream carries accuracy, speed and bearing, otherwise they decode as 0
+    boolean hasMotion() {
+        return mMotion;
+    }
+
+    @Override
+    boolean next(Fix out) throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return false;
+        }
+        mTimeStep += TrackEncoder.unzigzag(readVarint());
+        mTime += mTimeStep;
+        mLatitude += TrackEncoder.unzigzag(readVarint());
+        mLongitude += TrackEncoder.unzigzag(readVarint());
+        if (mMotion) {
+            mAccuracy += (int) TrackEncoder.unzigzag(readVarint());
+            mSpeed += (int) TrackEncoder.unzigzag(readVarint());
+            mBearing = (mBearing + (int) TrackEncoder.unzigzag(readVarint()) + 360) % 360;
+        }
+        out.set(mTime, 0, mLatitude / mScale, mLongitude / mScale, mAccuracy, mSpeed / 10f,
+                mBearing);
+        return true;
+    }
+
+    //visits every remaining fix, returns how many were visited
+    long read(TrackStore.FixVisitor visitor) throws IOException {
+        Fix fix = new Fix();
+        long count = 0;
+        while (next(fix)) {
+            count++;
+            if (!visitor.visit(fix.time, fix.latitude, fix.longitude, fix.accuracy, fix.speed,
+                    fix.bearing)) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private int readByte() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            throw new EOFException("Truncated track");
+        }
+        return mBuffer[mPosition++] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        int n = mIn.read(mBuffer, 0, mBuffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        mPosition = 0;
+        mLimit = n;
+        return true;
+    }
+}
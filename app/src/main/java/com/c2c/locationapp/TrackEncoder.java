@@ -0,0 +1,187 @@
+package com.c2c.locationapp;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+//compact streaming track format (.trk), read back by TrackDecoder.
+//coordinates are quantized to fixed point and written as zigzag varint deltas to the previous fix,
+//the time as the change of the time step, so a steady fix rate costs one byte for the time and
+//walking or driving at the usual rates one byte per coordinate: about 3 bytes per fix, about 6
+//with the motion fields.
+//maximum error, per decoded fix: time exact to the ms; latitude and longitude half a quantum,
+//0.5e-5 degrees (0.56 m) at the default 5 decimals; accuracy 0.5 m, speed 0.05 m/s, bearing 0.5 degrees.
+//appending never allocates, bytes go out through a fixed buffer
+final class TrackEncoder implements TrackStore.FixVisitor, Flushable, Closeable {
+
+    //"TRK1"
+    static final int MAGIC = 0x54524b31;
+    static final int VERSION = 1;
+
+    //flag: accuracy, speed and bearing follow the coordinates
+    static final int FLAG_MOTION = 1;
+
+    static final int DEFAULT_DECIMALS = 5;
+
+    //header: magic (4), version (1), flags (1), coordinate decimals (1)
+    static final int HEADER_SIZE = 7;
+
+    //worst case varint record: 10 bytes time, 5 per coordinate, 5 per motion field
+    private static final int MAX_RECORD_SIZE = 10 + 5 * 5;
+
+    private final OutputStream mOut;
+    private final boolean mMotion;
+    private final double mScale;
+
+    private final byte[] mBuffer = new byte[8 * 1024];
+    private int mLength;
+
+    private long mTime;
+    private long mTimeStep;
+    private long mLatitude;
+    private long mLongitude;
+    private int mAccuracy;
+    private int mSpeed;
+    private int mBearing;
+
+    private long mCount;
+    private long mBytes;
+
+    //first failure of visit, rethrown by flush and close
+    private IOException mError;
+
+    TrackEncoder(OutputStream out, boolean motion) throws IOException {
+        this(out, motion, DEFAULT_DECIMALS);
+    }
+
+    //decimals of a degree kept for coordinates, 5 (~1.1 m quantum) to 7 (~1.1 cm)
+    TrackEncoder(OutputStream out, boolean motion, int decimals) throws IOException {
+        if (decimals < 1 || decimals > 7) {
+            throw new IllegalArgumentException("Bad decimals " + decimals);
+        }
+        mOut = out;
+        mMotion = motion;
+        mScale = Math.pow(10, decimals);
+        writeInt(MAGIC);
+        mBuffer[mLength++] = VERSION;
+        mBuffer[mLength++] = (byte) (motion ? FLAG_MOTION : 0);
+        mBuffer[mLength++] = (byte) decimals;
+    }
+
+    void append(long time, double latitude, double longitude, float accuracy, float speed,
+                float bearing) throws IOException {
+        if (mLength > mBuffer.length - MAX_RECORD_SIZE) {
+            drain();
+        }
+        long step = time - mTime;
+        writeVarint(zigzag(step - mTimeStep));
+        mTime = time;
+        mTimeStep = step;
+
+        long lat = Math.round(latitude * mScale);
+        long lon = Math.round(longitude * mScale);
+        writeVarint(zigzag(lat - mLatitude));
+        writeVarint(zigzag(lon - mLongitude));
+        mLatitude = lat;
+        mLongitude = lon;
+
+        if (mMotion) {
+            int acc = quantize(accuracy, 1);
+            int spd = quantize(speed, 10);
+            int brg = Math.round(bearing) % 360;
+            if (brg < 0) {
+                brg += 360;
+            }
+            writeVarint(zigzag(acc - mAccuracy));
+            writeVarint(zigzag(spd - mSpeed));
+            //shortest way around the circle, -180..179
+            writeVarint(zigzag((brg - mBearing + 540) % 360 - 180));
+            mAccuracy = acc;
+            mSpeed = spd;
+            mBearing = brg;
+        }
+        mCount++;
+    }
+
+    //appends, remembering a failure instead of throwing so the encoder can sit behind a visitor
+    @Override
+    public boolean visit(long time, double latitude, double longitude, float accuracy, float speed,
+                         float bearing) {
+        if (mError != null) {
+            return false;
+        }
+        try {
+            append(time, latitude, longitude, accuracy, speed, bearing);
+            return true;
+        } catch (IOException e) {
+            mError = e;
+            return false;
+        }
+    }
+
+    //fixes appended so far
+    long count() {
+        return mCount;
+    }
+
+    //bytes encoded so far, header included
+    long size() {
+        return mBytes + mLength;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        mOut.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            mOut.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (mError != null) {
+            throw mError;
+        }
+        mOut.write(mBuffer, 0, mLength);
+        mBytes += mLength;
+        mLength = 0;
+    }
+
+    private void writeInt(int value) {
+        mBuffer[mLength++] = (byte) (value >>> 24);
+        mBuffer[mLength++] = (byte) (value >>> 16);
+        mBuffer[mLength++] = (byte) (value >>> 8);
+        mBuffer[mLength++] = (byte) value;
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7fL) != 0) {
+            mBuffer[mLength++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mBuffer[mLength++] = (byte) value;
+    }
+
+    //clamps a non negative quantity, NaN is stored as 0
+    private static int quantize(float value, float scale) {
+        if (!(value > 0)) {
+            return 0;
+        }
+        return Math.min(Integer.MAX_VALUE / 2, Math.round(value * scale));
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,255 @@
+package com.c2c.locationapp;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+//streams fixes out as GPX, GeoJSON or CSV into a channel through one fixed buffer: each fix is
+//formatted into a reused StringBuilder and copied out as ASCII, so memory stays constant and
+//nothing is allocated per fix however long the track. the files read back with TrackReader,
+//times are UTC ISO 8601 to the ms and coordinates keep the store's 7 decimals.
+//export() feeds a time range of a TrackStore through an optional TrackSimplifier
+final class TrackExporter implements TrackStore.FixVisitor, Flushable, Closeable {
+
+    enum Format {
+        //GPX 1.0, which still has speed and course on track points
+        GPX(".gpx"),
+        //a FeatureCollection of Point features, time and motion as properties
+        GEOJSON(".geojson"),
+        //time,latitude,longitude,accuracy,speed,bearing
+        CSV(".csv");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    static final int COORDINATE_DECIMALS = 7;
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    //formatted fixes stay well below this, the buffer holds at least two
+    private static final int MAX_RECORD_LENGTH = 512;
+
+    //fixes held back by the simplifier at most, a longer straight run is split
+    private static final int SIMPLIFIER_WINDOW = 1024;
+
+    private final WritableByteChannel mOut;
+    private final Format mFormat;
+    private final ByteBuffer mBuffer;
+    private final StringBuilder mText = new StringBuilder(MAX_RECORD_LENGTH);
+
+    private long mCount;
+    private long mBytes;
+    private boolean mFinished;
+
+    //first failure of visit, rethrown by flush and close
+    private IOException mError;
+
+    TrackExporter(WritableByteChannel out, Format format) throws IOException {
+        this(out, format, DEFAULT_BUFFER_SIZE);
+    }
+
+    TrackExporter(WritableByteChannel out, Format format, int bufferSize) throws IOException {
+        if (bufferSize < 2 * MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException("Bad buffer size " + bufferSize);
+        }
+        mOut = out;
+        mFormat = format;
+        mBuffer = ByteBuffer.allocateDirect(bufferSize);
+        switch (format) {
+            case GPX:
+                mText.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                        .append("<gpx version=\"1.0\" creator=\"LocationApp\"")
+                        .append(" xmlns=\"http://www.topografix.com/GPX/1/0\">\n")
+                        .append("<trk><trkseg>\n");
+                break;
+            case GEOJSON:
+                mText.append("{\"type\":\"FeatureCollection\",\"features\":[");
+                break;
+            case CSV:
+                mText.append("time,latitude,longitude,accuracy,speed,bearing\n");
+                break;
+        }
+        put(mText);
+    }
+
+    //exports the stored fixes with fromTime <= time < toTime to exporter, without the fixes
+    //toleranceMeters describes within that distance if it is above 0, see TrackSimplifier.
+    //the store may be appended to meanwhile, the range ends where it did at the start.
+    //returns the number of fixes read; the exporter is not closed
+    static long export(TrackStore store, long fromTime, long toTime, double toleranceMeters,
+                       TrackExporter exporter) throws IOException {
+        long from = store.positionOf(fromTime);
+        long to = store.positionOf(toTime);
+        long read;
+        if (toleranceMeters > 0) {
+            TrackSimplifier simplifier = new TrackSimplifier(toleranceMeters, SIMPLIFIER_WINDOW,
+                    exporter);
+            store.read(from, to, simplifier);
+            simplifier.flush();
+            read = simplifier.received();
+        } else {
+            //fixes the store dropped meanwhile are not read, nor after a write error
+            long before = exporter.count();
+            store.read(from, to, exporter);
+            read = exporter.count() - before;
+        }
+        exporter.flush();
+        return read;
+    }
+
+    void append(long time, double latitude, double longitude, float accuracy, float speed,
+                float bearing) throws IOException {
+        if (mFinished) {
+            throw new IOException("Export already finished");
+        }
+        StringBuilder text = mText;
+        text.setLength(0);
+        switch (mFormat) {
+            case GPX:
+                text.append("<trkpt lat=\"");
+                LocationFormatter.appendFixed(text, latitude, COORDINATE_DECIMALS).append("\" lon=\"");
+                LocationFormatter.appendFixed(text, longitude, COORDINATE_DECIMALS).append("\"><time>");
+                appendIsoTime(text, time).append("</time><course>");
+                LocationFormatter.appendFixed(text, bearing, 1).append("</course><speed>");
+                LocationFormatter.appendFixed(text, speed, 2).append("</speed></trkpt>\n");
+                break;
+            case GEOJSON:
+                text.append(mCount == 0 ? "\n" : ",\n")
+                        .append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+                LocationFormatter.appendFixed(text, longitude, COORDINATE_DECIMALS).append(',');
+                LocationFormatter.appendFixed(text, latitude, COORDINATE_DECIMALS)
+                        .append("]},\"properties\":{\"time\":\"");
+                appendIsoTime(text, time).append("\",\"accuracy\":");
+                LocationFormatter.appendFixed(text, accuracy, 1).append(",\"speed\":");
+                LocationFormatter.appendFixed(text, speed, 2).append(",\"bearing\":");
+                LocationFormatter.appendFixed(text, bearing, 1).append("}}");
+                break;
+            case CSV:
+                appendIsoTime(text, time).append(',');
+                LocationFormatter.appendFixed(text, latitude, COORDINATE_DECIMALS).append(',');
+                LocationFormatter.appendFixed(text, longitude, COORDINATE_DECIMALS).append(',');
+                LocationFormatter.appendFixed(text, accuracy, 1).append(',');
+                LocationFormatter.appendFixed(text, speed, 2).append(',');
+                LocationFormatter.appendFixed(text, bearing, 1).append('\n');
+                break;
+        }
+        put(text);
+        mCount++;
+    }
+
+    //appends, remembering a failure instead of throwing so the exporter can sit behind a visitor
+    @Override
+    public boolean visit(long time, double latitude, double longitude, float accuracy, float speed,
+                         float bearing) {
+        if (mError != null) {
+            return false;
+        }
+        try {
+            append(time, latitude, longitude, accuracy, speed, bearing);
+            return true;
+        } catch (IOException e) {
+            mError = e;
+            return false;
+        }
+    }
+
+    //fixes exported so far
+    long count() {
+        return mCount;
+    }
+
+    //bytes written so far, buffered ones included
+    long size() {
+        return mBytes + mBuffer.position();
+    }
+
+    //writes what is buffered, the document stays open for more fixes
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    //ends the document and writes it out, the channel is left open for the caller to close
+    @Override
+    public void close() throws IOException {
+        if (!mFinished) {
+            mText.setLength(0);
+            switch (mFormat) {
+                case GPX:
+                    mText.append("</trkseg></trk>\n</gpx>\n");
+                    break;
+                case GEOJSON:
+                    mText.append("\n]}\n");
+                    break;
+                case CSV:
+                    break;
+            }
+            put(mText);
+            mFinished = true;
+        }
+        drain();
+    }
+
+    //UTC ISO 8601 with ms, 2021-08-01T21:56:15.250Z; the inverse of TrackReader.parseIsoTime
+    static StringBuilder appendIsoTime(StringBuilder out, long time) {
+        long days = time / 86_400_000L;
+        if (time % 86_400_000L < 0) {
+            days--;
+        }
+        int millisOfDay = (int) (time - days * 86_400_000L);
+        //civil from days, see TrackReader.daysFromCivil
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        out.append(year).append('-');
+        pad(out, month, 2).append('-');
+        pad(out, day, 2).append('T');
+        pad(out, millisOfDay / 3_600_000, 2).append(':');
+        pad(out, millisOfDay / 60_000 % 60, 2).append(':');
+        pad(out, millisOfDay / 1000 % 60, 2).append('.');
+        return pad(out, millisOfDay % 1000, 3).append('Z');
+    }
+
+    private static StringBuilder pad(StringBuilder out, int value, int digits) {
+        for (int limit = 10; --digits > 0; limit *= 10) {
+            if (value < limit) {
+                out.append('0');
+            }
+        }
+        return out.append(value);
+    }
+
+    //copies ASCII text into the buffer, draining it first if the text might not fit
+    private void put(CharSequence text) throws IOException {
+        if (mBuffer.remaining() < text.length()) {
+            drain();
+        }
+        for (int i = 0, length = text.length(); i < length; i++) {
+            mBuffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private void drain() throws IOException {
+        if (mError != null) {
+            throw mError;
+        }
+        mBuffer.flip();
+        mBytes += mBuffer.remaining();
+        while (mBuffer.hasRemaining()) {
+            mOut.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+}
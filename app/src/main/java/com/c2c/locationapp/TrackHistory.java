@@ -0,0 +1,142 @@
+package com.c2c.locationapp;
+
+//the recorded fixes of a time range read a page at a time, for clients paging through history.
+//the range is resolved to store positions once when opened, two binary searches, so its size is
+//known before any fix is read and the range ends where the store did then. a page is a fixed
+//number of fixes in reused primitive arrays, so reading any length of history costs one page of
+//memory. rows are numbered from 0 at the range's first fix: nextPage() walks them in order,
+//moveTo() loads the page holding a row, as a cursor asks. fixes the store drops meanwhile are
+//skipped by nextPage() and missing for moveTo(). one thread at a time
+final class TrackHistory implements TrackStore.FixVisitor {
+
+    static final int DEFAULT_PAGE_SIZE = 512;
+
+    private final TrackStore mStore;
+    private final long mFrom;
+    private final long mTo;
+
+    private final long[] mTime;
+    private final double[] mLatitude;
+    private final double[] mLongitude;
+    private final float[] mAccuracy;
+    private final float[] mSpeed;
+    private final float[] mBearing;
+
+    //store position of the loaded page's first fix, and how many it holds
+    private long mPageStart;
+    private int mSize;
+
+    //where nextPage() continues
+    private long mNext;
+
+    TrackHistory(TrackStore store, long fromTime, long toTime, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Bad page size " + pageSize);
+        }
+        mStore = store;
+        mFrom = store.positionOf(fromTime);
+        mTo = Math.max(mFrom, store.positionOf(toTime));
+        mNext = mFrom;
+        mTime = new long[pageSize];
+        mLatitude = new double[pageSize];
+        mLongitude = new double[pageSize];
+        mAccuracy = new float[pageSize];
+        mSpeed = new float[pageSize];
+        mBearing = new float[pageSize];
+    }
+
+    //rows in the range when it was opened
+    long count() {
+        return mTo - mFrom;
+    }
+
+    int pageSize() {
+        return mTime.length;
+    }
+
+    //loads the rows after the current page, false once the range is done
+    boolean nextPage() {
+        if (mNext >= mTo) {
+            return false;
+        }
+        long from = Math.max(mNext, mStore.firstPosition());
+        load(from, Math.min(mTo, from + mTime.length));
+        mNext = mPageStart + mSize;
+        return mSize > 0;
+    }
+
+    //loads the page holding row if it is not loaded, returns its index there or -1 if the store
+    //no longer has it. pages start at multiples of the page size, so moving back and forth
+    //within one reads nothing
+    int moveTo(long row) {
+        if (row < 0 || row >= count()) {
+            return -1;
+        }
+        long position = mFrom + row;
+        if (position < mPageStart || position >= mPageStart + mSize) {
+            long from = mFrom + row / mTime.length * mTime.length;
+            load(from, Math.min(mTo, from + mTime.length));
+        }
+        long index = position - mPageStart;
+        return index >= 0 && index < mSize ? (int) index : -1;
+    }
+
+    //fixes in the loaded page
+    int size() {
+        return mSize;
+    }
+
+    //row of the page's first fix
+    long firstRow() {
+        return mPageStart - mFrom;
+    }
+
+    //store position of a fix in the page, stable across queries
+    long position(int index) {
+        return mPageStart + index;
+    }
+
+    long time(int index) {
+        return mTime[index];
+    }
+
+    double latitude(int index) {
+        return mLatitude[index];
+    }
+
+    double longitude(int index) {
+        return mLongitude[index];
+    }
+
+    float accuracy(int index) {
+        return mAccuracy[index];
+    }
+
+    float speed(int index) {
+        return mSpeed[index];
+    }
+
+    float bearing(int index) {
+        return mBearing[index];
+    }
+
+    //reads the stored fixes of [from, to), at most a page
+    private void load(long from, long to) {
+        mSize = 0;
+        long end = mStore.read(from, to, this);
+        mPageStart = end - mSize;
+    }
+
+    @Override
+    public boolean visit(long time, double latitude, double longitude, float accuracy, float speed,
+                         float bearing) {
+        int i = mSize++;
+        mTime[i] = time;
+        mLatitude[i] = latitude;
+        mLongitude[i] = longitude;
+        mAccuracy[i] = accuracy;
+        mSpeed[i] = speed;
+        mBearing[i] = bearing;
+        return true;
+    }
+}
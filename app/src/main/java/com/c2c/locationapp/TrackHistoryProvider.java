@@ -0,0 +1,207 @@
+package com.c2c.locationapp;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+//read-only recorded history for other apps holding READ_HISTORY, and for loaders in this one:
+//content://com.c2c.locationapp.history/fixes?from=<ms>&to=<ms> has the fixes with
+//from <= time < to, the whole history without them. the cursor is backed by a TrackHistory:
+//its count is known without reading, rows are read from storage a page at a time as they are
+//asked for, and across processes the framework fills one CursorWindow at a time from it, so the
+//first rows arrive after one page and a long range costs no more memory than a short one.
+//the store belongs to the service in this process, which hands it over while it has it open.
+//a second copy opened here would race the service's writer for the same segment files, so while
+//the service is not running there is no history to serve: query() then returns null rather than
+//an empty cursor, which callers can tell apart from a range without fixes
+public class TrackHistoryProvider extends ContentProvider {
+
+    static final String AUTHORITY = "com.c2c.locationapp.history";
+    static final Uri FIXES_URI = Uri.parse("content://" + AUTHORITY + "/fixes");
+
+    static final String PARAM_FROM = "from";
+    static final String PARAM_TO = "to";
+
+    private static final String FIXES_PATH = "fixes";
+    private static final String FIXES_TYPE = "vnd.android.cursor.dir/vnd.com.c2c.locationapp.fix";
+
+    //columns, _id is the fix's position in the store
+    static final String COLUMN_ID = "_id";
+    static final String COLUMN_TIME = "time";
+    static final String COLUMN_LATITUDE = "latitude";
+    static final String COLUMN_LONGITUDE = "longitude";
+    static final String COLUMN_ACCURACY = "accuracy";
+    static final String COLUMN_SPEED = "speed";
+    static final String COLUMN_BEARING = "bearing";
+
+    private static final String[] COLUMNS = {COLUMN_ID, COLUMN_TIME, COLUMN_LATITUDE,
+            COLUMN_LONGITUDE, COLUMN_ACCURACY, COLUMN_SPEED, COLUMN_BEARING};
+
+    //set by the service while its store is open, null otherwise
+    private static volatile TrackStore sTrackStore;
+
+    static void setTrackStore(@Nullable TrackStore store) {
+        sTrackStore = store;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    //projection, selection and sort order are not supported, rows come in time order with
+    //every column; null if history is not being recorded. the range is resolved here, on a
+    //binder thread, against the store's end and segments as one snapshot, see TrackStore.read
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        if (!isFixes(uri)) {
+            throw new IllegalArgumentException("Unknown URI " + uri);
+        }
+        long from = parseTime(uri, PARAM_FROM, Long.MIN_VALUE);
+        long to = parseTime(uri, PARAM_TO, Long.MAX_VALUE);
+        TrackStore store = sTrackStore;
+        if (store == null) {
+            return null;
+        }
+        return new HistoryCursor(new TrackHistory(store, from, to, TrackHistory.DEFAULT_PAGE_SIZE));
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return isFixes(uri) ? FIXES_TYPE : null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("History is read-only");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("History is read-only");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("History is read-only");
+    }
+
+    private static boolean isFixes(Uri uri) {
+        return uri.getPathSegments().size() == 1 && FIXES_PATH.equals(uri.getLastPathSegment());
+    }
+
+    private static long parseTime(Uri uri, String name, long missing) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) {
+            return missing;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + " time " + value);
+        }
+    }
+
+    //rows of a TrackHistory. typed columns let the framework copy numbers
+    //into the window as they are, and a row the store dropped meanwhile fails the move to it
+    private static final class HistoryCursor extends AbstractCursor {
+        private final TrackHistory mHistory;
+        private final int mCount;
+        private int mIndex = -1;
+
+        HistoryCursor(TrackHistory history) {
+            mHistory = history;
+            mCount = (int) Math.min(Integer.MAX_VALUE, history.count());
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return COLUMNS.clone();
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            mIndex = mHistory.moveTo(newPosition);
+            return mIndex >= 0;
+        }
+
+        @Override
+        public int getType(int column) {
+            return column <= 1 ? Cursor.FIELD_TYPE_INTEGER : Cursor.FIELD_TYPE_FLOAT;
+        }
+
+        @Override
+        public long getLong(int column) {
+            switch (column) {
+                case 0:
+                    return mHistory.position(mIndex);
+                case 1:
+                    return mHistory.time(mIndex);
+                default:
+                    return (long) getDouble(column);
+            }
+        }
+
+        @Override
+        public double getDouble(int column) {
+            switch (column) {
+                case 0:
+                case 1:
+                    return getLong(column);
+                case 2:
+                    return mHistory.latitude(mIndex);
+                case 3:
+                    return mHistory.longitude(mIndex);
+                case 4:
+                    return mHistory.accuracy(mIndex);
+                case 5:
+                    return mHistory.speed(mIndex);
+                case 6:
+                    return mHistory.bearing(mIndex);
+                default:
+                    throw new IllegalArgumentException("Bad column " + column);
+            }
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public String getString(int column) {
+            return column <= 1 ? Long.toString(getLong(column)) : Double.toString(getDouble(column));
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return false;
+        }
+    }
+}
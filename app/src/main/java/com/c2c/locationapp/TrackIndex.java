@@ -0,0 +1,275 @@
+package com.c2c.locationapp;
+
+import java.util.Arrays;
+
+//spatio-temporal index over a TrackStore for bounding box and radius queries in a time range.
+//each store segment gets a packed R-tree over its records in time order: leaves bound runs of
+//LEAF_SIZE consecutive records, every level above bounds FANOUT entries of the one below.
+//because records arrive in time order a node's time range is just its first and last record, and
+//appending only ever widens the boxes on one root-to-leaf path, so the index grows in O(levels)
+//per fix and drops whole segments together with the store.
+//one thread calls update(), any number of threads query. queries see every record up to the end
+//published by the last update(); records are read back from the store, nothing is duplicated here
+final class TrackIndex {
+
+    //visits matching records in time order, return false to stop
+    interface Visitor {
+        boolean visit(long position, long time, double latitude, double longitude);
+    }
+
+    static final int DEFAULT_LEAF_SIZE = 256;
+    static final int FANOUT = 16;
+
+    private final TrackStore mStore;
+    private final int mRecordsPerSegment;
+    private final int mLeafSize;
+
+    //copy on write, ascending segment sequence numbers
+    private volatile SegmentIndex[] mSegments = new SegmentIndex[0];
+
+    //records below this position are indexed
+    private volatile long mEnd;
+
+    TrackIndex(TrackStore store) {
+        this(store, DEFAULT_LEAF_SIZE);
+    }
+
+    TrackIndex(TrackStore store, int leafSize) {
+        if (leafSize < 1) {
+            throw new IllegalArgumentException("Bad leaf size " + leafSize);
+        }
+        mStore = store;
+        mRecordsPerSegment = store.recordsPerSegment();
+        mLeafSize = Math.min(leafSize, mRecordsPerSegment);
+    }
+
+    //indexes what was appended to the store since the last call, writer thread only.
+    //called on an empty index this rebuilds it from storage
+    void update() {
+        long first = mStore.firstPosition();
+        long end = mStore.endPosition();
+        dropBefore(first / mRecordsPerSegment);
+        long pos = Math.max(mEnd, first);
+        if (pos >= end) {
+            return;
+        }
+        SegmentIndex[] segments = mSegments;
+        SegmentIndex segment = segments.length == 0 ? null : segments[segments.length - 1];
+        for (; pos < end; pos++) {
+            long seq = pos / mRecordsPerSegment;
+            if (segment == null || segment.seq != seq) {
+                segment = new SegmentIndex(seq);
+                segments = Arrays.copyOf(segments, segments.length + 1);
+                segments[segments.length - 1] = segment;
+                mSegments = segments;
+            }
+            segment.add((int) (pos % mRecordsPerSegment), mStore.timeAt(pos),
+                    mStore.latitudeAt(pos), mStore.longitudeAt(pos));
+        }
+        //publishes the box updates above to readers
+        mEnd = end;
+    }
+
+    //records indexed so far, one past the newest
+    long endPosition() {
+        return mEnd;
+    }
+
+    //records inside the box (inclusive) with fromTime <= time < toTime, returns how many matched.
+    //the box must not cross the antimeridian, split such queries in two
+    long query(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+               long fromTime, long toTime, Visitor visitor) {
+        Query query = new Query(minLatitude, minLongitude, maxLatitude, maxLongitude, fromTime,
+                toTime, visitor);
+        long end = mEnd;
+        for (SegmentIndex segment : mSegments) {
+            if (!segment.search(query, end)) {
+                break;
+            }
+        }
+        return query.matched;
+    }
+
+    //records within radiusMeters of the point with fromTime <= time < toTime
+    long within(final double latitude, final double longitude, final double radiusMeters,
+                long fromTime, long toTime, final Visitor visitor) {
+        double dLat = radiusMeters / GeoMath.metersPerDegreeLatitude();
+        double metersPerLon = GeoMath.metersPerDegreeLongitude(
+                Math.min(89.9, Math.abs(latitude) + dLat));
+        double dLon = Math.min(180, radiusMeters / metersPerLon);
+        final long[] matched = {0};
+        query(latitude - dLat, longitude - dLon, latitude + dLat, longitude + dLon, fromTime, toTime,
+                (pos, time, lat, lon) -> {
+                    if (GeoMath.distance(latitude, longitude, lat, lon) > radiusMeters) {
+                        return true;
+                    }
+                    matched[0]++;
+                    return visitor.visit(pos, time, lat, lon);
+                });
+        return matched[0];
+    }
+
+    private void dropBefore(long seq) {
+        SegmentIndex[] segments = mSegments;
+        int drop = 0;
+        while (drop < segments.length && segments[drop].seq < seq) {
+            drop++;
+        }
+        if (drop > 0) {
+            mSegments = Arrays.copyOfRange(segments, drop, segments.length);
+        }
+    }
+
+    //per query state, scans leaves through TrackStore.read so a concurrently dropped segment
+    //just ends the scan instead of failing
+    private final class Query implements TrackStore.FixVisitor {
+        final double minLatitude;
+        final double minLongitude;
+        final double maxLatitude;
+        final double maxLongitude;
+        final long fromTime;
+        final long toTime;
+        final Visitor visitor;
+
+        long position;
+        long matched;
+        boolean stopped;
+
+        Query(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+              long fromTime, long toTime, Visitor visitor) {
+            this.minLatitude = minLatitude;
+            this.minLongitude = minLongitude;
+            this.maxLatitude = maxLatitude;
+            this.maxLongitude = maxLongitude;
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+            this.visitor = visitor;
+        }
+
+        boolean overlaps(double minLat, double minLon, double maxLat, double maxLon, long firstTime,
+                         long lastTime) {
+            return minLat <= maxLatitude && maxLat >= minLatitude && minLon <= maxLongitude
+                    && maxLon >= minLongitude && firstTime < toTime && lastTime >= fromTime;
+        }
+
+        //returns false once the visitor asked to stop
+        boolean scan(long from, long to) {
+            position = from;
+            mStore.read(from, to, this);
+            return !stopped;
+        }
+
+        @Override
+        public boolean visit(long time, double latitude, double longitude, float accuracy,
+                             float speed, float bearing) {
+            long pos = position++;
+            if (time >= toTime) {
+                //time ordered, nothing further in this leaf can match
+                return false;
+            }
+            if (time < fromTime || latitude < minLatitude || latitude > maxLatitude
+                    || longitude < minLongitude || longitude > maxLongitude) {
+                return true;
+            }
+            matched++;
+            if (!visitor.visit(pos, time, latitude, longitude)) {
+                stopped = true;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    //packed R-tree over one store segment, level 0 are the leaves, the last level is one root entry
+    private final class SegmentIndex {
+        final long seq;
+        final double[][] minLatitude;
+        final double[][] maxLatitude;
+        final double[][] minLongitude;
+        final double[][] maxLongitude;
+        final long[][] firstTime;
+        final long[][] lastTime;
+
+        SegmentIndex(long seq) {
+            this.seq = seq;
+            int levels = 1;
+            for (int n = leaves(); n > 1; n = (n + FANOUT - 1) / FANOUT) {
+                levels++;
+            }
+            minLatitude = new double[levels][];
+            maxLatitude = new double[levels][];
+            minLongitude = new double[levels][];
+            maxLongitude = new double[levels][];
+            firstTime = new long[levels][];
+            lastTime = new long[levels][];
+            int n = leaves();
+            for (int level = 0; level < levels; level++) {
+                minLatitude[level] = new double[n];
+                maxLatitude[level] = new double[n];
+                minLongitude[level] = new double[n];
+                maxLongitude[level] = new double[n];
+                firstTime[level] = new long[n];
+                lastTime[level] = new long[n];
+                n = (n + FANOUT - 1) / FANOUT;
+            }
+        }
+
+        private int leaves() {
+            return (mRecordsPerSegment + mLeafSize - 1) / mLeafSize;
+        }
+
+        void add(int index, long time, double latitude, double longitude) {
+            int entry = index / mLeafSize;
+            boolean first = index % mLeafSize == 0;
+            for (int level = 0; level < minLatitude.length; level++) {
+                if (first) {
+                    minLatitude[level][entry] = maxLatitude[level][entry] = latitude;
+                    minLongitude[level][entry] = maxLongitude[level][entry] = longitude;
+                    firstTime[level][entry] = time;
+                } else {
+                    minLatitude[level][entry] = Math.min(minLatitude[level][entry], latitude);
+                    maxLatitude[level][entry] = Math.max(maxLatitude[level][entry], latitude);
+                    minLongitude[level][entry] = Math.min(minLongitude[level][entry], longitude);
+                    maxLongitude[level][entry] = Math.max(maxLongitude[level][entry], longitude);
+                }
+                lastTime[level][entry] = time;
+                first = first && entry % FANOUT == 0;
+                entry /= FANOUT;
+            }
+        }
+
+        //returns false once the visitor asked to stop
+        boolean search(Query query, long end) {
+            long base = seq * mRecordsPerSegment;
+            int count = (int) Math.min(mRecordsPerSegment, end - base);
+            if (count <= 0) {
+                return true;
+            }
+            return search(query, minLatitude.length - 1, 0, base, count);
+        }
+
+        private boolean search(Query query, int level, int entry, long base, int count) {
+            //records covered by one entry at this level
+            int span = mLeafSize;
+            for (int i = 0; i < level; i++) {
+                span *= FANOUT;
+            }
+            int from = entry * span;
+            if (from >= count || !query.overlaps(minLatitude[level][entry], minLongitude[level][entry],
+                    maxLatitude[level][entry], maxLongitude[level][entry],
+                    firstTime[level][entry], lastTime[level][entry])) {
+                return true;
+            }
+            if (level == 0) {
+                return query.scan(base + from, base + Math.min(count, from + span));
+            }
+            int children = minLatitude[level - 1].length;
+            for (int child = entry * FANOUT; child < Math.min(children, (entry + 1) * FANOUT); child++) {
+                if (!search(query, level - 1, child, base, count)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
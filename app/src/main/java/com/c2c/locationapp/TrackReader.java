@@ -0,0 +1,109 @@
+package com.c2c.locationapp;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+//streams fixes out of a recorded track file one at a time
+abstract class TrackReader implements Closeable {
+
+    //fills out with the next fix, returns false at the end
+    abstract boolean next(Fix out) throws IOException;
+
+    //picks the reader by file extension, .gpx, .csv or .trk (TrackEncoder)
+    static TrackReader open(File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.US);
+        if (name.endsWith(".trk")) {
+            return new TrackDecoder(new FileInputStream(file));
+        }
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8), 64 * 1024);
+        if (name.endsWith(".gpx")) {
+            return new GpxTrackReader(reader);
+        }
+        if (name.endsWith(".csv")) {
+            return new CsvTrackReader(reader);
+        }
+        reader.close();
+        throw new IOException("Unknown track format " + file);
+    }
+
+    //parses an ISO 8601 UTC or offset timestamp (2021-08-01T21:56:15.250Z) into epoch ms, the
+    //offset as +hh, +hhmm or +hh:mm
+    static long parseIsoTime(CharSequence s) {
+        int len = s.length();
+        if (len < 19 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+                || s.charAt(13) != ':' || s.charAt(16) != ':') {
+            throw new IllegalArgumentException("Bad time " + s);
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 7);
+        int day = digits(s, 8, 10);
+        int hour = digits(s, 11, 13);
+        int minute = digits(s, 14, 16);
+        int second = digits(s, 17, 19);
+        int pos = 19;
+        int millis = 0;
+        if (pos < len && s.charAt(pos) == '.') {
+            pos++;
+            int scale = 100;
+            while (pos < len && Character.isDigit(s.charAt(pos))) {
+                millis += (s.charAt(pos) - '0') * scale;
+                scale /= 10;
+                pos++;
+            }
+        }
+        int offsetMinutes = 0;
+        if (pos < len && (s.charAt(pos) == '+' || s.charAt(pos) == '-')) {
+            int sign = s.charAt(pos) == '-' ? -1 : 1;
+            int minutes;
+            switch (len - pos) {
+                case 3:
+                    minutes = 0;
+                    break;
+                case 5:
+                    minutes = digits(s, pos + 3, pos + 5);
+                    break;
+                case 6:
+                    if (s.charAt(pos + 3) != ':') {
+                        throw new IllegalArgumentException("Bad time " + s);
+                    }
+                    minutes = digits(s, pos + 4, pos + 6);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Bad time " + s);
+            }
+            offsetMinutes = sign * (digits(s, pos + 1, pos + 3) * 60 + minutes);
+        }
+        long days = daysFromCivil(year, month, day);
+        return ((days * 24 + hour) * 60 + minute - offsetMinutes) * 60_000L + second * 1000L + millis;
+    }
+
+    //days since 1970-01-01 of a proleptic Gregorian date
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int digits(CharSequence s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Bad time " + s);
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+}
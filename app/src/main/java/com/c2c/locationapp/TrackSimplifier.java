@@ -0,0 +1,116 @@
+package com.c2c.locationapp;
+
+//streaming line simplification (opening window), drops fixes the kept ones already describe.
+//a fix is dropped only while every fix since the last kept one lies within the tolerance of the
+//position linearly interpolated in time between the kept fixes around it (synchronized euclidean
+//distance), so the simplified track is off by at most toleranceMeters at any recorded time.
+//distances use a local flat projection, exact to well under 1% for windows shorter than a few km.
+//holds at most maxWindow fixes, a longer straight run is split so memory and work per fix stay bounded
+final class TrackSimplifier implements TrackStore.FixVisitor {
+
+    private final double mTolerance;
+    private final TrackStore.FixVisitor mOut;
+
+    //last kept fix
+    private boolean mHasAnchor;
+    private long mAnchorTime;
+    private double mAnchorLatitude;
+    private double mAnchorLongitude;
+
+    //fixes received since the anchor, the newest one is the candidate kept when the window breaks
+    private final long[] mTime;
+    private final double[] mLatitude;
+    private final double[] mLongitude;
+    private final float[] mAccuracy;
+    private final float[] mSpeed;
+    private final float[] mBearing;
+    private int mSize;
+
+    private long mReceived;
+    private long mKept;
+
+    TrackSimplifier(double toleranceMeters, int maxWindow, TrackStore.FixVisitor out) {
+        if (!(toleranceMeters >= 0) || maxWindow < 1) {
+            throw new IllegalArgumentException("Bad tolerance " + toleranceMeters + " or window " + maxWindow);
+        }
+        mTolerance = toleranceMeters;
+        mOut = out;
+        mTime = new long[maxWindow];
+        mLatitude = new double[maxWindow];
+        mLongitude = new double[maxWindow];
+        mAccuracy = new float[maxWindow];
+        mSpeed = new float[maxWindow];
+        mBearing = new float[maxWindow];
+    }
+
+    //adds the next fix, returns what the downstream visitor returned for any fix it was handed
+    @Override
+    public boolean visit(long time, double latitude, double longitude, float accuracy, float speed,
+                         float bearing) {
+        mReceived++;
+        if (!mHasAnchor) {
+            keep(time, latitude, longitude);
+            return mOut.visit(time, latitude, longitude, accuracy, speed, bearing);
+        }
+        boolean more = true;
+        if (mSize == mTime.length || !fits(time, latitude, longitude)) {
+            more = keepCandidate();
+        }
+        int i = mSize++;
+        mTime[i] = time;
+        mLatitude[i] = latitude;
+        mLongitude[i] = longitude;
+        mAccuracy[i] = accuracy;
+        mSpeed[i] = speed;
+        mBearing[i] = bearing;
+        return more;
+    }
+
+    //emits the held back newest fix so the output ends where the input did
+    boolean flush() {
+        return mSize == 0 || keepCandidate();
+    }
+
+    long received() {
+        return mReceived;
+    }
+
+    long kept() {
+        return mKept;
+    }
+
+    //true if every windowed fix stays within tolerance when the segment runs anchor -> new fix
+    private boolean fits(long time, double latitude, double longitude) {
+        double metersPerLon = GeoMath.metersPerDegreeLongitude(mAnchorLatitude);
+        double metersPerLat = GeoMath.metersPerDegreeLatitude();
+        double endX = (longitude - mAnchorLongitude) * metersPerLon;
+        double endY = (latitude - mAnchorLatitude) * metersPerLat;
+        long span = time - mAnchorTime;
+        double tolerance2 = mTolerance * mTolerance;
+        for (int i = 0; i < mSize; i++) {
+            double f = span > 0 ? (double) (mTime[i] - mAnchorTime) / span : 1;
+            double dx = (mLongitude[i] - mAnchorLongitude) * metersPerLon - endX * f;
+            double dy = (mLatitude[i] - mAnchorLatitude) * metersPerLat - endY * f;
+            if (dx * dx + dy * dy > tolerance2) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean keepCandidate() {
+        int i = mSize - 1;
+        keep(mTime[i], mLatitude[i], mLongitude[i]);
+        mSize = 0;
+        return mOut.visit(mAnchorTime, mAnchorLatitude, mAnchorLongitude, mAccuracy[i], mSpeed[i],
+                mBearing[i]);
+    }
+
+    private void keep(long time, double latitude, double longitude) {
+        mHasAnchor = true;
+        mAnchorTime = time;
+        mAnchorLatitude = latitude;
+        mAnchorLongitude = longitude;
+        mKept++;
+    }
+}
@@ -0,0 +1,496 @@
+package com.c2c.locationapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+//append-only on-disk log of fixes, split into fixed size memory-mapped segment files
+//single writer (the thread handling fixes), any number of readers
+final class TrackStore implements Closeable {
+
+    //visits stored fixes in order, return false to stop
+    interface FixVisitor {
+        boolean visit(long time, double latitude, double longitude, float accuracy, float speed,
+                      float bearing);
+    }
+
+    private static final String SEGMENT_PREFIX = "track-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    //segment header: magic, version, record size, records per segment, sealed record count
+    private static final int MAGIC = 0x54524b31; // "TRK1"
+    private static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    private static final int HEADER_SEALED_COUNT = 12;
+
+    //record: time (8), lat/lon in 1e-7 degrees (4 + 4), accuracy in dm (2), speed in cm/s (2),
+    //bearing in 1/100 degree (2), checksum (2). checksum is written last so a torn record never validates
+    static final int RECORD_SIZE = 24;
+
+    private static final double COORDINATE_SCALE = 1e7;
+
+    static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 15;
+
+    //group commit: force dirty pages once this many records are pending or this much time passed
+    private static final int DEFAULT_COMMIT_RECORDS = 64;
+    private static final long DEFAULT_COMMIT_INTERVAL_NANOS = 30_000_000_000L;
+
+    private final File mDir;
+    private final int mRecordsPerSegment;
+    private final int mMaxSegments;
+    private final long mMaxAgeMillis;
+
+    private int mCommitRecords = DEFAULT_COMMIT_RECORDS;
+    private long mCommitIntervalNanos = DEFAULT_COMMIT_INTERVAL_NANOS;
+
+    //copy on write, contiguous sequence numbers, last one is the open head segment
+    private volatile Segment[] mSegments;
+
+    //absolute position of the next record to be written
+    private volatile long mEnd;
+
+    private Segment mHead;
+    private int mPending;
+    private long mLastCommitNanos;
+    private boolean mClosed;
+
+    private TrackStore(File dir, int recordsPerSegment, int maxSegments, long maxAgeMillis) {
+        mDir = dir;
+        mRecordsPerSegment = recordsPerSegment;
+        mMaxSegments = maxSegments;
+        mMaxAgeMillis = maxAgeMillis;
+    }
+
+    //opens (or creates) the store in dir, recovering a torn tail if the process was killed and
+    //dropping segments over the limits
+    static TrackStore open(File dir, int maxSegments, long maxAgeMillis) throws IOException {
+        return open(dir, DEFAULT_RECORDS_PER_SEGMENT, maxSegments, maxAgeMillis);
+    }
+
+    static TrackStore open(File dir, int recordsPerSegment, int maxSegments, long maxAgeMillis)
+            throws IOException {
+        if (maxSegments < 2) {
+            throw new IllegalArgumentException("maxSegments must be at least 2");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        TrackStore store = new TrackStore(dir, recordsPerSegment, maxSegments, maxAgeMillis);
+        store.recover();
+        return store;
+    }
+
+    private void recover() throws IOException {
+        long[] seqs = listSegments();
+        List<Segment> segments = new ArrayList<>(seqs.length + 1);
+        for (int i = 0; i < seqs.length; i++) {
+            boolean last = i == seqs.length - 1;
+            if (i > 0 && seqs[i] != seqs[i - 1] + 1) {
+                //a hole can only come from files removed by hand, keep the newest run
+                segments.clear();
+            }
+            Segment segment = mapSegment(seqs[i]);
+            if (!last && segment.sealedCount() == 0) {
+                //killed between filling and sealing, count it now
+                segment.count = segment.scan();
+                segment.seal();
+            }
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(createSegment(0));
+        }
+        Segment head = segments.get(segments.size() - 1);
+        if (head.sealedCount() != 0) {
+            segments.add(createSegment(head.seq + 1));
+        }
+
+        mSegments = segments.toArray(new Segment[0]);
+        mHead = mSegments[mSegments.length - 1];
+        mEnd = mHead.seq * mRecordsPerSegment + mHead.count;
+        mLastCommitNanos = System.nanoTime();
+        //a store left over its limits, e.g. opened with lower ones, is trimmed now rather than
+        //on the next rotation
+        compact(newestTime());
+    }
+
+    //time of the newest stored record, the clock compaction goes by as in rotate(); 0 while empty
+    private long newestTime() {
+        Segment[] segments = mSegments;
+        for (int i = segments.length - 1; i >= 0; i--) {
+            if (segments[i].count > 0) {
+                return segments[i].lastTime();
+            }
+        }
+        return 0;
+    }
+
+    //sets how many records or how much time may pass between two forced commits
+    void setCommitPolicy(int records, long intervalMillis) {
+        mCommitRecords = Math.max(1, records);
+        mCommitIntervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    //appends one fix, no allocation unless a segment has to be rotated
+    void append(long time, double latitude, double longitude, float accuracy, float speed,
+                float bearing) throws IOException {
+        if (mClosed) {
+            throw new IOException("Store closed");
+        }
+        if (mHead.count == mRecordsPerSegment) {
+            rotate();
+        }
+        mHead.write(mHead.count, time, latitude, longitude, accuracy, speed, bearing);
+        mHead.count++;
+        mEnd++;
+
+        mPending++;
+        if (mPending >= mCommitRecords || System.nanoTime() - mLastCommitNanos >= mCommitIntervalNanos) {
+            commit();
+        }
+    }
+
+    //forces pending records to disk
+    void commit() {
+        if (mPending == 0 || mClosed) {
+            return;
+        }
+        mHead.buffer.force();
+        mPending = 0;
+        mLastCommitNanos = System.nanoTime();
+    }
+
+    private void rotate() throws IOException {
+        long lastTime = mHead.lastTime();
+        mHead.buffer.force();
+        mHead.seal();
+        Segment next = createSegment(mHead.seq + 1);
+
+        Segment[] current = mSegments;
+        Segment[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = next;
+        mSegments = grown;
+        mHead = next;
+        mPending = 0;
+        compact(lastTime);
+    }
+
+    //drops sealed segments over the segment limit or entirely older than the age limit
+    void compact(long nowMillis) {
+        Segment[] current = mSegments;
+        int drop = Math.max(0, current.length - mMaxSegments);
+        while (drop < current.length - 1 && mMaxAgeMillis > 0
+                && current[drop].lastTime() < nowMillis - mMaxAgeMillis) {
+            drop++;
+        }
+        if (drop == 0) {
+            return;
+        }
+        mSegments = Arrays.copyOfRange(current, drop, current.length);
+        for (int i = 0; i < drop; i++) {
+            //readers still holding the mapping keep working, the file is gone from the directory
+            //a file that could not be deleted is picked up again and dropped on the next open
+            current[i].file.delete();
+        }
+    }
+
+    //absolute position of the oldest record still stored
+    long firstPosition() {
+        return mSegments[0].seq * mRecordsPerSegment;
+    }
+
+    //absolute position one past the newest record
+    long endPosition() {
+        return mEnd;
+    }
+
+    long size() {
+        return endPosition() - firstPosition();
+    }
+
+    //visits records in [from, to), returns the position after the last visited one
+    long read(long from, long to, FixVisitor visitor) {
+        //end first: rotate() publishes the grown segments before the end moves into them, so
+        //the segments read after it hold every position below it. compaction may have raised
+        //the first position since, reading starts there
+        long stored = mEnd;
+        Segment[] segments = mSegments;
+        long first = segments[0].seq * mRecordsPerSegment;
+        long end = Math.min(to, stored);
+        long pos = Math.max(from, first);
+        while (pos < end) {
+            Segment segment = segments[(int) (pos / mRecordsPerSegment - segments[0].seq)];
+            int index = (int) (pos % mRecordsPerSegment);
+            boolean more = segment.visit(index, visitor);
+            pos++;
+            if (!more) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    //time of the record at an absolute position, positions outside the store are invalid
+    long timeAt(long pos) {
+        return segmentOf(pos).time((int) (pos % mRecordsPerSegment));
+    }
+
+    double latitudeAt(long pos) {
+        return segmentOf(pos).latitude((int) (pos % mRecordsPerSegment));
+    }
+
+    double longitudeAt(long pos) {
+        return segmentOf(pos).longitude((int) (pos % mRecordsPerSegment));
+    }
+
+    //first stored position with a time not before time, records are in time order.
+    //searches one snapshot of the segments as read() takes it, so a concurrent rotation or
+    //compaction never moves the bounds under the search
+    long positionOf(long time) {
+        long stored = mEnd;
+        Segment[] segments = mSegments;
+        long low = segments[0].seq * mRecordsPerSegment;
+        long high = stored;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            Segment segment = segments[(int) (mid / mRecordsPerSegment - segments[0].seq)];
+            if (segment.time((int) (mid % mRecordsPerSegment)) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    //end first, as in read()
+    private Segment segmentOf(long pos) {
+        long stored = mEnd;
+        Segment[] segments = mSegments;
+        long index = pos / mRecordsPerSegment - segments[0].seq;
+        if (pos >= stored || index < 0) {
+            throw new IndexOutOfBoundsException("Position " + pos + " not stored");
+        }
+        return segments[(int) index];
+    }
+
+    int recordsPerSegment() {
+        return mRecordsPerSegment;
+    }
+
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        commit();
+        mClosed = true;
+    }
+
+    private long[] listSegments() {
+        String[] names = mDir.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] seqs = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    seqs[n++] = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException ignored) {
+                    //not one of ours
+                }
+            }
+        }
+        seqs = Arrays.copyOf(seqs, n);
+        Arrays.sort(seqs);
+        return seqs;
+    }
+
+    private File segmentFile(long seq) {
+        return new File(mDir, String.format(Locale.US, "%s%012d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+
+    private Segment createSegment(long seq) throws IOException {
+        Segment segment = map(segmentFile(seq), seq);
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putShort(4, VERSION);
+        segment.buffer.putShort(6, (short) RECORD_SIZE);
+        segment.buffer.putInt(8, mRecordsPerSegment);
+        segment.buffer.putInt(HEADER_SEALED_COUNT, 0);
+        segment.buffer.force();
+        return segment;
+    }
+
+    private Segment mapSegment(long seq) throws IOException {
+        File file = segmentFile(seq);
+        Segment segment = map(file, seq);
+        MappedByteBuffer buffer = segment.buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION
+                || buffer.getShort(6) != RECORD_SIZE || buffer.getInt(8) != mRecordsPerSegment) {
+            throw new IOException("Bad segment header in " + file);
+        }
+        int sealed = segment.sealedCount();
+        segment.count = sealed != 0 ? sealed : segment.scan();
+        if (sealed == 0) {
+            //whatever follows the last valid record is from a torn group commit, whose pages may
+            //have reached the disk in any order, so records further on can still validate. all of
+            //it is wiped before appending over it, or a later scan would count it back in
+            segment.clearFrom(segment.count);
+        }
+        return segment;
+    }
+
+    private Segment map(File file, long seq) throws IOException {
+        long length = HEADER_SIZE + (long) mRecordsPerSegment * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < length) {
+                //a short file only loses its tail, the missing part reads back as empty records
+                raf.setLength(length);
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            //the mapping stays valid after the channel is closed
+            return new Segment(file, seq, buffer);
+        }
+    }
+
+    private static int checksum(long time, int lat, int lon, short accuracy, short speed, short bearing) {
+        int h = 0x5bd1e995;
+        h = 31 * h + (int) (time ^ (time >>> 32));
+        h = 31 * h + lat;
+        h = 31 * h + lon;
+        h = 31 * h + accuracy;
+        h = 31 * h + speed;
+        h = 31 * h + bearing;
+        h ^= h >>> 16;
+        return h & 0xffff;
+    }
+
+    //clamps a non negative quantity into an unsigned short
+    private static short toUnsignedShort(float value, float scale) {
+        if (!(value > 0)) {
+            return 0;
+        }
+        return (short) Math.min(0xffff, Math.round(value * scale));
+    }
+
+    private final class Segment {
+        final File file;
+        final long seq;
+        final MappedByteBuffer buffer;
+        int count;
+
+        Segment(File file, long seq, MappedByteBuffer buffer) {
+            this.file = file;
+            this.seq = seq;
+            this.buffer = buffer;
+        }
+
+        int sealedCount() {
+            return buffer.getInt(HEADER_SEALED_COUNT);
+        }
+
+        void seal() {
+            buffer.putInt(HEADER_SEALED_COUNT, count);
+            buffer.force();
+        }
+
+        void write(int index, long time, double latitude, double longitude, float accuracy,
+                   float speed, float bearing) {
+            int lat = (int) Math.round(latitude * COORDINATE_SCALE);
+            int lon = (int) Math.round(longitude * COORDINATE_SCALE);
+            short acc = toUnsignedShort(accuracy, 10f);
+            short spd = toUnsignedShort(speed, 100f);
+            float normalized = bearing % 360f;
+            short brg = toUnsignedShort(normalized < 0 ? normalized + 360f : normalized, 100f);
+
+            int offset = HEADER_SIZE + index * RECORD_SIZE;
+            buffer.putLong(offset, time);
+            buffer.putInt(offset + 8, lat);
+            buffer.putInt(offset + 12, lon);
+            buffer.putShort(offset + 16, acc);
+            buffer.putShort(offset + 18, spd);
+            buffer.putShort(offset + 20, brg);
+            buffer.putShort(offset + 22, (short) checksum(time, lat, lon, acc, spd, brg));
+        }
+
+        boolean valid(int index) {
+            int offset = HEADER_SIZE + index * RECORD_SIZE;
+            long time = buffer.getLong(offset);
+            if (time == 0) {
+                return false;
+            }
+            int stored = buffer.getShort(offset + 22) & 0xffff;
+            return stored == checksum(time, buffer.getInt(offset + 8), buffer.getInt(offset + 12),
+                    buffer.getShort(offset + 16), buffer.getShort(offset + 18),
+                    buffer.getShort(offset + 20));
+        }
+
+        //number of valid records from the start of the segment
+        int scan() {
+            int n = 0;
+            while (n < mRecordsPerSegment && valid(n)) {
+                n++;
+            }
+            return n;
+        }
+
+        //zeroes every record from index on that is not empty, only those pages are written
+        void clearFrom(int index) {
+            boolean cleared = false;
+            for (int n = index; n < mRecordsPerSegment; n++) {
+                int offset = HEADER_SIZE + n * RECORD_SIZE;
+                for (int i = 0; i < RECORD_SIZE; i += 8) {
+                    if (buffer.getLong(offset + i) != 0) {
+                        for (int j = 0; j < RECORD_SIZE; j += 8) {
+                            buffer.putLong(offset + j, 0L);
+                        }
+                        cleared = true;
+                        break;
+                    }
+                }
+            }
+            if (cleared) {
+                buffer.force();
+            }
+        }
+
+        long time(int index) {
+            return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+        }
+
+        double latitude(int index) {
+            return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 8) / COORDINATE_SCALE;
+        }
+
+        double longitude(int index) {
+            return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 12) / COORDINATE_SCALE;
+        }
+
+        boolean visit(int index, FixVisitor visitor) {
+            int offset = HEADER_SIZE + index * RECORD_SIZE;
+            return visitor.visit(buffer.getLong(offset),
+                    buffer.getInt(offset + 8) / COORDINATE_SCALE,
+                    buffer.getInt(offset + 12) / COORDINATE_SCALE,
+                    (buffer.getShort(offset + 16) & 0xffff) / 10f,
+                    (buffer.getShort(offset + 18) & 0xffff) / 100f,
+                    (buffer.getShort(offset + 20) & 0xffff) / 100f);
+        }
+
+        long lastTime() {
+            return count == 0 ? Long.MIN_VALUE : time(count - 1);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.c2c.locationapp;
+
+//projects the fixes of a TrackBuffer onto a view's pixels for drawing, with level of detail:
+//a point is only kept once it lands at least a cell from the last kept one, so the number of
+//points to draw follows the length of the track on screen in cells, not how many fixes there
+//are. a track wandering more than the view's budget of points (noise while standing still at a
+//close zoom) is redone with cells twice as large. the newest fix always ends the track.
+//the result is x, y pairs in one reused float array.
+//updates are incremental: fixes appended since the last update are projected onto the kept
+//points while they stay inside the current bounds, which are padded so they rarely have to grow.
+//only a fix outside them, a resize or the buffer overwriting too many drawn fixes rebuilds.
+//not thread safe, the buffer's writer may be appending meanwhile
+final class TrackViewport {
+
+    //bounds are grown by this fraction of their span on each side when rebuilt
+    private static final double PADDING = 0.25;
+
+    //smallest span shown, so a stationary track is not zoomed into its noise
+    static final double MIN_SPAN_METERS = 200;
+
+    //rebuilt once this fraction of the buffer was overwritten since, older points are drawn
+    //from their projection until then
+    private static final int STALE_FRACTION = 8;
+
+    //points kept at most per pixel of width plus height, before cells are made coarser
+    private static final int POINTS_PER_PIXEL = 2;
+
+    private final float mMinCellPixels;
+
+    private int mWidth;
+    private int mHeight;
+
+    //current level of detail
+    private float mCellPixels;
+    private int mMaxPoints;
+
+    //kept points as x, y pairs, then the newest fix if it is not one of them
+    private float[] mPoints = new float[2 * 1024];
+    private int mCount;
+    private boolean mHasTail;
+
+    //first buffer position drawn and the next one to project
+    private long mFirst;
+    private long mNext;
+    private boolean mValid;
+
+    //padded bounds and the projection into them
+    private double mMinLatitude;
+    private double mMaxLatitude;
+    private double mMinLongitude;
+    private double mMaxLongitude;
+    private double mScaleX;
+    private double mScaleY;
+    private double mOffsetX;
+    private double mOffsetY;
+
+    TrackViewport(float cellPixels) {
+        if (!(cellPixels > 0)) {
+            throw new IllegalArgumentException("Bad cell size " + cellPixels);
+        }
+        mMinCellPixels = cellPixels;
+        mCellPixels = cellPixels;
+    }
+
+    //size of the area drawn in, the next update rebuilds if it changed
+    void setSize(int width, int height) {
+        if (width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            mMaxPoints = POINTS_PER_PIXEL * (width + height);
+            mValid = false;
+        }
+    }
+
+    //the next update rebuilds, e.g. for another buffer
+    void invalidate() {
+        mValid = false;
+    }
+
+    //brings the points up to date with buffer, true if they changed
+    boolean update(TrackBuffer buffer) {
+        if (mWidth <= 0 || mHeight <= 0) {
+            return false;
+        }
+        long start = buffer.start();
+        long end = buffer.end();
+        if (mValid && mNext == end && mFirst >= start) {
+            return false;
+        }
+        if (!mValid || start - mFirst > buffer.capacity() / STALE_FRACTION) {
+            rebuild(buffer, mMinCellPixels);
+        } else if (!append(buffer, end)) {
+            //over budget keeps to the coarser level, new bounds start over from the finest
+            rebuild(buffer, mCount >= mMaxPoints ? mCellPixels * 2 : mMinCellPixels);
+        }
+        return true;
+    }
+
+    //points to draw in order as x, y pairs, count() of them; owned by this viewport
+    float[] points() {
+        return mPoints;
+    }
+
+    int count() {
+        return mHasTail ? mCount + 1 : mCount;
+    }
+
+    //current distance between kept points
+    float cellPixels() {
+        return mCellPixels;
+    }
+
+    //projects [mNext, end), false if a fix is outside the bounds or was overwritten meanwhile,
+    //or the budget of points ran out
+    private boolean append(TrackBuffer buffer, long end) {
+        for (long pos = mNext; pos < end; pos++) {
+            double latitude = buffer.latitude(pos);
+            double longitude = buffer.longitude(pos);
+            if (!buffer.isValid(pos) || latitude < mMinLatitude || latitude > mMaxLatitude
+                    || longitude < mMinLongitude || longitude > mMaxLongitude
+                    || !keep(latitude, longitude)) {
+                return false;
+            }
+        }
+        mNext = end;
+        return true;
+    }
+
+    //finest level of detail from cellPixels on that fits the budget
+    private void rebuild(TrackBuffer buffer, float cellPixels) {
+        mCount = 0;
+        mHasTail = false;
+        mValid = false;
+        mCellPixels = cellPixels;
+        //a slot overwritten while reading starts it over from the new oldest fix
+        while (true) {
+            long start = buffer.start();
+            long end = buffer.end();
+            if (start == end) {
+                mFirst = mNext = end;
+                mValid = true;
+                return;
+            }
+            double minLatitude = Double.MAX_VALUE;
+            double maxLatitude = -Double.MAX_VALUE;
+            double minLongitude = Double.MAX_VALUE;
+            double maxLongitude = -Double.MAX_VALUE;
+            for (long pos = start; pos < end; pos++) {
+                double latitude = buffer.latitude(pos);
+                double longitude = buffer.longitude(pos);
+                minLatitude = Math.min(minLatitude, latitude);
+                maxLatitude = Math.max(maxLatitude, latitude);
+                minLongitude = Math.min(minLongitude, longitude);
+                maxLongitude = Math.max(maxLongitude, longitude);
+            }
+            if (!buffer.isValid(start)) {
+                continue;
+            }
+            setBounds(minLatitude, maxLatitude, minLongitude, maxLongitude);
+            while (true) {
+                mCount = 0;
+                mHasTail = false;
+                mFirst = start;
+                mNext = start;
+                if (append(buffer, end)) {
+                    mValid = true;
+                    return;
+                }
+                if (mCount < mMaxPoints) {
+                    //overwritten or outside the bounds, the buffer moved on meanwhile
+                    break;
+                }
+                mCellPixels *= 2;
+            }
+        }
+    }
+
+    private void setBounds(double minLatitude, double maxLatitude, double minLongitude,
+                           double maxLongitude) {
+        double midLatitude = (minLatitude + maxLatitude) / 2;
+        double metersX = GeoMath.metersPerDegreeLongitude(midLatitude);
+        double metersY = GeoMath.metersPerDegreeLatitude();
+        //at least MIN_SPAN_METERS, then padded, in meters so both axes share one scale
+        double spanX = Math.max((maxLongitude - minLongitude) * metersX, MIN_SPAN_METERS) * (1 + 2 * PADDING);
+        double spanY = Math.max((maxLatitude - minLatitude) * metersY, MIN_SPAN_METERS) * (1 + 2 * PADDING);
+        double pixelsPerMeter = Math.min(mWidth / spanX, mHeight / spanY);
+        //the bounds fill the view along the tighter axis and are widened along the other
+        spanX = mWidth / pixelsPerMeter;
+        spanY = mHeight / pixelsPerMeter;
+        double midLongitude = (minLongitude + maxLongitude) / 2;
+        mMinLongitude = midLongitude - spanX / 2 / metersX;
+        mMaxLongitude = midLongitude + spanX / 2 / metersX;
+        mMinLatitude = midLatitude - spanY / 2 / metersY;
+        mMaxLatitude = midLatitude + spanY / 2 / metersY;
+        mScaleX = pixelsPerMeter * metersX;
+        mScaleY = -pixelsPerMeter * metersY;
+        mOffsetX = -mMinLongitude * mScaleX;
+        mOffsetY = -mMaxLatitude * mScaleY;
+    }
+
+    //a fix within a cell of the last kept point is only drawn as the tail, the newest fix;
+    //false once the budget of points is used up
+    private boolean keep(double latitude, double longitude) {
+        float x = (float) (longitude * mScaleX + mOffsetX);
+        float y = (float) (latitude * mScaleY + mOffsetY);
+        boolean near = false;
+        if (mCount > 0) {
+            float dx = x - mPoints[2 * mCount - 2];
+            float dy = y - mPoints[2 * mCount - 1];
+            near = dx * dx + dy * dy < mCellPixels * mCellPixels;
+        }
+        if (!near && mCount >= mMaxPoints) {
+            return false;
+        }
+        //room for the tail after the kept points, grown rarely and never past the budget
+        if (2 * mCount + 4 > mPoints.length) {
+            float[] points = new float[mPoints.length * 2];
+            System.arraycopy(mPoints, 0, points, 0, 2 * mCount);
+            mPoints = points;
+        }
+        mPoints[2 * mCount] = x;
+        mPoints[2 * mCount + 1] = y;
+        if (near) {
+            mHasTail = true;
+        } else {
+            mCount++;
+            mHasTail = false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,101 @@
+package com.c2c.locationapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//immutable trip statistics as TripTracker published them: totals over everything seen, the trip
+//in progress and the completed trips, oldest first
+final class TripStats {
+
+    static final TripStats EMPTY = new TripStats(0, 0, 0, 0, 0, 0, null,
+            Collections.<Trip>emptyList());
+
+    final double distanceMeters;
+    final long movingMillis;
+    final long idleMillis;
+    final float maxSpeed;
+    final int stops;
+    final long stoppedMillis;
+
+    //null between trips
+    final Trip current;
+
+    final List<Trip> trips;
+
+    TripStats(double distanceMeters, long movingMillis, long idleMillis, float maxSpeed, int stops,
+              long stoppedMillis, Trip current, List<Trip> trips) {
+        this.distanceMeters = distanceMeters;
+        this.movingMillis = movingMillis;
+        this.idleMillis = idleMillis;
+        this.maxSpeed = maxSpeed;
+        this.stops = stops;
+        this.stoppedMillis = stoppedMillis;
+        this.current = current;
+        this.trips = trips;
+    }
+
+    //m/s over the time spent moving
+    double averageSpeed() {
+        return movingMillis == 0 ? 0 : distanceMeters * 1000 / movingMillis;
+    }
+
+    //stats of earlier followed by these, for joining parts of a history processed separately;
+    //at most maxTrips of the newest trips are kept
+    TripStats after(TripStats earlier, int maxTrips) {
+        List<Trip> trips = new ArrayList<>(earlier.trips.size() + this.trips.size());
+        trips.addAll(earlier.trips);
+        if (earlier.current != null) {
+            trips.add(earlier.current);
+        }
+        trips.addAll(this.trips);
+        if (trips.size() > maxTrips) {
+            trips = new ArrayList<>(trips.subList(trips.size() - maxTrips, trips.size()));
+        }
+        return new TripStats(earlier.distanceMeters + distanceMeters,
+                earlier.movingMillis + movingMillis, earlier.idleMillis + idleMillis,
+                Math.max(earlier.maxSpeed, maxSpeed), earlier.stops + stops,
+                earlier.stoppedMillis + stoppedMillis, current, Collections.unmodifiableList(trips));
+    }
+
+    //one stretch of travel between long stops or gaps in the track
+    static final class Trip {
+        final long startTime;
+        //last fix of the trip, still moving for the trip in progress
+        final long endTime;
+        final double distanceMeters;
+        final long movingMillis;
+        final float maxSpeed;
+
+        Trip(long startTime, long endTime, double distanceMeters, long movingMillis, float maxSpeed) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.distanceMeters = distanceMeters;
+            this.movingMillis = movingMillis;
+            this.maxSpeed = maxSpeed;
+        }
+
+        long durationMillis() {
+            return endTime - startTime;
+        }
+
+        //e.g. "12.4 km, 38 min" or "850 m, 1 h 05 min", locale independent
+        StringBuilder appendSummary(StringBuilder out) {
+            if (distanceMeters < 1000) {
+                out.append(Math.round(distanceMeters)).append(" m, ");
+            } else {
+                long tenths = Math.round(distanceMeters / 100);
+                out.append(tenths / 10).append('.').append(tenths % 10).append(" km, ");
+            }
+            long minutes = durationMillis() / 60_000;
+            if (minutes >= 60) {
+                out.append(minutes / 60).append(" h ");
+                if (minutes % 60 < 10) {
+                    out.append('0');
+                }
+                minutes %= 60;
+            }
+            return out.append(minutes).append(" min");
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.c2c.locationapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//running trip statistics, constant work per fix and nothing rescanned.
+//a fix staying within STOP_RADIUS_METERS of an anchor is pending until it is either confirmed as
+//a stop after STOP_MIN_MILLIS (the pending time becomes idle and its jitter is not counted as
+//distance) or the track leaves the radius (the pending time and distance count as moving).
+//a trip runs from the first movement to a stop of TRIP_END_STOP_MILLIS or a gap in the track of
+//TRIP_GAP_MILLIS. pipeline thread only, stats() is published once per batch for any thread
+final class TripTracker implements FixPipeline.Stage {
+
+    static final double STOP_RADIUS_METERS = 50;
+    static final long STOP_MIN_MILLIS = 3 * 60 * 1000;
+    static final long TRIP_END_STOP_MILLIS = 10 * 60 * 1000;
+
+    //no fix for this long ends everything in progress, so the track can be split there for
+    //a parallel rebuild without changing the result
+    static final long TRIP_GAP_MILLIS = 15 * 60 * 1000;
+
+    //completed trips kept, oldest are forgotten first
+    static final int MAX_TRIPS = 256;
+
+    //previous fix
+    private boolean mHasPrevious;
+    private long mPreviousTime;
+    private double mPreviousLatitude;
+    private double mPreviousLongitude;
+
+    //where the current stop candidate started
+    private double mAnchorLatitude;
+    private double mAnchorLongitude;
+    private long mAnchorTime;
+    private boolean mStopped;
+
+    //since the anchor, not yet known to be moving or stopped
+    private long mPendingMillis;
+    private double mPendingDistance;
+    private float mPendingMaxSpeed;
+
+    private boolean mInTrip;
+    private long mTripStart;
+    private long mTripEnd;
+    private double mTripDistance;
+    private long mTripMoving;
+    private float mTripMaxSpeed;
+
+    private double mDistance;
+    private long mMoving;
+    private long mIdle;
+    private float mMaxSpeed;
+    private int mStops;
+    private long mStoppedMillis;
+    private List<TripStats.Trip> mTrips = Collections.emptyList();
+
+    private volatile TripStats mStats = TripStats.EMPTY;
+
+    @Override
+    public boolean onFix(Fix fix) {
+        if (!mHasPrevious) {
+            begin(fix);
+            return true;
+        }
+        long dt = fix.time - mPreviousTime;
+        if (dt <= 0) {
+            return true;
+        }
+        if (dt > TRIP_GAP_MILLIS) {
+            finish();
+            begin(fix);
+            return true;
+        }
+        double distance = GeoMath.distance(mPreviousLatitude, mPreviousLongitude, fix.latitude,
+                fix.longitude);
+        float speed = fix.speed > 0 ? fix.speed : (float) (distance * 1000 / dt);
+        double fromAnchor = GeoMath.distance(mAnchorLatitude, mAnchorLongitude, fix.latitude,
+                fix.longitude);
+        if (fromAnchor <= STOP_RADIUS_METERS) {
+            if (mStopped) {
+                mIdle += dt;
+                mStoppedMillis += dt;
+            } else {
+                mPendingMillis += dt;
+                mPendingDistance += distance;
+                mPendingMaxSpeed = Math.max(mPendingMaxSpeed, speed);
+                if (fix.time - mAnchorTime >= STOP_MIN_MILLIS) {
+                    mStopped = true;
+                    mStops++;
+                    mIdle += mPendingMillis;
+                    mStoppedMillis += mPendingMillis;
+                    clearPending();
+                }
+            }
+            if (mStopped && mInTrip && fix.time - mAnchorTime >= TRIP_END_STOP_MILLIS) {
+                endTrip();
+            }
+        } else if (mStopped) {
+            //leaving a stop: steps inside the radius were not counted, the way out from its
+            //center is, and the trip starts where the stop ended
+            mStopped = false;
+            move(mPreviousTime, fix.time, dt, fromAnchor, speed);
+            anchor(fix);
+        } else {
+            move(mAnchorTime, fix.time, mPendingMillis + dt, mPendingDistance + distance,
+                    Math.max(mPendingMaxSpeed, speed));
+            anchor(fix);
+        }
+        remember(fix);
+        return true;
+    }
+
+    //publishes what the batch changed, one allocation per batch
+    @Override
+    public void onBatchEnd() {
+        mStats = snapshot();
+    }
+
+    //latest published stats, any thread
+    TripStats stats() {
+        return mStats;
+    }
+
+    //recomputes everything from the stored track using up to threads threads, replacing what
+    //this tracker knew; call before the first fix. the track is cut at gaps of TRIP_GAP_MILLIS,
+    //where trips always end, so the parts are independent and the result equals a single pass.
+    //interrupting the caller ends it early, leaving this tracker incomplete
+    void rebuild(TrackStore store, int threads) throws InterruptedException {
+        long first = store.firstPosition();
+        long end = store.endPosition();
+        int chunks = Math.max(1, threads) * 4;
+        long chunkSize = Math.max(4096, (end - first + chunks - 1) / chunks);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            //where each chunk's first gap is, -1 without one
+            List<Future<Long>> gaps = new ArrayList<>();
+            for (long from = first + chunkSize; from < end; from += chunkSize) {
+                final long start = from;
+                final long stop = Math.min(end, from + chunkSize);
+                gaps.add(executor.submit(() -> firstGap(store, start, stop)));
+            }
+            List<Long> cuts = new ArrayList<>();
+            cuts.add(first);
+            for (Future<Long> gap : gaps) {
+                long cut = get(gap);
+                if (cut >= 0) {
+                    cuts.add(cut);
+                }
+            }
+            cuts.add(end);
+
+            //every part but the last runs on its own and is finished at its end, the last one
+            //is this tracker's live state
+            List<Future<TripStats>> parts = new ArrayList<>();
+            for (int i = 0; i + 2 < cuts.size(); i++) {
+                final long from = cuts.get(i);
+                final long to = cuts.get(i + 1);
+                parts.add(executor.submit(() -> {
+                    TripTracker part = new TripTracker();
+                    part.feed(store, from, to);
+                    part.finish();
+                    return part.snapshot();
+                }));
+            }
+            reset();
+            feed(store, cuts.get(cuts.size() - 2), end);
+
+            TripStats earlier = TripStats.EMPTY;
+            for (Future<TripStats> part : parts) {
+                earlier = get(part).after(earlier, MAX_TRIPS);
+            }
+            mDistance += earlier.distanceMeters;
+            mMoving += earlier.movingMillis;
+            mIdle += earlier.idleMillis;
+            mMaxSpeed = Math.max(mMaxSpeed, earlier.maxSpeed);
+            mStops += earlier.stops;
+            mStoppedMillis += earlier.stoppedMillis;
+            List<TripStats.Trip> trips = new ArrayList<>(earlier.trips);
+            trips.addAll(mTrips);
+            mTrips = trimmed(trips);
+            mStats = snapshot();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void feed(TrackStore store, long from, long to) {
+        final Fix fix = new Fix();
+        store.read(from, to, (time, latitude, longitude, accuracy, speed, bearing) -> {
+            fix.set(time, 0, latitude, longitude, accuracy, speed, bearing);
+            onFix(fix);
+            return !Thread.currentThread().isInterrupted();
+        });
+    }
+
+    //first position in [from, to) more than TRIP_GAP_MILLIS after the one before it
+    private static long firstGap(TrackStore store, long from, long to) {
+        long previous = store.timeAt(from - 1);
+        for (long pos = from; pos < to; pos++) {
+            long time = store.timeAt(pos);
+            if (time - previous > TRIP_GAP_MILLIS) {
+                return pos;
+            }
+            if ((pos & 0xffff) == 0 && Thread.currentThread().isInterrupted()) {
+                return -1;
+            }
+            previous = time;
+        }
+        return -1;
+    }
+
+    private static <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new IllegalStateException(cause);
+        }
+    }
+
+    private void reset() {
+        mHasPrevious = false;
+        mStopped = false;
+        mInTrip = false;
+        clearPending();
+        mDistance = 0;
+        mMoving = 0;
+        mIdle = 0;
+        mMaxSpeed = 0;
+        mStops = 0;
+        mStoppedMillis = 0;
+        mTrips = Collections.emptyList();
+    }
+
+    private void begin(Fix fix) {
+        mHasPrevious = true;
+        mStopped = false;
+        clearPending();
+        anchor(fix);
+        remember(fix);
+    }
+
+    //the track ends here for now, what was pending was standing still
+    private void finish() {
+        mIdle += mPendingMillis;
+        clearPending();
+        if (mInTrip) {
+            endTrip();
+        }
+    }
+
+    private void move(long start, long end, long millis, double distance, float maxSpeed) {
+        mMoving += millis;
+        mDistance += distance;
+        mMaxSpeed = Math.max(mMaxSpeed, maxSpeed);
+        if (!mInTrip) {
+            mInTrip = true;
+            mTripStart = start;
+            mTripDistance = 0;
+            mTripMoving = 0;
+            mTripMaxSpeed = 0;
+        }
+        mTripEnd = end;
+        mTripDistance += distance;
+        mTripMoving += millis;
+        mTripMaxSpeed = Math.max(mTripMaxSpeed, maxSpeed);
+    }
+
+    private void endTrip() {
+        mInTrip = false;
+        List<TripStats.Trip> trips = new ArrayList<>(mTrips.size() + 1);
+        trips.addAll(mTrips);
+        trips.add(currentTrip());
+        mTrips = trimmed(trips);
+    }
+
+    private TripStats.Trip currentTrip() {
+        return new TripStats.Trip(mTripStart, mTripEnd, mTripDistance, mTripMoving, mTripMaxSpeed);
+    }
+
+    private static List<TripStats.Trip> trimmed(List<TripStats.Trip> trips) {
+        if (trips.size() > MAX_TRIPS) {
+            trips = new ArrayList<>(trips.subList(trips.size() - MAX_TRIPS, trips.size()));
+        }
+        return Collections.unmodifiableList(trips);
+    }
+
+    //totals leave out what is pending, the trip in progress shows it so it does not lag a
+    //moving track by up to STOP_RADIUS_METERS
+    private TripStats snapshot() {
+        TripStats.Trip current = null;
+        if (mInTrip) {
+            current = new TripStats.Trip(mTripStart, mPendingMillis > 0 ? mPreviousTime : mTripEnd,
+                    mTripDistance + mPendingDistance, mTripMoving + mPendingMillis,
+                    Math.max(mTripMaxSpeed, mPendingMaxSpeed));
+        }
+        return new TripStats(mDistance, mMoving, mIdle, mMaxSpeed, mStops, mStoppedMillis,
+                current, mTrips);
+    }
+
+    private void anchor(Fix fix) {
+        mAnchorLatitude = fix.latitude;
+        mAnchorLongitude = fix.longitude;
+        mAnchorTime = fix.time;
+        clearPending();
+    }
+
+    private void clearPending() {
+        mPendingMillis = 0;
+        mPendingDistance = 0;
+        mPendingMaxSpeed = 0;
+    }
+
+    private void remember(Fix fix) {
+        mPreviousTime = fix.time;
+        mPreviousLatitude = fix.latitude;
+        mPreviousLongitude = fix.longitude;
+    }
+}
@@ -0,0 +1,132 @@
+package com.c2c.locationapp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+//directory of sealed upload batches waiting to be sent, one file per batch.
+//a batch is written to a temporary file and renamed into place, so after a crash the outbox only
+//ever holds complete batches. file names sort in the order the batches were sealed
+final class UploadOutbox {
+
+    static final String BATCH_SUFFIX = ".trk.gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String INSTALL_ID_FILE = "install_id";
+    private static final String SEQUENCE_FILE = "sequence";
+
+    private final File mDir;
+    private final String mInstallId;
+    //next number nextSequence hands out, persisted so it keeps counting across restarts
+    private long mSequence;
+
+    UploadOutbox(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        mDir = dir;
+        //leftovers of a write that was interrupted
+        File[] temp = dir.listFiles((d, name) -> name.endsWith(TEMP_SUFFIX));
+        if (temp != null) {
+            for (File file : temp) {
+                file.delete();
+            }
+        }
+        mInstallId = loadInstallId();
+        mSequence = loadSequence();
+    }
+
+    //random per install, prefixes every batch id so ids from different devices never collide
+    String installId() {
+        return mInstallId;
+    }
+
+    //id the server deduplicates on, the same for every attempt to send the batch
+    String batchId(File batch) {
+        String name = batch.getName();
+        return mInstallId + "-" + name.substring(0, name.length() - BATCH_SUFFIX.length());
+    }
+
+    //number unique to this outbox for as long as it exists, restarts included; makes batch names
+    //unique where their fixes are not, e.g. fixes delivered again after a restart or a replayed track
+    synchronized long nextSequence() throws IOException {
+        long sequence = mSequence;
+        byte[] bytes = Long.toString(sequence + 1).getBytes(StandardCharsets.US_ASCII);
+        //stored before it is used, a crash in between only skips a number
+        writeAtomically(new File(mDir, SEQUENCE_FILE), bytes, bytes.length);
+        mSequence = sequence + 1;
+        return sequence;
+    }
+
+    //stores a sealed batch under name, which must sort after earlier batches
+    File write(String name, byte[] payload, int length) throws IOException {
+        File batch = new File(mDir, name + BATCH_SUFFIX);
+        writeAtomically(batch, payload, length);
+        return batch;
+    }
+
+    //batches waiting to be sent, oldest first
+    File[] pending() {
+        File[] batches = mDir.listFiles((d, name) -> name.endsWith(BATCH_SUFFIX));
+        if (batches == null) {
+            return new File[0];
+        }
+        Arrays.sort(batches);
+        return batches;
+    }
+
+    static byte[] read(File batch) throws IOException {
+        try (InputStream in = new FileInputStream(batch)) {
+            byte[] payload = new byte[(int) batch.length()];
+            int n = 0;
+            while (n < payload.length) {
+                int read = in.read(payload, n, payload.length - n);
+                if (read < 0) {
+                    throw new IOException("Batch shrank " + batch);
+                }
+                n += read;
+            }
+            return payload;
+        }
+    }
+
+    private String loadInstallId() throws IOException {
+        File file = new File(mDir, INSTALL_ID_FILE);
+        if (file.isFile()) {
+            return new String(read(file), StandardCharsets.US_ASCII).trim();
+        }
+        String id = UUID.randomUUID().toString().replace("-", "");
+        byte[] bytes = id.getBytes(StandardCharsets.US_ASCII);
+        writeAtomically(file, bytes, bytes.length);
+        return id;
+    }
+
+    private long loadSequence() throws IOException {
+        File file = new File(mDir, SEQUENCE_FILE);
+        if (!file.isFile()) {
+            return 0;
+        }
+        String text = new String(read(file), StandardCharsets.US_ASCII).trim();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad sequence " + text + " in " + file);
+        }
+    }
+
+    private static void writeAtomically(File file, byte[] bytes, int length) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes, 0, length);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not store " + file);
+        }
+    }
+}
@@ -5,13 +5,41 @@ import android.content.Context;
 import android.location.Location;
 import android.preference.PreferenceManager;
 
-import java.text.DateFormat;
-import java.util.Date;
-
 class Utils {
 
     static final String KEY_REQUESTING_LOCATION_UPDATES = "requesting_location_updates";
 
+    static final String KEY_MAX_WAIT_TIME = "max_wait_time";
+
+    static final String KEY_UPLOAD_URL = "upload_url";
+
+    static final String KEY_SMOOTH_FIXES = "smooth_fixes";
+
+    static final String KEY_COLLECT_METRICS = "collect_metrics";
+
+    static final String UNKNOWN_LOCATION_TEXT = "Unknown location";
+
+    // between the place name, the coordinates and the trip summary, a middle dot
+    static final String TEXT_SEPARATOR = " \u00b7 ";
+
+    // decimals of a degree shown for coordinates, 6 is about 10 cm
+    static final int COORDINATE_DECIMALS = 6;
+
+    // formatter and scratch buffer per calling thread, neither is thread safe
+    private static final ThreadLocal<LocationFormatter> FORMATTER = new ThreadLocal<LocationFormatter>() {
+        @Override
+        protected LocationFormatter initialValue() {
+            return new LocationFormatter(COORDINATE_DECIMALS, LocationFormatter.CoordinateStyle.DECIMAL);
+        }
+    };
+
+    private static final ThreadLocal<StringBuilder> TEXT = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(64);
+        }
+    };
+
     // returns true if requesting location updates, otherwise false
     static boolean requestingLocationUpdates(Context context) {
         return PreferenceManager.getDefaultSharedPreferences(context)
@@ -26,13 +54,98 @@ class Utils {
                 .apply();
     }
 
+    // returns how long (ms) the provider may hold fixes back to deliver them as one batch, 0 for no batching
+    static long getMaxWaitTime(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(KEY_MAX_WAIT_TIME, 0);
+    }
+
+    // stores batching window in SharedPreferences, takes effect on the next location request
+    static void setMaxWaitTime(Context context, long maxWaitTime) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .putLong(KEY_MAX_WAIT_TIME, maxWaitTime)
+                .apply();
+    }
+
+    // returns true if accepted fixes should go through the Kalman smoother
+    static boolean smoothFixes(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(KEY_SMOOTH_FIXES, false);
+    }
+
+    // stores smoothing state in SharedPreferences, read when the service starts
+    static void setSmoothFixes(Context context, boolean smoothFixes) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .putBoolean(KEY_SMOOTH_FIXES, smoothFixes)
+                .apply();
+    }
+
+    // returns true if the service should time its hot paths, see ServiceMetrics
+    static boolean collectMetrics(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(KEY_COLLECT_METRICS, false);
+    }
+
+    // stores metrics state in SharedPreferences, read when the service starts
+    static void setCollectMetrics(Context context, boolean collectMetrics) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .putBoolean(KEY_COLLECT_METRICS, collectMetrics)
+                .apply();
+    }
+
+    // returns the endpoint recorded fixes are uploaded to, null if uploading is off
+    static String getUploadUrl(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(KEY_UPLOAD_URL, null);
+    }
+
+    // stores upload endpoint in SharedPreferences, null turns uploading off; read when the service starts
+    static void setUploadUrl(Context context, String uploadUrl) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .putString(KEY_UPLOAD_URL, uploadUrl)
+                .apply();
+    }
+
     // returns {@code location}  object as lattitude, logitude as string
     static String getLocationText(Location location) {
-        return location == null ? "Unknown location" : "(" + location.getLatitude() + ", " + location.getLongitude() + ")";
+        if (location == null) {
+            return UNKNOWN_LOCATION_TEXT;
+        }
+        StringBuilder text = TEXT.get();
+        text.setLength(0);
+        return FORMATTER.get().appendCoordinates(text, location.getLatitude(), location.getLongitude())
+                .toString();
+    }
+
+    // same text for a fix handed out by the service
+    static String getLocationText(Fix fix) {
+        StringBuilder text = TEXT.get();
+        text.setLength(0);
+        return FORMATTER.get().appendCoordinates(text, fix.latitude, fix.longitude).toString();
+    }
+
+    // same text after the place name and followed by the trip in progress, either may be null
+    static String getLocationText(Fix fix, String place, TripStats stats) {
+        StringBuilder text = TEXT.get();
+        text.setLength(0);
+        if (place != null) {
+            text.append(place).append(TEXT_SEPARATOR);
+        }
+        FORMATTER.get().appendCoordinates(text, fix.latitude, fix.longitude);
+        if (stats != null && stats.current != null) {
+            stats.current.appendSummary(text.append(TEXT_SEPARATOR));
+        }
+        return text.toString();
     }
 
     static String getLocationTitle(Context context) {
+        StringBuilder text = TEXT.get();
+        text.setLength(0);
         return context.getString(R.string.location_updated,
-                DateFormat.getDateTimeInstance().format(new Date()));
+                FORMATTER.get().appendDateTime(text, System.currentTimeMillis()));
     }
 }
@@ -0,0 +1,131 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests feeding {@link AdaptiveSampler} with recorded-style tracks.
+ */
+public class AdaptiveSamplerTest {
+
+    private static final double LATITUDE = 48.1372;
+    private static final double LONGITUDE = 11.5756;
+
+    private final Random mRandom = new Random(42);
+    private final Fix mFix = new Fix();
+    private long mTime = 1_600_000_000_000L;
+    private double mNorthMeters;
+
+    //moves north at speed for duration, one fix per interval, returns how many state changes happened
+    private int drive(AdaptiveSampler sampler, double speed, boolean reportSpeed, float accuracy,
+                      double jitterMeters, long intervalMillis, long durationMillis) {
+        int changes = 0;
+        for (long t = 0; t < durationMillis; t += intervalMillis) {
+            mTime += intervalMillis;
+            mNorthMeters += speed * intervalMillis / 1000;
+            double north = mNorthMeters + mRandom.nextGaussian() * jitterMeters;
+            double east = mRandom.nextGaussian() * jitterMeters;
+            mFix.set(mTime, 0, LATITUDE + north / GeoMath.metersPerDegreeLatitude(),
+                    LONGITUDE + east / GeoMath.metersPerDegreeLongitude(LATITUDE), accuracy,
+                    reportSpeed ? (float) speed : 0f, 0f);
+            if (sampler.onFix(mFix)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    @Test
+    public void parkedPhoneWithJitter_dropsToStationaryAfterDwell() {
+        AdaptiveSampler sampler = new AdaptiveSampler(MotionState.WALKING);
+        drive(sampler, 0, false, 15f, 6, 10_000, 100_000);
+        assertEquals(MotionState.WALKING, sampler.getState());
+
+        drive(sampler, 0, false, 15f, 6, 10_000, 200_000);
+        assertEquals(MotionState.STATIONARY, sampler.getState());
+        assertEquals(0, drive(sampler, 0, false, 15f, 6, 10_000, 3_600_000));
+    }
+
+    @Test
+    public void stationary_wakesUpOnFirstRealMovement() {
+        AdaptiveSampler sampler = new AdaptiveSampler(MotionState.STATIONARY);
+        drive(sampler, 0, false, 10f, 3, 60_000, 600_000);
+        assertEquals(MotionState.STATIONARY, sampler.getState());
+
+        drive(sampler, 1.4, false, 10f, 3, 60_000, 120_000);
+        assertEquals(MotionState.WALKING, sampler.getState());
+    }
+
+    @Test
+    public void stationary_wakesUpOnCoarseFixes() {
+        //balanced power fixes from wifi and cell, worse than the usual limit
+        AdaptiveSampler sampler = new AdaptiveSampler(MotionState.STATIONARY);
+        assertEquals(0, drive(sampler, 0, false, 120f, 30, 60_000, 3_600_000));
+
+        drive(sampler, 14, false, 120f, 30, 60_000, 180_000);
+        assertEquals(MotionState.DRIVING, sampler.getState());
+    }
+
+    @Test
+    public void stationary_ignoresSpeedSpikesOfAParkedPhone() {
+        AdaptiveSampler sampler = new AdaptiveSampler(MotionState.STATIONARY);
+        int changes = 0;
+        for (int i = 0; i < 2000; i++) {
+            //a gap of minutes now and then, else the 5 s fixes the UI asks for
+            boolean gap = i % 50 == 0;
+            mTime += gap ? 600_000 : 5_000;
+            //indoor GPS reports a lone spike of 2 to 5 m/s every tenth fix and on the first fix
+            //after a gap, when the smoothed speed would be that fix alone
+            float speed = gap || i % 10 == 5 ? 2f + mRandom.nextFloat() * 3 : 0f;
+            mFix.set(mTime, 0, LATITUDE + mRandom.nextGaussian() * 5 / GeoMath.metersPerDegreeLatitude(),
+                    LONGITUDE, 20f, speed, 0f);
+            if (sampler.onFix(mFix)) {
+                changes++;
+            }
+        }
+        assertEquals(0, changes);
+        assertEquals(MotionState.STATIONARY, sampler.getState());
+
+        //walking off with reported speed is still followed once the smoothed speed catches up
+        drive(sampler, 1.4, true, 10f, 3, 5_000, 30_000);
+        assertEquals(MotionState.WALKING, sampler.getState());
+    }
+
+    @Test
+    public void vehicle_getsDenseFixesAndSurvivesTrafficLights() {
+        AdaptiveSampler sampler = new AdaptiveSampler(MotionState.WALKING);
+        drive(sampler, 14, true, 5f, 2, 10_000, 60_000);
+        assertEquals(MotionState.DRIVING, sampler.getState());
+
+        int changes = 0;
+        for (int light = 0; light < 5; light++) {
+            changes += drive(sampler, 0, true, 5f, 1, 2_000, 45_000);
+            changes += drive(sampler, 14, true, 5f, 2, 2_000, 90_000);
+        }
+        assertEquals(0, changes);
+        assertEquals(MotionState.DRIVING, sampler.getState());
+
+        drive(sampler, 0, true, 5f, 1, 2_000, 200_000);
+        assertEquals(MotionState.STATIONARY, sampler.getState());
+    }
+
+    @Test
+    public void speedNearBoundary_doesNotFlap() {
+        AdaptiveSampler sampler = new AdaptiveSampler(MotionState.WALKING);
+        int changes = 0;
+        for (int i = 0; i < 50; i++) {
+            changes += drive(sampler, i % 2 == 0 ? 3.3 : 3.7, true, 5f, 1, 5_000, 20_000);
+        }
+        assertTrue("changes " + changes, changes <= 1);
+    }
+
+    @Test
+    public void inaccurateFixes_areIgnored() {
+        AdaptiveSampler sampler = new AdaptiveSampler(MotionState.STATIONARY);
+        assertEquals(0, drive(sampler, 0, false, 500f, 400, 60_000, 3_600_000));
+        assertEquals(MotionState.STATIONARY, sampler.getState());
+    }
+}
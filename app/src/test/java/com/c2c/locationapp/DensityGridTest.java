@@ -0,0 +1,320 @@
+package com.c2c.locationapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link DensityGrid}: dwell and visit accounting, rollups, queries,
+ * persistence, merging and the parallel rebuild.
+ */
+public class DensityGridTest {
+
+    private static final long START = 1_600_000_000_000L;
+
+    private File mDir;
+    private TrackStore mStore;
+    private final Fix mFix = new Fix();
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("density").toFile();
+        mStore = TrackStore.open(new File(mDir, "track"), 256, 64, 0);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+        delete(mDir);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void add(DensityGrid grid, long time, double latitude, double longitude) {
+        mFix.set(time, 0, latitude, longitude, 5f, 0f, 0f);
+        grid.onFix(mFix);
+    }
+
+    //a few days of home, work and errands between them, with nights without fixes
+    private void record(int fixes) throws IOException {
+        Random random = new Random(5);
+        double latitude = 52.52;
+        double longitude = 13.40;
+        long time = START;
+        for (int i = 0; i < fixes; i++) {
+            if (i % 1000 == 999) {
+                time += DensityGrid.GAP_MILLIS + 1;
+            } else {
+                time += 1000 + random.nextInt(30_000);
+            }
+            if (random.nextInt(50) == 0) {
+                latitude = 52.52 + random.nextInt(5) * 0.01;
+                longitude = 13.40 + random.nextInt(5) * 0.015;
+            }
+            latitude += random.nextGaussian() * 2e-4;
+            longitude += random.nextGaussian() * 3e-4;
+            mStore.append(time, latitude, longitude, 5f, 1f, 0f);
+        }
+    }
+
+    private DensityGrid singlePass() {
+        DensityGrid grid = new DensityGrid();
+        mStore.read(mStore.firstPosition(), mStore.endPosition(),
+                (time, latitude, longitude, accuracy, speed, bearing) -> {
+                    add(grid, time, latitude, longitude);
+                    return true;
+                });
+        return grid;
+    }
+
+    private byte[] bytes(DensityGrid grid) throws IOException {
+        File file = new File(mDir, "grid-" + System.nanoTime());
+        grid.write(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        file.delete();
+        return bytes;
+    }
+
+    private static List<long[]> cells(DensityGrid grid, int level, double minLatitude,
+                                      double minLongitude, double maxLatitude, double maxLongitude) {
+        List<long[]> cells = new ArrayList<>();
+        grid.query(level, minLatitude, minLongitude, maxLatitude, maxLongitude,
+                (latitude, longitude, dwellMillis, visits) -> {
+                    cells.add(new long[]{DensityGrid.cell(latitude, longitude, level), dwellMillis,
+                            visits});
+                    return true;
+                });
+        cells.sort((a, b) -> Long.compare(a[0], b[0]));
+        return cells;
+    }
+
+    @Test
+    public void cell_isGeohashPrefix() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            int level = 1 + random.nextInt(DensityGrid.MAX_LEVEL);
+            assertEquals(ReverseGeocoder.geohash(latitude, longitude) >>> (60 - 2 * level),
+                    DensityGrid.cell(latitude, longitude, level));
+        }
+    }
+
+    @Test
+    public void dwell_isTimeSpentInPreviousCell() {
+        DensityGrid grid = new DensityGrid(18, 4);
+        //two cells side by side at level 18, one cell at level 15
+        double east = 13.40 + 360.0 / (1 << 18);
+        add(grid, START, 52.52, 13.40);
+        add(grid, START + 60_000, 52.52, 13.40);
+        add(grid, START + 120_000, 52.52, east);
+        add(grid, START + 180_000, 52.52, 13.40);
+        add(grid, START + 190_000, 52.52, 13.40);
+        //going back in time is ignored
+        add(grid, START + 100_000, 52.52, east);
+
+        List<long[]> fine = cells(grid, 18, 52, 13, 53, 14);
+        assertEquals(2, fine.size());
+        long home = DensityGrid.cell(52.52, 13.40, 18);
+        long[] first = fine.get(0)[0] == home ? fine.get(0) : fine.get(1);
+        long[] second = fine.get(0)[0] == home ? fine.get(1) : fine.get(0);
+        assertArrayEquals(new long[]{home, 130_000, 2}, first);
+        assertEquals(60_000, second[1]);
+        assertEquals(1, second[2]);
+
+        List<long[]> coarse = cells(grid, 15, 52, 13, 53, 14);
+        assertEquals(1, coarse.size());
+        assertEquals(190_000, coarse.get(0)[1]);
+        assertEquals(1, coarse.get(0)[2]);
+    }
+
+    @Test
+    public void gap_isNeitherDwellNorStay() {
+        DensityGrid grid = new DensityGrid(18, 4);
+        add(grid, START, 52.52, 13.40);
+        add(grid, START + DensityGrid.GAP_MILLIS + 1, 52.52, 13.40);
+        add(grid, START + DensityGrid.GAP_MILLIS + 1001, 52.52, 13.40);
+        for (int level = 15; level <= 18; level++) {
+            List<long[]> cells = cells(grid, level, 52, 13, 53, 14);
+            assertEquals(1, cells.size());
+            assertEquals(1000, cells.get(0)[1]);
+            assertEquals(2, cells.get(0)[2]);
+        }
+    }
+
+    @Test
+    public void levels_rollUpDwell() throws IOException {
+        record(20_000);
+        DensityGrid grid = singlePass();
+        long total = -1;
+        for (int level = grid.coarsestLevel(); level <= grid.finestLevel(); level++) {
+            long dwell = 0;
+            long visits = 0;
+            for (long[] cell : cells(grid, level, -90, -180, 90, 180)) {
+                dwell += cell[1];
+                visits += cell[2];
+            }
+            assertEquals(grid.cellCount(level), cells(grid, level, -90, -180, 90, 180).size());
+            if (total >= 0) {
+                assertEquals(total, dwell);
+            }
+            total = dwell;
+            //every stored cell was entered at least once
+            assertTrue(visits >= grid.cellCount(level));
+        }
+        assertTrue(total > 0);
+        assertTrue(grid.cellCount(grid.finestLevel()) > grid.cellCount(grid.coarsestLevel()));
+    }
+
+    @Test
+    public void query_lookupMatchesScan() throws IOException {
+        record(20_000);
+        DensityGrid grid = singlePass();
+        int level = grid.finestLevel();
+        //the whole world scans the level, a small box looks its cells up
+        double minLatitude = 52.53;
+        double minLongitude = 13.41;
+        double maxLatitude = 52.545;
+        double maxLongitude = 13.44;
+        List<long[]> expected = new ArrayList<>();
+        grid.query(level, -90, -180, 90, 180, (latitude, longitude, dwellMillis, visits) -> {
+            if (latitude >= minLatitude && latitude <= maxLatitude && longitude >= minLongitude
+                    && longitude <= maxLongitude) {
+                expected.add(new long[]{DensityGrid.cell(latitude, longitude, level), dwellMillis,
+                        visits});
+            }
+            return true;
+        });
+        expected.sort((x, y) -> Long.compare(x[0], y[0]));
+        List<long[]> actual = cells(grid, level, minLatitude, minLongitude, maxLatitude,
+                maxLongitude);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+        assertEquals(grid.finestLevel(), grid.levelFor(0.01, 100));
+        assertEquals(grid.coarsestLevel(), grid.levelFor(360, 100));
+        assertEquals(10, grid.levelFor(1, 3));
+    }
+
+    @Test
+    public void topPlaces_mostDwellFirst() throws IOException {
+        record(20_000);
+        DensityGrid grid = singlePass();
+        List<DensityGrid.Cell> top = grid.topPlaces(16, 5);
+        assertEquals(5, top.size());
+        long[] dwell = new long[grid.cellCount(16)];
+        int n = 0;
+        for (long[] cell : cells(grid, 16, -90, -180, 90, 180)) {
+            dwell[n++] = cell[1];
+        }
+        Arrays.sort(dwell);
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(dwell[dwell.length - 1 - i], top.get(i).dwellMillis);
+            assertEquals(16, top.get(i).level);
+        }
+        assertTrue(grid.topPlaces(16, 0).isEmpty());
+    }
+
+    @Test
+    public void rebuild_matchesSinglePass() throws InterruptedException, IOException {
+        record(40_000);
+        DensityGrid expected = singlePass();
+        for (int threads : new int[]{1, 4}) {
+            DensityGrid rebuilt = new DensityGrid();
+            add(rebuilt, START, 0, 0);
+            rebuilt.rebuild(mStore, threads);
+            assertArrayEquals(bytes(expected), bytes(rebuilt));
+        }
+    }
+
+    @Test
+    public void rebuild_interruptedLeavesGridAsItWas() throws IOException {
+        record(40_000);
+        DensityGrid grid = new DensityGrid();
+        add(grid, START, 0, 0);
+        byte[] before = bytes(grid);
+        Thread.currentThread().interrupt();
+        try {
+            grid.rebuild(mStore, 2);
+            fail("expected the rebuild to be interrupted");
+        } catch (InterruptedException expected) {
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertArrayEquals(before, bytes(grid));
+    }
+
+    @Test
+    public void readUpdate_catchesUpWithStore() throws IOException {
+        record(10_000);
+        DensityGrid earlier = singlePass();
+        File file = new File(mDir, "density");
+        earlier.write(file);
+        record(5_000);
+
+        DensityGrid restored = new DensityGrid();
+        assertTrue(restored.read(file));
+        assertArrayEquals(bytes(earlier), bytes(restored));
+        restored.update(mStore);
+        assertArrayEquals(bytes(singlePass()), bytes(restored));
+
+        //other levels are rebuilt, not read
+        assertFalse(new DensityGrid(16, 8).read(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_damagedFileThrows() throws IOException {
+        record(2_000);
+        File file = new File(mDir, "density");
+        singlePass().write(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 0x10);
+        }
+        new DensityGrid().read(file);
+    }
+
+    @Test
+    public void merge_addsSeparateDays() {
+        DensityGrid monday = new DensityGrid(18, 4);
+        DensityGrid tuesday = new DensityGrid(18, 4);
+        for (int i = 0; i <= 60; i++) {
+            add(monday, START + i * 1000L, 52.52, 13.40);
+            add(tuesday, START + 86_400_000L + i * 2000L, 52.52, 13.40);
+        }
+        add(tuesday, START + 86_400_000L + 130_000, 48.85, 2.35);
+        monday.merge(tuesday);
+        List<long[]> cells = cells(monday, 18, 52, 13, 53, 14);
+        assertEquals(1, cells.size());
+        assertEquals(60_000 + 120_000 + 10_000, cells.get(0)[1]);
+        assertEquals(2, cells.get(0)[2]);
+        assertEquals(2, monday.cellCount(18));
+        try {
+            monday.merge(new DensityGrid());
+            fail("expected the levels to differ");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the {@link FixQualityFilter} gates and smoother.
+ */
+public class FixQualityFilterTest {
+
+    private static final double LATITUDE = 48.1372;
+    private static final double LONGITUDE = 11.5756;
+    private static final long START = 1_600_000_000_000L;
+
+    private long mNow = 1_000_000_000_000L;
+
+    private final FixQualityFilter.Clock mClock = () -> mNow;
+
+    private static Fix fix(long time, double northMeters, double eastMeters, float accuracy) {
+        Fix fix = new Fix();
+        fix.set(time, 0, LATITUDE + northMeters / GeoMath.metersPerDegreeLatitude(),
+                LONGITUDE + eastMeters / GeoMath.metersPerDegreeLongitude(LATITUDE), accuracy, 0f, 0f);
+        return fix;
+    }
+
+    @Test
+    public void gates_dropInaccurateAndStaleFixes() {
+        FixQualityFilter filter = new FixQualityFilter(mClock, 50, 60_000, 80);
+        assertFalse(filter.onFix(fix(START, 0, 0, 120)));
+
+        Fix stale = fix(START + 1000, 0, 0, 10);
+        stale.elapsedRealtimeNanos = mNow - 61_000_000_000L;
+        assertFalse(filter.onFix(stale));
+
+        Fix fresh = fix(START + 2000, 0, 0, 10);
+        fresh.elapsedRealtimeNanos = mNow - 1_000_000_000L;
+        assertTrue(filter.onFix(fresh));
+        //unknown accuracy passes the accuracy gate
+        assertTrue(filter.onFix(fix(START + 3000, 1, 0, 0)));
+
+        assertEquals(1, filter.rejectedAccuracy());
+        assertEquals(1, filter.rejectedAge());
+        assertEquals(2, filter.accepted());
+    }
+
+    @Test
+    public void speedGate_rejectsJumpsButRecoversFromBadAnchor() {
+        FixQualityFilter filter = new FixQualityFilter(mClock);
+        assertTrue(filter.onFix(fix(START, 0, 0, 5)));
+        assertTrue(filter.onFix(fix(START + 1000, 10, 0, 5)));
+        //2 km in a second
+        assertFalse(filter.onFix(fix(START + 2000, 2000, 0, 5)));
+        assertTrue(filter.onFix(fix(START + 3000, 30, 0, 5)));
+        assertEquals(1, filter.rejectedSpeed());
+
+        //the real track moved on while the anchor was an outlier: after a few rejects it is taken
+        FixQualityFilter stuck = new FixQualityFilter(mClock);
+        assertTrue(stuck.onFix(fix(START, 5000, 0, 5)));
+        for (int i = 1; i <= FixQualityFilter.MAX_CONSECUTIVE_SPEED_REJECTS; i++) {
+            assertFalse(stuck.onFix(fix(START + i * 1000, 0, 0, 5)));
+        }
+        assertTrue(stuck.onFix(fix(START + 10_000, 0, 0, 5)));
+        assertTrue(stuck.onFix(fix(START + 11_000, 1, 0, 5)));
+    }
+
+    @Test
+    public void smoother_reducesNoiseOnSteadyWalk() {
+        FixQualityFilter filter = new FixQualityFilter(mClock);
+        filter.setSmoothing(true);
+        Random random = new Random(1);
+        double rawError = 0;
+        double smoothedError = 0;
+        int n = 0;
+        for (int i = 0; i < 600; i++) {
+            double north = 1.4 * i;
+            Fix fix = fix(START + i * 1000L, north + random.nextGaussian() * 8,
+                    random.nextGaussian() * 8, 8);
+            Fix truth = fix(START + i * 1000L, north, 0, 8);
+            double raw = GeoMath.distance(truth.latitude, truth.longitude, fix.latitude, fix.longitude);
+            assertTrue(filter.onFix(fix));
+            if (i >= 60) {
+                rawError += raw;
+                smoothedError += GeoMath.distance(truth.latitude, truth.longitude, fix.latitude,
+                        fix.longitude);
+                n++;
+            }
+        }
+        assertEquals(599, filter.smoothed());
+        assertTrue("raw " + rawError / n + " smoothed " + smoothedError / n,
+                smoothedError < rawError * 0.6);
+    }
+}
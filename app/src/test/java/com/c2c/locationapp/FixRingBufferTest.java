@@ -0,0 +1,86 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the {@link FixRingBuffer} drop-oldest policy and hand-off between threads.
+ */
+public class FixRingBufferTest {
+
+    private static Fix fix(long time) {
+        Fix fix = new Fix();
+        fix.set(time, time * 1_000_000L, time * 1e-6, -time * 1e-6, 1f, 2f, 3f);
+        return fix;
+    }
+
+    @Test
+    public void capacity_isRoundedToPowerOfTwo() {
+        assertEquals(1, new FixRingBuffer(1).capacity());
+        assertEquals(8, new FixRingBuffer(5).capacity());
+        assertEquals(1024, new FixRingBuffer(1024).capacity());
+    }
+
+    @Test
+    public void full_dropsOldest() {
+        FixRingBuffer buffer = new FixRingBuffer(4);
+        for (long t = 1; t <= 4; t++) {
+            assertTrue(buffer.offer(fix(t)));
+        }
+        assertFalse(buffer.offer(fix(5)));
+        assertFalse(buffer.offer(fix(6)));
+        assertEquals(2, buffer.dropped());
+        assertEquals(4, buffer.size());
+
+        Fix out = new Fix();
+        for (long t = 3; t <= 6; t++) {
+            assertTrue(buffer.poll(out));
+            assertEquals(t, out.time);
+            assertEquals(t * 1e-6, out.latitude, 0);
+        }
+        assertFalse(buffer.poll(out));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void concurrentConsumer_seesIncreasingUntornFixes() throws InterruptedException {
+        final FixRingBuffer buffer = new FixRingBuffer(64);
+        final int count = 200_000;
+        final long[] received = {0};
+        final long[] last = {0};
+        final boolean[] torn = {false};
+        final AtomicBoolean done = new AtomicBoolean();
+
+        Thread consumer = new Thread(() -> {
+            Fix out = new Fix();
+            while (true) {
+                if (buffer.poll(out)) {
+                    if (out.time <= last[0] || out.latitude != out.time * 1e-6
+                            || out.elapsedRealtimeNanos != out.time * 1_000_000L) {
+                        torn[0] = true;
+                    }
+                    last[0] = out.time;
+                    received[0]++;
+                } else if (done.get() && buffer.isEmpty()) {
+                    return;
+                }
+            }
+        });
+        consumer.start();
+        Fix in = new Fix();
+        for (long t = 1; t <= count; t++) {
+            in.set(t, t * 1_000_000L, t * 1e-6, -t * 1e-6, 1f, 2f, 3f);
+            buffer.offer(in);
+        }
+        done.set(true);
+        consumer.join(10_000);
+
+        assertFalse(consumer.isAlive());
+        assertFalse(torn[0]);
+        assertEquals(count, last[0]);
+        assertEquals(count, received[0] + buffer.dropped());
+    }
+}
@@ -0,0 +1,117 @@
+package com.c2c.locationapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FixSnapshot} persistence and torn write recovery, and for the
+ * {@link FixPipeline} set up hook the service opens storage in.
+ */
+public class FixSnapshotTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("last_fix", ".snap");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private static Fix fix(long time) {
+        Fix fix = new Fix();
+        fix.set(time, time * 1_000_000L, 52.52 + time * 1e-7, 13.40, 4.5f, 1.25f, 270f);
+        return fix;
+    }
+
+    @Test
+    public void empty_loadsNothing() throws IOException {
+        FixSnapshot snapshot = FixSnapshot.open(mFile);
+        assertFalse(snapshot.load(new Fix()));
+        assertNull(snapshot.loadMotionState());
+        assertEquals(FixSnapshot.FILE_SIZE, mFile.length());
+    }
+
+    @Test
+    public void newestFix_survivesReopen() throws IOException {
+        FixSnapshot snapshot = FixSnapshot.open(mFile);
+        for (long t = 1; t <= 5; t++) {
+            snapshot.write(fix(t), MotionState.DRIVING);
+        }
+        snapshot.close();
+
+        Fix out = new Fix();
+        FixSnapshot reopened = FixSnapshot.open(mFile);
+        assertTrue(reopened.load(out));
+        assertEquals(5, out.time);
+        assertEquals(5_000_000L, out.elapsedRealtimeNanos);
+        assertEquals(52.52 + 5e-7, out.latitude, 0);
+        assertEquals(13.40, out.longitude, 0);
+        assertEquals(4.5f, out.accuracy, 0);
+        assertEquals(1.25f, out.speed, 0);
+        assertEquals(270f, out.bearing, 0);
+        assertEquals(MotionState.DRIVING, reopened.loadMotionState());
+
+        //keeps counting from where the last run stopped
+        reopened.write(fix(6), null);
+        assertEquals(6, reloaded().time);
+    }
+
+    @Test
+    public void tornWrite_fallsBackToPreviousSlot() throws IOException {
+        FixSnapshot snapshot = FixSnapshot.open(mFile);
+        snapshot.write(fix(1), MotionState.WALKING);
+        snapshot.write(fix(2), MotionState.STATIONARY);
+        snapshot.close();
+        //sequence 2 lives in the first slot, damage its latitude as a half written slot would
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.seek(FixSnapshot.HEADER_SIZE + 24);
+            raf.writeLong(42);
+        }
+        assertEquals(1, reloaded().time);
+        assertEquals(MotionState.WALKING, FixSnapshot.open(mFile).loadMotionState());
+    }
+
+    @Test
+    public void foreignFile_isStartedOver() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.write(new byte[FixSnapshot.FILE_SIZE]);
+            raf.seek(0);
+            raf.writeInt(0x12345678);
+        }
+        FixSnapshot snapshot = FixSnapshot.open(mFile);
+        assertFalse(snapshot.load(new Fix()));
+        snapshot.write(fix(9), null);
+        assertEquals(9, reloaded().time);
+    }
+
+    @Test
+    public void pipelineSetUp_runsBeforeFirstFix() {
+        final List<String> events = new ArrayList<>();
+        FixPipeline pipeline = new FixPipeline("test", 16, fix -> events.add("fix " + fix.time));
+        pipeline.onFix(fix(1));
+        pipeline.start(() -> events.add("set up"));
+        pipeline.onBatchEnd();
+        pipeline.stop();
+        assertEquals("[set up, fix 1]", events.toString());
+    }
+
+    private Fix reloaded() throws IOException {
+        Fix out = new Fix();
+        assertTrue(FixSnapshot.open(mFile).load(out));
+        return out;
+    }
+}
@@ -0,0 +1,136 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FixSubscriptions} conflation and delivery.
+ */
+public class FixSubscriptionsTest {
+
+    private static void publish(FixSubscriptions subscriptions, long from, long to) {
+        Fix fix = new Fix();
+        for (long t = from; t < to; t++) {
+            fix.set(t, 0, t * 1e-6, 0, 1f, 0f, 0f);
+            subscriptions.publish(fix);
+        }
+        subscriptions.dispatch();
+    }
+
+    @Test
+    public void everyFix_deliversInOrderOnItsExecutor() throws InterruptedException {
+        FixSubscriptions subscriptions = new FixSubscriptions();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final List<Long> times = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch done = new CountDownLatch(1);
+        subscriptions.subscribe(executor, FixSubscriptions.Conflation.EVERY_FIX, 4096, fix -> {
+            times.add(fix.time);
+            if (fix.time == 999) {
+                done.countDown();
+            }
+        });
+        for (int batch = 0; batch < 10; batch++) {
+            publish(subscriptions, batch * 100, batch * 100 + 100);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1000, times.size());
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(i, (long) times.get(i));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void latestOnly_conflatesWhileListenerIsBusy() {
+        FixSubscriptions subscriptions = new FixSubscriptions();
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        FixSubscriptions.Subscription subscription = subscriptions.subscribe(tasks::add,
+                FixSubscriptions.Conflation.LATEST_ONLY, fix -> times.add(fix.time));
+
+        publish(subscriptions, 0, 50);
+        publish(subscriptions, 50, 60);
+        //one delivery task queued no matter how many batches arrived
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(Collections.singletonList(59L), times);
+        assertEquals(59, subscription.dropped());
+    }
+
+    @Test
+    public void slowSubscriber_neverBlocksPublisher() throws InterruptedException {
+        FixSubscriptions subscriptions = new FixSubscriptions();
+        ExecutorService slow = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        FixSubscriptions.Subscription subscription = subscriptions.subscribe(slow,
+                FixSubscriptions.Conflation.EVERY_FIX, 16, fix -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        long start = System.nanoTime();
+        for (int batch = 0; batch < 100; batch++) {
+            publish(subscriptions, batch * 10, batch * 10 + 10);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(subscription.dropped() > 900);
+        release.countDown();
+        slow.shutdown();
+        assertTrue(slow.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void closedSubscription_stopsDelivery() {
+        FixSubscriptions subscriptions = new FixSubscriptions();
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        FixSubscriptions.Subscription subscription = subscriptions.subscribe(tasks::add,
+                FixSubscriptions.Conflation.EVERY_FIX, fix -> times.add(fix.time));
+        publish(subscriptions, 0, 5);
+        subscription.close();
+        assertEquals(0, subscriptions.size());
+        tasks.remove(0).run();
+        publish(subscriptions, 5, 10);
+        assertTrue(times.isEmpty());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void minInterval_decimatesPerSubscriber() {
+        FixSubscriptions subscriptions = new FixSubscriptions();
+        final List<Long> fast = new ArrayList<>();
+        final List<Long> slow = new ArrayList<>();
+        final int[] closed = {0};
+        subscriptions.subscribe(Runnable::run, FixSubscriptions.Conflation.EVERY_FIX, fix -> fast.add(fix.time));
+        FixSubscriptions.Subscription subscription = subscriptions.subscribe(Runnable::run,
+                FixSubscriptions.Conflation.EVERY_FIX, 64, 10_000, () -> closed[0]++,
+                fix -> slow.add(fix.time));
+        //one fix a second with a little jitter
+        Fix fix = new Fix();
+        for (long i = 0; i < 60; i++) {
+            fix.set(i * 1000 + (i % 2 == 0 ? 30 : -30), 0, 0, 0, 1f, 0f, 0f);
+            subscriptions.publish(fix);
+        }
+        subscriptions.dispatch();
+        assertEquals(60, fast.size());
+        assertEquals(6, slow.size());
+        assertEquals(30L, (long) slow.get(0));
+        //8.97 s is more than the slack early, 10.03 s is the next one
+        assertEquals(10_030L, (long) slow.get(1));
+
+        subscription.close();
+        subscription.close();
+        assertEquals(1, closed[0]);
+    }
+}
@@ -0,0 +1,240 @@
+package com.c2c.locationapp;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FixUploader} against an in-process HTTP server.
+ */
+public class FixUploaderTest {
+
+    private File mDir;
+    private HttpServer mServer;
+    private URL mEndpoint;
+
+    //status codes the server answers with in turn, 200 once they run out
+    private final List<Integer> mStatuses = Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<String> mBatchIds = Collections.synchronizedList(new ArrayList<String>());
+    private final List<byte[]> mBodies = Collections.synchronizedList(new ArrayList<byte[]>());
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("outbox").toFile();
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/fixes", exchange -> {
+            mRequests.incrementAndGet();
+            byte[] body = readAll(exchange.getRequestBody());
+            int status = mStatuses.isEmpty() ? 200 : mStatuses.remove(0);
+            if (status == 200) {
+                assertEquals("gzip", exchange.getRequestHeaders().getFirst("Content-Encoding"));
+                mBatchIds.add(exchange.getRequestHeaders().getFirst(FixUploader.HEADER_IDEMPOTENCY_KEY));
+                mBodies.add(body);
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        mServer.start();
+        mEndpoint = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/fixes");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void feed(FixUploader uploader, int from, int to) {
+        Fix fix = new Fix();
+        for (int i = from; i < to; i++) {
+            fix.set(1_600_000_000_000L + i * 1000L, 0, 52.52 + i * 1e-5, 13.40, 5f, 1.5f, 90f);
+            uploader.onFix(fix);
+        }
+        uploader.onBatchEnd();
+    }
+
+    private static void await(FixUploader uploader, long sent) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((uploader.sentBatches() < sent || uploader.pending() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<Long> decodeTimes(byte[] body) throws IOException {
+        List<Long> times = new ArrayList<>();
+        TrackDecoder decoder = new TrackDecoder(new GZIPInputStream(new ByteArrayInputStream(body)));
+        Fix fix = new Fix();
+        while (decoder.next(fix)) {
+            times.add(fix.time);
+        }
+        return times;
+    }
+
+    @Test
+    public void fullBatches_areSentCompressedInOrder() throws Exception {
+        FixUploader uploader = new FixUploader(mDir, mEndpoint, 100, Long.MAX_VALUE);
+        uploader.start();
+        feed(uploader, 0, 250);
+        await(uploader, 2);
+        assertEquals(2, mBodies.size());
+        assertEquals(100, decodeTimes(mBodies.get(0)).size());
+        assertEquals(1_600_000_000_000L + 100_000L, (long) decodeTimes(mBodies.get(1)).get(0));
+        //100 fixes with motion fields in a few hundred bytes
+        assertTrue("body " + mBodies.get(0).length, mBodies.get(0).length < 600);
+
+        //the last 50 go out on close
+        uploader.close();
+        assertTrue(uploader.awaitTermination(10_000));
+        assertEquals(3, mBodies.size());
+        assertEquals(50, decodeTimes(mBodies.get(2)).size());
+    }
+
+    @Test
+    public void failures_backOffAndRetryWithSameBatchId() throws Exception {
+        mStatuses.add(503);
+        mStatuses.add(500);
+        FixUploader uploader = new FixUploader(mDir, mEndpoint, 10, Long.MAX_VALUE);
+        uploader.setBackoff(20, 100);
+        uploader.start();
+        feed(uploader, 0, 10);
+        await(uploader, 1);
+        assertEquals(3, mRequests.get());
+        assertEquals(2, uploader.failedAttempts());
+        assertEquals(1, mBatchIds.size());
+        assertTrue(mBatchIds.get(0).endsWith("-10"));
+        uploader.close();
+    }
+
+    @Test
+    public void outbox_survivesRestartWhileOffline() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            mStatuses.add(503);
+        }
+        FixUploader offline = new FixUploader(mDir, mEndpoint, 5, Long.MAX_VALUE);
+        offline.setBackoff(60_000, 60_000);
+        offline.start();
+        feed(offline, 0, 15);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (offline.failedAttempts() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        offline.close();
+        assertTrue(offline.awaitTermination(10_000));
+        assertEquals(3, offline.pending());
+        mStatuses.clear();
+
+        FixUploader restarted = new FixUploader(mDir, mEndpoint, 5, Long.MAX_VALUE);
+        restarted.start();
+        await(restarted, 3);
+        assertEquals(0, restarted.pending());
+        assertEquals(3, mBodies.size());
+        assertEquals(1_600_000_000_000L, (long) decodeTimes(mBodies.get(0)).get(0));
+        String installId = mBatchIds.get(0).substring(0, mBatchIds.get(0).indexOf('-'));
+        for (String id : mBatchIds) {
+            assertTrue(id.startsWith(installId + "-"));
+        }
+        restarted.close();
+    }
+
+    @Test
+    public void repeatedFixes_afterRestartGetTheirOwnBatch() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            mStatuses.add(503);
+        }
+        //the same fixes sealed by two runs, e.g. delivered again after a restart
+        for (int run = 0; run < 2; run++) {
+            FixUploader offline = new FixUploader(mDir, mEndpoint, 5, Long.MAX_VALUE);
+            offline.setBackoff(60_000, 60_000);
+            offline.start();
+            feed(offline, 0, 5);
+            offline.close();
+            assertTrue(offline.awaitTermination(10_000));
+        }
+        mStatuses.clear();
+
+        FixUploader restarted = new FixUploader(mDir, mEndpoint, 5, Long.MAX_VALUE);
+        assertEquals(2, restarted.pending());
+        restarted.start();
+        await(restarted, 2);
+        assertEquals(2, mBatchIds.size());
+        assertNotEquals(mBatchIds.get(0), mBatchIds.get(1));
+        restarted.close();
+    }
+
+    @Test
+    public void partialBatch_isSealedForAgeWithoutMoreFixes() throws Exception {
+        FixUploader uploader = new FixUploader(mDir, mEndpoint, 100, 200);
+        uploader.start();
+        feed(uploader, 0, 7);
+        await(uploader, 1);
+        assertEquals(1, uploader.sentBatches());
+        assertEquals(7, decodeTimes(mBodies.get(0)).size());
+        uploader.close();
+    }
+
+    @Test
+    public void redirectAndUnexpectedStatus_areNotRetried() throws Exception {
+        mStatuses.add(301);
+        mStatuses.add(302);
+        mStatuses.add(304);
+        FixUploader uploader = new FixUploader(mDir, mEndpoint, 5, Long.MAX_VALUE);
+        uploader.setBackoff(60_000, 60_000);
+        uploader.start();
+        feed(uploader, 0, 20);
+        await(uploader, 1);
+        assertEquals(3, uploader.rejectedBatches());
+        assertEquals(0, uploader.failedAttempts());
+        assertEquals(1, uploader.sentBatches());
+        assertEquals(0, uploader.pending());
+        uploader.close();
+    }
+
+    @Test
+    public void rejectedBatch_isNotRetried() throws Exception {
+        mStatuses.add(400);
+        FixUploader uploader = new FixUploader(mDir, mEndpoint, 5, Long.MAX_VALUE);
+        uploader.start();
+        feed(uploader, 0, 10);
+        await(uploader, 1);
+        assertEquals(1, uploader.rejectedBatches());
+        assertEquals(1, uploader.sentBatches());
+        assertEquals(0, uploader.pending());
+        uploader.close();
+    }
+}
@@ -0,0 +1,124 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GeofenceEngine} transitions and its grid against brute force.
+ */
+public class GeofenceEngineTest {
+
+    private final List<String> mEvents = new ArrayList<>();
+
+    private final GeofenceEngine.Listener mRecorder = (geofence, transition, time) ->
+            mEvents.add(geofence.id + ":" + transition + "@" + time);
+
+    private static Fix fix(long time, double lat, double lon) {
+        Fix fix = new Fix();
+        fix.set(time, 0, lat, lon, 5f, 0f, 0f);
+        return fix;
+    }
+
+    @Test
+    public void circle_entersDwellsAndExits() {
+        GeofenceEngine engine = new GeofenceEngine(mRecorder);
+        engine.setGeofences(Collections.singletonList(
+                Geofence.circle("home", 52.52, 13.40, 100, 60_000)));
+
+        engine.onFix(fix(0, 52.53, 13.40));
+        engine.onFix(fix(10_000, 52.5205, 13.40));
+        engine.onFix(fix(40_000, 52.5201, 13.4001));
+        engine.onFix(fix(70_000, 52.52, 13.40));
+        engine.onFix(fix(80_000, 52.52, 13.40));
+        engine.onFix(fix(90_000, 52.5215, 13.40));
+
+        assertEquals(Arrays.asList("home:1@10000", "home:4@70000", "home:2@90000"), mEvents);
+    }
+
+    @Test
+    public void polygon_usesExactTestAfterBoundingBox() {
+        GeofenceEngine engine = new GeofenceEngine(mRecorder);
+        //L shape, its bounding box covers the notch at the top right
+        engine.setGeofences(Collections.singletonList(Geofence.polygon("l",
+                new double[]{0, 0, 0.01, 0.01, 0.02, 0.02},
+                new double[]{0, 0.02, 0.02, 0.01, 0.01, 0}, 0)));
+
+        engine.onFix(fix(1, 0.015, 0.015));
+        assertTrue(mEvents.isEmpty());
+        engine.onFix(fix(2, 0.015, 0.005));
+        engine.onFix(fix(3, 0.005, 0.015));
+        engine.onFix(fix(4, 0.015, 0.015));
+        assertEquals(Arrays.asList("l:1@2", "l:2@4"), mEvents);
+    }
+
+    @Test
+    public void setGeofences_keepsStateOfSameId() {
+        GeofenceEngine engine = new GeofenceEngine(mRecorder);
+        engine.setGeofences(Collections.singletonList(Geofence.circle("a", 10, 10, 500, 0)));
+        engine.onFix(fix(1, 10, 10));
+        engine.setGeofences(Arrays.asList(Geofence.circle("b", 10, 10, 500, 0),
+                Geofence.circle("a", 10, 10, 800, 0)));
+        engine.onFix(fix(2, 10, 10));
+        engine.onFix(fix(3, 11, 11));
+        assertEquals(Arrays.asList("a:1@1", "b:1@2", "a:2@3", "b:2@3"), sorted(mEvents));
+    }
+
+    private static List<String> sorted(List<String> events) {
+        List<String> copy = new ArrayList<>(events);
+        Collections.sort(copy, (x, y) -> {
+            int tx = Integer.parseInt(x.substring(x.indexOf('@') + 1));
+            int ty = Integer.parseInt(y.substring(y.indexOf('@') + 1));
+            return tx != ty ? Integer.compare(tx, ty) : x.compareTo(y);
+        });
+        return copy;
+    }
+
+    @Test
+    public void thousandsOfFences_matchBruteForce() {
+        Random random = new Random(9);
+        List<Geofence> fences = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            double lat = 48 + random.nextDouble();
+            double lon = 2 + random.nextDouble();
+            if (i % 3 == 0) {
+                double d = 0.001 + random.nextDouble() * 0.01;
+                fences.add(Geofence.polygon("p" + i, new double[]{lat, lat + d, lat},
+                        new double[]{lon, lon, lon + d}, 0));
+            } else {
+                //a few fences far larger than a grid cell
+                double radius = i % 1000 == 1 ? 20_000 : 50 + random.nextDouble() * 1000;
+                fences.add(Geofence.circle("c" + i, lat, lon, radius, 0));
+            }
+        }
+        final boolean[] inside = new boolean[fences.size()];
+        final int[] mismatches = {0};
+        GeofenceEngine engine = new GeofenceEngine((geofence, transition, time) -> {
+            int i = Integer.parseInt(geofence.id.substring(1));
+            if (inside[i] == (transition == Geofence.TRANSITION_ENTER)) {
+                mismatches[0]++;
+            }
+            inside[i] = transition == Geofence.TRANSITION_ENTER;
+        });
+        engine.setGeofences(fences);
+        assertEquals(10_000, engine.size());
+
+        Fix fix = new Fix();
+        for (int t = 0; t < 300; t++) {
+            fix.set(t, 0, 48 + random.nextDouble(), 2 + random.nextDouble(), 5f, 0f, 0f);
+            engine.onFix(fix);
+            for (int i = 0; i < fences.size(); i++) {
+                if (fences.get(i).contains(fix.latitude, fix.longitude) != inside[i]) {
+                    mismatches[0]++;
+                }
+            }
+        }
+        assertEquals(0, mismatches[0]);
+    }
+}
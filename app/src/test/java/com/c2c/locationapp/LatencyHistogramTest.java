@@ -0,0 +1,74 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyHistogram} bucketing and percentiles.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueWithBoundedError() {
+        assertEquals(0, LatencyHistogram.lowestValue(0));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+        for (int i = 0; i + 1 < LatencyHistogram.BUCKETS; i++) {
+            assertEquals(LatencyHistogram.highestValue(i) + 1, LatencyHistogram.lowestValue(i + 1));
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            int bucket = LatencyHistogram.bucket(value);
+            long low = LatencyHistogram.lowestValue(bucket);
+            long high = LatencyHistogram.highestValue(bucket);
+            assertTrue(value + " in " + low + ".." + high, low <= value && value <= high);
+            assertTrue(high - low <= Math.max(0, low / 16));
+        }
+    }
+
+    @Test
+    public void percentiles_matchUniformValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        //1..10000 microseconds
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        histogram.record(-5);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10_001, snapshot.count());
+        assertEquals(10_000_000, snapshot.max());
+        assertEquals(5_000_000, snapshot.percentile(0.5), 5_000_000 / 16.0);
+        assertEquals(9_900_000, snapshot.percentile(0.99), 9_900_000 / 16.0);
+        assertEquals(10_000_000, snapshot.percentile(1.0));
+        assertEquals(5_000_000, snapshot.mean(), 5_000_000 / 16.0);
+        assertEquals(0, snapshot.percentile(0.00001));
+
+        String line = snapshot.appendTo(new StringBuilder()).toString();
+        assertTrue(line, line.startsWith("count=10001 mean="));
+        assertTrue(line, line.endsWith(" max=10.000ms"));
+    }
+
+    @Test
+    public void concurrentRecords_areAllCounted() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(200_000, snapshot.count());
+        assertEquals(49_999, snapshot.max());
+    }
+}
@@ -0,0 +1,93 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LocationFormatter} output.
+ */
+public class LocationFormatterTest {
+
+    private static String format(LocationFormatter formatter, double latitude, double longitude) {
+        return formatter.appendCoordinates(new StringBuilder(), latitude, longitude).toString();
+    }
+
+    private static String fixed(double value, int decimals) {
+        return LocationFormatter.appendFixed(new StringBuilder(), value, decimals).toString();
+    }
+
+    @Test
+    public void fixed_roundsAndPadsFraction() {
+        assertEquals("52.520008", fixed(52.5200081, 6));
+        assertEquals("-0.000500", fixed(-0.0005, 6));
+        assertEquals("1.000000", fixed(0.9999999, 6));
+        assertEquals("0.000000", fixed(-0.0000001, 6));
+        assertEquals("13", fixed(13.4, 0));
+        assertEquals("-180.0", fixed(-180, 1));
+    }
+
+    @Test
+    public void decimal_matchesConfiguredPrecision() {
+        LocationFormatter formatter = new LocationFormatter(4, LocationFormatter.CoordinateStyle.DECIMAL);
+        assertEquals("(52.5200, -13.4050)", format(formatter, 52.520008, -13.404954));
+    }
+
+    @Test
+    public void dms_carriesRoundedSeconds() {
+        LocationFormatter formatter = new LocationFormatter(5,
+                LocationFormatter.CoordinateStyle.DEGREES_MINUTES_SECONDS);
+        assertEquals("52\u00b031'12.0\"N 13\u00b024'17.8\"W", format(formatter, 52.52, -13.404954));
+        assertEquals("10\u00b00'0.0\"S 0\u00b00'0.0\"E", format(formatter, -9.9999999, 0));
+    }
+
+    @Test
+    public void utm_matchesReferencePoints() {
+        LocationFormatter formatter = new LocationFormatter(6, LocationFormatter.CoordinateStyle.UTM);
+        assertEquals("31N 166021 0", format(formatter, 0, 0));
+        assertEquals("32N 500000 0", format(formatter, 0, 9));
+        //Norway exception
+        assertEquals(32, LocationFormatter.utmZone(60, 5));
+        assertEquals(33, LocationFormatter.utmZone(78, 15));
+        assertEquals("56H 334901 6252289", format(formatter, -33.8568, 151.2153));
+        //outside UTM coverage
+        assertEquals("(89.000000, 10.000000)", format(formatter, 89, 10));
+    }
+
+    @Test
+    public void dateTime_followsDefaultLocale() {
+        Locale previous = Locale.getDefault();
+        try {
+            LocationFormatter formatter = new LocationFormatter(6, LocationFormatter.CoordinateStyle.DECIMAL);
+            Locale.setDefault(Locale.US);
+            String us = formatter.appendDateTime(new StringBuilder(), 0).toString();
+            Locale.setDefault(Locale.GERMANY);
+            String german = formatter.appendDateTime(new StringBuilder(), 0).toString();
+            assertFalse(us.equals(german));
+            assertTrue(german, german.startsWith("01.01.1970") || german.startsWith("31.12.1969"));
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    @Test
+    public void dateTime_followsTimeZoneAfterInvalidate() {
+        TimeZone previous = TimeZone.getDefault();
+        try {
+            LocationFormatter formatter = new LocationFormatter(6, LocationFormatter.CoordinateStyle.DECIMAL);
+            TimeZone.setDefault(TimeZone.getTimeZone("GMT"));
+            String gmt = formatter.appendDateTime(new StringBuilder(), 0).toString();
+            TimeZone.setDefault(TimeZone.getTimeZone("GMT+05:00"));
+            //the zone is not looked up per call
+            assertEquals(gmt, formatter.appendDateTime(new StringBuilder(), 0).toString());
+            formatter.invalidate();
+            String shifted = formatter.appendDateTime(new StringBuilder(), 0).toString();
+            assertFalse(shifted, gmt.equals(shifted));
+        } finally {
+            TimeZone.setDefault(previous);
+        }
+    }
+}
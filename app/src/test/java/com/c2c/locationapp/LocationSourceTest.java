@@ -0,0 +1,162 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for track readers and the replay/synthetic {@link LocationSource}s.
+ */
+public class LocationSourceTest {
+
+    private static final SamplingProfile EVERY_FIX = new SamplingProfile(0, 0, 0f,
+            SamplingProfile.PRIORITY_HIGH_ACCURACY);
+
+    private static class CountingSink implements LocationSource.Sink {
+        int fixes;
+        int batches;
+        long lastTime = Long.MIN_VALUE;
+        boolean ordered = true;
+
+        @Override
+        public void onFix(Fix fix) {
+            ordered &= fix.time > lastTime;
+            lastTime = fix.time;
+            fixes++;
+        }
+
+        @Override
+        public void onBatchEnd() {
+            batches++;
+        }
+    }
+
+    @Test
+    public void isoTime_parsesUtcAndOffsets() {
+        assertEquals(0L, TrackReader.parseIsoTime("1970-01-01T00:00:00Z"));
+        assertEquals(1627835175250L, TrackReader.parseIsoTime("2021-08-01T16:26:15.250Z"));
+        assertEquals(1627835175000L, TrackReader.parseIsoTime("2021-08-01T21:56:15+05:30"));
+        assertEquals(1627835175000L, TrackReader.parseIsoTime("2021-08-01T21:56:15+0530"));
+        assertEquals(1627835175000L, TrackReader.parseIsoTime("2021-08-01T18:26:15+02"));
+        assertEquals(1627835175000L, TrackReader.parseIsoTime("2021-08-01T14:26:15.000-02:00"));
+        for (String bad : new String[]{"2021-08-01T16:26:15+0", "2021-08-01T16:26:15+020",
+                "2021-08-01T16:26:15+02-00", "2021-08-01T16:26:15+02:000"}) {
+            try {
+                TrackReader.parseIsoTime(bad);
+                fail("expected " + bad + " to be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void csv_badOffsetThrowsIOException() throws IOException {
+        new CsvTrackReader(new StringReader("2021-08-01T16:26:15+0,52.5,13.4\n")).next(new Fix());
+    }
+
+    @Test
+    public void csv_readsOptionalColumnsAndSkipsHeader() throws IOException {
+        TrackReader reader = new CsvTrackReader(new StringReader(
+                "time,latitude,longitude,accuracy,speed,bearing\n"
+                        + "1000,52.5,13.4,4.5,1.5,90\n"
+                        + "\n"
+                        + "2021-08-01T16:26:15Z,-33.9,151.2\n"));
+        Fix fix = new Fix();
+        assertTrue(reader.next(fix));
+        assertEquals(1000, fix.time);
+        assertEquals(52.5, fix.latitude, 0);
+        assertEquals(4.5f, fix.accuracy, 0f);
+        assertEquals(90f, fix.bearing, 0f);
+        assertTrue(reader.next(fix));
+        assertEquals(1627835175000L, fix.time);
+        assertEquals(151.2, fix.longitude, 0);
+        assertEquals(0f, fix.speed, 0f);
+        assertFalse(reader.next(fix));
+    }
+
+    @Test
+    public void gpx_readsTrackPointsWithAndWithoutTime() throws IOException {
+        TrackReader reader = new GpxTrackReader(new StringReader(
+                "<?xml version=\"1.0\"?>\n<gpx version=\"1.1\"><trk><name>x</name><trkseg>\n"
+                        + "<trkpt lat=\"48.1\" lon=\"11.5\"><ele>520</ele>"
+                        + "<time>2021-08-01T16:26:15Z</time></trkpt>\n"
+                        + "<trkpt lon='11.6' lat='48.2'/>\n"
+                        + "<gpx:trkpt lat=\"48.3\" lon=\"11.7\"><speed>2.5</speed></gpx:trkpt>\n"
+                        + "</trkseg></trk></gpx>"));
+        Fix fix = new Fix();
+        assertTrue(reader.next(fix));
+        assertEquals(48.1, fix.latitude, 0);
+        assertEquals(1627835175000L, fix.time);
+        assertTrue(reader.next(fix));
+        assertEquals(11.6, fix.longitude, 0);
+        assertEquals(1627835176000L, fix.time);
+        assertTrue(reader.next(fix));
+        assertEquals(2.5f, fix.speed, 0f);
+        assertFalse(reader.next(fix));
+    }
+
+    @Test
+    public void replay_honoursFastestIntervalAndBatchesByMaxWait() throws Exception {
+        File file = File.createTempFile("track", ".csv");
+        try {
+            StringBuilder csv = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                csv.append(i * 500L).append(',').append(50 + i * 1e-5).append(",8\n");
+            }
+            Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.US_ASCII));
+
+            ReplayLocationSource source = new ReplayLocationSource(file, 0);
+            CountingSink sink = new CountingSink();
+            source.start(new SamplingProfile(1000, 1000, 0f, SamplingProfile.PRIORITY_HIGH_ACCURACY),
+                    10_000, sink);
+            source.awaitFinished();
+            source.stop();
+
+            assertNull(source.getError());
+            assertEquals(50, sink.fixes);
+            assertEquals(5, sink.batches);
+            assertTrue(sink.ordered);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void synthetic_pacesInRealTimeAtRequestedRate() throws Exception {
+        SyntheticLocationSource source = new SyntheticLocationSource(200, 100, 1, 7, 0, 40, -74);
+        CountingSink sink = new CountingSink();
+        long start = System.nanoTime();
+        source.start(EVERY_FIX, 0, sink);
+        source.awaitFinished();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(100, sink.fixes);
+        assertEquals(100, sink.batches);
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis >= 450);
+    }
+
+    @Test
+    public void synthetic_drivesPipelineFasterThanRealTime() throws Exception {
+        final int count = 50_000;
+        final int[] seen = {0};
+        FixPipeline pipeline = new FixPipeline("test-pipeline", 1 << 16, fix -> {
+            seen[0]++;
+            return true;
+        });
+        pipeline.start();
+        SyntheticLocationSource source = new SyntheticLocationSource(100, count, 0, 3, 0, 0, 0)
+                .setNoise(8)
+                .setOutliers(0.01, 300);
+        source.start(EVERY_FIX, 0, pipeline);
+        source.awaitFinished();
+        pipeline.stop();
+
+        assertEquals(count, seen[0] + pipeline.dropped());
+    }
+}
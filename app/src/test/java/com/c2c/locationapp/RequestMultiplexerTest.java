@@ -0,0 +1,73 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RequestMultiplexer} merging client demands into one request.
+ */
+public class RequestMultiplexerTest {
+
+    private static final SamplingProfile TRACKING = new SamplingProfile(1_000, 1_000, 0f,
+            SamplingProfile.PRIORITY_HIGH_ACCURACY);
+    private static final SamplingProfile ANALYTICS = new SamplingProfile(60_000, 30_000, 50f,
+            SamplingProfile.PRIORITY_LOW_POWER);
+
+    private final List<SamplingProfile> mRequests = new ArrayList<>();
+    private final RequestMultiplexer mMultiplexer = new RequestMultiplexer(mRequests::add);
+
+    @Test
+    public void strictest_takesTheTighterOfEachField() {
+        SamplingProfile merged = SamplingProfile.strictest(MotionState.STATIONARY.profile, ANALYTICS);
+        assertEquals(60_000, merged.intervalMillis);
+        assertEquals(30_000, merged.fastestIntervalMillis);
+        assertEquals(25f, merged.smallestDisplacementMeters, 0);
+        assertEquals(SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY, merged.priority);
+        assertSame(ANALYTICS, SamplingProfile.strictest(null, ANALYTICS));
+    }
+
+    @Test
+    public void request_tightensAndRelaxesWithClients() {
+        RequestMultiplexer.Demand sampler = mMultiplexer.add(MotionState.STATIONARY.profile);
+        assertEquals(MotionState.STATIONARY.profile, mMultiplexer.request());
+
+        RequestMultiplexer.Demand analytics = mMultiplexer.add(ANALYTICS);
+        RequestMultiplexer.Demand tracking = mMultiplexer.add(TRACKING);
+        assertEquals(1_000, mMultiplexer.request().intervalMillis);
+        assertEquals(0f, mMultiplexer.request().smallestDisplacementMeters, 0);
+        assertEquals(SamplingProfile.PRIORITY_HIGH_ACCURACY, mMultiplexer.request().priority);
+
+        tracking.close();
+        tracking.close();
+        assertEquals(SamplingProfile.strictest(MotionState.STATIONARY.profile, ANALYTICS),
+                mMultiplexer.request());
+
+        //the sampler speeding up is only a change while it is the strictest client
+        sampler.update(MotionState.DRIVING.profile);
+        assertEquals(2_000, mMultiplexer.request().intervalMillis);
+
+        //driving is stricter than analytics in every field, nothing to relax
+        analytics.close();
+        assertEquals(5, mRequests.size());
+        sampler.close();
+        assertNull(mMultiplexer.request());
+        assertEquals(0, mMultiplexer.size());
+        assertEquals(6, mRequests.size());
+        assertNull(mRequests.get(5));
+    }
+
+    @Test
+    public void unchangedRequest_isNotReported() {
+        mMultiplexer.add(TRACKING);
+        RequestMultiplexer.Demand analytics = mMultiplexer.add(ANALYTICS);
+        analytics.update(MotionState.WALKING.profile);
+        analytics.close();
+        assertEquals(1, mRequests.size());
+        analytics.update(MotionState.DRIVING.profile);
+        assertEquals(TRACKING, mMultiplexer.request());
+    }
+}
@@ -0,0 +1,226 @@
+package com.c2c.locationapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ReverseGeocoder} dataset lookups, the never blocking cached path
+ * and its {@link ReverseGeocoder.LruCache}.
+ */
+public class ReverseGeocoderTest {
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("places", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private static String text(long geohash, int chars) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < chars; i++) {
+            text.append(BASE32.charAt((int) (geohash >>> (ReverseGeocoder.GEOHASH_BITS - 5 * (i + 1))) & 31));
+        }
+        return text.toString();
+    }
+
+    private ReverseGeocoder geocoder(ReverseGeocoder.Listener listener) throws IOException {
+        ReverseGeocoder.writeDataset(mFile,
+                new double[]{52.5200, 52.5308, 48.8566, 57.6491, -33.8688, 64.8378, 65.0, 0.0},
+                new double[]{13.4050, 13.3847, 2.3522, 10.4074, 151.2093, -147.7164, 179.99, 0.0},
+                new String[]{"Mitte", "Wedding", "Paris", "Hirtshals", "Sydney", "Fairbanks",
+                        "East of the date line", "Null Island"});
+        return new ReverseGeocoder(mFile, 4, listener);
+    }
+
+    @Test
+    public void geohash_matchesTextForm() {
+        assertEquals("u4pruydqqvj", text(ReverseGeocoder.geohash(57.64911, 10.40744), 11));
+        assertEquals("u33dc0", text(ReverseGeocoder.geohash(52.5200, 13.4050), 6));
+        assertEquals("r3gx2f", text(ReverseGeocoder.geohash(-33.8688, 151.2093), 6));
+    }
+
+    @Test
+    public void resolve_findsNearestPlaceInRange() throws IOException {
+        ReverseGeocoder geocoder = geocoder(() -> { });
+        assertEquals("Mitte", geocoder.resolve(52.5190, 13.4100));
+        assertEquals("Wedding", geocoder.resolve(52.5290, 13.3860));
+        assertEquals("Paris", geocoder.resolve(48.8000, 2.3000));
+        assertEquals("Sydney", geocoder.resolve(-33.9000, 151.1500));
+        //across the date line, the neighbouring cell wraps around
+        assertEquals("East of the date line", geocoder.resolve(65.0, -179.99));
+        //the middle of the North Sea, nothing within MAX_DISTANCE_METERS
+        assertNull(geocoder.resolve(55.5, 3.5));
+        geocoder.close();
+    }
+
+    @Test
+    public void resolve_matchesBruteForce() throws IOException {
+        Random random = new Random(11);
+        int count = 5000;
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = 45 + random.nextDouble() * 10;
+            longitudes[i] = 5 + random.nextDouble() * 10;
+            names[i] = "place " + i;
+        }
+        ReverseGeocoder.writeDataset(mFile, latitudes, longitudes, names);
+        ReverseGeocoder geocoder = new ReverseGeocoder(mFile, 16, () -> { });
+        for (int n = 0; n < 500; n++) {
+            double latitude = 45.5 + random.nextDouble() * 9;
+            double longitude = 5.5 + random.nextDouble() * 9;
+            int nearest = 0;
+            double nearestDistance = Double.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                double distance = GeoMath.distance(latitude, longitude, (float) latitudes[i],
+                        (float) longitudes[i]);
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = i;
+                }
+            }
+            //about 13 km apart, mostly found in the coarser cells
+            assertEquals(names[nearest], geocoder.resolve(latitude, longitude));
+        }
+        geocoder.close();
+    }
+
+    @Test
+    public void placeName_missResolvesInBackground() throws Exception {
+        CountDownLatch resolved = new CountDownLatch(1);
+        ReverseGeocoder geocoder = geocoder(resolved::countDown);
+        assertNull(geocoder.placeName(48.8570, 2.3510));
+        assertTrue(resolved.await(5, TimeUnit.SECONDS));
+        assertEquals("Paris", geocoder.placeName(48.8570, 2.3510));
+        //same cell, served from the cache
+        assertEquals(ReverseGeocoder.geohash(48.8570, 2.3510) >>> ReverseGeocoder.CACHE_BITS,
+                ReverseGeocoder.geohash(48.8572, 2.3508) >>> ReverseGeocoder.CACHE_BITS);
+        assertEquals("Paris", geocoder.placeName(48.8572, 2.3508));
+        geocoder.close();
+    }
+
+    @Test
+    public void placeName_withoutPlaceStaysNull() throws Exception {
+        CountDownLatch resolved = new CountDownLatch(1);
+        ReverseGeocoder geocoder = geocoder(resolved::countDown);
+        assertNull(geocoder.placeName(55.5, 3.5));
+        assertFalse(resolved.await(200, TimeUnit.MILLISECONDS));
+        assertNull(geocoder.placeName(55.5, 3.5));
+        geocoder.close();
+    }
+
+    @Test
+    public void missingDataset_turnsLookupsOff() throws Exception {
+        mFile.delete();
+        ReverseGeocoder geocoder = new ReverseGeocoder(mFile, 4, () -> fail("nothing to resolve"));
+        assertNull(geocoder.resolve(52.52, 13.405));
+        assertNull(geocoder.placeName(52.52, 13.405));
+        geocoder.close();
+    }
+
+    @Test
+    public void failedOpen_isRetried() throws Exception {
+        mFile.delete();
+        ReverseGeocoder geocoder = new ReverseGeocoder(mFile, null, 0, 4, () -> { });
+        assertNull(geocoder.resolve(52.52, 13.405));
+        ReverseGeocoder.writeDataset(mFile, new double[]{52.5200}, new double[]{13.4050},
+                new String[]{"Mitte"});
+        assertEquals("Mitte", geocoder.resolve(52.52, 13.405));
+        geocoder.close();
+    }
+
+    @Test
+    public void missingDataset_isInstalled() throws Exception {
+        mFile.delete();
+        int[] installs = {0};
+        ReverseGeocoder geocoder = new ReverseGeocoder(mFile, file -> {
+            installs[0]++;
+            ReverseGeocoder.importPlaces(new StringReader(
+                    "# city centres\n52.5200,13.4050,Mitte\n\n48.8566, 2.3522 , Paris, France\n"),
+                    file);
+        }, 0, 4, () -> { });
+        assertEquals("Mitte", geocoder.resolve(52.52, 13.405));
+        assertEquals("Paris, France", geocoder.resolve(48.86, 2.35));
+        assertEquals(1, installs[0]);
+        assertTrue(mFile.isFile());
+        assertFalse(new File(mFile.getPath() + ".partial").exists());
+        geocoder.close();
+    }
+
+    @Test
+    public void failedInstall_leavesNoDataset() throws Exception {
+        mFile.delete();
+        ReverseGeocoder geocoder = new ReverseGeocoder(mFile, file -> ReverseGeocoder.importPlaces(
+                new StringReader("52.5200,13.4050,Mitte\n52.5308,north,Wedding\n"), file),
+                0, 4, () -> { });
+        assertNull(geocoder.resolve(52.52, 13.405));
+        assertFalse(mFile.exists());
+        assertFalse(new File(mFile.getPath() + ".partial").exists());
+        geocoder.close();
+    }
+
+    @Test
+    public void lruCache_evictsLeastRecentlyUsed() {
+        ReverseGeocoder.LruCache cache = new ReverseGeocoder.LruCache(3);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        assertEquals("a", cache.get(1));
+        cache.put(4, "d");
+        assertNull(cache.get(2));
+        assertEquals("a", cache.get(1));
+        assertEquals("c", cache.get(3));
+        assertEquals("d", cache.get(4));
+        cache.put(3, "C");
+        cache.put(5, "e");
+        assertNull(cache.get(1));
+        assertEquals("C", cache.get(3));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void lruCache_randomOperationsMatchReference() {
+        final int capacity = 37;
+        ReverseGeocoder.LruCache cache = new ReverseGeocoder.LruCache(capacity);
+        LinkedHashMap<Long, String> reference =
+                new LinkedHashMap<Long, String>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                        return size() > capacity;
+                    }
+                };
+        Random random = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(100);
+            if (random.nextBoolean()) {
+                String value = "v" + i;
+                cache.put(key, value);
+                reference.put(key, value);
+            } else {
+                assertEquals(reference.get(key), cache.get(key));
+            }
+        }
+        assertEquals(reference.size(), cache.size());
+    }
+}
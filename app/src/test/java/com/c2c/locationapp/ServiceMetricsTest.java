@@ -0,0 +1,120 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ServiceMetrics} and the {@link StripedCounter} behind it.
+ */
+public class ServiceMetricsTest {
+
+    private static final long MINUTE = 60_000_000_000L;
+
+    private final AtomicLong mNow = new AtomicLong(100 * MINUTE);
+    private final ServiceMetrics mMetrics = new ServiceMetrics(mNow::get);
+
+    @Test
+    public void disabled_recordsNothingThroughThePipeline() {
+        Fix fix = new Fix();
+        fix.set(1000, mNow.get(), 52.52, 13.40, 5f, 0f, 0f);
+        FixSubscriptions subscriptions = new FixSubscriptions(mMetrics);
+        subscriptions.subscribe(Runnable::run, FixSubscriptions.Conflation.EVERY_FIX, f -> { });
+        FixPipeline pipeline = new FixPipeline("test", 16, mMetrics, f -> {
+            subscriptions.publish(f);
+            subscriptions.dispatch();
+            return true;
+        });
+        pipeline.start();
+        pipeline.onFix(fix);
+        pipeline.onBatchEnd();
+        pipeline.stop();
+
+        ServiceMetrics.Snapshot snapshot = mMetrics.snapshot(Collections.<String, Long>emptyMap());
+        assertFalse(snapshot.isEnabled());
+        assertEquals(0, snapshot.fixesReceived());
+        assertEquals(0, snapshot.fixesDelivered());
+        assertEquals(0, snapshot.pipelineTime().count());
+    }
+
+    @Test
+    public void enabled_recordsLatencyAndRate() {
+        mMetrics.setEnabled(true);
+        FixSubscriptions subscriptions = new FixSubscriptions(mMetrics);
+        subscriptions.subscribe(Runnable::run, FixSubscriptions.Conflation.EVERY_FIX, f -> { });
+        subscriptions.subscribe(Runnable::run, FixSubscriptions.Conflation.EVERY_FIX, f -> { });
+        Fix fix = new Fix();
+        //3 minutes at 30 fixes each, delivered 2 ms after they were taken
+        for (int i = 0; i < 90; i++) {
+            mNow.set(100 * MINUTE + i * 2_000_000_000L);
+            fix.set(i * 2000L, mNow.get() - 2_000_000, 52.52, 13.40, 5f, 0f, 0f);
+            mMetrics.onFixReceived(fix);
+            subscriptions.publish(fix);
+            subscriptions.dispatch();
+        }
+        mNow.set(103 * MINUTE + 1);
+        ServiceMetrics.Snapshot snapshot = mMetrics.snapshot(
+                Collections.singletonMap("pipeline.dropped", 4L));
+        assertEquals(90, snapshot.fixesReceived());
+        assertEquals(180, snapshot.fixesDelivered());
+        assertEquals(30, snapshot.fixesLastMinute());
+        assertEquals(30.0, snapshot.fixesPerMinute(), 1e-9);
+        assertEquals(90, snapshot.deliveryLatency().count());
+        assertEquals(2_000_000, snapshot.deliveryLatency().percentile(0.99), 2_000_000 / 16.0);
+        //once per fix and subscriber
+        assertEquals(180, snapshot.dispatchLatency().count());
+
+        //nothing for a while, the rate decays and old minutes are not counted again
+        mNow.set(130 * MINUTE);
+        assertEquals(0, mMetrics.snapshot(Collections.<String, Long>emptyMap()).fixesPerMinute(), 0);
+
+        StringWriter out = new StringWriter();
+        snapshot.print(new PrintWriter(out, true));
+        assertTrue(out.toString(), out.toString().contains("fixes received=90 delivered=180"));
+        assertTrue(out.toString(), out.toString().contains("pipeline.dropped=4"));
+    }
+
+    @Test
+    public void deliveryLatency_recordedWithoutSubscribers() {
+        mMetrics.setEnabled(true);
+        FixPipeline pipeline = new FixPipeline("test", 16, mMetrics, f -> true);
+        pipeline.start();
+        Fix fix = new Fix();
+        for (int i = 0; i < 3; i++) {
+            fix.set(1000 + i, mNow.get() - 5_000_000, 52.52, 13.40, 5f, 0f, 0f);
+            pipeline.onFix(fix);
+        }
+        pipeline.onBatchEnd();
+        pipeline.stop();
+
+        ServiceMetrics.Snapshot snapshot = mMetrics.snapshot(Collections.<String, Long>emptyMap());
+        assertEquals(3, snapshot.deliveryLatency().count());
+        assertEquals(5_000_000, snapshot.deliveryLatency().percentile(0.5), 5_000_000 / 16.0);
+        assertEquals(0, snapshot.dispatchLatency().count());
+        assertEquals(3, snapshot.pipelineTime().count());
+    }
+
+    @Test
+    public void stripedCounter_sumsEveryThread() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    counter.increment();
+                }
+            });
+            threads[t].start();
+        }
+        counter.add(5);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(800_005, counter.sum());
+    }
+}
@@ -0,0 +1,91 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TrackBuffer} time-range views and reads racing the writer.
+ */
+public class TrackBufferTest {
+
+    private static void appendFixes(TrackBuffer buffer, long from, long to) {
+        for (long t = from; t < to; t++) {
+            buffer.append(t * 1000L, t * 1e-6, -t * 1e-6, 1f, 2f, 3f);
+        }
+    }
+
+    @Test
+    public void full_keepsNewestCapacityFixes() {
+        TrackBuffer buffer = new TrackBuffer(6);
+        assertEquals(8, buffer.capacity());
+        appendFixes(buffer, 0, 20);
+        assertEquals(12, buffer.start());
+        assertEquals(20, buffer.end());
+        assertEquals(8, buffer.size());
+        assertEquals(12_000L, buffer.time(buffer.start()));
+        assertFalse(buffer.isValid(11));
+    }
+
+    @Test
+    public void view_selectsTimeRangeWithoutCopying() {
+        TrackBuffer buffer = new TrackBuffer(16);
+        appendFixes(buffer, 0, 10);
+        TrackBuffer.View view = buffer.view(3_000L, 7_500L);
+        assertEquals(3, view.from());
+        assertEquals(5, view.size());
+        assertEquals(7_000L, view.time(4));
+        assertEquals(-5 * 1e-6, view.longitude(2), 0);
+
+        buffer.select(view, 20_000L, 30_000L);
+        assertEquals(0, view.size());
+
+        buffer.last(view, 2_000L);
+        assertEquals(7, view.from());
+        assertEquals(3, view.size());
+    }
+
+    @Test
+    public void view_trimsOverwrittenEntries() {
+        TrackBuffer buffer = new TrackBuffer(8);
+        appendFixes(buffer, 0, 8);
+        TrackBuffer.View view = buffer.view(0, Long.MAX_VALUE);
+        assertEquals(8, view.size());
+        appendFixes(buffer, 8, 11);
+        assertEquals(3, view.trim());
+        assertEquals(5, view.size());
+        assertEquals(3_000L, view.time(0));
+    }
+
+    @Test
+    public void concurrentReader_neverSeesTornFixes() throws InterruptedException {
+        final TrackBuffer buffer = new TrackBuffer(64);
+        final AtomicBoolean done = new AtomicBoolean();
+        final boolean[] torn = {false};
+        final long[] visited = {0};
+
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                final long[] last = {-1};
+                buffer.read(0, Long.MAX_VALUE, (time, lat, lon, accuracy, speed, bearing) -> {
+                    if (time <= last[0] || lat != time / 1000 * 1e-6 || lon != -lat) {
+                        torn[0] = true;
+                    }
+                    last[0] = time;
+                    visited[0]++;
+                    return true;
+                });
+            }
+        });
+        reader.start();
+        appendFixes(buffer, 0, 2_000_000);
+        done.set(true);
+        reader.join(10_000);
+
+        assertFalse(reader.isAlive());
+        assertFalse(torn[0]);
+        assertTrue(visited[0] > 0);
+    }
+}
@@ -0,0 +1,149 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the {@link TrackEncoder}/{@link TrackDecoder} round trip and the
+ * {@link TrackSimplifier} error bound.
+ */
+public class TrackCodecTest {
+
+    private static final int COUNT = 5000;
+
+    //a walk recorded every 10 s, the service's usual rate
+    private static List<Fix> walk() {
+        SyntheticLocationSource source = new SyntheticLocationSource(0.1, COUNT, 0, 11,
+                1_600_000_000_000L, 52.52, 13.40).setNoise(3);
+        List<Fix> fixes = new ArrayList<>();
+        Fix fix = new Fix();
+        while (source.next(fix)) {
+            Fix copy = new Fix();
+            copy.copyFrom(fix);
+            fixes.add(copy);
+        }
+        return fixes;
+    }
+
+    private static byte[] encode(List<Fix> fixes, boolean motion) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TrackEncoder encoder = new TrackEncoder(bytes, motion)) {
+            for (Fix fix : fixes) {
+                encoder.append(fix.time, fix.latitude, fix.longitude, fix.accuracy, fix.speed,
+                        fix.bearing);
+            }
+            assertEquals(fixes.size(), encoder.count());
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void positions_roundTripWithinQuantum() throws IOException {
+        List<Fix> fixes = walk();
+        byte[] encoded = encode(fixes, false);
+        assertTrue("bytes per fix " + (double) encoded.length / COUNT,
+                encoded.length - TrackEncoder.HEADER_SIZE < 4 * COUNT);
+
+        TrackDecoder decoder = new TrackDecoder(new ByteArrayInputStream(encoded));
+        assertFalse(decoder.hasMotion());
+        Fix out = new Fix();
+        for (Fix fix : fixes) {
+            assertTrue(decoder.next(out));
+            assertEquals(fix.time, out.time);
+            assertEquals(fix.latitude, out.latitude, 0.5e-5 + 1e-12);
+            assertEquals(fix.longitude, out.longitude, 0.5e-5 + 1e-12);
+        }
+        assertFalse(decoder.next(out));
+    }
+
+    @Test
+    public void motion_roundTripsWithinDocumentedError() throws IOException {
+        List<Fix> fixes = new ArrayList<>();
+        float[] bearings = {359.7f, 0.2f, 180f, 179.6f, 12f};
+        for (int i = 0; i < bearings.length; i++) {
+            Fix fix = new Fix();
+            fix.set(1_000L * i * i, 0, -33.8568 + i, 151.2153 - i, 4.3f + i, 1.26f * i, bearings[i]);
+            fixes.add(fix);
+        }
+        TrackDecoder decoder = new TrackDecoder(new ByteArrayInputStream(encode(fixes, true)));
+        assertTrue(decoder.hasMotion());
+        Fix out = new Fix();
+        for (Fix fix : fixes) {
+            assertTrue(decoder.next(out));
+            assertEquals(fix.time, out.time);
+            assertEquals(fix.accuracy, out.accuracy, 0.5f);
+            assertEquals(fix.speed, out.speed, 0.05f);
+            float bearingError = Math.abs(fix.bearing - out.bearing);
+            assertTrue(Math.min(bearingError, 360 - bearingError) <= 0.5f);
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedRecord_isReported() throws IOException {
+        byte[] encoded = encode(walk().subList(0, 10), true);
+        TrackDecoder decoder = new TrackDecoder(new ByteArrayInputStream(
+                Arrays.copyOf(encoded, encoded.length - 1)));
+        Fix out = new Fix();
+        while (decoder.next(out)) {
+            //reads up to the torn record
+        }
+    }
+
+    @Test
+    public void simplifier_keepsEveryFixWithinTolerance() {
+        final List<Fix> fixes = walk();
+        final List<Fix> kept = new ArrayList<>();
+        TrackSimplifier simplifier = new TrackSimplifier(10, 64,
+                (time, lat, lon, accuracy, speed, bearing) -> {
+                    Fix fix = new Fix();
+                    fix.set(time, 0, lat, lon, accuracy, speed, bearing);
+                    kept.add(fix);
+                    return true;
+                });
+        for (Fix fix : fixes) {
+            simplifier.visit(fix.time, fix.latitude, fix.longitude, fix.accuracy, fix.speed,
+                    fix.bearing);
+        }
+        simplifier.flush();
+
+        assertEquals(COUNT, simplifier.received());
+        assertEquals(kept.size(), simplifier.kept());
+        assertTrue("kept " + kept.size(), kept.size() < COUNT / 2);
+        assertEquals(fixes.get(0).time, kept.get(0).time);
+        assertEquals(fixes.get(COUNT - 1).time, kept.get(kept.size() - 1).time);
+
+        int k = 0;
+        for (Fix fix : fixes) {
+            while (kept.get(k + 1).time < fix.time) {
+                k++;
+            }
+            Fix a = kept.get(k);
+            Fix b = kept.get(k + 1);
+            double f = fix.time <= a.time ? 0 : (double) (fix.time - a.time) / (b.time - a.time);
+            double lat = a.latitude + (b.latitude - a.latitude) * f;
+            double lon = a.longitude + (b.longitude - a.longitude) * f;
+            assertTrue(GeoMath.haversine(fix.latitude, fix.longitude, lat, lon) <= 10.05);
+        }
+    }
+
+    @Test
+    public void simplifier_collapsesStraightRun() {
+        final int[] kept = {0};
+        TrackSimplifier simplifier = new TrackSimplifier(1, 1000,
+                (time, lat, lon, accuracy, speed, bearing) -> ++kept[0] > 0);
+        for (int i = 0; i < 500; i++) {
+            simplifier.visit(i * 1000L, 10 + i * 1e-5, 20, 3, 1.1f, 0);
+        }
+        simplifier.flush();
+        assertEquals(2, kept[0]);
+    }
+}
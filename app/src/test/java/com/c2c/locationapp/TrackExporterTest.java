@@ -0,0 +1,202 @@
+package com.c2c.locationapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TrackExporter}: every format reads back with the matching
+ * {@link TrackReader}, time ranges, simplification and write failures.
+ */
+public class TrackExporterTest {
+
+    private static final long START = 1_600_000_000_000L;
+
+    private File mDir;
+    private TrackStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("track").toFile();
+        mStore = TrackStore.open(mDir, 256, 64, 0);
+        //a loop around a block and back, one fix a second
+        for (int i = 0; i < 3000; i++) {
+            double angle = i * 2 * Math.PI / 600;
+            mStore.append(START + i * 1000L, 52.52 + 0.002 * Math.sin(angle),
+                    13.40 + 0.003 * Math.cos(angle), 4.5f, 1.25f + (i % 7) * 0.5f, (i % 360) + 0.5f);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private String export(TrackExporter.Format format, long fromTime, long toTime,
+                          double toleranceMeters) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        //smallest buffer, so the export drains many times
+        TrackExporter exporter = new TrackExporter(Channels.newChannel(out), format, 1024);
+        TrackExporter.export(mStore, fromTime, toTime, toleranceMeters, exporter);
+        exporter.close();
+        assertEquals(out.size(), exporter.size());
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void assertReadsBack(TrackReader reader, long fromPosition, long toPosition,
+                                 boolean motion) throws IOException {
+        Fix fix = new Fix();
+        long pos = fromPosition;
+        while (reader.next(fix)) {
+            assertEquals(mStore.timeAt(pos), fix.time);
+            assertEquals(mStore.latitudeAt(pos), fix.latitude, 1e-9);
+            assertEquals(mStore.longitudeAt(pos), fix.longitude, 1e-9);
+            if (motion) {
+                final float[] expected = new float[3];
+                mStore.read(pos, pos + 1, (time, lat, lon, accuracy, speed, bearing) -> {
+                    expected[0] = accuracy;
+                    expected[1] = speed;
+                    expected[2] = bearing;
+                    return true;
+                });
+                assertEquals(expected[1], fix.speed, 0.005f);
+                assertEquals(expected[2], fix.bearing, 0.05f);
+            }
+            pos++;
+        }
+        assertEquals(toPosition, pos);
+    }
+
+    @Test
+    public void gpx_readsBack() throws IOException {
+        String gpx = export(TrackExporter.Format.GPX, Long.MIN_VALUE, Long.MAX_VALUE, 0);
+        assertTrue(gpx.startsWith("<?xml"));
+        assertTrue(gpx.endsWith("</gpx>\n"));
+        assertReadsBack(new GpxTrackReader(new StringReader(gpx)), 0, 3000, true);
+    }
+
+    @Test
+    public void csv_readsBack() throws IOException {
+        String csv = export(TrackExporter.Format.CSV, Long.MIN_VALUE, Long.MAX_VALUE, 0);
+        assertTrue(csv.startsWith("time,latitude,longitude,accuracy,speed,bearing\n"));
+        assertReadsBack(new CsvTrackReader(new StringReader(csv)), 0, 3000, true);
+    }
+
+    @Test
+    public void geoJson_isOneFeaturePerFix() throws IOException {
+        String json = export(TrackExporter.Format.GEOJSON, START, START + 10_000, 0);
+        assertTrue(json.startsWith("{\"type\":\"FeatureCollection\",\"features\":[\n{"));
+        assertTrue(json.endsWith("}}\n]}\n"));
+        assertEquals(10, json.split("\"type\":\"Feature\"", -1).length - 1);
+        assertTrue(json.contains("\"coordinates\":[13.4030000,52.5200000]"));
+        assertTrue(json.contains("\"time\":\"2020-09-13T12:26:40.000Z\""));
+
+        String empty = export(TrackExporter.Format.GEOJSON, 0, START, 0);
+        assertEquals("{\"type\":\"FeatureCollection\",\"features\":[\n]}\n", empty);
+    }
+
+    @Test
+    public void timeRange_isHalfOpen() throws IOException {
+        String csv = export(TrackExporter.Format.CSV, START + 1000_000, START + 1500_000, 0);
+        assertReadsBack(new CsvTrackReader(new StringReader(csv)), 1000, 1500, false);
+        //between two fixes
+        csv = export(TrackExporter.Format.CSV, START + 999_500, START + 1000_500, 0);
+        assertReadsBack(new CsvTrackReader(new StringReader(csv)), 1000, 1001, false);
+    }
+
+    @Test
+    public void tolerance_dropsDescribedFixes() throws IOException {
+        String csv = export(TrackExporter.Format.CSV, Long.MIN_VALUE, Long.MAX_VALUE, 5);
+        CsvTrackReader reader = new CsvTrackReader(new StringReader(csv));
+        Fix fix = new Fix();
+        int count = 0;
+        long last = 0;
+        while (reader.next(fix)) {
+            assertTrue(fix.time > last);
+            last = fix.time;
+            count++;
+        }
+        assertTrue("kept " + count, count > 10 && count < 1000);
+        assertEquals(START + 2999_000, last);
+    }
+
+    @Test
+    public void export_returnsFixesRead() throws IOException {
+        TrackExporter exporter = new TrackExporter(Channels.newChannel(new ByteArrayOutputStream()),
+                TrackExporter.Format.CSV, 1024);
+        assertEquals(500, TrackExporter.export(mStore, START + 1000_000, START + 1500_000, 0,
+                exporter));
+        //the same exporter again, only this range counts
+        assertEquals(10, TrackExporter.export(mStore, START, START + 10_000, 0, exporter));
+        //read, not written: the simplifier keeps fewer
+        assertEquals(3000, TrackExporter.export(mStore, Long.MIN_VALUE, Long.MAX_VALUE, 5,
+                exporter));
+        assertTrue(exporter.count() < 510 + 3000);
+        assertEquals(0, TrackExporter.export(mStore, 0, START, 0, exporter));
+        exporter.close();
+    }
+
+    @Test
+    public void isoTime_matchesParser() {
+        Random random = new Random(17);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            long time = (long) ((random.nextDouble() - 0.3) * 8e12);
+            text.setLength(0);
+            TrackExporter.appendIsoTime(text, time);
+            assertEquals(text.toString(), time, TrackReader.parseIsoTime(text));
+        }
+        text.setLength(0);
+        assertEquals("1970-01-01T00:00:00.000Z", TrackExporter.appendIsoTime(text, 0).toString());
+        text.setLength(0);
+        assertEquals("1969-12-31T23:59:59.999Z", TrackExporter.appendIsoTime(text, -1).toString());
+    }
+
+    @Test
+    public void writeFailure_stopsExport() throws IOException {
+        WritableByteChannel failing = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        TrackExporter exporter = new TrackExporter(failing, TrackExporter.Format.GPX, 1024);
+        try {
+            TrackExporter.export(mStore, Long.MIN_VALUE, Long.MAX_VALUE, 0, exporter);
+            fail("expected the write failure");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        //the store read stopped at the first failure
+        assertTrue(exporter.count() < 50);
+    }
+}
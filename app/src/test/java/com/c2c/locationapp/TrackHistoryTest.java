@@ -0,0 +1,134 @@
+package com.c2c.locationapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TrackHistory} paging: in order, by row, and while the store drops
+ * its oldest segments.
+ */
+public class TrackHistoryTest {
+
+    private static final long START = 1_600_000_000_000L;
+
+    private File mDir;
+    private TrackStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("history").toFile();
+        mStore = TrackStore.open(mDir, 256, 4, 0);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    //one fix a second, fix i at position i
+    private void record(int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            mStore.append(START + i * 1000L, 52.52 + i * 1e-6, 13.40 - i * 1e-6, 4.5f, 1.5f, 90f);
+        }
+    }
+
+    @Test
+    public void nextPage_walksRangeOnce() throws IOException {
+        record(0, 1000);
+        TrackHistory history = new TrackHistory(mStore, START + 100_000, START + 900_500, 64);
+        assertEquals(801, history.count());
+        //appended after opening, not part of the range
+        record(1000, 1010);
+        long expected = 100;
+        int pages = 0;
+        while (history.nextPage()) {
+            assertTrue(history.size() <= 64);
+            assertEquals(expected - 100, history.firstRow());
+            for (int i = 0; i < history.size(); i++) {
+                assertEquals(expected, history.position(i));
+                assertEquals(START + expected * 1000, history.time(i));
+                assertEquals(52.52 + expected * 1e-6, history.latitude(i), 1e-7);
+                assertEquals(13.40 - expected * 1e-6, history.longitude(i), 1e-7);
+                assertEquals(4.5f, history.accuracy(i), 0.1f);
+                assertEquals(1.5f, history.speed(i), 0.01f);
+                assertEquals(90f, history.bearing(i), 0.01f);
+                expected++;
+            }
+            pages++;
+        }
+        assertEquals(901, expected);
+        assertEquals(13, pages);
+        assertFalse(history.nextPage());
+    }
+
+    @Test
+    public void moveTo_loadsPageOfRow() throws IOException {
+        record(0, 1000);
+        TrackHistory history = new TrackHistory(mStore, Long.MIN_VALUE, Long.MAX_VALUE, 100);
+        assertEquals(1000, history.count());
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            int row = random.nextInt(1000);
+            int index = history.moveTo(row);
+            assertEquals(START + row * 1000L, history.time(index));
+            //pages are aligned, the row's neighbours in the same hundred are already there
+            assertEquals(row / 100 * 100, history.firstRow());
+            assertEquals(100, history.size());
+        }
+        assertEquals(-1, history.moveTo(-1));
+        assertEquals(-1, history.moveTo(1000));
+    }
+
+    @Test
+    public void emptyRange_hasNoRows() throws IOException {
+        record(0, 100);
+        TrackHistory history = new TrackHistory(mStore, START + 50_000, START + 50_000, 16);
+        assertEquals(0, history.count());
+        assertFalse(history.nextPage());
+        history = new TrackHistory(mStore, START + 90_000, START, 16);
+        assertEquals(0, history.count());
+        assertFalse(history.nextPage());
+        history = new TrackHistory(mStore, START + 200_000, Long.MAX_VALUE, 16);
+        assertEquals(0, history.count());
+        assertEquals(-1, history.moveTo(0));
+    }
+
+    @Test
+    public void droppedFixes_areSkipped() throws IOException {
+        record(0, 1000);
+        TrackHistory history = new TrackHistory(mStore, Long.MIN_VALUE, Long.MAX_VALUE, 100);
+        assertEquals(1000, history.count());
+        //two more segments, the oldest two are dropped
+        record(1000, 1300);
+        assertEquals(512, mStore.firstPosition());
+
+        assertEquals(-1, history.moveTo(100));
+        int index = history.moveTo(450);
+        assertEquals(-1, index);
+        index = history.moveTo(520);
+        assertEquals(START + 520_000, history.time(index));
+
+        assertTrue(history.nextPage());
+        assertEquals(512, history.firstRow());
+        long rows = history.size();
+        while (history.nextPage()) {
+            rows += history.size();
+        }
+        assertEquals(1000 - 512, rows);
+    }
+}
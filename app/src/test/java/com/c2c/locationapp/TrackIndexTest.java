@@ -0,0 +1,151 @@
+package com.c2c.locationapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests comparing {@link TrackIndex} queries against a full scan of the store.
+ */
+public class TrackIndexTest {
+
+    private static final int RECORDS_PER_SEGMENT = 512;
+    private static final long START = 1_600_000_000_000L;
+
+    private File mDir;
+    private TrackStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("track").toFile();
+        mStore = TrackStore.open(mDir, RECORDS_PER_SEGMENT, 4, 0);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    //random walk around a few km, one fix every 10 s
+    private void appendWalk(TrackIndex index, int count, long seed) throws IOException {
+        Random random = new Random(seed);
+        double lat = 48.85;
+        double lon = 2.35;
+        long time = mStore.endPosition() == 0 ? START
+                : mStore.timeAt(mStore.endPosition() - 1) + 10_000L;
+        for (int i = 0; i < count; i++) {
+            lat += (random.nextDouble() - 0.5) * 1e-3;
+            lon += (random.nextDouble() - 0.5) * 1e-3;
+            mStore.append(time, lat, lon, 5f, 1f, 0f);
+            time += 10_000L;
+            if (index != null) {
+                index.update();
+            }
+        }
+    }
+
+    private List<Long> scan(final double minLat, final double minLon, final double maxLat,
+                            final double maxLon, final long from, final long to,
+                            final double radiusLat, final double radiusLon, final double radius) {
+        final List<Long> positions = new ArrayList<>();
+        final long[] pos = {mStore.firstPosition()};
+        mStore.read(mStore.firstPosition(), mStore.endPosition(),
+                (time, lat, lon, accuracy, speed, bearing) -> {
+                    long p = pos[0]++;
+                    boolean inBox = radius > 0
+                            ? GeoMath.distance(radiusLat, radiusLon, lat, lon) <= radius
+                            : lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+                    if (inBox && time >= from && time < to) {
+                        positions.add(p);
+                    }
+                    return true;
+                });
+        return positions;
+    }
+
+    @Test
+    public void boxQueries_matchFullScan() throws IOException {
+        TrackIndex index = new TrackIndex(mStore, 16);
+        appendWalk(index, 1500, 1);
+
+        Random random = new Random(2);
+        for (int q = 0; q < 50; q++) {
+            double lat = 48.85 + (random.nextDouble() - 0.5) * 0.02;
+            double lon = 2.35 + (random.nextDouble() - 0.5) * 0.02;
+            double size = random.nextDouble() * 0.01;
+            long from = START + (long) (random.nextDouble() * 15_000_000L);
+            long to = from + (long) (random.nextDouble() * 10_000_000L);
+
+            final List<Long> found = new ArrayList<>();
+            long matched = index.query(lat, lon, lat + size, lon + size, from, to,
+                    (pos, time, la, lo) -> found.add(pos));
+            assertEquals(scan(lat, lon, lat + size, lon + size, from, to, 0, 0, 0), found);
+            assertEquals(found.size(), matched);
+        }
+    }
+
+    @Test
+    public void radiusQueries_matchFullScan() throws IOException {
+        TrackIndex index = new TrackIndex(mStore, 16);
+        appendWalk(index, 1500, 3);
+
+        Random random = new Random(4);
+        for (int q = 0; q < 50; q++) {
+            double lat = 48.85 + (random.nextDouble() - 0.5) * 0.02;
+            double lon = 2.35 + (random.nextDouble() - 0.5) * 0.02;
+            double radius = random.nextDouble() * 500;
+            final List<Long> found = new ArrayList<>();
+            index.within(lat, lon, radius, Long.MIN_VALUE, Long.MAX_VALUE,
+                    (pos, time, la, lo) -> found.add(pos));
+            assertEquals(scan(0, 0, 0, 0, Long.MIN_VALUE, Long.MAX_VALUE, lat, lon, radius), found);
+        }
+    }
+
+    @Test
+    public void rebuild_matchesIncrementalAndFollowsCompaction() throws IOException {
+        TrackIndex incremental = new TrackIndex(mStore, 16);
+        appendWalk(incremental, 3000, 5);
+        //4 segments of 512 kept, the rest was rotated out
+        assertEquals(RECORDS_PER_SEGMENT * 3 + 3000 % RECORDS_PER_SEGMENT, mStore.size());
+
+        TrackIndex rebuilt = new TrackIndex(mStore, 16);
+        rebuilt.update();
+        assertEquals(mStore.endPosition(), rebuilt.endPosition());
+
+        final List<Long> a = new ArrayList<>();
+        final List<Long> b = new ArrayList<>();
+        incremental.query(-90, -180, 90, 180, Long.MIN_VALUE, Long.MAX_VALUE,
+                (pos, time, lat, lon) -> a.add(pos));
+        rebuilt.query(-90, -180, 90, 180, Long.MIN_VALUE, Long.MAX_VALUE,
+                (pos, time, lat, lon) -> b.add(pos));
+        assertEquals(mStore.size(), a.size());
+        assertEquals(a, b);
+        assertEquals(mStore.firstPosition(), (long) a.get(0));
+    }
+
+    @Test
+    public void visitor_canStopEarly() throws IOException {
+        TrackIndex index = new TrackIndex(mStore);
+        appendWalk(index, 1000, 6);
+        final int[] seen = {0};
+        index.query(-90, -180, 90, 180, Long.MIN_VALUE, Long.MAX_VALUE,
+                (pos, time, lat, lon) -> ++seen[0] < 5);
+        assertEquals(5, seen[0]);
+    }
+}
@@ -0,0 +1,190 @@
+package com.c2c.locationapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TrackStore} segment handling and crash recovery.
+ */
+public class TrackStoreTest {
+
+    private static final int RECORDS_PER_SEGMENT = 64;
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("track").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private TrackStore open(int maxSegments) throws IOException {
+        return TrackStore.open(mDir, RECORDS_PER_SEGMENT, maxSegments, 0);
+    }
+
+    private static void appendFixes(TrackStore store, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            store.append(1_600_000_000_000L + i * 1000L, 52.0 + i * 1e-5, 4.0 - i * 1e-5,
+                    5.5f, 1.25f, 270.5f);
+        }
+    }
+
+    @Test
+    public void appendedFixes_surviveReopen() throws IOException {
+        TrackStore store = open(8);
+        appendFixes(store, 0, 150);
+        store.close();
+
+        TrackStore reopened = open(8);
+        assertEquals(150, reopened.size());
+        final int[] visited = {0};
+        reopened.read(reopened.firstPosition(), reopened.endPosition(),
+                (time, lat, lon, accuracy, speed, bearing) -> {
+                    int i = visited[0]++;
+                    assertEquals(1_600_000_000_000L + i * 1000L, time);
+                    assertEquals(52.0 + i * 1e-5, lat, 1e-7);
+                    assertEquals(4.0 - i * 1e-5, lon, 1e-7);
+                    assertEquals(5.5f, accuracy, 0.05f);
+                    assertEquals(1.25f, speed, 0.005f);
+                    assertEquals(270.5f, bearing, 0.005f);
+                    return true;
+                });
+        assertEquals(150, visited[0]);
+
+        appendFixes(reopened, 150, 160);
+        assertEquals(160, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void tornTailRecord_isDroppedOnRecovery() throws IOException {
+        TrackStore store = open(8);
+        appendFixes(store, 0, 10);
+        store.close();
+
+        //simulate a kill in the middle of writing the last record
+        File head = mDir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(head, "rw")) {
+            raf.seek(TrackStore.HEADER_SIZE + 9L * TrackStore.RECORD_SIZE + 8);
+            raf.writeInt(0x12345678);
+        }
+
+        TrackStore reopened = open(8);
+        assertEquals(9, reopened.size());
+        appendFixes(reopened, 9, 12);
+        assertEquals(12, reopened.size());
+        assertEquals(1_600_000_000_000L + 11_000L, reopened.timeAt(reopened.endPosition() - 1));
+        reopened.close();
+    }
+
+    @Test
+    public void staleRecordsPastTornTail_areWipedOnRecovery() throws IOException {
+        TrackStore store = open(8);
+        appendFixes(store, 0, 10);
+        store.close();
+
+        //a group commit torn so that a later record reached the disk but record 9 did not
+        File head = mDir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(head, "rw")) {
+            byte[] record = new byte[TrackStore.RECORD_SIZE];
+            raf.seek(TrackStore.HEADER_SIZE + 5L * TrackStore.RECORD_SIZE);
+            raf.readFully(record);
+            raf.seek(TrackStore.HEADER_SIZE + 11L * TrackStore.RECORD_SIZE);
+            raf.write(record);
+            raf.seek(TrackStore.HEADER_SIZE + 9L * TrackStore.RECORD_SIZE + 8);
+            raf.writeInt(0x12345678);
+        }
+
+        TrackStore reopened = open(8);
+        assertEquals(9, reopened.size());
+        //fills the gap up to the stale record, which must not be counted on the next open
+        appendFixes(reopened, 9, 11);
+        reopened.close();
+
+        TrackStore again = open(8);
+        assertEquals(11, again.size());
+        assertEquals(1_600_000_000_000L + 10_000L, again.timeAt(again.endPosition() - 1));
+        again.close();
+    }
+
+    @Test
+    public void open_dropsSegmentsOverLowerLimit() throws IOException {
+        TrackStore store = open(8);
+        appendFixes(store, 0, RECORDS_PER_SEGMENT * 5 + 1);
+        store.close();
+
+        TrackStore reopened = open(3);
+        assertEquals(RECORDS_PER_SEGMENT * 3, reopened.firstPosition());
+        assertEquals(RECORDS_PER_SEGMENT * 5 + 1, reopened.endPosition());
+        assertEquals(3, mDir.list().length);
+        reopened.close();
+    }
+
+    @Test
+    public void rotation_dropsOldestSegmentsOverLimit() throws IOException {
+        TrackStore store = open(3);
+        appendFixes(store, 0, RECORDS_PER_SEGMENT * 5 + 1);
+
+        assertEquals(RECORDS_PER_SEGMENT * 2 + 1, store.size());
+        assertEquals(RECORDS_PER_SEGMENT * 3, store.firstPosition());
+        assertEquals(3, mDir.list().length);
+        store.close();
+
+        TrackStore reopened = open(3);
+        assertEquals(RECORDS_PER_SEGMENT * 3, reopened.firstPosition());
+        assertEquals(RECORDS_PER_SEGMENT * 5 + 1, reopened.endPosition());
+        reopened.close();
+    }
+
+    @Test
+    public void readers_survive_concurrentRotation() throws Exception {
+        TrackStore store = open(2);
+        appendFixes(store, 0, RECORDS_PER_SEGMENT);
+        final Throwable[] failure = new Throwable[1];
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20_000; i++) {
+                    long pos = store.positionOf(1_600_000_000_000L + i % 5000 * 1000L);
+                    final long[] previous = {Long.MIN_VALUE};
+                    store.read(pos - RECORDS_PER_SEGMENT, pos + RECORDS_PER_SEGMENT,
+                            (time, lat, lon, accuracy, speed, bearing) -> {
+                                assertTrue(time > previous[0]);
+                                previous[0] = time;
+                                return true;
+                            });
+                    assertTrue(pos <= store.endPosition());
+                }
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        });
+        reader.start();
+        //every 64 fixes a rotation, and with two segments kept a compaction
+        for (int i = RECORDS_PER_SEGMENT; reader.isAlive(); i += RECORDS_PER_SEGMENT) {
+            appendFixes(store, i, i + RECORDS_PER_SEGMENT);
+        }
+        reader.join();
+        store.close();
+        if (failure[0] != null) {
+            throw new AssertionError(failure[0]);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.c2c.locationapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TrackViewport} projection, level of detail and incremental updates.
+ */
+public class TrackViewportTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1500;
+
+    private static void walk(TrackBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            //a slow spiral outwards, a few km across after a few thousand fixes
+            double angle = i * 0.01;
+            double radius = 1e-6 * i;
+            buffer.append(1_600_000_000_000L + i * 1000L, 52.52 + radius * Math.sin(angle),
+                    13.40 + radius * Math.cos(angle) * 1.6, 5f, 1f, 0f);
+        }
+    }
+
+    private static void assertInside(TrackViewport viewport) {
+        float[] points = viewport.points();
+        for (int i = 0; i < viewport.count(); i++) {
+            assertTrue(points[2 * i] >= 0 && points[2 * i] <= WIDTH);
+            assertTrue(points[2 * i + 1] >= 0 && points[2 * i + 1] <= HEIGHT);
+        }
+    }
+
+    @Test
+    public void empty_drawsNothing() {
+        TrackViewport viewport = new TrackViewport(4);
+        TrackBuffer buffer = new TrackBuffer(64);
+        assertFalse(viewport.update(buffer));
+        viewport.setSize(WIDTH, HEIGHT);
+        assertTrue(viewport.update(buffer));
+        assertEquals(0, viewport.count());
+        assertFalse(viewport.update(buffer));
+    }
+
+    @Test
+    public void manyFixes_keepPointsBoundedByPixels() {
+        TrackViewport viewport = new TrackViewport(4);
+        viewport.setSize(WIDTH, HEIGHT);
+        TrackBuffer buffer = new TrackBuffer(1 << 15);
+        walk(buffer, 0, 30_000);
+        assertTrue(viewport.update(buffer));
+        assertTrue("kept " + viewport.count(), viewport.count() < 2 * (WIDTH + HEIGHT));
+        assertTrue(viewport.count() > 100);
+        assertInside(viewport);
+
+        //kept points are at least a cell apart
+        float[] points = viewport.points();
+        float cell = viewport.cellPixels();
+        for (int i = 1; i < viewport.count() - 1; i++) {
+            float dx = points[2 * i] - points[2 * i - 2];
+            float dy = points[2 * i + 1] - points[2 * i - 1];
+            assertTrue(dx * dx + dy * dy >= cell * cell);
+        }
+    }
+
+    @Test
+    public void incremental_matchesOneUpdate() {
+        TrackBuffer steps = new TrackBuffer(1 << 15);
+        TrackBuffer batch = new TrackBuffer(1 << 15);
+        walk(steps, 0, 5000);
+        walk(batch, 0, 5000);
+        TrackViewport incremental = new TrackViewport(4);
+        incremental.setSize(WIDTH, HEIGHT);
+        incremental.update(steps);
+        TrackViewport once = new TrackViewport(4);
+        once.setSize(WIDTH, HEIGHT);
+        once.update(batch);
+
+        //small steps stay inside the padded bounds and are appended one frame at a time
+        for (int i = 5000; i < 5400; i += 7) {
+            walk(steps, i, i + 7);
+            assertTrue(incremental.update(steps));
+            assertFalse(incremental.update(steps));
+        }
+        walk(batch, 5000, 5400 + 6);
+        once.update(batch);
+
+        assertInside(incremental);
+        assertEquals(once.count(), incremental.count());
+        for (int i = 0; i < 2 * once.count(); i++) {
+            assertEquals(once.points()[i], incremental.points()[i], 0f);
+        }
+    }
+
+    @Test
+    public void tail_isNewestFix() {
+        TrackViewport viewport = new TrackViewport(50);
+        viewport.setSize(WIDTH, HEIGHT);
+        TrackBuffer buffer = new TrackBuffer(1024);
+        buffer.append(0, 52.52, 13.40, 5f, 0f, 0f);
+        buffer.append(1000, 52.5201, 13.4001, 5f, 0f, 0f);
+        viewport.update(buffer);
+        //the second fix is within a cell of the first and only drawn as the tail
+        assertEquals(2, viewport.count());
+        float tailX = viewport.points()[2];
+        buffer.append(2000, 52.5202, 13.4002, 5f, 0f, 0f);
+        viewport.update(buffer);
+        assertEquals(2, viewport.count());
+        assertTrue(viewport.points()[2] > tailX);
+    }
+
+    @Test
+    public void fixOutsideBounds_rebuildsAroundIt() {
+        TrackViewport viewport = new TrackViewport(4);
+        viewport.setSize(WIDTH, HEIGHT);
+        TrackBuffer buffer = new TrackBuffer(1024);
+        walk(buffer, 0, 500);
+        viewport.update(buffer);
+        //a jump far away, the view zooms out to show both
+        buffer.append(1_600_000_500_000L, 52.60, 13.50, 5f, 0f, 0f);
+        assertTrue(viewport.update(buffer));
+        assertInside(viewport);
+        float[] points = viewport.points();
+        int last = viewport.count() - 1;
+        assertTrue(points[2 * last] > points[0] + WIDTH / 4f);
+    }
+
+    @Test
+    public void noise_coarsensLevelOfDetail() {
+        TrackViewport viewport = new TrackViewport(2);
+        viewport.setSize(WIDTH, HEIGHT);
+        TrackBuffer buffer = new TrackBuffer(1 << 15);
+        Random random = new Random(3);
+        //standing still for hours with 30 m of noise, a few pixels per fix at the closest zoom
+        for (int i = 0; i < 30_000; i++) {
+            buffer.append(i * 1000L, 52.52 + random.nextGaussian() * 3e-4,
+                    13.40 + random.nextGaussian() * 4e-4, 30f, 0f, 0f);
+        }
+        viewport.update(buffer);
+        assertTrue(viewport.count() <= 2 * (WIDTH + HEIGHT) + 1);
+        assertTrue(viewport.cellPixels() > 2);
+        assertInside(viewport);
+    }
+
+    @Test
+    public void overwrittenFixes_eventuallyRebuild() {
+        TrackViewport viewport = new TrackViewport(4);
+        viewport.setSize(WIDTH, HEIGHT);
+        TrackBuffer buffer = new TrackBuffer(1024);
+        walk(buffer, 0, 1024);
+        viewport.update(buffer);
+        int before = viewport.count();
+        //more than an eighth of the buffer overwritten, the oldest drawn points go
+        walk(buffer, 1024, 1024 + 200);
+        assertTrue(viewport.update(buffer));
+        TrackViewport rebuilt = new TrackViewport(4);
+        rebuilt.setSize(WIDTH, HEIGHT);
+        rebuilt.update(buffer);
+        assertEquals(rebuilt.count(), viewport.count());
+        assertTrue(before > 0);
+    }
+}
@@ -0,0 +1,158 @@
+package com.c2c.locationapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TripTracker} stop and trip detection and its parallel rebuild.
+ */
+public class TripTrackerTest {
+
+    private static final long START = 1_600_000_000_000L;
+
+    private File mDir;
+
+    private final Random mRandom = new Random(11);
+    private final Fix mFix = new Fix();
+    private long mTime = START;
+    private double mLatitude = 52.52;
+    private double mLongitude = 13.40;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("track").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private interface Sink {
+        void accept(Fix fix) throws IOException;
+    }
+
+    //one fix a second standing still with a few meters of jitter
+    private void stand(long seconds, Sink sink) throws IOException {
+        for (long i = 0; i < seconds; i++) {
+            mTime += 1000;
+            double jitter = 4 / GeoMath.metersPerDegreeLatitude();
+            mFix.set(mTime, 0, mLatitude + (mRandom.nextDouble() - 0.5) * jitter,
+                    mLongitude + (mRandom.nextDouble() - 0.5) * jitter, 5f, 0f, 0f);
+            sink.accept(mFix);
+        }
+    }
+
+    //one fix a second heading north at speed
+    private void drive(long seconds, double speed, Sink sink) throws IOException {
+        for (long i = 0; i < seconds; i++) {
+            mTime += 1000;
+            mLatitude += speed / GeoMath.metersPerDegreeLatitude();
+            mFix.set(mTime, 0, mLatitude, mLongitude, 5f, (float) speed, 0f);
+            sink.accept(mFix);
+        }
+    }
+
+    @Test
+    public void stopsEndTrips() throws IOException {
+        TripTracker tracker = new TripTracker();
+        Sink sink = tracker::onFix;
+        stand(300, sink);
+        drive(1000, 10, sink);
+        stand(15 * 60, sink);
+        drive(200, 10, sink);
+        tracker.onBatchEnd();
+
+        TripStats stats = tracker.stats();
+        assertEquals(12_000, stats.distanceMeters, 100);
+        assertEquals(2, stats.stops);
+        //a few seconds leaving each stop count as idle
+        assertEquals(1200, stats.movingMillis / 1000, 15);
+        assertEquals(1200, stats.idleMillis / 1000, 15);
+        assertEquals(10f, stats.maxSpeed, 0);
+        assertEquals(10, stats.averageSpeed(), 0.1);
+
+        assertEquals(1, stats.trips.size());
+        TripStats.Trip trip = stats.trips.get(0);
+        assertEquals(10_000, trip.distanceMeters, 100);
+        assertEquals("10.0 km, 16 min", trip.appendSummary(new StringBuilder()).toString());
+        assertNotNull(stats.current);
+        assertEquals(2_000, stats.current.distanceMeters, 100);
+    }
+
+    @Test
+    public void summary_formatsShortAndLongTrips() {
+        assertEquals("850 m, 5 min", new TripStats.Trip(0, 5 * 60_000 + 59_000, 849.6, 0, 0)
+                .appendSummary(new StringBuilder()).toString());
+        assertEquals("123.5 km, 2 h 05 min", new TripStats.Trip(0, 125 * 60_000, 123_456, 0, 0)
+                .appendSummary(new StringBuilder()).toString());
+    }
+
+    @Test
+    public void rebuild_matchesSinglePass() throws Exception {
+        TrackStore store = TrackStore.open(mDir, 1024, 1000, 0);
+        try {
+            Sink append = fix -> store.append(fix.time, fix.latitude, fix.longitude, fix.accuracy,
+                    fix.speed, fix.bearing);
+            for (int day = 0; day < 12; day++) {
+                stand(200 + mRandom.nextInt(400), append);
+                drive(600 + mRandom.nextInt(1200), 5 + mRandom.nextInt(20), append);
+                stand(700, append);
+                drive(300 + mRandom.nextInt(600), 1.5, append);
+                //phone off for a while, sometimes less than a gap
+                mTime += (day % 3 == 0 ? 5 : 60) * 60_000L;
+            }
+
+            TripTracker single = new TripTracker();
+            final Fix fix = new Fix();
+            store.read(store.firstPosition(), store.endPosition(),
+                    (time, latitude, longitude, accuracy, speed, bearing) -> {
+                        fix.set(time, 0, latitude, longitude, accuracy, speed, bearing);
+                        single.onFix(fix);
+                        return true;
+                    });
+            single.onBatchEnd();
+            TripStats expected = single.stats();
+
+            TripTracker rebuilt = new TripTracker();
+            rebuilt.rebuild(store, 4);
+            TripStats actual = rebuilt.stats();
+
+            assertTrue(expected.trips.size() >= 12);
+            assertEquals(expected.distanceMeters, actual.distanceMeters, 1e-6);
+            assertEquals(expected.movingMillis, actual.movingMillis);
+            assertEquals(expected.idleMillis, actual.idleMillis);
+            assertEquals(expected.stops, actual.stops);
+            assertEquals(expected.stoppedMillis, actual.stoppedMillis);
+            assertEquals(expected.maxSpeed, actual.maxSpeed, 0);
+            assertEquals(expected.trips.size(), actual.trips.size());
+            for (int i = 0; i < expected.trips.size(); i++) {
+                assertEquals(expected.trips.get(i).startTime, actual.trips.get(i).startTime);
+                assertEquals(expected.trips.get(i).endTime, actual.trips.get(i).endTime);
+            }
+            assertEquals(expected.current.startTime, actual.current.startTime);
+
+            //and carries on live from where the store ended, after the last gap a new trip
+            drive(100, 10, rebuilt::onFix);
+            rebuilt.onBatchEnd();
+            assertEquals(expected.trips.size() + 1, rebuilt.stats().trips.size());
+            assertEquals(990, rebuilt.stats().current.distanceMeters, 5);
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.c2c.locationapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+//per-fix cost of the compact track format, the text exports and the streaming simplifier
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private static final int TRACK_POINTS = 4096;
+
+    private final Fix[] mTrack = new Fix[TRACK_POINTS];
+    private final Fix mOut = new Fix();
+    private int mNext;
+    private long mTimeOffset;
+
+    private TrackEncoder mEncoder;
+    private TrackSimplifier mSimplifier;
+    private byte[] mEncoded;
+    private TrackDecoder mDecoder;
+    private TrackExporter mGpx;
+    private TrackExporter mGeoJson;
+    private TrackExporter mCsv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticLocationSource source = new SyntheticLocationSource(0.1, TRACK_POINTS, 0, 5,
+                1_600_000_000_000L, 52.52, 13.40).setNoise(3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackEncoder encoder = new TrackEncoder(bytes, true);
+        for (int i = 0; i < TRACK_POINTS; i++) {
+            mTrack[i] = new Fix();
+            source.next(mTrack[i]);
+            encoder.append(mTrack[i].time, mTrack[i].latitude, mTrack[i].longitude,
+                    mTrack[i].accuracy, mTrack[i].speed, mTrack[i].bearing);
+        }
+        encoder.close();
+        mEncoded = bytes.toByteArray();
+
+        //bytes are thrown away, only the encoding work is measured
+        mEncoder = new TrackEncoder(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, true);
+        mSimplifier = new TrackSimplifier(10, 64, (time, lat, lon, accuracy, speed, bearing) -> true);
+
+        WritableByteChannel discard = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int length = src.remaining();
+                src.position(src.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        mGpx = new TrackExporter(discard, TrackExporter.Format.GPX);
+        mGeoJson = new TrackExporter(discard, TrackExporter.Format.GEOJSON);
+        mCsv = new TrackExporter(discard, TrackExporter.Format.CSV);
+    }
+
+    @Setup(Level.Iteration)
+    public void openDecoder() throws IOException {
+        mDecoder = new TrackDecoder(new ByteArrayInputStream(mEncoded));
+    }
+
+    //next fix of the track, shifted in time each lap so times keep increasing
+    private Fix next() {
+        Fix fix = mTrack[mNext];
+        if (++mNext == TRACK_POINTS) {
+            mNext = 0;
+            mTimeOffset += TRACK_POINTS * 10_000L;
+        }
+        return fix;
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        Fix fix = next();
+        mEncoder.append(fix.time + mTimeOffset, fix.latitude, fix.longitude, fix.accuracy,
+                fix.speed, fix.bearing);
+        return mEncoder.count();
+    }
+
+    @Benchmark
+    public long decode() throws IOException {
+        if (!mDecoder.next(mOut)) {
+            openDecoder();
+            mDecoder.next(mOut);
+        }
+        return mOut.time;
+    }
+
+    @Benchmark
+    public long exportGpx() throws IOException {
+        return export(mGpx);
+    }
+
+    @Benchmark
+    public long exportGeoJson() throws IOException {
+        return export(mGeoJson);
+    }
+
+    @Benchmark
+    public long exportCsv() throws IOException {
+        return export(mCsv);
+    }
+
+    private long export(TrackExporter exporter) throws IOException {
+        Fix fix = next();
+        exporter.append(fix.time + mTimeOffset, fix.latitude, fix.longitude, fix.accuracy,
+                fix.speed, fix.bearing);
+        return exporter.count();
+    }
+
+    @Benchmark
+    public long simplify() {
+        Fix fix = next();
+        mSimplifier.visit(fix.time + mTimeOffset, fix.latitude, fix.longitude, fix.accuracy,
+                fix.speed, fix.bearing);
+        return mSimplifier.kept();
+    }
+}
@@ -0,0 +1,76 @@
+package com.c2c.locationapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+
+//density grid work: the per fix update on the pipeline thread, a heatmap of a city sized
+//viewport and the top places, all against a grid of a few months of wandering
+@State(Scope.Thread)
+public class DensityBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"1000000"})
+    public int fixes;
+
+    private DensityGrid mGrid;
+    private final Fix mFix = new Fix();
+    private final double[] mLatitude = new double[POINTS];
+    private final double[] mLongitude = new double[POINTS];
+    private long mTime;
+    private int mNext;
+    private long mSink;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(11);
+        mGrid = new DensityGrid();
+        double latitude = 52.52;
+        double longitude = 13.40;
+        for (int i = 0; i < fixes; i++) {
+            //errands around a city of 20 km, one fix every few seconds
+            if (random.nextInt(200) == 0) {
+                latitude = 52.42 + random.nextDouble() * 0.2;
+                longitude = 13.25 + random.nextDouble() * 0.3;
+            }
+            latitude += random.nextGaussian() * 2e-4;
+            longitude += random.nextGaussian() * 3e-4;
+            mFix.set(mTime += 5000, 0, latitude, longitude, 5f, 1f, 0f);
+            mGrid.onFix(mFix);
+        }
+        for (int i = 0; i < POINTS; i++) {
+            mLatitude[i] = latitude + i * 1e-4;
+            mLongitude[i] = longitude + i * 1e-4;
+        }
+    }
+
+    @Benchmark
+    public boolean onFix() {
+        int i = mNext = (mNext + 1) & (POINTS - 1);
+        mFix.set(mTime += 5000, 0, mLatitude[i], mLongitude[i], 5f, 1f, 0f);
+        return mGrid.onFix(mFix);
+    }
+
+    @Benchmark
+    public long heatmap() {
+        mSink = 0;
+        int level = mGrid.levelFor(0.3, 270);
+        mGrid.query(level, 52.42, 13.25, 52.62, 13.55, (latitude, longitude, dwellMillis, visits) -> {
+            mSink += dwellMillis;
+            return true;
+        });
+        return mSink;
+    }
+
+    @Benchmark
+    public List<DensityGrid.Cell> topPlaces() {
+        return mGrid.topPlaces(mGrid.finestLevel() - 2, 10);
+    }
+}
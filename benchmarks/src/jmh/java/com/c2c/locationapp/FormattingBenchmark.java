@@ -0,0 +1,87 @@
+package com.c2c.locationapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+//cost of the text produced for every fix: coordinates, the timestamp title and the
+//notification text built from both
+@State(Scope.Thread)
+public class FormattingBenchmark {
+
+    //R.string.location_updated, split around the placeholder like NotificationRenderer does
+    private static final String TITLE_PREFIX = "Location Updated: ";
+
+    private static final int POINTS = 1024;
+
+    private final double[] mLatitude = new double[POINTS];
+    private final double[] mLongitude = new double[POINTS];
+    private int mNext;
+
+    private final LocationFormatter mDecimal = new LocationFormatter(6,
+            LocationFormatter.CoordinateStyle.DECIMAL);
+    private final LocationFormatter mDms = new LocationFormatter(6,
+            LocationFormatter.CoordinateStyle.DEGREES_MINUTES_SECONDS);
+    private final LocationFormatter mUtm = new LocationFormatter(6,
+            LocationFormatter.CoordinateStyle.UTM);
+    private final StringBuilder mText = new StringBuilder(64);
+    private final StringBuilder mTitle = new StringBuilder(64);
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < POINTS; i++) {
+            mLatitude[i] = random.nextDouble() * 160 - 80;
+            mLongitude[i] = random.nextDouble() * 360 - 180;
+        }
+    }
+
+    private int next() {
+        return mNext = (mNext + 1) & (POINTS - 1);
+    }
+
+    //Utils.getLocationText without the final toString
+    @Benchmark
+    public StringBuilder locationText() {
+        int i = next();
+        mText.setLength(0);
+        return mDecimal.appendCoordinates(mText, mLatitude[i], mLongitude[i]);
+    }
+
+    @Benchmark
+    public StringBuilder locationTextDms() {
+        int i = next();
+        mText.setLength(0);
+        return mDms.appendCoordinates(mText, mLatitude[i], mLongitude[i]);
+    }
+
+    @Benchmark
+    public StringBuilder locationTextUtm() {
+        int i = next();
+        mText.setLength(0);
+        return mUtm.appendCoordinates(mText, mLatitude[i], mLongitude[i]);
+    }
+
+    //Utils.getLocationTitle without the resource lookup
+    @Benchmark
+    public StringBuilder locationTitle() {
+        mTitle.setLength(0);
+        mTitle.append(TITLE_PREFIX);
+        return mDecimal.appendDateTime(mTitle, System.currentTimeMillis());
+    }
+
+    //what NotificationRenderer assembles per refresh before handing strings to the builder
+    @Benchmark
+    public int notificationText() {
+        int i = next();
+        mText.setLength(0);
+        mDecimal.appendCoordinates(mText, mLatitude[i], mLongitude[i]);
+        mTitle.setLength(0);
+        mTitle.append(TITLE_PREFIX);
+        mDecimal.appendDateTime(mTitle, System.currentTimeMillis());
+        return mText.length() + mTitle.length();
+    }
+}
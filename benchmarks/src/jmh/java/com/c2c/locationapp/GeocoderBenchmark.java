@@ -0,0 +1,76 @@
+package com.c2c.locationapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+//place name of a fix from the cache, as the notification asks for it, and the dataset search a
+//cache miss costs the geocoder thread
+@State(Scope.Thread)
+public class GeocoderBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"200000"})
+    public int places;
+
+    private File mFile;
+    private ReverseGeocoder mGeocoder;
+    private final double[] mLatitude = new double[POINTS];
+    private final double[] mLongitude = new double[POINTS];
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(13);
+        double[] latitudes = new double[places];
+        double[] longitudes = new double[places];
+        String[] names = new String[places];
+        for (int i = 0; i < places; i++) {
+            //a country's worth of towns and neighbourhoods, about 2 km apart
+            latitudes[i] = 47 + random.nextDouble() * 8;
+            longitudes[i] = 6 + random.nextDouble() * 9;
+            names[i] = "Place " + i;
+        }
+        mFile = File.createTempFile("places", "bench");
+        ReverseGeocoder.writeDataset(mFile, latitudes, longitudes, names);
+        mGeocoder = new ReverseGeocoder(mFile, ReverseGeocoder.DEFAULT_CACHE_CAPACITY, () -> { });
+
+        //a walk through a few cells, all of them cached after the first lap
+        for (int i = 0; i < POINTS; i++) {
+            mLatitude[i] = 52.52 + i * 1e-5;
+            mLongitude[i] = 13.40 + i * 1e-5;
+        }
+        mGeocoder.resolve(mLatitude[0], mLongitude[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mGeocoder.close();
+        mFile.delete();
+    }
+
+    private int next() {
+        return mNext = (mNext + 1) & (POINTS - 1);
+    }
+
+    @Benchmark
+    public String cachedPlaceName() {
+        int i = next();
+        return mGeocoder.placeName(mLatitude[i], mLongitude[i]);
+    }
+
+    @Benchmark
+    public String resolve() {
+        int i = next();
+        return mGeocoder.resolve(mLatitude[i], mLongitude[i]);
+    }
+}
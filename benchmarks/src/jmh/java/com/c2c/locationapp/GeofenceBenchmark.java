@@ -0,0 +1,62 @@
+package com.c2c.locationapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//cost of checking one fix against a city full of geofences, circles and polygons mixed
+@State(Scope.Thread)
+public class GeofenceBenchmark {
+
+    private static final int TRACK_POINTS = 4096;
+
+    @Param({"10000"})
+    public int fences;
+
+    private final Fix[] mTrack = new Fix[TRACK_POINTS];
+    private int mNext;
+    private long mTransitions;
+    private GeofenceEngine mEngine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(3);
+        List<Geofence> geofences = new ArrayList<>();
+        for (int i = 0; i < fences; i++) {
+            //spread over about 20 x 15 km around the track
+            double lat = 52.42 + random.nextDouble() * 0.2;
+            double lon = 13.30 + random.nextDouble() * 0.2;
+            if (i % 2 == 0) {
+                geofences.add(Geofence.circle("c" + i, lat, lon, 50 + random.nextDouble() * 300, 60_000));
+            } else {
+                double d = 0.0005 + random.nextDouble() * 0.003;
+                geofences.add(Geofence.polygon("p" + i,
+                        new double[]{lat, lat + d, lat + d, lat + d / 2, lat},
+                        new double[]{lon, lon, lon + d, lon + d / 2, lon + d}, 0));
+            }
+        }
+        mEngine = new GeofenceEngine((geofence, transition, time) -> mTransitions++);
+        mEngine.setGeofences(geofences);
+
+        SyntheticLocationSource source = new SyntheticLocationSource(1, TRACK_POINTS, 0, 5,
+                1_600_000_000_000L, 52.52, 13.40).setSpeed(10);
+        for (int i = 0; i < TRACK_POINTS; i++) {
+            mTrack[i] = new Fix();
+            source.next(mTrack[i]);
+        }
+    }
+
+    @Benchmark
+    public long evaluate() {
+        mEngine.onFix(mTrack[mNext]);
+        mNext = (mNext + 1) & (TRACK_POINTS - 1);
+        return mTransitions;
+    }
+}
@@ -0,0 +1,100 @@
+package com.c2c.locationapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+//history queries against an indexed store of a month or more of fixes, the first page of a
+//paged history read, and the cost of rebuilding the index at startup
+@State(Scope.Benchmark)
+public class IndexBenchmark {
+
+    private static final long START = 1_600_000_000_000L;
+
+    @Param({"1000000"})
+    public int records;
+
+    private File mDir;
+    private TrackStore mStore;
+    private TrackIndex mIndex;
+    private final Random mRandom = new Random(7);
+    private final TrackIndex.Visitor mCount = (pos, time, lat, lon) -> true;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("track", "bench");
+        if (!mDir.delete() || !mDir.mkdirs()) {
+            throw new IOException("Could not create " + mDir);
+        }
+        mStore = TrackStore.open(mDir, 64, 0);
+        mStore.setCommitPolicy(Integer.MAX_VALUE, Long.MAX_VALUE);
+        //a few km wide random walk, one fix every 10 s
+        Random random = new Random(1);
+        double lat = 48.85;
+        double lon = 2.35;
+        for (int i = 0; i < records; i++) {
+            lat += (random.nextDouble() - 0.5) * 2e-4;
+            lon += (random.nextDouble() - 0.5) * 2e-4;
+            mStore.append(START + i * 10_000L, lat, lon, 5f, 1f, 0f);
+        }
+        mStore.commit();
+        mIndex = new TrackIndex(mStore);
+        mIndex.update();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mStore.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    //"within 200 m of this point last month"
+    @Benchmark
+    public long radiusLastMonth() {
+        double lat = 48.85 + (mRandom.nextDouble() - 0.5) * 0.02;
+        double lon = 2.35 + (mRandom.nextDouble() - 0.5) * 0.02;
+        long to = START + records * 10_000L;
+        return mIndex.within(lat, lon, 200, to - 30L * 24 * 60 * 60 * 1000, to, mCount);
+    }
+
+    //"inside this box between T1 and T2", a day long window
+    @Benchmark
+    public long boxOneDay() {
+        double lat = 48.85 + (mRandom.nextDouble() - 0.5) * 0.02;
+        double lon = 2.35 + (mRandom.nextDouble() - 0.5) * 0.02;
+        long from = START + (long) (mRandom.nextDouble() * records) * 10_000L;
+        return mIndex.query(lat, lon, lat + 0.005, lon + 0.005, from, from + 24L * 60 * 60 * 1000,
+                mCount);
+    }
+
+    //opening a random day and reading its first page, what a client waits for before drawing
+    @Benchmark
+    public long historyFirstPage() {
+        long from = START + (long) (mRandom.nextDouble() * records) * 10_000L;
+        TrackHistory history = new TrackHistory(mStore, from, from + 24L * 60 * 60 * 1000,
+                TrackHistory.DEFAULT_PAGE_SIZE);
+        history.nextPage();
+        return history.count();
+    }
+
+    @Benchmark
+    public long rebuild() {
+        TrackIndex index = new TrackIndex(mStore);
+        index.update();
+        return index.endPosition();
+    }
+}
@@ -0,0 +1,58 @@
+package com.c2c.locationapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+//what the service pays per fix for its metrics: the disabled check, recording a timed value,
+//and counting from several threads at once
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    private ServiceMetrics mDisabled;
+    private ServiceMetrics mEnabled;
+    private LatencyHistogram mHistogram;
+    private StripedCounter mCounter;
+    private final Fix mFix = new Fix();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mDisabled = new ServiceMetrics(System::nanoTime);
+        mEnabled = new ServiceMetrics(System::nanoTime);
+        mEnabled.setEnabled(true);
+        mHistogram = new LatencyHistogram();
+        mCounter = new StripedCounter();
+        mFix.set(1_600_000_000_000L, System.nanoTime(), 52.52, 13.40, 5f, 0f, 0f);
+    }
+
+    //the only cost on the hot paths while metrics are off
+    @Benchmark
+    public boolean disabledCheck() {
+        if (mDisabled.isEnabled()) {
+            mDisabled.onFixDelivered(mFix);
+        }
+        return mDisabled.isEnabled();
+    }
+
+    @Benchmark
+    public void deliveryRecorded() {
+        if (mEnabled.isEnabled()) {
+            mEnabled.onFixDelivered(mFix);
+        }
+    }
+
+    @Benchmark
+    public void histogramRecord() {
+        mHistogram.record(System.nanoTime() & 0xFFFFFF);
+    }
+
+    //subscriber executors counting deliveries at the same time
+    @Benchmark
+    @Threads(4)
+    public void stripedIncrement() {
+        mCounter.increment();
+    }
+}
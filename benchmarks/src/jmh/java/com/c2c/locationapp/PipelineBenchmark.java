@@ -0,0 +1,148 @@
+package com.c2c.locationapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+
+//per-fix work of the service pipeline: hand-off through the ring buffer, then the
+//filtering, sampling and persistence stages the pipeline thread runs for every fix
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+    private static final int TRACK_POINTS = 4096;
+
+    private final Fix[] mTrack = new Fix[TRACK_POINTS];
+    private final Fix mOut = new Fix();
+    private int mNext;
+    private long mTimeOffset;
+
+    private FixRingBuffer mBuffer;
+    private StaleFixFilter mFilter;
+    private FixQualityFilter mQualityFilter;
+    private AdaptiveSampler mSampler;
+    private TrackStore mStore;
+    private FixSubscriptions mSubscriptions;
+    private FixSnapshot mSnapshot;
+    private TripTracker mTripTracker;
+    private long mDelivered;
+    private File mDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticLocationSource source = new SyntheticLocationSource(1, TRACK_POINTS, 0, 5,
+                1_600_000_000_000L, 52.52, 13.40).setNoise(5).setOutliers(0.01, 200);
+        for (int i = 0; i < TRACK_POINTS; i++) {
+            mTrack[i] = new Fix();
+            source.next(mTrack[i]);
+        }
+        mBuffer = new FixRingBuffer(1024);
+        mFilter = new StaleFixFilter();
+        mQualityFilter = new FixQualityFilter(System::nanoTime);
+        mQualityFilter.setSmoothing(true);
+        mSampler = new AdaptiveSampler(MotionState.WALKING);
+        mTripTracker = new TripTracker();
+
+        mDir = File.createTempFile("track", "bench");
+        if (!mDir.delete() || !mDir.mkdirs()) {
+            throw new IOException("Could not create " + mDir);
+        }
+        mStore = TrackStore.open(mDir, 4, 0);
+        mSnapshot = FixSnapshot.open(new File(mDir, "last_fix"));
+
+        //an activity showing the newest fix and an analytics client taking every fix,
+        //both delivered inline so the hand-off cost is measured, not a thread switch
+        mSubscriptions = new FixSubscriptions();
+        mSubscriptions.subscribe(Runnable::run, FixSubscriptions.Conflation.LATEST_ONLY,
+                fix -> mDelivered++);
+        mSubscriptions.subscribe(Runnable::run, FixSubscriptions.Conflation.EVERY_FIX,
+                fix -> mDelivered += fix.time);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mStore.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    //next fix of the endless track, times keep increasing across laps
+    private Fix next() {
+        Fix fix = mTrack[mNext];
+        if (++mNext == TRACK_POINTS) {
+            mNext = 0;
+            mTimeOffset += TRACK_POINTS * 1000L;
+        }
+        mOut.copyFrom(fix);
+        mOut.time += mTimeOffset;
+        return mOut;
+    }
+
+    @Benchmark
+    public boolean ringBufferHandOff() {
+        mBuffer.offer(next());
+        return mBuffer.poll(mOut);
+    }
+
+    @Benchmark
+    public boolean filterStage() {
+        return mFilter.onFix(next());
+    }
+
+    //gates plus the Kalman smoother, the track has 1% outliers for the speed gate to reject
+    @Benchmark
+    public boolean qualityStage() {
+        return mQualityFilter.onFix(next());
+    }
+
+    @Benchmark
+    public boolean samplingStage() {
+        return mSampler.onFix(next());
+    }
+
+    @Benchmark
+    public boolean tripStage() {
+        return mTripTracker.onFix(next());
+    }
+
+    @Benchmark
+    public void persistenceStage() throws IOException {
+        Fix fix = next();
+        mStore.append(fix.time, fix.latitude, fix.longitude, fix.accuracy, fix.speed, fix.bearing);
+    }
+
+    //what the publish stage adds per batch so the next start has a location
+    @Benchmark
+    public void snapshotWrite() {
+        mSnapshot.write(next(), MotionState.WALKING);
+    }
+
+    @Benchmark
+    public long publishStage() {
+        mSubscriptions.publish(next());
+        mSubscriptions.dispatch();
+        return mDelivered;
+    }
+
+    //everything the pipeline thread does for one fix before publishing
+    @Benchmark
+    public void allStages(Blackhole blackhole) throws IOException {
+        Fix fix = next();
+        if (mFilter.onFix(fix) && mQualityFilter.onFix(fix)) {
+            blackhole.consume(mSampler.onFix(fix));
+            mStore.append(fix.time, fix.latitude, fix.longitude, fix.accuracy, fix.speed, fix.bearing);
+            mTripTracker.onFix(fix);
+        }
+    }
+}
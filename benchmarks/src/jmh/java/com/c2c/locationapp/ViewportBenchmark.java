@@ -0,0 +1,57 @@
+package com.c2c.locationapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+//work the live track view does on a frame: a full rebuild of the drawn points, as after a
+//resize or a jump, and the usual frame that projects a few new fixes onto them
+@State(Scope.Thread)
+public class ViewportBenchmark {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1500;
+
+    @Param({"30000"})
+    public int fixes;
+
+    private TrackBuffer mBuffer;
+    private TrackViewport mViewport;
+    private int mNext;
+
+    private void append(int i) {
+        //a slow spiral outwards, as in TrackViewportTest
+        double angle = i * 0.01;
+        double radius = 1e-6 * i;
+        mBuffer.append(1_600_000_000_000L + i * 1000L, 52.52 + radius * Math.sin(angle),
+                13.40 + radius * Math.cos(angle) * 1.6, 5f, 1f, 0f);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        mBuffer = new TrackBuffer(Integer.highestOneBit(fixes) << 1);
+        for (mNext = 0; mNext < fixes; mNext++) {
+            append(mNext);
+        }
+        mViewport = new TrackViewport(4);
+        mViewport.setSize(WIDTH, HEIGHT);
+        mViewport.update(mBuffer);
+    }
+
+    @Benchmark
+    public int rebuild() {
+        mViewport.invalidate();
+        mViewport.update(mBuffer);
+        return mViewport.count();
+    }
+
+    @Benchmark
+    public int frame() {
+        append(mNext++);
+        mViewport.update(mBuffer);
+        return mViewport.count();
+    }
+}